@@ -1,6 +1,11 @@
 package com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.config;
 
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.config.executor.OpenApiExecutor;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.config.transport.ConfigurableOkHttpOpenApiFactory;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.config.transport.StreamingConnectionMonitor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
@@ -8,9 +13,8 @@ import org.springframework.context.annotation.Configuration;
 import ru.tinkoff.invest.openapi.OpenApi;
 import ru.tinkoff.invest.openapi.OpenApiFactoryBase;
 import ru.tinkoff.invest.openapi.SandboxOpenApi;
-import ru.tinkoff.invest.openapi.okhttp.OkHttpOpenApiFactory;
 
-import java.util.concurrent.Executors;
+import java.util.concurrent.Executor;
 import java.util.logging.Logger;
 
 /**
@@ -21,38 +25,80 @@ import java.util.logging.Logger;
 @EnableConfigurationProperties(TinkoffOpenApiProperties.class)
 @ComponentScan("com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff")
 @Slf4j
-public class TinkoffOpenApiConfiguration {
+public class TinkoffOpenApiConfiguration implements BeanFactoryAware {
 
     public static final String BEANS_QUALIFIER_PREFIX = "Tinkoff";
 
     private TinkoffOpenApiProperties props;
+    private BeanFactory beanFactory;
 
     public TinkoffOpenApiConfiguration(TinkoffOpenApiProperties props) {
         this.props = props;
     }
 
+    @Override
+    public void setBeanFactory(BeanFactory beanFactory) {
+        this.beanFactory = beanFactory;
+    }
+
     @Bean(destroyMethod = "close")
     public OpenApi getOpenApi() {
         log.info("Initializing Tinkoff API");
         OpenApi api;
         var factory = getOpenApiFactory();
+        var executor = getOpenApiExecutor().asExecutor();
         if (props.getSandbox().isEnabled()) {
             log.info("Using SANDBOX mode");
-            api = factory.createSandboxOpenApiClient(Executors.newSingleThreadExecutor());
-            ((SandboxOpenApi) api).getSandboxContext().performRegistration(null).join();
+            api = factory.createSandboxOpenApiClient(executor);
+            if (props.isAsyncStartup()) {
+                log.info("Sandbox registration is deferred to background start up");
+            } else {
+                ((SandboxOpenApi) api).getSandboxContext().performRegistration(null).join();
+            }
         } else {
             log.info("Using PRODUCTIVE mode");
-            api = factory.createOpenApiClient(Executors.newSingleThreadExecutor());
+            api = factory.createOpenApiClient(executor);
         }
         log.info("Initialization finished");
         return api;
     }
 
+    /**
+     * Executor for the OpenApi client callbacks. Exposes queue depth and task latency statistics
+     *
+     * @return executor
+     */
+    @Bean(destroyMethod = "shutdown")
+    public OpenApiExecutor getOpenApiExecutor() {
+        TinkoffOpenApiProperties.Executor executorProps = props.getExecutor();
+        Executor customExecutor = null;
+        if (executorProps.getType() == TinkoffOpenApiProperties.ExecutorType.CUSTOM) {
+            customExecutor = beanFactory.getBean(executorProps.getBeanName(), Executor.class);
+        }
+        return OpenApiExecutor.create(executorProps, customExecutor);
+    }
+
     @Bean
     public OpenApiFactoryBase getOpenApiFactory() {
-        return new OkHttpOpenApiFactory(
+        return new ConfigurableOkHttpOpenApiFactory(
                 props.getApiToken(),
-                Logger.getLogger(getClass().getCanonicalName())
+                Logger.getLogger(getClass().getCanonicalName()),
+                props.getTransport()
         );
     }
+
+    /**
+     * Monitor of the event stream connections. A factory, other than {@link ConfigurableOkHttpOpenApiFactory},
+     * isn't watched, so its monitor reports no reconnects
+     *
+     * @return monitor
+     */
+    @Bean
+    public StreamingConnectionMonitor getStreamingConnectionMonitor() {
+        OpenApiFactoryBase factory = getOpenApiFactory();
+        if (factory instanceof ConfigurableOkHttpOpenApiFactory) {
+            return ((ConfigurableOkHttpOpenApiFactory) factory).getConnectionMonitor();
+        }
+        return new StreamingConnectionMonitor(1);
+    }
 }
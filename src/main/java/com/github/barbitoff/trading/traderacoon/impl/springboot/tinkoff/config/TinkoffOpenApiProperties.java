@@ -1,8 +1,15 @@
 package com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.config;
 
+import com.github.barbitoff.trading.traderacoon.api.model.InstrumentType;
 import lombok.Getter;
 import lombok.Setter;
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import ru.tinkoff.invest.openapi.models.market.CandleInterval;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.EnumSet;
+import java.util.Set;
 
 /**
  * Starter configuration
@@ -19,10 +26,67 @@ public class TinkoffOpenApiProperties {
      * Flag, indicating whether or not use IIS account
      */
     private boolean useIisAccount;
+    /**
+     * Flag, indicating whether or not perform sandbox registration, account resolution and sandbox
+     * initialization in background, without blocking application start up
+     */
+    private boolean asyncStartup;
     /**
      * Tinkoff API sandbox configuration
      */
     private Sandbox sandbox;
+    /**
+     * Executor for the OpenApi client callbacks
+     */
+    private Executor executor = new Executor();
+    /**
+     * HTTP transport configuration
+     */
+    private Transport transport = new Transport();
+    /**
+     * Orders processing configuration
+     */
+    private Orders orders = new Orders();
+    /**
+     * Instrument information cache configuration
+     */
+    private InstrumentCache instrumentCache = new InstrumentCache();
+    /**
+     * Instrument catalog configuration
+     */
+    private Catalog catalog = new Catalog();
+    /**
+     * Portfolio snapshot cache configuration
+     */
+    private PortfolioCache portfolioCache = new PortfolioCache();
+    /**
+     * Portfolio changes watching configuration
+     */
+    private PortfolioWatcher portfolioWatcher = new PortfolioWatcher();
+    /**
+     * Mark-to-market valuation configuration
+     */
+    private Valuation valuation = new Valuation();
+    /**
+     * Streaming market data configuration
+     */
+    private MarketData marketData = new MarketData();
+    /**
+     * Local order books configuration
+     */
+    private OrderBooks orderBooks = new OrderBooks();
+    /**
+     * Last prices cache configuration
+     */
+    private LastPrices lastPrices = new LastPrices();
+    /**
+     * Historical candles loading configuration
+     */
+    private History history = new History();
+    /**
+     * Candle aggregation configuration
+     */
+    private Aggregation aggregation = new Aggregation();
 
     @Getter
     @Setter
@@ -41,4 +105,330 @@ public class TinkoffOpenApiProperties {
          */
         private Integer initRubs;
     }
+
+    @Getter
+    @Setter
+    public static class Executor {
+        /**
+         * Type of the executor
+         */
+        private ExecutorType type = ExecutorType.FIXED;
+        /**
+         * Number of threads for FIXED executor or parallelism level for WORK_STEALING executor
+         */
+        private int poolSize = Runtime.getRuntime().availableProcessors();
+        /**
+         * Task queue capacity for FIXED executor. If not set, the queue is unbounded. When the queue
+         * is full, the task is executed in the submitting thread
+         */
+        private Integer queueCapacity;
+        /**
+         * Name of the caller-supplied java.util.concurrent.Executor bean, used for CUSTOM executor
+         */
+        private String beanName;
+    }
+
+    @Getter
+    @Setter
+    public static class Transport {
+        /**
+         * Maximum number of idle connections to keep in the pool
+         */
+        private int maxIdleConnections = 5;
+        /**
+         * Time to keep an idle connection in the pool
+         */
+        private Duration keepAlive = Duration.ofMinutes(5);
+        /**
+         * Allow HTTP/2 (negotiated with the server). If disabled, only HTTP/1.1 is used
+         */
+        private boolean http2Enabled = true;
+        /**
+         * Connect timeout
+         */
+        private Duration connectTimeout = Duration.ofSeconds(10);
+        /**
+         * Read timeout
+         */
+        private Duration readTimeout = Duration.ofSeconds(10);
+        /**
+         * Write timeout
+         */
+        private Duration writeTimeout = Duration.ofSeconds(10);
+        /**
+         * Timeout for the whole call, zero means no timeout
+         */
+        private Duration callTimeout = Duration.ZERO;
+        /**
+         * Interval between web socket pings of the streaming connection
+         */
+        private Duration pingInterval = Duration.ofSeconds(5);
+        /**
+         * Maximum number of concurrent requests
+         */
+        private int maxRequests = 64;
+        /**
+         * Maximum number of concurrent requests per host
+         */
+        private int maxRequestsPerHost = 5;
+        /**
+         * Open connections to the API host on start up, before the first trading call
+         */
+        private boolean warmUp;
+        /**
+         * Number of connections to open on warm up
+         */
+        private int warmUpConnections = 1;
+    }
+
+    @Getter
+    @Setter
+    public static class Orders {
+        /**
+         * Maximum number of concurrent cancellation requests for bulk cancellation. Zero or less means no limit
+         */
+        private int cancelConcurrency = 10;
+        /**
+         * Maximum number of concurrent placement requests for batch placement. Zero or less means no limit
+         */
+        private int placeConcurrency = 10;
+        /**
+         * If true, active orders are kept in memory: updated on placements and cancellations made through
+         * this starter and reconciled with the API in background. Active orders are then served from memory
+         */
+        private boolean activeCacheEnabled = false;
+        /**
+         * Interval between background reconciliations of the active orders cache
+         */
+        private Duration reconcileInterval = Duration.ofSeconds(1);
+        /**
+         * Order tracker poll interval right after tracked orders change
+         */
+        private Duration trackerMinInterval = Duration.ofMillis(250);
+        /**
+         * Order tracker poll interval, that the tracker backs off to while tracked orders don't change
+         */
+        private Duration trackerMaxInterval = Duration.ofSeconds(5);
+        /**
+         * Maximum time the order tracker waits for active orders from the API
+         */
+        private Duration trackerTimeout = Duration.ofSeconds(10);
+        /**
+         * If true, orders are validated against the instrument information before being sent to the API.
+         * Off by default, as validation loads the instrument before each order
+         */
+        private boolean validationEnabled;
+        /**
+         * If true, a limit price off the instrument price grid is rounded to the price increment: down
+         * for buying, up for selling. Otherwise such order is rejected
+         */
+        private boolean roundToTick = false;
+        /**
+         * Types of instruments, that may be traded. If empty, any type is allowed
+         */
+        private Set<InstrumentType> allowedInstrumentTypes = EnumSet.noneOf(InstrumentType.class);
+        /**
+         * Maximum relative deviation of a limit price from the last price, e.g. 0.1 for 10%. Checked only when
+         * a fresh last price is cached. Null disables the check
+         */
+        private BigDecimal maxPriceDeviation;
+    }
+
+    @Getter
+    @Setter
+    public static class InstrumentCache {
+        /**
+         * If true, instrument information is cached
+         */
+        private boolean enabled = true;
+        /**
+         * Maximum number of cached instruments
+         */
+        private int maxSize = 10_000;
+        /**
+         * Time to live of the cached instrument information
+         */
+        private Duration ttl = Duration.ofHours(1);
+        /**
+         * Time to live of a "not found" result for an unknown Figi
+         */
+        private Duration negativeTtl = Duration.ofMinutes(5);
+        /**
+         * Maximum number of concurrent API requests for batch instrument lookup. Zero or less means no limit
+         */
+        private int batchConcurrency = 10;
+    }
+
+    @Getter
+    @Setter
+    public static class Catalog {
+        /**
+         * If true, the whole instrument catalog (stocks, bonds, ETFs and currencies) is loaded on start up
+         * and instrument information is served from memory
+         */
+        private boolean enabled = false;
+        /**
+         * Interval between background catalog refreshes
+         */
+        private Duration refreshInterval = Duration.ofHours(1);
+    }
+
+    @Getter
+    @Setter
+    public static class PortfolioCache {
+        /**
+         * If true, the portfolio is served from a snapshot until it gets older than maxStaleness or an order
+         * is placed, cancelled or found changed
+         */
+        private boolean enabled = false;
+        /**
+         * Maximum age of the portfolio snapshot
+         */
+        private Duration maxStaleness = Duration.ofSeconds(5);
+    }
+
+    @Getter
+    @Setter
+    public static class PortfolioWatcher {
+        /**
+         * If true, the portfolio is polled in background and its changes are published
+         */
+        private boolean enabled = false;
+        /**
+         * Interval between portfolio polls
+         */
+        private Duration pollInterval = Duration.ofSeconds(5);
+    }
+
+    @Getter
+    @Setter
+    public static class Valuation {
+        /**
+         * If true, portfolio positions are valued at the last prices and unrealized PnL is maintained
+         */
+        private boolean enabled = false;
+        /**
+         * Interval between background reloads of the positions. Positions are also reloaded when the portfolio
+         * watcher or active orders reconciliation find changes
+         */
+        private Duration refreshInterval = Duration.ofMinutes(1);
+    }
+
+    @Getter
+    @Setter
+    public static class MarketData {
+        /**
+         * Maximum number of events, buffered for a slow subscriber. When exceeded, the oldest events are dropped
+         */
+        private int subscriberBufferSize = 256;
+        /**
+         * Delay, during which subscribe and unsubscribe requests are collected to be sent in one batch.
+         * Zero sends each request immediately
+         */
+        private Duration subscriptionBatchDelay = Duration.ofMillis(50);
+        /**
+         * If true, all the streamed events are also published to a ring buffer for the ring buffer consumers
+         */
+        private boolean ringBufferEnabled = false;
+        /**
+         * Number of ring buffer slots, must be a power of 2
+         */
+        private int ringBufferSize = 4096;
+        /**
+         * Number of unprocessed events, after which a ring buffer consumer is detached, so that it doesn't hold
+         * back the event stream. Must be less than the ring buffer size, zero or less means three quarters of it
+         */
+        private int ringBufferMaxLag;
+        /**
+         * How ring buffer consumers wait for events
+         */
+        private WaitStrategyType ringBufferWaitStrategy = WaitStrategyType.YIELDING;
+    }
+
+    @Getter
+    @Setter
+    public static class OrderBooks {
+        /**
+         * Number of price levels on each side, kept for an instrument
+         */
+        private int depth = 20;
+        /**
+         * Keep order books up to date with the streaming API. If false, order books are updated by polling only
+         */
+        private boolean streaming = true;
+    }
+
+    @Getter
+    @Setter
+    public static class LastPrices {
+        /**
+         * Maximum age of a cached price, after which it's requested from the API again
+         */
+        private Duration maxAge = Duration.ofSeconds(5);
+    }
+
+    @Getter
+    @Setter
+    public static class History {
+        /**
+         * Maximum number of concurrent candle requests for one load, must be positive
+         */
+        private int concurrency = 4;
+        /**
+         * Maximum number of candle requests per minute, shared by all loads, must be positive
+         */
+        private int requestsPerMinute = 120;
+        /**
+         * Directory for the on-disk cache of loaded candles. The cache is disabled if not set
+         */
+        private String cacheDirectory;
+    }
+
+    @Getter
+    @Setter
+    public static class Aggregation {
+        /**
+         * Intervals, minute candles are aggregated into
+         */
+        private Set<CandleInterval> intervals = EnumSet.of(CandleInterval.FIVE_MIN, CandleInterval.QUARTER_HOUR,
+                CandleInterval.HOUR, CandleInterval.DAY);
+        /**
+         * Number of final candles, kept for each interval and instrument
+         */
+        private int historySize = 1000;
+    }
+
+    public enum ExecutorType {
+        /**
+         * Fixed size thread pool, optionally with bounded queue
+         */
+        FIXED,
+        /**
+         * Work-stealing fork/join pool
+         */
+        WORK_STEALING,
+        /**
+         * Executor bean, supplied by the application
+         */
+        CUSTOM
+    }
+
+    public enum WaitStrategyType {
+        /**
+         * Wait on a lock condition. Lowest CPU usage, highest latency
+         */
+        BLOCKING,
+        /**
+         * Spin briefly, then park for short periods
+         */
+        SLEEPING,
+        /**
+         * Spin briefly, then yield the thread
+         */
+        YIELDING,
+        /**
+         * Spin all the time. Lowest latency, occupies a CPU core per consumer
+         */
+        BUSY_SPIN
+    }
 }
@@ -0,0 +1,194 @@
+package com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.config.executor;
+
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.config.TinkoffOpenApiProperties;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Executor for the OpenApi client callbacks. Wraps an underlying executor (created according to
+ * the configuration or supplied by the application) and tracks queue depth and task latency.
+ * <p>
+ * Intentionally doesn't implement {@link Executor}: being registered as a bean of that type it would
+ * switch off Spring Boot default task executor. Use {@link #asExecutor()} to pass it to the API client
+ */
+@Slf4j
+public class OpenApiExecutor {
+
+    private static final String THREAD_NAME_PREFIX = "tinkoff-openapi-";
+
+    private final Executor delegate;
+    private final boolean ownsDelegate;
+
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private final AtomicInteger activeTasks = new AtomicInteger();
+    private final LongAdder submittedTasks = new LongAdder();
+    private final LongAdder completedTasks = new LongAdder();
+    private final LongAdder totalQueueWaitNanos = new LongAdder();
+    private final LongAdder totalExecutionNanos = new LongAdder();
+    private final AtomicLong maxQueueWaitNanos = new AtomicLong();
+
+    /**
+     * @param delegate     executor to run tasks on
+     * @param ownsDelegate if true, delegate gets shut down on {@link #shutdown()}
+     */
+    public OpenApiExecutor(Executor delegate, boolean ownsDelegate) {
+        this.delegate = delegate;
+        this.ownsDelegate = ownsDelegate;
+    }
+
+    /**
+     * Creates an executor according to the configuration
+     *
+     * @param props          executor configuration
+     * @param customExecutor executor, supplied by the application, used for CUSTOM executor type
+     * @return executor
+     */
+    public static OpenApiExecutor create(TinkoffOpenApiProperties.Executor props, Executor customExecutor) {
+        switch (props.getType()) {
+            case CUSTOM:
+                if (customExecutor == null) {
+                    throw new IllegalStateException("Executor bean is required for CUSTOM executor type");
+                }
+                log.info("Using application supplied executor for Tinkoff API");
+                return new OpenApiExecutor(customExecutor, false);
+            case WORK_STEALING:
+                log.info("Using work-stealing executor for Tinkoff API, parallelism {}", props.getPoolSize());
+                return new OpenApiExecutor(Executors.newWorkStealingPool(props.getPoolSize()), true);
+            case FIXED:
+            default:
+                log.info("Using fixed executor for Tinkoff API, {} threads, queue capacity {}",
+                        props.getPoolSize(),
+                        props.getQueueCapacity() == null ? "unbounded" : props.getQueueCapacity());
+                BlockingQueue<Runnable> queue = props.getQueueCapacity() == null
+                        ? new LinkedBlockingQueue<>()
+                        : new ArrayBlockingQueue<>(props.getQueueCapacity());
+                return new OpenApiExecutor(new ThreadPoolExecutor(
+                        props.getPoolSize(),
+                        props.getPoolSize(),
+                        0L, TimeUnit.MILLISECONDS,
+                        queue,
+                        new NamedThreadFactory(),
+                        new ThreadPoolExecutor.CallerRunsPolicy()
+                ), true);
+        }
+    }
+
+    /**
+     * Executes a task on the underlying executor, measuring queue wait and execution time
+     *
+     * @param task task to execute
+     * @throws RejectedExecutionException if the underlying executor rejects the task. The task isn't counted then
+     */
+    public void execute(Runnable task) {
+        final long submittedAt = System.nanoTime();
+        submittedTasks.increment();
+        queueDepth.incrementAndGet();
+        try {
+            delegate.execute(() -> {
+                long startedAt = System.nanoTime();
+                queueDepth.decrementAndGet();
+                activeTasks.incrementAndGet();
+                long waited = startedAt - submittedAt;
+                totalQueueWaitNanos.add(waited);
+                maxQueueWaitNanos.accumulateAndGet(waited, Math::max);
+                try {
+                    task.run();
+                } finally {
+                    totalExecutionNanos.add(System.nanoTime() - startedAt);
+                    activeTasks.decrementAndGet();
+                    completedTasks.increment();
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            queueDepth.decrementAndGet();
+            submittedTasks.decrement();
+            throw ex;
+        }
+    }
+
+    /**
+     * @return view of this object as an ordinary executor
+     */
+    public Executor asExecutor() {
+        return this::execute;
+    }
+
+    /**
+     * @return number of tasks submitted but not started yet
+     */
+    public int getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    /**
+     * @return number of tasks being executed at the moment
+     */
+    public int getActiveTasks() {
+        return activeTasks.get();
+    }
+
+    /**
+     * @return total number of submitted tasks
+     */
+    public long getSubmittedTasks() {
+        return submittedTasks.sum();
+    }
+
+    /**
+     * @return total number of completed tasks
+     */
+    public long getCompletedTasks() {
+        return completedTasks.sum();
+    }
+
+    /**
+     * @return average time (in nanoseconds) between task submission and its start
+     */
+    public long getAverageQueueWaitNanos() {
+        long count = completedTasks.sum() + activeTasks.get();
+        return count == 0 ? 0 : totalQueueWaitNanos.sum() / count;
+    }
+
+    /**
+     * @return maximum observed time (in nanoseconds) between task submission and its start
+     */
+    public long getMaxQueueWaitNanos() {
+        return maxQueueWaitNanos.get();
+    }
+
+    /**
+     * @return average task execution time in nanoseconds
+     */
+    public long getAverageExecutionNanos() {
+        long count = completedTasks.sum();
+        return count == 0 ? 0 : totalExecutionNanos.sum() / count;
+    }
+
+    /**
+     * Shuts down the underlying executor, if it was created by this object
+     */
+    public void shutdown() {
+        if (ownsDelegate && delegate instanceof ExecutorService) {
+            log.info("Shutting down Tinkoff API executor");
+            ((ExecutorService) delegate).shutdown();
+        }
+    }
+
+    /**
+     * Creates daemon threads with recognizable names
+     */
+    private static class NamedThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, THREAD_NAME_PREFIX + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -9,15 +9,19 @@ import org.springframework.beans.factory.InitializingBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
 import org.springframework.stereotype.Component;
 import ru.tinkoff.invest.openapi.OpenApi;
+import ru.tinkoff.invest.openapi.SandboxContext;
 import ru.tinkoff.invest.openapi.SandboxOpenApi;
 import ru.tinkoff.invest.openapi.models.Currency;
 import ru.tinkoff.invest.openapi.models.sandbox.CurrencyBalance;
 
 import java.math.BigDecimal;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * Initializes sandbox account with some starting RUB value according to
- * the application configuration
+ * the application configuration. If asynchronous start up is enabled, initialization
+ * is performed by {@link com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.config.startup.ApiReadiness}
  *
  * @see TinkoffOpenApiProperties
  */
@@ -37,30 +41,53 @@ public class SandboxAccountInitializer implements InitializingBean {
 
     @Override
     public void afterPropertiesSet() {
-        if (props.getSandbox().isEnabled()) {
+        if (props.getSandbox().isEnabled() && !props.isAsyncStartup() && isInitializationRequired()) {
             try {
-                // process clearOnStartup flag
-                if (props.getSandbox().isClearOnStartup()) {
-                    log.info("Claering sandbox portfolio");
-                    ((SandboxOpenApi) api).getSandboxContext().clearAll(
-                            accountService.getTradingAccount().getId()
-                    );
-                    log.info("Portfolio cleared");
-                }
-                // process initRubs
-                if (props.getSandbox().getInitRubs() != null) {
-                    log.info("Initializing sandbox with initial RUB value");
-                    ((SandboxOpenApi) api).getSandboxContext().setCurrencyBalance(
-                            new CurrencyBalance(Currency.RUB,
-                                    BigDecimal.valueOf(props.getSandbox().getInitRubs())
-                            ),
-                            accountService.getTradingAccount().getId()
-                    );
-                    log.info("Sandbox account initialized with initial RUB value");
-                }
+                initialize(accountService.getTradingAccount().getId()).join();
             } catch (AccountNotFoundException | TradingApiException ex) {
                 throw new RuntimeException("Account not found while trying to initialize Sandbox", ex);
+            } catch (CompletionException ex) {
+                throw new RuntimeException("Error initializing Sandbox", ex.getCause());
             }
         }
     }
+
+    /**
+     * Clears sandbox portfolio and sets initial RUB value, if configured. Clearing is
+     * always completed before setting the balance
+     *
+     * @param accountId sandbox account id
+     * @return future, completed when the initialization is finished
+     */
+    public CompletableFuture<Void> initialize(String accountId) {
+        CompletableFuture<Void> result = CompletableFuture.completedFuture(null);
+        if (!props.getSandbox().isEnabled() || !isInitializationRequired()) {
+            return result;
+        }
+        SandboxContext sandboxContext = ((SandboxOpenApi) api).getSandboxContext();
+        // process clearOnStartup flag
+        if (props.getSandbox().isClearOnStartup()) {
+            result = result.thenCompose(v -> {
+                log.info("Clearing sandbox portfolio");
+                return sandboxContext.clearAll(accountId);
+            }).thenRun(() -> log.info("Portfolio cleared"));
+        }
+        // process initRubs
+        if (props.getSandbox().getInitRubs() != null) {
+            result = result.thenCompose(v -> {
+                log.info("Initializing sandbox with initial RUB value");
+                return sandboxContext.setCurrencyBalance(
+                        new CurrencyBalance(Currency.RUB,
+                                BigDecimal.valueOf(props.getSandbox().getInitRubs())
+                        ),
+                        accountId
+                );
+            }).thenRun(() -> log.info("Sandbox account initialized with initial RUB value"));
+        }
+        return result;
+    }
+
+    private boolean isInitializationRequired() {
+        return props.getSandbox().isClearOnStartup() || props.getSandbox().getInitRubs() != null;
+    }
 }
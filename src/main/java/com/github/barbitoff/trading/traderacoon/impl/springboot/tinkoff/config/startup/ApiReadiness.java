@@ -0,0 +1,98 @@
+package com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.config.startup;
+
+import com.github.barbitoff.trading.traderacoon.api.model.TradingAccount;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.config.TinkoffOpenApiProperties;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.config.sandbox.SandboxAccountInitializer;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.AccountServiceImpl;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import ru.tinkoff.invest.openapi.OpenApi;
+import ru.tinkoff.invest.openapi.SandboxOpenApi;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Tracks Tinkoff API readiness. If asynchronous start up is enabled, performs sandbox registration,
+ * trading account resolution and sandbox initialization in background, so the application context
+ * doesn't wait for them. Otherwise registration and sandbox initialization are already done by the time
+ * this bean is created, and only the account is resolved in background.
+ * <p>
+ * When everything is done, the ready future gets completed and {@link ApiReadyEvent} is published. The event is
+ * held back until the application context is refreshed, so that all the event listeners get it. With
+ * asynchronous start up, trading calls should not be made until then
+ */
+@Slf4j
+@Component
+public class ApiReadiness implements InitializingBean {
+
+    private final OpenApi api;
+    private final AccountServiceImpl accountService;
+    private final SandboxAccountInitializer sandboxInitializer;
+    private final TinkoffOpenApiProperties props;
+    private final ApplicationEventPublisher eventPublisher;
+    private final CompletableFuture<TradingAccount> ready = new CompletableFuture<>();
+    private final CompletableFuture<Void> contextRefreshed = new CompletableFuture<>();
+
+    public ApiReadiness(OpenApi api, AccountServiceImpl accountService, SandboxAccountInitializer sandboxInitializer,
+                        TinkoffOpenApiProperties props, ApplicationEventPublisher eventPublisher) {
+        this.api = api;
+        this.accountService = accountService;
+        this.sandboxInitializer = sandboxInitializer;
+        this.props = props;
+        this.eventPublisher = eventPublisher;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        CompletableFuture<TradingAccount> startup;
+        if (props.isAsyncStartup()) {
+            log.info("Initializing Tinkoff API in background");
+            CompletableFuture<Void> registration = props.getSandbox().isEnabled()
+                    ? ((SandboxOpenApi) api).getSandboxContext().performRegistration(null)
+                    : CompletableFuture.completedFuture(null);
+            startup = registration
+                    .thenCompose(v -> accountService.getTradingAccountAsync())
+                    .thenCompose(account -> sandboxInitializer.initialize(account.getId())
+                            .thenApply(v -> account));
+        } else {
+            startup = accountService.getTradingAccountAsync();
+        }
+        startup.whenComplete((account, ex) -> {
+            if (ex != null) {
+                log.error("Tinkoff API initialization failed", ex);
+                ready.completeExceptionally(ex);
+            } else {
+                log.info("Tinkoff API is ready, account {}", account.getId());
+                ready.complete(account);
+            }
+        });
+        ready.thenAcceptBoth(contextRefreshed,
+                (account, v) -> eventPublisher.publishEvent(new ApiReadyEvent(this, account)));
+    }
+
+    /**
+     * Lets {@link ApiReadyEvent} be published: by now all the event listeners are registered
+     */
+    @EventListener(ContextRefreshedEvent.class)
+    public void onContextRefreshed() {
+        contextRefreshed.complete(null);
+    }
+
+    /**
+     * @return future, completed with the trading account when the API is ready
+     */
+    public CompletableFuture<TradingAccount> getReadyFuture() {
+        return ready.copy();
+    }
+
+    /**
+     * @return true if the API is ready
+     */
+    public boolean isReady() {
+        return ready.isDone() && !ready.isCompletedExceptionally();
+    }
+}
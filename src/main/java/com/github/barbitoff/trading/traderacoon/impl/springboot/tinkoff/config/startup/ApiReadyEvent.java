@@ -0,0 +1,27 @@
+package com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.config.startup;
+
+import com.github.barbitoff.trading.traderacoon.api.model.TradingAccount;
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * Published when Tinkoff API is ready for trading: sandbox is registered and initialized (if enabled)
+ * and trading account is resolved
+ */
+public class ApiReadyEvent extends ApplicationEvent {
+
+    private static final long serialVersionUID = 1L;
+
+    private final TradingAccount tradingAccount;
+
+    public ApiReadyEvent(Object source, TradingAccount tradingAccount) {
+        super(source);
+        this.tradingAccount = tradingAccount;
+    }
+
+    /**
+     * @return resolved trading account
+     */
+    public TradingAccount getTradingAccount() {
+        return tradingAccount;
+    }
+}
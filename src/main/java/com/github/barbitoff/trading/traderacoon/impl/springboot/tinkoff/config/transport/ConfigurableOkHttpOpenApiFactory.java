@@ -0,0 +1,115 @@
+package com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.config.transport;
+
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.config.TinkoffOpenApiProperties;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.*;
+import ru.tinkoff.invest.openapi.OpenApi;
+import ru.tinkoff.invest.openapi.OpenApiFactoryBase;
+import ru.tinkoff.invest.openapi.SandboxOpenApi;
+import ru.tinkoff.invest.openapi.okhttp.OkHttpOpenApi;
+import ru.tinkoff.invest.openapi.okhttp.OkHttpSandboxOpenApi;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * OpenApi factory, that builds OkHttp client according to the transport configuration and
+ * optionally warms up connections to the API host. Event stream connections of the built clients are watched by
+ * {@link StreamingConnectionMonitor}
+ *
+ * @see TinkoffOpenApiProperties.Transport
+ */
+@Slf4j
+public class ConfigurableOkHttpOpenApiFactory extends OpenApiFactoryBase {
+
+    private final TinkoffOpenApiProperties.Transport transport;
+    private final StreamingConnectionMonitor connectionMonitor;
+
+    public ConfigurableOkHttpOpenApiFactory(String token, Logger logger, TinkoffOpenApiProperties.Transport transport) {
+        super(token, logger);
+        this.transport = transport;
+        this.connectionMonitor = new StreamingConnectionMonitor(config.streamingParallelism);
+    }
+
+    /**
+     * @return monitor of the event stream connections
+     */
+    public StreamingConnectionMonitor getConnectionMonitor() {
+        return connectionMonitor;
+    }
+
+    @Override
+    public OpenApi createOpenApiClient(Executor executor) {
+        OkHttpClient client = buildClient();
+        warmUp(client, config.marketApiUrl);
+        return OkHttpOpenApi.create(client, config.marketApiUrl, config.streamingUrl,
+                config.streamingParallelism, authToken, executor, logger);
+    }
+
+    @Override
+    public SandboxOpenApi createSandboxOpenApiClient(Executor executor) {
+        OkHttpClient client = buildClient();
+        warmUp(client, config.sandboxApiUrl);
+        return OkHttpSandboxOpenApi.create(client, config.sandboxApiUrl, config.streamingUrl,
+                config.streamingParallelism, authToken, executor, logger);
+    }
+
+    /**
+     * Builds OkHttp client according to the transport configuration
+     *
+     * @return client
+     */
+    protected OkHttpClient buildClient() {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(transport.getMaxRequests());
+        dispatcher.setMaxRequestsPerHost(transport.getMaxRequestsPerHost());
+        return new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .connectionPool(new ConnectionPool(
+                        transport.getMaxIdleConnections(),
+                        transport.getKeepAlive().toMillis(),
+                        TimeUnit.MILLISECONDS))
+                .protocols(transport.isHttp2Enabled()
+                        ? List.of(Protocol.HTTP_2, Protocol.HTTP_1_1)
+                        : List.of(Protocol.HTTP_1_1))
+                .connectTimeout(transport.getConnectTimeout())
+                .readTimeout(transport.getReadTimeout())
+                .writeTimeout(transport.getWriteTimeout())
+                .callTimeout(transport.getCallTimeout())
+                .pingInterval(transport.getPingInterval())
+                .addInterceptor(connectionMonitor)
+                .build();
+    }
+
+    /**
+     * If enabled, asynchronously opens connections to the API host, so that DNS lookup and TLS handshake
+     * are done before the first trading call. Warm up failures are logged and otherwise ignored
+     *
+     * @param client client, whose connection pool is to be warmed up
+     * @param url    API url
+     */
+    protected void warmUp(OkHttpClient client, String url) {
+        if (!transport.isWarmUp()) {
+            return;
+        }
+        log.info("Warming up {} connection(s) to {}", transport.getWarmUpConnections(), url);
+        Request request = new Request.Builder().url(url).head().build();
+        for (int i = 0; i < transport.getWarmUpConnections(); i++) {
+            client.newCall(request).enqueue(new Callback() {
+                @Override
+                public void onResponse(Call call, Response response) {
+                    response.close();
+                    log.debug("Warm up connection to {} established", url);
+                }
+
+                @Override
+                public void onFailure(Call call, IOException ex) {
+                    log.warn("Warm up connection to {} failed", url, ex);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.config.transport;
+
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Watches the event stream connections of the API client. Installed as an OkHttp interceptor, it sees
+ * every WebSocket handshake: the API client opens its connections once and, when a connection fails, opens it
+ * again and resends the requests, sent over the lost one. So each successful handshake beyond the initial
+ * connections is a reconnect.
+ * <p>
+ * The client doesn't report when a connection is lost, so the gap is measured from the last event
+ * (or connection) seen before the reconnect. When the stream is idle, the gap is therefore an upper bound
+ *
+ * @see ConfigurableOkHttpOpenApiFactory
+ */
+@Slf4j
+public class StreamingConnectionMonitor implements Interceptor {
+
+    private static final int SWITCHING_PROTOCOLS = 101;
+
+    private final int initialConnections;
+
+    private volatile long lastActivity = System.nanoTime();
+    private long connections;
+    private long failedHandshakes;
+    private Duration lastReconnectGap;
+    private Duration totalReconnectGap = Duration.ZERO;
+
+    /**
+     * @param initialConnections number of event stream connections, opened by the client at start
+     */
+    public StreamingConnectionMonitor(int initialConnections) {
+        this.initialConnections = initialConnections;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        if (!"websocket".equalsIgnoreCase(request.header("Upgrade"))) {
+            return chain.proceed(request);
+        }
+        Response response;
+        try {
+            response = chain.proceed(request);
+        } catch (IOException ex) {
+            handshakeFailed();
+            throw ex;
+        }
+        if (response.code() == SWITCHING_PROTOCOLS) {
+            opened();
+        } else {
+            handshakeFailed();
+        }
+        return response;
+    }
+
+    /**
+     * Notifies that an event has been received over one of the connections
+     */
+    public void eventReceived() {
+        lastActivity = System.nanoTime();
+    }
+
+    /**
+     * @return number of reconnects of the event stream
+     */
+    public synchronized long getReconnects() {
+        return Math.max(0, connections - initialConnections);
+    }
+
+    /**
+     * @return number of failed attempts to open an event stream connection
+     */
+    public synchronized long getFailedHandshakes() {
+        return failedHandshakes;
+    }
+
+    /**
+     * @return time without events before the last reconnect, empty if there were no reconnects
+     */
+    public synchronized Optional<Duration> getLastReconnectGap() {
+        return Optional.ofNullable(lastReconnectGap);
+    }
+
+    /**
+     * @return total time without events before the reconnects
+     */
+    public synchronized Duration getTotalReconnectGap() {
+        return totalReconnectGap;
+    }
+
+    private synchronized void opened() {
+        long now = System.nanoTime();
+        if (++connections > initialConnections) {
+            lastReconnectGap = Duration.ofNanos(now - lastActivity);
+            totalReconnectGap = totalReconnectGap.plus(lastReconnectGap);
+            log.info("Event stream reconnected, {} ms since the last event", lastReconnectGap.toMillis());
+        }
+        lastActivity = now;
+    }
+
+    private synchronized void handshakeFailed() {
+        failedHandshakes++;
+        log.warn("Failed to open event stream connection");
+    }
+}
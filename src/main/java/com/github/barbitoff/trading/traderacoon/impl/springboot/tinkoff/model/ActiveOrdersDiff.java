@@ -0,0 +1,36 @@
+package com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.model;
+
+import com.github.barbitoff.trading.traderacoon.api.model.Order;
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * Changes of active orders between two reconciliations with the API
+ */
+@Value
+public class ActiveOrdersDiff {
+
+    public static final ActiveOrdersDiff EMPTY = new ActiveOrdersDiff(List.of(), List.of(), List.of());
+
+    /**
+     * Orders, that became active
+     */
+    List<Order> added;
+    /**
+     * Orders, that are no longer active and weren't cancelled through this starter. The API doesn't tell
+     * executed orders from the ones cancelled elsewhere, so such orders are considered filled
+     */
+    List<Order> filled;
+    /**
+     * Orders, cancelled through this starter
+     */
+    List<Order> cancelled;
+
+    /**
+     * @return true if there are no changes
+     */
+    public boolean isEmpty() {
+        return added.isEmpty() && filled.isEmpty() && cancelled.isEmpty();
+    }
+}
@@ -0,0 +1,29 @@
+package com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.model;
+
+import lombok.Value;
+import ru.tinkoff.invest.openapi.models.market.CandleInterval;
+
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+
+/**
+ * Candle of a higher interval, aggregated from minute candles
+ */
+@Value
+public class AggregatedCandle {
+    String figi;
+    CandleInterval interval;
+    /**
+     * Start of the candle
+     */
+    OffsetDateTime time;
+    BigDecimal open;
+    BigDecimal close;
+    BigDecimal high;
+    BigDecimal low;
+    BigDecimal tradesValue;
+    /**
+     * True if the candle is final, false if it's still forming
+     */
+    boolean complete;
+}
@@ -0,0 +1,30 @@
+package com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.model;
+
+import lombok.Value;
+
+/**
+ * Cache usage statistics
+ */
+@Value
+public class CacheStats {
+    /**
+     * Number of lookups, served from the cache
+     */
+    long hits;
+    /**
+     * Number of lookups, that required loading
+     */
+    long misses;
+    /**
+     * Number of entries, evicted because of the size limit
+     */
+    long evictions;
+    /**
+     * Number of entries, dropped because they expired
+     */
+    long expirations;
+    /**
+     * Current number of entries
+     */
+    int size;
+}
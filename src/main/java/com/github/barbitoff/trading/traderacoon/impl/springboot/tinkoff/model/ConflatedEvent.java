@@ -0,0 +1,21 @@
+package com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.model;
+
+import lombok.Value;
+
+/**
+ * Streamed event, delivered to a conflating subscriber
+ *
+ * @param <T> event type
+ */
+@Value
+public class ConflatedEvent<T> {
+    /**
+     * The latest event of its instrument and channel
+     */
+    T event;
+    /**
+     * Number of the earlier events of the same instrument and channel, replaced by this one while
+     * the subscriber was busy
+     */
+    long conflated;
+}
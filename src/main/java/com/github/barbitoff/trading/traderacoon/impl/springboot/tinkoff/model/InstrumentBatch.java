@@ -0,0 +1,34 @@
+package com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.model;
+
+import com.github.barbitoff.trading.traderacoon.api.model.Instrument;
+import lombok.Value;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Result of a batch instrument lookup. Each requested Figi is either found, not found or failed
+ */
+@Value
+public class InstrumentBatch {
+
+    /**
+     * Found instruments by Figi
+     */
+    Map<String, Instrument> instruments;
+    /**
+     * Figi codes of unknown instruments
+     */
+    Set<String> notFound;
+    /**
+     * Lookup errors by Figi
+     */
+    Map<String, Throwable> errors;
+
+    /**
+     * @return true if no lookup failed
+     */
+    public boolean isComplete() {
+        return errors.isEmpty();
+    }
+}
@@ -0,0 +1,45 @@
+package com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.model;
+
+import com.github.barbitoff.trading.traderacoon.api.model.Order;
+import lombok.Value;
+
+/**
+ * Result of a single order cancellation within bulk cancellation
+ */
+@Value
+public class OrderCancellationResult {
+
+    public enum Status {
+        /**
+         * Order was cancelled
+         */
+        CANCELLED,
+        /**
+         * Order wasn't cancelled because of its status
+         */
+        SKIPPED,
+        /**
+         * Cancellation request failed
+         */
+        FAILED
+    }
+
+    Order order;
+    Status status;
+    /**
+     * Error for FAILED cancellation, null otherwise
+     */
+    Throwable error;
+
+    public static OrderCancellationResult cancelled(Order order) {
+        return new OrderCancellationResult(order, Status.CANCELLED, null);
+    }
+
+    public static OrderCancellationResult skipped(Order order) {
+        return new OrderCancellationResult(order, Status.SKIPPED, null);
+    }
+
+    public static OrderCancellationResult failed(Order order, Throwable error) {
+        return new OrderCancellationResult(order, Status.FAILED, error);
+    }
+}
@@ -0,0 +1,50 @@
+package com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.model;
+
+import com.github.barbitoff.trading.traderacoon.api.model.Order;
+import com.github.barbitoff.trading.traderacoon.api.model.exception.OrderRejectedException;
+import lombok.Value;
+
+/**
+ * Result of a single order placement within batch placement
+ */
+@Value
+public class OrderPlacementResult {
+
+    public enum Status {
+        /**
+         * Order was placed
+         */
+        PLACED,
+        /**
+         * Order was rejected, error contains {@link OrderRejectedException}
+         */
+        REJECTED,
+        /**
+         * Placement request failed
+         */
+        FAILED
+    }
+
+    OrderRequest request;
+    Status status;
+    /**
+     * Placed order for PLACED status, null otherwise
+     */
+    Order order;
+    /**
+     * Error for REJECTED and FAILED statuses, null otherwise
+     */
+    Throwable error;
+
+    public static OrderPlacementResult placed(OrderRequest request, Order order) {
+        return new OrderPlacementResult(request, Status.PLACED, order, null);
+    }
+
+    public static OrderPlacementResult rejected(OrderRequest request, OrderRejectedException error) {
+        return new OrderPlacementResult(request, Status.REJECTED, null, error);
+    }
+
+    public static OrderPlacementResult failed(OrderRequest request, Throwable error) {
+        return new OrderPlacementResult(request, Status.FAILED, null, error);
+    }
+}
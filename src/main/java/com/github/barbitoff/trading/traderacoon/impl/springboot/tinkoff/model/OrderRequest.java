@@ -0,0 +1,37 @@
+package com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.model;
+
+import com.github.barbitoff.trading.traderacoon.api.model.StockOperation;
+import lombok.Value;
+
+import java.math.BigDecimal;
+
+/**
+ * Request for an order placement within batch placement
+ */
+@Value
+public class OrderRequest {
+    /**
+     * Figi code of the instrument
+     */
+    String figi;
+    /**
+     * Number of lots
+     */
+    int lots;
+    /**
+     * Price for the limited order. If null - market order is created
+     */
+    BigDecimal price;
+    /**
+     * Operation to perform
+     */
+    StockOperation operation;
+
+    public static OrderRequest buy(String figi, int lots, BigDecimal price) {
+        return new OrderRequest(figi, lots, price, StockOperation.Buy);
+    }
+
+    public static OrderRequest sell(String figi, int lots, BigDecimal price) {
+        return new OrderRequest(figi, lots, price, StockOperation.Sell);
+    }
+}
@@ -0,0 +1,83 @@
+package com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.model;
+
+import com.github.barbitoff.trading.traderacoon.api.model.PortfolioPosition;
+import lombok.Value;
+
+import java.math.BigDecimal;
+
+/**
+ * Change of a single portfolio position between two portfolio polls
+ */
+@Value
+public class PortfolioPositionChange {
+
+    public enum Type {
+        /**
+         * Position appeared in the portfolio
+         */
+        OPENED,
+        /**
+         * Position disappeared from the portfolio
+         */
+        CLOSED,
+        /**
+         * Balance or blocked amount of the position changed
+         */
+        CHANGED
+    }
+
+    /**
+     * Figi code for instrument positions, currency code for currency positions
+     */
+    String key;
+    Type type;
+    /**
+     * Position before the change, null for OPENED position
+     */
+    PortfolioPosition previous;
+    /**
+     * Position after the change, null for CLOSED position
+     */
+    PortfolioPosition current;
+
+    public static PortfolioPositionChange opened(String key, PortfolioPosition current) {
+        return new PortfolioPositionChange(key, Type.OPENED, null, current);
+    }
+
+    public static PortfolioPositionChange closed(String key, PortfolioPosition previous) {
+        return new PortfolioPositionChange(key, Type.CLOSED, previous, null);
+    }
+
+    public static PortfolioPositionChange changed(String key, PortfolioPosition previous, PortfolioPosition current) {
+        return new PortfolioPositionChange(key, Type.CHANGED, previous, current);
+    }
+
+    /**
+     * @return true if the balance differs between the previous and the current position
+     */
+    public boolean isBalanceChanged() {
+        return !sameAmount(balance(previous), balance(current));
+    }
+
+    /**
+     * @return true if the blocked amount differs between the previous and the current position
+     */
+    public boolean isBlockedChanged() {
+        return !sameAmount(blocked(previous), blocked(current));
+    }
+
+    /**
+     * Compares amounts ignoring their scale
+     */
+    public static boolean sameAmount(BigDecimal first, BigDecimal second) {
+        return first == null ? second == null : second != null && first.compareTo(second) == 0;
+    }
+
+    private static BigDecimal balance(PortfolioPosition position) {
+        return position == null ? null : position.getBalance();
+    }
+
+    private static BigDecimal blocked(PortfolioPosition position) {
+        return position == null ? null : position.getBlocked();
+    }
+}
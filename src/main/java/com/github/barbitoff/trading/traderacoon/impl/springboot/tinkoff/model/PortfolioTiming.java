@@ -0,0 +1,25 @@
+package com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.model;
+
+import lombok.Value;
+
+import java.time.Duration;
+
+/**
+ * Timing breakdown of a portfolio request. Currencies and positions are requested concurrently, so the total
+ * time is expected to be close to the longest of them
+ */
+@Value
+public class PortfolioTiming {
+    /**
+     * Time to get currencies
+     */
+    Duration currencies;
+    /**
+     * Time to get non-currency positions
+     */
+    Duration positions;
+    /**
+     * Time to get the whole portfolio
+     */
+    Duration total;
+}
@@ -0,0 +1,29 @@
+package com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.model;
+
+import lombok.Value;
+
+import java.math.BigDecimal;
+import java.util.Currency;
+
+/**
+ * Total value and unrealized PnL of the portfolio positions in one currency
+ */
+@Value
+public class PortfolioValuation {
+    Currency currency;
+    BigDecimal value;
+    BigDecimal unrealizedPnl;
+
+    public static PortfolioValuation zero(Currency currency) {
+        return new PortfolioValuation(currency, BigDecimal.ZERO, BigDecimal.ZERO);
+    }
+
+    /**
+     * @param valueDelta value change
+     * @param pnlDelta   unrealized PnL change
+     * @return valuation with the changes applied
+     */
+    public PortfolioValuation plus(BigDecimal valueDelta, BigDecimal pnlDelta) {
+        return new PortfolioValuation(currency, value.add(valueDelta), unrealizedPnl.add(pnlDelta));
+    }
+}
@@ -0,0 +1,44 @@
+package com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.model;
+
+import lombok.Value;
+
+import java.math.BigDecimal;
+import java.util.Currency;
+
+/**
+ * Portfolio position, valued at the last known price
+ */
+@Value
+public class PositionValuation {
+    String figi;
+    /**
+     * Currency of the prices and the value
+     */
+    Currency currency;
+    /**
+     * Number of instrument units
+     */
+    BigDecimal balance;
+    BigDecimal averagePrice;
+    BigDecimal lastPrice;
+    /**
+     * Balance at the last price
+     */
+    BigDecimal value;
+    /**
+     * Value less the balance at the average price
+     */
+    BigDecimal unrealizedPnl;
+
+    /**
+     * Values the position at another price
+     *
+     * @param price new last price
+     * @return new valuation
+     */
+    public PositionValuation withLastPrice(BigDecimal price) {
+        BigDecimal newValue = balance.multiply(price);
+        return new PositionValuation(figi, currency, balance, averagePrice, price, newValue,
+                newValue.subtract(balance.multiply(averagePrice)));
+    }
+}
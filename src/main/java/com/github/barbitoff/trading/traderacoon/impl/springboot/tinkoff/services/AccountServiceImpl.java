@@ -13,6 +13,7 @@ import ru.tinkoff.invest.openapi.models.user.AccountsList;
 import ru.tinkoff.invest.openapi.models.user.BrokerAccountType;
 
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutionException;
 
 /**
@@ -53,9 +54,43 @@ public class AccountServiceImpl implements AccountService {
             throw new TradingApiException("Error getting accounts list", ex);
         }
 
+        this.tradingAccount = selectAccount(accountsList);
+    }
+
+    /**
+     * Retrieves trading account using Tinkoff API without blocking. If the account was previously retrieved,
+     * returns it immediately
+     *
+     * @return future, completed with the account or exceptionally with {@link AccountNotFoundException} if
+     * account can't be found
+     */
+    public CompletableFuture<TradingAccount> getTradingAccountAsync() {
+        TradingAccount cached = tradingAccount;
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        return api.getUserContext().getAccounts().thenApply(accountsList -> {
+            try {
+                TradingAccount account = selectAccount(accountsList);
+                this.tradingAccount = account;
+                return account;
+            } catch (AccountNotFoundException ex) {
+                throw new CompletionException(ex);
+            }
+        });
+    }
+
+    /**
+     * Selects trading account from the accounts list depending on configuration
+     *
+     * @param accountsList accounts
+     * @return selected account
+     * @throws AccountNotFoundException if account can't be found
+     */
+    private TradingAccount selectAccount(AccountsList accountsList) throws AccountNotFoundException {
         if (accountsList != null && accountsList.accounts.size() > 0) {
             log.info("Got " + accountsList.accounts.size() + " accounts");
-            this.tradingAccount = accountsList.accounts.stream()
+            return accountsList.accounts.stream()
                     .filter(acc ->
                             sandbox ||
                                     useIisAccount && acc.brokerAccountType == BrokerAccountType.TinkoffIis
@@ -4,39 +4,194 @@ import com.github.barbitoff.trading.traderacoon.api.model.Instrument;
 import com.github.barbitoff.trading.traderacoon.api.model.InstrumentType;
 import com.github.barbitoff.trading.traderacoon.api.model.exception.TradingApiException;
 import com.github.barbitoff.trading.traderacoon.api.service.InstrumentService;
-import lombok.AllArgsConstructor;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.config.TinkoffOpenApiProperties;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.model.CacheStats;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.model.InstrumentBatch;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.cache.BoundedTtlCache;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.cache.SingleFlight;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.catalog.InstrumentCatalog;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import ru.tinkoff.invest.openapi.OpenApi;
 
+import java.util.Collection;
 import java.util.Currency;
+import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
 
 /**
- * Instrument service implementation
+ * Instrument service implementation. If the instrument catalog is loaded, instrument information is served
+ * from it. Otherwise it is requested from the API and cached, if enabled in the configuration. Concurrent
+ * requests for the same instrument share one API call
+ *
+ * @see TinkoffOpenApiProperties.InstrumentCache
+ * @see InstrumentCatalog
  */
 @Service
 @Slf4j
-@AllArgsConstructor
 public class InstrumentServiceImpl implements InstrumentService {
 
-    private OpenApi api;
+    private final OpenApi api;
+    private final BoundedTtlCache<String, Optional<Instrument>> cache;
+    private final InstrumentCatalog catalog;
+    private final int batchConcurrency;
+    private final SingleFlight<String, Optional<Instrument>> instrumentRequests = new SingleFlight<>();
+
+    public InstrumentServiceImpl(OpenApi api, TinkoffOpenApiProperties props, InstrumentCatalog catalog) {
+        this.api = api;
+        this.catalog = catalog;
+        TinkoffOpenApiProperties.InstrumentCache cacheProps = props.getInstrumentCache();
+        this.batchConcurrency = cacheProps.getBatchConcurrency() > 0 ? cacheProps.getBatchConcurrency()
+                : Integer.MAX_VALUE;
+        if (cacheProps.isEnabled()) {
+            this.cache = new BoundedTtlCache<>(cacheProps.getMaxSize(),
+                    instrument -> instrument.isPresent() ? cacheProps.getTtl() : cacheProps.getNegativeTtl());
+        } else {
+            this.cache = null;
+        }
+    }
 
     @Override
     public Optional<Instrument> getInstrument(String figi) throws TradingApiException {
         try {
-            final Optional<ru.tinkoff.invest.openapi.models.market.Instrument> instrument = api
-                    .getMarketContext().searchMarketInstrumentByFigi(figi).get();
-            return instrument.map(src -> Instrument.builder()
-                    .figi(src.figi)
-                    .currency(src.currency == null ? null : Currency.getInstance(src.currency.name()))
-                    .lotSize(src.lot)
-                    .minPriceIncrement(src.minPriceIncrement)
-                    .type(InstrumentType.valueOf(src.type.name()))
-                    .build());
+            return getInstrumentAsync(figi).get();
         } catch (InterruptedException | ExecutionException ex) {
             throw new TradingApiException("Error getting information about an instrument", ex);
         }
     }
+
+    /**
+     * Gets information about an instrument without blocking
+     *
+     * @param figi Figi code of the instrument
+     * @return future, completed with the instrument or empty value, if the instrument is not found
+     */
+    public CompletableFuture<Optional<Instrument>> getInstrumentAsync(String figi) {
+        if (catalog.isLoaded()) {
+            return CompletableFuture.completedFuture(catalog.getByFigi(figi));
+        }
+        return cache == null ? loadInstrument(figi) : cache.get(figi, this::loadInstrument);
+    }
+
+    /**
+     * Gets information about several instruments. Cached instruments are served at once, the others
+     * are requested concurrently, with at most {@link TinkoffOpenApiProperties.InstrumentCache#getBatchConcurrency()}
+     * requests at a time. A failed request doesn't fail the whole batch
+     *
+     * @param figis Figi codes of the instruments
+     * @return found instruments, unknown Figi codes and errors by Figi
+     * @throws TradingApiException if interrupted while waiting
+     */
+    public InstrumentBatch getInstruments(Collection<String> figis) throws TradingApiException {
+        try {
+            return getInstrumentsAsync(figis).get();
+        } catch (InterruptedException | ExecutionException ex) {
+            throw new TradingApiException("Error getting information about instruments", ex);
+        }
+    }
+
+    /**
+     * Gets information about several instruments without blocking
+     *
+     * @param figis Figi codes of the instruments
+     * @return future, completed with found instruments, unknown Figi codes and errors by Figi. Never
+     * completes exceptionally
+     * @see #getInstruments(Collection)
+     */
+    public CompletableFuture<InstrumentBatch> getInstrumentsAsync(Collection<String> figis) {
+        Queue<String> pending = new ConcurrentLinkedQueue<>(new LinkedHashSet<>(figis));
+        BatchCollector collector = new BatchCollector();
+        CompletableFuture<?>[] workers = new CompletableFuture<?>[Math.min(batchConcurrency, pending.size())];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = lookupNext(pending, collector);
+        }
+        return CompletableFuture.allOf(workers).thenApply(v -> collector.toBatch());
+    }
+
+    /**
+     * @return number of instrument requests, that joined an identical request in progress
+     */
+    public long getCoalescedCalls() {
+        return instrumentRequests.getSavedCalls();
+    }
+
+    /**
+     * @return instrument cache statistics, empty if the cache is disabled
+     */
+    public Optional<CacheStats> getCacheStats() {
+        return Optional.ofNullable(cache).map(BoundedTtlCache::getStats);
+    }
+
+    /**
+     * Looks up instruments from the queue one by one until it is empty. Lookups, that complete at once (e.g. cached
+     * instruments), are processed in a loop, the others continue the chain when completed
+     */
+    private CompletableFuture<Void> lookupNext(Queue<String> pending, BatchCollector collector) {
+        String next;
+        while ((next = pending.poll()) != null) {
+            String figi = next;
+            CompletableFuture<Void> lookup = getInstrumentAsync(figi)
+                    .handle((instrument, ex) -> {
+                        collector.add(figi, instrument, ex);
+                        return null;
+                    });
+            if (!lookup.isDone()) {
+                return lookup.thenCompose(v -> lookupNext(pending, collector));
+            }
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
+    private CompletableFuture<Optional<Instrument>> loadInstrument(String figi) {
+        return instrumentRequests.execute(figi, () -> api.getMarketContext().searchMarketInstrumentByFigi(figi)
+                .thenApply(instrument -> instrument.map(InstrumentServiceImpl::mapInstrument)));
+    }
+
+    /**
+     * Maps Tinkoff instrument into traderacoon instrument
+     *
+     * @param src Tinkoff instrument
+     * @return instrument
+     */
+    public static Instrument mapInstrument(ru.tinkoff.invest.openapi.models.market.Instrument src) {
+        return Instrument.builder()
+                .figi(src.figi)
+                .currency(src.currency == null ? null : Currency.getInstance(src.currency.name()))
+                .lotSize(src.lot)
+                .minPriceIncrement(src.minPriceIncrement)
+                .type(InstrumentType.valueOf(src.type.name()))
+                .build();
+    }
+
+    /**
+     * Collects results of a batch lookup
+     */
+    private static class BatchCollector {
+        final Map<String, Instrument> found = new ConcurrentHashMap<>();
+        final Set<String> notFound = ConcurrentHashMap.newKeySet();
+        final Map<String, Throwable> errors = new ConcurrentHashMap<>();
+
+        void add(String figi, Optional<Instrument> instrument, Throwable ex) {
+            if (ex != null) {
+                log.warn("Error getting information about {}", figi, ex);
+                errors.put(figi, ex instanceof CompletionException ? ex.getCause() : ex);
+            } else if (instrument.isPresent()) {
+                found.put(figi, instrument.get());
+            } else {
+                notFound.add(figi);
+            }
+        }
+
+        InstrumentBatch toBatch() {
+            return new InstrumentBatch(Map.copyOf(found), Set.copyOf(notFound), Map.copyOf(errors));
+        }
+    }
 }
@@ -0,0 +1,280 @@
+package com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services;
+
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.config.TinkoffOpenApiConfiguration;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.config.TinkoffOpenApiProperties;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.config.transport.StreamingConnectionMonitor;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.model.ConflatedEvent;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.streaming.SubscriptionKey;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.streaming.SubscriptionRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.MonoProcessor;
+import ru.tinkoff.invest.openapi.OpenApi;
+import ru.tinkoff.invest.openapi.models.market.CandleInterval;
+import ru.tinkoff.invest.openapi.models.streaming.StreamingEvent;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * Streaming market data: candles, order books and instrument information. All the subscribers share
+ * one subscription to the API event stream, which is made on the first subscription. Each subscriber has its own
+ * buffer, so a slow subscriber doesn't hold the others back. When the buffer is full, the oldest events are
+ * dropped.
+ * <p>
+ * Subscriptions to the API are shared through {@link SubscriptionRegistry}. A subscription is requested only after
+ * the subscriber has joined the shared stream, so it gets the first events. Lost connections are restored by the API
+ * client, which also resends the subscriptions; reconnects are reported by {@link StreamingConnectionMonitor}.
+ * <p>
+ * Instead of buffering, a subscriber may have its events conflated (see {@link #conflate(Flux)}): while it's
+ * busy, only the latest event of each instrument and channel is kept for it
+ *
+ * @see TinkoffOpenApiProperties.MarketData
+ */
+@Slf4j
+@Service(TinkoffOpenApiConfiguration.BEANS_QUALIFIER_PREFIX + "MarketDataService")
+public class MarketDataService implements DisposableBean {
+
+    private final TinkoffOpenApiProperties props;
+    private final SubscriptionRegistry subscriptions;
+    private final Flux<StreamingEvent> events;
+    private final MonoProcessor<Void> shutdown = MonoProcessor.create();
+    private final LongAdder conflatedEvents = new LongAdder();
+
+    public MarketDataService(OpenApi api, TinkoffOpenApiProperties props, SubscriptionRegistry subscriptions,
+                             StreamingConnectionMonitor connectionMonitor) {
+        this.props = props;
+        this.subscriptions = subscriptions;
+        this.events = Flux.defer(() -> api.getStreamingContext().getEventPublisher())
+                .doOnNext(event -> {
+                    connectionMonitor.eventReceived();
+                    if (event instanceof StreamingEvent.Error) {
+                        log.warn("Streaming error: {}", event);
+                    }
+                })
+                .takeUntilOther(shutdown)
+                .publish()
+                .autoConnect();
+    }
+
+    /**
+     * Completes all the subscribers and cancels the subscription to the API event stream
+     */
+    @Override
+    public void destroy() {
+        shutdown.onComplete();
+    }
+
+    /**
+     * Streams candles of the instrument. Subscribes to the candles with the first subscriber and unsubscribes
+     * with the last one
+     *
+     * @param figi     Figi code of the instrument
+     * @param interval candle interval
+     * @return candles flux
+     */
+    public Flux<StreamingEvent.Candle> candles(String figi, CandleInterval interval) {
+        return stream(StreamingEvent.Candle.class, SubscriptionKey.candle(figi, interval),
+                candle -> figi.equals(candle.getFigi()) && candle.getInterval() == interval);
+    }
+
+    /**
+     * Streams order books of the instrument. Subscribes to the order books with the first subscriber
+     * and unsubscribes with the last one
+     *
+     * @param figi  Figi code of the instrument
+     * @param depth order book depth
+     * @return order books flux
+     */
+    public Flux<StreamingEvent.Orderbook> orderbooks(String figi, int depth) {
+        return stream(StreamingEvent.Orderbook.class, SubscriptionKey.orderbook(figi, depth),
+                orderbook -> figi.equals(orderbook.getFigi()) && orderbook.getDepth() == depth);
+    }
+
+    /**
+     * Streams instrument information changes, e.g. trading status. Subscribes to them with the first
+     * subscriber and unsubscribes with the last one
+     *
+     * @param figi Figi code of the instrument
+     * @return instrument information flux
+     */
+    public Flux<StreamingEvent.InstrumentInfo> instrumentInfo(String figi) {
+        return stream(StreamingEvent.InstrumentInfo.class, SubscriptionKey.instrumentInfo(figi),
+                info -> figi.equals(info.getFigi()));
+    }
+
+    /**
+     * All the events of the shared event stream, without a buffer. A subscriber must keep up with the stream,
+     * as it holds back the other subscribers
+     *
+     * @return events flux
+     */
+    public Flux<StreamingEvent> events() {
+        return events;
+    }
+
+    /**
+     * Streams order books of the instrument, conflated for a slow subscriber
+     *
+     * @param figi  Figi code of the instrument
+     * @param depth order book depth
+     * @return flux of the latest order books
+     * @see #conflate(Flux)
+     */
+    public Flux<ConflatedEvent<StreamingEvent.Orderbook>> conflatedOrderbooks(String figi, int depth) {
+        return conflate(orderbooks(figi, depth));
+    }
+
+    /**
+     * Conflates the events for a slow subscriber. The events are requested from the source without limit, but
+     * delivered only as the subscriber requests them. Until then, only the latest event of each instrument and
+     * channel (and candle interval or order book depth) is kept, replacing the earlier one. The events are
+     * delivered in the order the instruments and channels first got a pending event. Errors are never conflated
+     *
+     * @param source streamed events, e.g. merged streams of several instruments
+     * @param <T>    event type
+     * @return flux of the latest events with the number of replaced ones
+     */
+    public <T extends StreamingEvent> Flux<ConflatedEvent<T>> conflate(Flux<T> source) {
+        return Flux.create(sink -> {
+            Conflator<T> conflator = new Conflator<>(sink, conflatedEvents);
+            sink.onRequest(n -> conflator.drain());
+            sink.onDispose(source.subscribe(conflator::add, sink::error, conflator::complete));
+        });
+    }
+
+    /**
+     * @return total number of events, replaced by later ones for conflating subscribers
+     */
+    public long getConflatedEvents() {
+        return conflatedEvents.sum();
+    }
+
+    /**
+     * @return errors, reported by the API in the event stream
+     */
+    public Flux<StreamingEvent.Error> errors() {
+        return buffered(events.ofType(StreamingEvent.Error.class));
+    }
+
+    private <T extends StreamingEvent> Flux<T> stream(Class<T> type, SubscriptionKey key, Predicate<T> filter) {
+        Flux<T> filtered = events.ofType(type).filter(filter);
+        return buffered(Flux.create(sink -> {
+            // joins the shared stream first, so no event of the new subscription is missed
+            Disposable subscription = filtered.subscribe(sink::next, sink::error, sink::complete);
+            subscriptions.acquire(key);
+            sink.onDispose(() -> {
+                subscription.dispose();
+                subscriptions.release(key);
+            });
+        }));
+    }
+
+    private <T extends StreamingEvent> Flux<T> buffered(Flux<T> flux) {
+        return flux.onBackpressureBuffer(props.getMarketData().getSubscriberBufferSize(),
+                dropped -> log.debug("Subscriber is too slow, event dropped: {}", dropped),
+                BufferOverflowStrategy.DROP_OLDEST);
+    }
+
+    /**
+     * Keeps the latest pending event per instrument and channel of a conflating subscriber and delivers them
+     * as requested
+     */
+    private static class Conflator<T extends StreamingEvent> {
+        private final FluxSink<ConflatedEvent<T>> sink;
+        private final LongAdder conflatedEvents;
+        private final Map<Object, Pending<T>> pending = new LinkedHashMap<>();
+        private final AtomicInteger wip = new AtomicInteger();
+        private volatile boolean done;
+
+        Conflator(FluxSink<ConflatedEvent<T>> sink, LongAdder conflatedEvents) {
+            this.sink = sink;
+            this.conflatedEvents = conflatedEvents;
+        }
+
+        void add(T event) {
+            Object key = keyOf(event);
+            synchronized (this) {
+                Pending<T> previous = pending.get(key);
+                if (previous == null) {
+                    pending.put(key, new Pending<>(event));
+                } else {
+                    previous.event = event;
+                    previous.conflated++;
+                    conflatedEvents.increment();
+                }
+            }
+            drain();
+        }
+
+        void complete() {
+            done = true;
+            drain();
+        }
+
+        void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            do {
+                while (sink.requestedFromDownstream() > 0) {
+                    ConflatedEvent<T> next = poll();
+                    if (next == null) {
+                        break;
+                    }
+                    sink.next(next);
+                }
+                if (done && isEmpty()) {
+                    sink.complete();
+                }
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private synchronized ConflatedEvent<T> poll() {
+            Iterator<Pending<T>> it = pending.values().iterator();
+            if (!it.hasNext()) {
+                return null;
+            }
+            Pending<T> first = it.next();
+            it.remove();
+            return new ConflatedEvent<>(first.event, first.conflated);
+        }
+
+        private synchronized boolean isEmpty() {
+            return pending.isEmpty();
+        }
+
+        private static Object keyOf(StreamingEvent event) {
+            if (event instanceof StreamingEvent.Candle) {
+                StreamingEvent.Candle candle = (StreamingEvent.Candle) event;
+                return SubscriptionKey.candle(candle.getFigi(), candle.getInterval());
+            } else if (event instanceof StreamingEvent.Orderbook) {
+                StreamingEvent.Orderbook orderbook = (StreamingEvent.Orderbook) event;
+                return SubscriptionKey.orderbook(orderbook.getFigi(), orderbook.getDepth());
+            } else if (event instanceof StreamingEvent.InstrumentInfo) {
+                return SubscriptionKey.instrumentInfo(((StreamingEvent.InstrumentInfo) event).getFigi());
+            }
+            return new Object();
+        }
+    }
+
+    private static class Pending<T> {
+        T event;
+        long conflated;
+
+        Pending(T event) {
+            this.event = event;
+        }
+    }
+}
@@ -9,93 +9,227 @@ import com.github.barbitoff.trading.traderacoon.api.model.exception.TradingApiEx
 import com.github.barbitoff.trading.traderacoon.api.service.AccountService;
 import com.github.barbitoff.trading.traderacoon.api.service.OrderService;
 import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.config.TinkoffOpenApiConfiguration;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.config.TinkoffOpenApiProperties;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.model.OrderCancellationResult;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.model.OrderPlacementResult;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.model.OrderRequest;
 import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.model.mappers.OrderMapper;
-import lombok.AllArgsConstructor;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.cache.SingleFlight;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.orders.ActiveOrderStore;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.orders.OrderActionEvent;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.orders.OrderValidator;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import ru.tinkoff.invest.openapi.OpenApi;
 import ru.tinkoff.invest.openapi.models.orders.*;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 /**
  * OrderService implementation, based on Tinkoff API
  */
-@AllArgsConstructor
 @Slf4j
 @Service(TinkoffOpenApiConfiguration.BEANS_QUALIFIER_PREFIX + "OrderService")
 public class OrderServiceImpl implements OrderService {
     private final OpenApi api;
     private final AccountService accountService;
     private final OrderMapper orderMapper;
+    private final TinkoffOpenApiProperties props;
+    private final ActiveOrderStore activeOrderStore;
+    private final OrderValidator orderValidator;
+    private final ApplicationEventPublisher eventPublisher;
+    private final SingleFlight<String, List<Order>> activeOrdersRequests = new SingleFlight<>();
 
+    public OrderServiceImpl(OpenApi api, AccountService accountService, OrderMapper orderMapper,
+                            TinkoffOpenApiProperties props, ActiveOrderStore activeOrderStore,
+                            OrderValidator orderValidator, ApplicationEventPublisher eventPublisher) {
+        this.api = api;
+        this.accountService = accountService;
+        this.orderMapper = orderMapper;
+        this.props = props;
+        this.activeOrderStore = activeOrderStore;
+        this.orderValidator = orderValidator;
+        this.eventPublisher = eventPublisher;
+    }
+
+    /**
+     * Gets active orders. If active orders cache is enabled and initialized, orders are served from memory
+     *
+     * @return active orders
+     * @throws AccountNotFoundException if account service can't get an account
+     * @throws TradingApiException      if the API throws an exception
+     */
     @Override
     public List<Order> getActiveOrders() throws AccountNotFoundException, TradingApiException {
+        if (activeOrderStore.isInitialized()) {
+            return activeOrderStore.getActiveOrders();
+        }
         log.info("Getting orders list");
         try {
-            List<ru.tinkoff.invest.openapi.models.orders.Order> orders = api.getOrdersContext()
-                    .getOrders(accountService.getTradingAccount().getId())
-                    .get();
-            if (orders == null) {
-                orders = Collections.emptyList();
-            }
+            List<Order> orders = getActiveOrdersAsync(accountService.getTradingAccount().getId()).get();
             log.info("Got {} orders", orders.size());
-            return orders.stream()
-                    .map(orderMapper::mapTinkoffOrder)
-                    .collect(Collectors.toList());
+            return orders;
         } catch (InterruptedException | ExecutionException ex) {
             throw new TradingApiException("Error getting orders list", ex);
         }
     }
 
+    /**
+     * Gets active orders from the API without blocking. Concurrent requests share one API call, unless an order
+     * is placed or cancelled meanwhile
+     *
+     * @param accountId trading account id
+     * @return future, completed with active orders
+     */
+    public CompletableFuture<List<Order>> getActiveOrdersAsync(String accountId) {
+        return activeOrdersRequests.execute(accountId, () -> api.getOrdersContext().getOrders(accountId)
+                .thenApply(orders -> orders == null
+                        ? Collections.<Order>emptyList()
+                        : orders.stream()
+                        .map(orderMapper::mapTinkoffOrder)
+                        .collect(Collectors.toList())));
+    }
+
+    /**
+     * @return number of active orders requests, that joined an identical request in progress
+     */
+    public long getCoalescedCalls() {
+        return activeOrdersRequests.getSavedCalls();
+    }
+
+    /**
+     * Cancels orders concurrently. Fails if any of the cancellations fails, but only after all
+     * the cancellations are finished
+     *
+     * @param orders orders to cancel
+     * @throws AccountNotFoundException if account service can't get an account
+     * @throws TradingApiException      if any of the cancellations fails
+     * @see #cancelOrdersWithResults(List)
+     */
     @Override
     public void cancelOrders(List<Order> orders) throws AccountNotFoundException, TradingApiException {
+        Optional<OrderCancellationResult> failure = cancelOrdersWithResults(orders).stream()
+                .filter(result -> result.getStatus() == OrderCancellationResult.Status.FAILED)
+                .findFirst();
+        if (failure.isPresent()) {
+            throw new TradingApiException("Error cancelling orders", failure.get().getError());
+        }
+    }
+
+    /**
+     * Cancels orders concurrently, with no more than configured number of requests in flight. Orders, that
+     * can't be cancelled because of their status, are skipped. A failed cancellation doesn't prevent other
+     * orders from being cancelled
+     *
+     * @param orders orders to cancel
+     * @return cancellation results, in the order of the given orders
+     * @throws AccountNotFoundException if account service can't get an account
+     * @throws TradingApiException      if interrupted while waiting for cancellations
+     */
+    public List<OrderCancellationResult> cancelOrdersWithResults(List<Order> orders)
+            throws AccountNotFoundException, TradingApiException {
         log.info("Cancelling {} orders", orders.size());
         String accountId = accountService.getTradingAccount().getId();
         try {
-            for (Order order : orders) {
-                log.info("Cancelling order {}", order.getId());
-                if (order.getStatus() != OrderStatus.New && order.getStatus() != OrderStatus.PendingNew
-                        && order.getStatus() != OrderStatus.PartiallyFill) {
-                    log.info("Order {} has status {}, can't cancel", order.getId(), order.getStatus());
-                } else {
-                    CompletableFuture<Void> future = api.getOrdersContext().cancelOrder(
-                            order.getId(),
-                            accountId);
+            List<CompletableFuture<Void>> futures = startBounded(orders, props.getOrders().getCancelConcurrency(),
+                    order -> {
+                        if (!isCancellable(order)) {
+                            log.info("Order {} has status {}, can't cancel", order.getId(), order.getStatus());
+                            return null;
+                        }
+                        log.info("Cancelling order {}", order.getId());
+                        return cancelOrderAsync(order.getId(), accountId);
+                    });
+            List<OrderCancellationResult> results = new ArrayList<>(orders.size());
+            for (int i = 0; i < orders.size(); i++) {
+                Order order = orders.get(i);
+                CompletableFuture<Void> future = futures.get(i);
+                if (future == null) {
+                    results.add(OrderCancellationResult.skipped(order));
+                    continue;
+                }
+                try {
                     future.get();
                     log.info("Cancelled order {}", order.getId());
+                    results.add(OrderCancellationResult.cancelled(order));
+                } catch (ExecutionException ex) {
+                    log.warn("Error cancelling order {}", order.getId(), ex.getCause());
+                    results.add(OrderCancellationResult.failed(order, ex));
                 }
             }
-        } catch (InterruptedException | ExecutionException ex) {
-            throw new TradingApiException("Error cancelling orders", ex);
+            return results;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new TradingApiException("Interrupted while cancelling orders", ex);
+        }
+    }
+
+    /**
+     * Places orders concurrently, with no more than configured number of requests in flight. Rejected or failed
+     * placement (including an exception, thrown while starting it) doesn't prevent other orders from being placed
+     * and is reported as a result, not as an exception
+     *
+     * @param requests orders to place
+     * @return placement results, in the order of the given requests
+     * @throws AccountNotFoundException if account service can't get an account
+     * @throws TradingApiException      if interrupted while waiting for placements
+     */
+    public List<OrderPlacementResult> placeOrders(List<OrderRequest> requests)
+            throws AccountNotFoundException, TradingApiException {
+        log.info("Placing {} orders", requests.size());
+        String accountId = accountService.getTradingAccount().getId();
+        try {
+            List<CompletableFuture<Order>> futures = startBounded(requests, props.getOrders().getPlaceConcurrency(),
+                    request -> {
+                        log.info("Placing order: {}", request);
+                        return placeOrderAsync(request.getFigi(), request.getLots(), request.getPrice(),
+                                Operation.valueOf(request.getOperation().name()), accountId);
+                    });
+            List<OrderPlacementResult> results = new ArrayList<>(requests.size());
+            for (int i = 0; i < requests.size(); i++) {
+                OrderRequest request = requests.get(i);
+                try {
+                    Order order = futures.get(i).get();
+                    log.info("Placed order {}", order.getId());
+                    results.add(OrderPlacementResult.placed(request, order));
+                } catch (ExecutionException ex) {
+                    if (ex.getCause() instanceof OrderRejectedException) {
+                        log.warn("Order rejected: {}, reason: {}", request, ex.getCause().getMessage());
+                        results.add(OrderPlacementResult.rejected(request, (OrderRejectedException) ex.getCause()));
+                    } else {
+                        log.warn("Error placing order: {}", request, ex.getCause());
+                        results.add(OrderPlacementResult.failed(request, ex));
+                    }
+                }
+            }
+            return results;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new TradingApiException("Interrupted while placing orders", ex);
         }
     }
 
     @Override
     public Order buy(String figi, int lots, BigDecimal price) throws TradingApiException, OrderRejectedException, AccountNotFoundException {
         log.info("Buying {}, {} lots, with price {}", figi, lots, price);
-        return orderMapper.mapTinkoffOrder(
-                placeOrder(figi, lots, price, Operation.Buy),
-                figi,
-                price != null ? StockOrderType.Limit : StockOrderType.Market,
-                price
-        );
+        return placeOrder(figi, lots, price, Operation.Buy);
     }
 
     @Override
     public Order sell(String figi, int lots, BigDecimal price) throws TradingApiException, OrderRejectedException, AccountNotFoundException {
         log.info("Selling {}, {} lots, with price {}", figi, lots, price);
-        return orderMapper.mapTinkoffOrder(
-                placeOrder(figi, lots, price, Operation.Sell),
-                figi,
-                price != null ? StockOrderType.Limit : StockOrderType.Market,
-                price
-        );
+        return placeOrder(figi, lots, price, Operation.Sell);
     }
 
     /**
@@ -108,25 +242,145 @@ public class OrderServiceImpl implements OrderService {
      * @throws TradingApiException    if the API throws an exception
      * @throws OrderRejectedException if the order is rejected for some reason
      */
-    private PlacedOrder placeOrder(String figi, int lots, BigDecimal price, Operation operation)
+    private Order placeOrder(String figi, int lots, BigDecimal price, Operation operation)
             throws TradingApiException, OrderRejectedException, AccountNotFoundException {
         String accountId = accountService.getTradingAccount().getId();
-        PlacedOrder placedOrder;
         try {
-            if (price == null) { // place market order
-                MarketOrder order = new MarketOrder(lots, operation);
-                placedOrder = api.getOrdersContext().placeMarketOrder(figi, order, accountId).get();
-            } else { // place LimitOrder
-                LimitOrder order = new LimitOrder(lots, operation, price);
-                placedOrder = api.getOrdersContext().placeLimitOrder(figi, order, accountId).get();
+            Order order = placeOrderAsync(figi, lots, price, operation, accountId).get();
+            log.info("The order is placed");
+            return order;
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof OrderRejectedException) {
+                throw (OrderRejectedException) ex.getCause();
             }
-        } catch (ExecutionException | InterruptedException ex) {
             throw new TradingApiException("Error sending '" + operation.name() + "' order", ex);
+        } catch (InterruptedException ex) {
+            throw new TradingApiException("Error sending '" + operation.name() + "' order", ex);
+        }
+    }
+
+    /**
+     * Place limited or market order for buying/selling something without blocking
+     *
+     * @param figi      Figi code of the instrument
+     * @param lots      number of lots
+     * @param price     price for the limited order. If empty - market order is created
+     * @param operation operation to perform
+     * @param accountId trading account id
+     * @return future, completed with the placed order or exceptionally with {@link OrderRejectedException}
+     * if the order is rejected by the API or by {@link OrderValidator}
+     */
+    public CompletableFuture<Order> placeOrderAsync(String figi, int lots, BigDecimal price, Operation operation,
+                                                    String accountId) {
+        return orderValidator.validate(figi, lots, price, operation)
+                .thenCompose(validPrice -> sendOrder(figi, lots, validPrice, operation, accountId));
+    }
+
+    private CompletableFuture<Order> sendOrder(String figi, int lots, BigDecimal price, Operation operation,
+                                               String accountId) {
+        CompletableFuture<PlacedOrder> placedOrder;
+        if (price == null) { // place market order
+            MarketOrder order = new MarketOrder(lots, operation);
+            placedOrder = api.getOrdersContext().placeMarketOrder(figi, order, accountId);
+        } else { // place LimitOrder
+            LimitOrder order = new LimitOrder(lots, operation, price);
+            placedOrder = api.getOrdersContext().placeLimitOrder(figi, order, accountId);
         }
-        if (placedOrder.status == Status.Rejected) {
-            throw new OrderRejectedException(placedOrder.rejectReason);
+        return placedOrder.thenApply(placed -> {
+            if (placed.status == Status.Rejected) {
+                throw new CompletionException(new OrderRejectedException(placed.rejectReason));
+            }
+            Order order = orderMapper.mapTinkoffOrder(
+                    placed,
+                    figi,
+                    price != null ? StockOrderType.Limit : StockOrderType.Market,
+                    price
+            );
+            orderActionDone(OrderActionEvent.Action.PLACED, placed.id, accountId,
+                    () -> activeOrderStore.placed(order));
+            return order;
+        });
+    }
+
+    /**
+     * Cancels an order without blocking
+     *
+     * @param orderId   order id
+     * @param accountId trading account id
+     * @return future, completed when the order is cancelled
+     */
+    public CompletableFuture<Void> cancelOrderAsync(String orderId, String accountId) {
+        return api.getOrdersContext().cancelOrder(orderId, accountId)
+                .thenRun(() -> orderActionDone(OrderActionEvent.Action.CANCELLED, orderId, accountId,
+                        () -> activeOrderStore.cancelled(orderId)));
+    }
+
+    /**
+     * Updates the local state and notifies the listeners after an order is placed or cancelled. The order action
+     * has succeeded by then, so a failure here is logged and doesn't fail it: a caller would retry it otherwise
+     */
+    private void orderActionDone(OrderActionEvent.Action action, String orderId, String accountId,
+                                 Runnable storeUpdate) {
+        try {
+            // a request in progress may not reflect the action
+            activeOrdersRequests.forget(accountId);
+            storeUpdate.run();
+            eventPublisher.publishEvent(new OrderActionEvent(this, action, orderId, accountId));
+        } catch (RuntimeException ex) {
+            log.error("Error handling {} action on order {}", action, orderId, ex);
+        }
+    }
+
+    /**
+     * Starts asynchronous operations for the given items one by one, waiting before each start while
+     * the given number of operations is in flight. An exception, thrown by the starter, fails the operation
+     * of the item only
+     *
+     * @param items       items to process
+     * @param concurrency maximum number of operations in flight, zero or less means no limit
+     * @param starter     starts an operation for an item. May return null if nothing is to be done for the item
+     * @return futures of the started operations (null for the skipped items), in the order of the given items
+     * @throws InterruptedException if interrupted while waiting for an operation to finish
+     */
+    private static <T, R> List<CompletableFuture<R>> startBounded(List<T> items, int concurrency,
+                                                                  Function<T, CompletableFuture<R>> starter)
+            throws InterruptedException {
+        Semaphore permits = new Semaphore(concurrencyLimit(concurrency));
+        List<CompletableFuture<R>> futures = new ArrayList<>(items.size());
+        for (T item : items) {
+            permits.acquire();
+            CompletableFuture<R> future;
+            try {
+                future = starter.apply(item);
+            } catch (RuntimeException ex) {
+                future = CompletableFuture.failedFuture(ex);
+            }
+            if (future == null) {
+                permits.release();
+                futures.add(null);
+            } else {
+                futures.add(future.whenComplete((r, ex) -> permits.release()));
+            }
         }
-        log.info("The order is placed");
-        return placedOrder;
+        return futures;
+    }
+
+    /**
+     * @param concurrency configured maximum number of operations in flight, zero or less means no limit
+     * @return maximum number of operations in flight, positive
+     */
+    public static int concurrencyLimit(int concurrency) {
+        return concurrency > 0 ? concurrency : Integer.MAX_VALUE;
+    }
+
+    /**
+     * Checks whether an order can be cancelled, judging by its status
+     *
+     * @param order order
+     * @return true if the order can be cancelled
+     */
+    public static boolean isCancellable(Order order) {
+        return order.getStatus() == OrderStatus.New || order.getStatus() == OrderStatus.PendingNew
+                || order.getStatus() == OrderStatus.PartiallyFill;
     }
 }
@@ -6,25 +6,53 @@ import com.github.barbitoff.trading.traderacoon.api.model.exception.TradingApiEx
 import com.github.barbitoff.trading.traderacoon.api.service.AccountService;
 import com.github.barbitoff.trading.traderacoon.api.service.PortfolioService;
 import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.config.TinkoffOpenApiConfiguration;
-import lombok.AllArgsConstructor;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.config.TinkoffOpenApiProperties;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.model.PortfolioTiming;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.cache.SingleFlight;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.orders.ActiveOrdersChangedEvent;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.orders.OrderActionEvent;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.portfolio.PortfolioChangedEvent;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 import ru.tinkoff.invest.openapi.OpenApi;
 import ru.tinkoff.invest.openapi.models.portfolio.PortfolioCurrencies;
 
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
 /**
- * PortfolioService implementation, based on Tinkoff API
+ * PortfolioService implementation, based on Tinkoff API. Concurrent identical requests share one API call.
+ * If enabled, the portfolio is served from a snapshot, which is dropped when it gets too old, or when an order
+ * is placed or cancelled through {@link OrderServiceImpl}, or when active orders or portfolio positions are found
+ * changed
+ *
+ * @see TinkoffOpenApiProperties.PortfolioCache
  */
-@AllArgsConstructor
 @Slf4j
 @Service(TinkoffOpenApiConfiguration.BEANS_QUALIFIER_PREFIX + "PortfolioService")
 public class PortfolioServiceImpl implements PortfolioService {
     private final OpenApi api;
     private final AccountService accountService;
+    private final SingleFlight<String, List<PortfolioPosition>> currencyRequests = new SingleFlight<>();
+    private final SingleFlight<String, ru.tinkoff.invest.openapi.models.portfolio.Portfolio> positionRequests =
+            new SingleFlight<>();
+    private final AtomicReference<PortfolioTiming> lastTiming = new AtomicReference<>();
+    private final TinkoffOpenApiProperties.PortfolioCache snapshotProps;
+    private final Map<String, Snapshot> snapshots = new ConcurrentHashMap<>();
+    private final AtomicLong snapshotGeneration = new AtomicLong();
+
+    public PortfolioServiceImpl(OpenApi api, AccountService accountService, TinkoffOpenApiProperties props) {
+        this.api = api;
+        this.accountService = accountService;
+        this.snapshotProps = props.getPortfolioCache();
+    }
 
     /**
      * Creates a portfolio by joining currency and non-currency parts
@@ -34,12 +62,108 @@ public class PortfolioServiceImpl implements PortfolioService {
      * @throws AccountNotFoundException if account service can't get an account
      */
     public Portfolio getPortfolio() throws TradingApiException, AccountNotFoundException {
-        List<PortfolioPosition> pos1 = getCurrencies();
-        List<PortfolioPosition> pos2 = getNonCurrencies();
-        List<PortfolioPosition> joined = new ArrayList<>(pos1.size() + pos2.size());
-        joined.addAll(pos1);
-        joined.addAll(pos2);
-        return new Portfolio(Collections.unmodifiableList(joined));
+        try {
+            return getPortfolioAsync(accountService.getTradingAccount().getId()).get();
+        } catch (InterruptedException | ExecutionException ex) {
+            throw new TradingApiException("Error getting portfolio", ex);
+        }
+    }
+
+    /**
+     * Creates a portfolio without blocking. If the snapshot cache is enabled and the snapshot is fresh,
+     * it is returned. Otherwise currency and non-currency parts are requested concurrently
+     *
+     * @param accountId trading account id
+     * @return future, completed with the portfolio
+     * @see #getLastTiming()
+     * @see #getSnapshotAge(String)
+     */
+    public CompletableFuture<Portfolio> getPortfolioAsync(String accountId) {
+        if (!snapshotProps.isEnabled()) {
+            return requestPortfolio(accountId);
+        }
+        Snapshot snapshot = snapshots.get(accountId);
+        if (snapshot != null && snapshot.getAge().compareTo(snapshotProps.getMaxStaleness()) <= 0) {
+            return CompletableFuture.completedFuture(snapshot.portfolio);
+        }
+        long generation = snapshotGeneration.get();
+        return requestPortfolio(accountId).thenApply(portfolio -> {
+            Snapshot received = new Snapshot(portfolio);
+            snapshots.put(accountId, received);
+            // the portfolio may be outdated by an order action, that happened while it was requested
+            if (snapshotGeneration.get() != generation) {
+                snapshots.remove(accountId, received);
+            }
+            return portfolio;
+        });
+    }
+
+    /**
+     * @param accountId trading account id
+     * @return age of the portfolio snapshot, empty if there is no snapshot
+     */
+    public Optional<Duration> getSnapshotAge(String accountId) {
+        return Optional.ofNullable(snapshots.get(accountId)).map(Snapshot::getAge);
+    }
+
+    /**
+     * Drops portfolio snapshots, so the next request gets the portfolio from the API
+     */
+    public void invalidateSnapshots() {
+        snapshotGeneration.incrementAndGet();
+        snapshots.clear();
+    }
+
+    @EventListener
+    public void onOrderAction(OrderActionEvent event) {
+        currencyRequests.forget(event.getAccountId());
+        positionRequests.forget(event.getAccountId());
+        invalidateSnapshots();
+    }
+
+    @EventListener
+    public void onActiveOrdersChanged(ActiveOrdersChangedEvent event) {
+        // the events are not bound to an account
+        currencyRequests.forgetAll();
+        positionRequests.forgetAll();
+        invalidateSnapshots();
+    }
+
+    @EventListener
+    public void onPortfolioChanged(PortfolioChangedEvent event) {
+        currencyRequests.forgetAll();
+        positionRequests.forgetAll();
+        invalidateSnapshots();
+    }
+
+    private CompletableFuture<Portfolio> requestPortfolio(String accountId) {
+        long startedAt = System.nanoTime();
+        CompletableFuture<Long> currenciesDone = new CompletableFuture<>();
+        CompletableFuture<Long> positionsDone = new CompletableFuture<>();
+        CompletableFuture<List<PortfolioPosition>> currencies = getCurrenciesAsync(accountId)
+                .whenComplete((result, ex) -> currenciesDone.complete(System.nanoTime()));
+        CompletableFuture<List<PortfolioPosition>> positions = getNonCurrenciesAsync(accountId)
+                .whenComplete((result, ex) -> positionsDone.complete(System.nanoTime()));
+        return currencies.thenCombine(positions, (pos1, pos2) -> {
+            PortfolioTiming timing = new PortfolioTiming(
+                    Duration.ofNanos(currenciesDone.join() - startedAt),
+                    Duration.ofNanos(positionsDone.join() - startedAt),
+                    Duration.ofNanos(System.nanoTime() - startedAt));
+            lastTiming.set(timing);
+            log.debug("Portfolio received in {} ms: currencies {} ms, positions {} ms",
+                    timing.getTotal().toMillis(), timing.getCurrencies().toMillis(), timing.getPositions().toMillis());
+            List<PortfolioPosition> joined = new ArrayList<>(pos1.size() + pos2.size());
+            joined.addAll(pos1);
+            joined.addAll(pos2);
+            return new Portfolio(Collections.unmodifiableList(joined));
+        });
+    }
+
+    /**
+     * @return timing breakdown of the last successful portfolio request, empty if there were no such requests
+     */
+    public Optional<PortfolioTiming> getLastTiming() {
+        return Optional.ofNullable(lastTiming.get());
     }
 
     /**
@@ -52,13 +176,7 @@ public class PortfolioServiceImpl implements PortfolioService {
     @Override
     public List<PortfolioPosition> getCurrencies() throws TradingApiException, AccountNotFoundException {
         try {
-            return api.getPortfolioContext().getPortfolioCurrencies(
-                    accountService.getTradingAccount().getId()
-            ).get().currencies.stream().map(src -> CurrencyPortfolioPosition.builder()
-                    .balance(src.balance)
-                    .blocked(src.blocked)
-                    .currency(Currency.getInstance(src.currency.name()))
-                    .build()).collect(Collectors.toList());
+            return getCurrenciesAsync(accountService.getTradingAccount().getId()).get();
         } catch (InterruptedException | ExecutionException ex) {
             throw new TradingApiException("Error getting portfolio currencies", ex);
         }
@@ -74,18 +192,80 @@ public class PortfolioServiceImpl implements PortfolioService {
     @Override
     public List<PortfolioPosition> getNonCurrencies() throws TradingApiException, AccountNotFoundException {
         try {
-            return api.getPortfolioContext().getPortfolio(
-                    accountService.getTradingAccount().getId()
-            ).get().positions.stream().map(src -> NonCurrencyPortfolioPosition.builder()
-                    .type(InstrumentType.valueOf(src.instrumentType.name()))
-                    .balance(src.balance)
-                    .blocked(src.blocked)
-                    .figi(src.figi)
-                    .lots(src.lots)
-                    .build()
-            ).collect(Collectors.toList());
+            return getNonCurrenciesAsync(accountService.getTradingAccount().getId()).get();
         } catch (InterruptedException | ExecutionException ex) {
             throw new TradingApiException("Error getting portfolio positions", ex);
         }
     }
+
+    /**
+     * Gets currencies without blocking and converts them into the target models
+     *
+     * @param accountId trading account id
+     * @return future, completed with currencies
+     */
+    public CompletableFuture<List<PortfolioPosition>> getCurrenciesAsync(String accountId) {
+        return currencyRequests.execute(accountId, () -> api.getPortfolioContext().getPortfolioCurrencies(accountId)
+                .thenApply(currencies -> currencies.currencies.stream()
+                        .map(src -> (PortfolioPosition) CurrencyPortfolioPosition.builder()
+                                .balance(src.balance)
+                                .blocked(src.blocked)
+                                .currency(Currency.getInstance(src.currency.name()))
+                                .build())
+                        .collect(Collectors.toList())));
+    }
+
+    /**
+     * Gets non-currency portfolio positions without blocking and converts them into the target models
+     *
+     * @param accountId trading account id
+     * @return future, completed with non-currency portfolio positions
+     */
+    public CompletableFuture<List<PortfolioPosition>> getNonCurrenciesAsync(String accountId) {
+        return getTinkoffPortfolioAsync(accountId)
+                .thenApply(portfolio -> portfolio.positions.stream()
+                        .map(src -> (PortfolioPosition) NonCurrencyPortfolioPosition.builder()
+                                .type(InstrumentType.valueOf(src.instrumentType.name()))
+                                .balance(src.balance)
+                                .blocked(src.blocked)
+                                .figi(src.figi)
+                                .lots(src.lots)
+                                .build())
+                        .collect(Collectors.toList()));
+    }
+
+    /**
+     * Gets non-currency portfolio positions without blocking, as they are returned by Tinkoff API. Unlike
+     * the target models, they contain average position prices and expected yields
+     *
+     * @param accountId trading account id
+     * @return future, completed with Tinkoff portfolio
+     */
+    public CompletableFuture<ru.tinkoff.invest.openapi.models.portfolio.Portfolio> getTinkoffPortfolioAsync(
+            String accountId) {
+        return positionRequests.execute(accountId, () -> api.getPortfolioContext().getPortfolio(accountId));
+    }
+
+    /**
+     * @return number of currencies and positions requests, that joined an identical request in progress
+     */
+    public long getCoalescedCalls() {
+        return currencyRequests.getSavedCalls() + positionRequests.getSavedCalls();
+    }
+
+    /**
+     * Portfolio, received at some moment
+     */
+    private static class Snapshot {
+        final Portfolio portfolio;
+        final long receivedAt = System.nanoTime();
+
+        Snapshot(Portfolio portfolio) {
+            this.portfolio = portfolio;
+        }
+
+        Duration getAge() {
+            return Duration.ofNanos(System.nanoTime() - receivedAt);
+        }
+    }
 }
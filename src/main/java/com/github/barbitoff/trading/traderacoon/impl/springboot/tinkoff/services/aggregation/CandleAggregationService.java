@@ -0,0 +1,113 @@
+package com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.aggregation;
+
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.config.TinkoffOpenApiProperties;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.model.AggregatedCandle;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.MarketDataService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.DirectProcessor;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import ru.tinkoff.invest.openapi.models.market.CandleInterval;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Aggregates streamed minute candles of tracked instruments into the configured higher intervals
+ *
+ * @see CandleAggregator
+ * @see TinkoffOpenApiProperties.Aggregation
+ */
+@Slf4j
+@Component
+public class CandleAggregationService implements DisposableBean {
+
+    private final MarketDataService marketDataService;
+    private final TinkoffOpenApiProperties props;
+    private final DirectProcessor<AggregatedCandle> processor = DirectProcessor.create();
+    private final FluxSink<AggregatedCandle> sink = processor.sink();
+
+    private final Map<String, CandleAggregator> aggregators = new ConcurrentHashMap<>();
+    private final Map<String, Disposable> streams = new ConcurrentHashMap<>();
+
+    public CandleAggregationService(MarketDataService marketDataService, TinkoffOpenApiProperties props) {
+        this.marketDataService = marketDataService;
+        this.props = props;
+    }
+
+    @Override
+    public void destroy() {
+        streams.values().forEach(Disposable::dispose);
+        streams.clear();
+        sink.complete();
+    }
+
+    /**
+     * Starts aggregating minute candles of the instrument. Does nothing if it's already tracked. If the stream
+     * fails or completes, the instrument may be tracked again, keeping its candles
+     *
+     * @param figi Figi code of the instrument
+     * @return aggregator of the instrument
+     */
+    public CandleAggregator track(String figi) {
+        CandleAggregator aggregator = aggregators.computeIfAbsent(figi, f -> new CandleAggregator(f,
+                props.getAggregation().getIntervals(), props.getAggregation().getHistorySize()));
+        Disposable.Swap stream = Disposables.swap();
+        if (streams.putIfAbsent(figi, stream) == null) {
+            // disposes the subscription at once if untracked meanwhile
+            stream.update(marketDataService.candles(figi, CandleInterval.ONE_MIN).subscribe(
+                    candle -> aggregator.update(candle, sink::next),
+                    ex -> {
+                        log.error("Candle stream of {} failed", figi, ex);
+                        streams.remove(figi, stream);
+                    },
+                    () -> streams.remove(figi, stream)));
+        }
+        return aggregator;
+    }
+
+    /**
+     * Stops aggregating minute candles of the instrument and forgets its candles
+     *
+     * @param figi Figi code of the instrument
+     */
+    public void untrack(String figi) {
+        Disposable stream = streams.remove(figi);
+        if (stream != null) {
+            stream.dispose();
+        }
+        aggregators.remove(figi);
+    }
+
+    /**
+     * @param figi Figi code of the instrument
+     * @return aggregator of the instrument, empty if it isn't tracked
+     */
+    public Optional<CandleAggregator> getAggregator(String figi) {
+        return Optional.ofNullable(aggregators.get(figi));
+    }
+
+    /**
+     * Aggregated candles of the instrument: the forming candle after each minute update and the final one when
+     * the interval is over. If a subscriber is slower than the updates, up to
+     * {@link TinkoffOpenApiProperties.MarketData#getSubscriberBufferSize()} candles are buffered, then the oldest
+     * ones are dropped
+     *
+     * @param figi     Figi code of the instrument
+     * @param interval aggregated interval
+     * @return flux of candles, completed when the service is destroyed
+     */
+    public Flux<AggregatedCandle> candles(String figi, CandleInterval interval) {
+        return processor
+                .filter(candle -> candle.getInterval() == interval && figi.equals(candle.getFigi()))
+                .onBackpressureBuffer(props.getMarketData().getSubscriberBufferSize(),
+                        dropped -> log.debug("Subscriber is too slow, candle dropped: {}", dropped),
+                        BufferOverflowStrategy.DROP_OLDEST);
+    }
+}
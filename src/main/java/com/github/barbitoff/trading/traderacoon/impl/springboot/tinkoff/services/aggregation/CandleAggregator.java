@@ -0,0 +1,237 @@
+package com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.aggregation;
+
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.model.AggregatedCandle;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.quotes.LastPriceCache;
+import lombok.extern.slf4j.Slf4j;
+import ru.tinkoff.invest.openapi.models.market.CandleInterval;
+import ru.tinkoff.invest.openapi.models.streaming.StreamingEvent;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * Rolls minute candles of an instrument into candles of higher intervals. Each minute candle updates the forming
+ * candle of every interval in place, so the cost of an update doesn't depend on the history length. A minute
+ * candle may be streamed several times while it's forming: its trades value replaces its previous contribution.
+ * A candle of a higher interval becomes final when the first minute of the next one comes. Final candles are
+ * kept in a {@link CandleRingBuffer} per interval. Intervals are aligned to the epoch in UTC
+ */
+@Slf4j
+public class CandleAggregator {
+
+    private final String figi;
+    private final Map<CandleInterval, Timeframe> timeframes = new EnumMap<>(CandleInterval.class);
+
+    private long lastMinute = Long.MIN_VALUE;
+    private long lastMinuteValue;
+
+    /**
+     * @param figi      Figi code of the instrument
+     * @param intervals intervals to aggregate into, from 2 minutes to a day
+     * @param capacity  number of final candles, kept for each interval
+     */
+    public CandleAggregator(String figi, Collection<CandleInterval> intervals, int capacity) {
+        this.figi = figi;
+        for (CandleInterval interval : intervals) {
+            long length = lengthOf(interval);
+            if (length <= 60) {
+                throw new IllegalArgumentException("Can't aggregate minute candles into " + interval);
+            }
+            timeframes.put(interval, new Timeframe(interval, length, capacity));
+        }
+    }
+
+    public String getFigi() {
+        return figi;
+    }
+
+    /**
+     * Applies a streamed minute candle
+     *
+     * @param candle minute candle
+     * @param output receives the forming candle of each interval, preceded by the final one if the candle starts
+     *               a new interval
+     */
+    public void update(StreamingEvent.Candle candle, Consumer<AggregatedCandle> output) {
+        update(candle.getDateTime().toEpochSecond(), LastPriceCache.encode(candle.getOpenPrice()),
+                LastPriceCache.encode(candle.getClosingPrice()), LastPriceCache.encode(candle.getHighestPrice()),
+                LastPriceCache.encode(candle.getLowestPrice()), LastPriceCache.encode(candle.getTradingValue()),
+                output);
+    }
+
+    /**
+     * Applies a minute candle. Candles older than the last applied one are ignored
+     *
+     * @param time   start of the minute in epoch seconds
+     * @param open   open price in billionths
+     * @param close  close price in billionths
+     * @param high   high price in billionths
+     * @param low    low price in billionths
+     * @param value  trades value of the minute so far in billionths
+     * @param output receives the forming candle of each interval, preceded by the final one if the candle starts
+     *               a new interval. May be null
+     */
+    public synchronized void update(long time, long open, long close, long high, long low, long value,
+                                    Consumer<AggregatedCandle> output) {
+        long valueDelta;
+        if (time == lastMinute) {
+            valueDelta = value - lastMinuteValue;
+        } else if (time > lastMinute) {
+            valueDelta = value;
+        } else {
+            log.debug("Late minute candle of {} at {} ignored", figi, time);
+            return;
+        }
+        lastMinute = time;
+        lastMinuteValue = value;
+        for (Timeframe timeframe : timeframes.values()) {
+            long start = Math.floorDiv(time, timeframe.length) * timeframe.length;
+            if (start != timeframe.start) {
+                if (timeframe.forming) {
+                    timeframe.completed.add(timeframe.start, timeframe.open, timeframe.close, timeframe.high,
+                            timeframe.low, timeframe.value);
+                    emit(output, timeframe, true);
+                }
+                timeframe.forming = true;
+                timeframe.start = start;
+                timeframe.open = open;
+                timeframe.high = high;
+                timeframe.low = low;
+                timeframe.value = value;
+            } else {
+                timeframe.high = Math.max(timeframe.high, high);
+                timeframe.low = Math.min(timeframe.low, low);
+                timeframe.value += valueDelta;
+            }
+            timeframe.close = close;
+            emit(output, timeframe, false);
+        }
+    }
+
+    /**
+     * @param interval aggregated interval
+     * @return forming candle, empty if there were no updates or the interval isn't aggregated
+     */
+    public synchronized Optional<AggregatedCandle> getForming(CandleInterval interval) {
+        Timeframe timeframe = timeframes.get(interval);
+        if (timeframe == null || !timeframe.forming) {
+            return Optional.empty();
+        }
+        return Optional.of(toCandle(timeframe, timeframe.start, timeframe.open, timeframe.close, timeframe.high,
+                timeframe.low, timeframe.value, false));
+    }
+
+    /**
+     * @param interval aggregated interval
+     * @return number of kept final candles
+     */
+    public synchronized int getCompletedCount(CandleInterval interval) {
+        Timeframe timeframe = timeframes.get(interval);
+        return timeframe == null ? 0 : timeframe.completed.size();
+    }
+
+    /**
+     * @param interval aggregated interval
+     * @param ago      0 for the latest final candle, 1 for the previous one and so on
+     * @return final candle, empty if there is no such candle
+     */
+    public synchronized Optional<AggregatedCandle> getCompleted(CandleInterval interval, int ago) {
+        Timeframe timeframe = timeframes.get(interval);
+        if (timeframe == null || ago < 0 || ago >= timeframe.completed.size()) {
+            return Optional.empty();
+        }
+        CandleRingBuffer completed = timeframe.completed;
+        return Optional.of(toCandle(timeframe, completed.getTime(ago), completed.getOpen(ago),
+                completed.getClose(ago), completed.getHigh(ago), completed.getLow(ago), completed.getValue(ago),
+                true));
+    }
+
+    /**
+     * @param interval aggregated interval
+     * @param ago      0 for the latest final candle, 1 for the previous one and so on
+     * @return close price of the final candle in billionths, {@link LastPriceCache#NO_PRICE} if there is no
+     * such candle
+     */
+    public synchronized long getCompletedClose(CandleInterval interval, int ago) {
+        Timeframe timeframe = timeframes.get(interval);
+        if (timeframe == null || ago < 0 || ago >= timeframe.completed.size()) {
+            return LastPriceCache.NO_PRICE;
+        }
+        return timeframe.completed.getClose(ago);
+    }
+
+    private void emit(Consumer<AggregatedCandle> output, Timeframe timeframe, boolean complete) {
+        if (output != null) {
+            output.accept(toCandle(timeframe, timeframe.start, timeframe.open, timeframe.close, timeframe.high,
+                    timeframe.low, timeframe.value, complete));
+        }
+    }
+
+    private AggregatedCandle toCandle(Timeframe timeframe, long time, long open, long close, long high, long low,
+                                      long value, boolean complete) {
+        return new AggregatedCandle(figi, timeframe.interval,
+                OffsetDateTime.ofInstant(Instant.ofEpochSecond(time), ZoneOffset.UTC),
+                LastPriceCache.decode(open), LastPriceCache.decode(close), LastPriceCache.decode(high),
+                LastPriceCache.decode(low), LastPriceCache.decode(value), complete);
+    }
+
+    /**
+     * @return length of the interval in seconds, 0 for the intervals of variable length
+     */
+    static long lengthOf(CandleInterval interval) {
+        switch (interval) {
+            case ONE_MIN:
+                return 60;
+            case TWO_MIN:
+                return 2 * 60;
+            case THREE_MIN:
+                return 3 * 60;
+            case FIVE_MIN:
+                return 5 * 60;
+            case TEN_MIN:
+                return 10 * 60;
+            case QUARTER_HOUR:
+                return 15 * 60;
+            case HALF_HOUR:
+                return 30 * 60;
+            case HOUR:
+                return 60 * 60;
+            case TWO_HOURS:
+                return 2 * 60 * 60;
+            case FOUR_HOURS:
+                return 4 * 60 * 60;
+            case DAY:
+                return 24 * 60 * 60;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Forming candle of an interval and the final candles
+     */
+    private static class Timeframe {
+        final CandleInterval interval;
+        final long length;
+        final CandleRingBuffer completed;
+        boolean forming;
+        long start;
+        long open;
+        long close;
+        long high;
+        long low;
+        long value;
+
+        Timeframe(CandleInterval interval, long length, int capacity) {
+            this.interval = interval;
+            this.length = length;
+            this.completed = new CandleRingBuffer(capacity);
+        }
+    }
+}
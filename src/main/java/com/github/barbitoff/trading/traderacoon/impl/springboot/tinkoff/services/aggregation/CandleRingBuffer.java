@@ -0,0 +1,92 @@
+package com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.aggregation;
+
+/**
+ * Fixed number of the latest candles in primitive arrays: times in epoch seconds, prices and trades values
+ * in billionths. When full, a new candle overwrites the oldest one. Not thread-safe
+ */
+public class CandleRingBuffer {
+
+    private final long[] times;
+    private final long[] opens;
+    private final long[] closes;
+    private final long[] highs;
+    private final long[] lows;
+    private final long[] values;
+    private int head;
+    private int size;
+
+    /**
+     * @param capacity maximum number of candles
+     */
+    public CandleRingBuffer(int capacity) {
+        times = new long[capacity];
+        opens = new long[capacity];
+        closes = new long[capacity];
+        highs = new long[capacity];
+        lows = new long[capacity];
+        values = new long[capacity];
+    }
+
+    /**
+     * Adds the latest candle
+     */
+    public void add(long time, long open, long close, long high, long low, long value) {
+        times[head] = time;
+        opens[head] = open;
+        closes[head] = close;
+        highs[head] = high;
+        lows[head] = low;
+        values[head] = value;
+        head = (head + 1) % times.length;
+        if (size < times.length) {
+            size++;
+        }
+    }
+
+    /**
+     * @return number of kept candles
+     */
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return times.length;
+    }
+
+    /**
+     * @param ago 0 for the latest candle, 1 for the previous one and so on
+     * @return start of the candle in epoch seconds
+     */
+    public long getTime(int ago) {
+        return times[index(ago)];
+    }
+
+    public long getOpen(int ago) {
+        return opens[index(ago)];
+    }
+
+    public long getClose(int ago) {
+        return closes[index(ago)];
+    }
+
+    public long getHigh(int ago) {
+        return highs[index(ago)];
+    }
+
+    public long getLow(int ago) {
+        return lows[index(ago)];
+    }
+
+    public long getValue(int ago) {
+        return values[index(ago)];
+    }
+
+    private int index(int ago) {
+        if (ago < 0 || ago >= size) {
+            throw new IndexOutOfBoundsException("Candle " + ago + " of " + size);
+        }
+        int index = head - 1 - ago;
+        return index < 0 ? index + times.length : index;
+    }
+}
@@ -0,0 +1,148 @@
+package com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.cache;
+
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.model.CacheStats;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Size-bounded cache of asynchronously loaded values with per-value time to live. The least recently used entry
+ * is evicted when the size limit is exceeded.
+ * <p>
+ * Values are cached as futures, so concurrent lookups of a missing key share one load. Callers get copies
+ * of the cached futures, so completing or cancelling them doesn't affect the cache. Failed loads
+ * are not cached. Time to live is counted from the load completion and may depend on the value, e.g. to keep
+ * "not found" results for a shorter time
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+public class BoundedTtlCache<K, V> {
+
+    private final int maxSize;
+    private final Function<V, Duration> ttl;
+    private final LongSupplier nanoClock;
+
+    private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+
+    /**
+     * @param maxSize maximum number of entries
+     * @param ttl     time to live of a value
+     */
+    public BoundedTtlCache(int maxSize, Function<V, Duration> ttl) {
+        this(maxSize, ttl, System::nanoTime);
+    }
+
+    BoundedTtlCache(int maxSize, Function<V, Duration> ttl, LongSupplier nanoClock) {
+        this.maxSize = maxSize;
+        this.ttl = ttl;
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * Gets a value from the cache, loading it if it is missing or expired
+     *
+     * @param key    key
+     * @param loader loads a value for the key
+     * @return future, completed with the value
+     */
+    public CompletableFuture<V> get(K key, Function<K, CompletableFuture<V>> loader) {
+        Entry<V> entry;
+        synchronized (this) {
+            entry = entries.get(key);
+            if (entry != null && entry.isExpired(nanoClock.getAsLong())) {
+                entries.remove(key);
+                expirations.increment();
+                entry = null;
+            }
+            if (entry != null) {
+                hits.increment();
+                return entry.value.copy();
+            }
+            misses.increment();
+            entry = new Entry<>(new CompletableFuture<>());
+            entries.put(key, entry);
+            evictIfNeeded();
+        }
+        load(key, entry, loader);
+        return entry.value.copy();
+    }
+
+    /**
+     * Removes a value from the cache
+     *
+     * @param key key
+     */
+    public synchronized void invalidate(K key) {
+        entries.remove(key);
+    }
+
+    /**
+     * Removes all the values from the cache
+     */
+    public synchronized void invalidateAll() {
+        entries.clear();
+    }
+
+    /**
+     * @return cache usage statistics
+     */
+    public synchronized CacheStats getStats() {
+        return new CacheStats(hits.sum(), misses.sum(), evictions.sum(), expirations.sum(), entries.size());
+    }
+
+    private void load(K key, Entry<V> entry, Function<K, CompletableFuture<V>> loader) {
+        CompletableFuture<V> loaded;
+        try {
+            loaded = loader.apply(key);
+        } catch (RuntimeException ex) {
+            loaded = CompletableFuture.failedFuture(ex);
+        }
+        loaded.whenComplete((value, ex) -> {
+            if (ex != null) {
+                synchronized (this) {
+                    entries.remove(key, entry);
+                }
+                entry.value.completeExceptionally(ex);
+            } else {
+                entry.expiresAt = nanoClock.getAsLong() + ttl.apply(value).toNanos();
+                entry.value.complete(value);
+            }
+        });
+    }
+
+    private void evictIfNeeded() {
+        Iterator<Map.Entry<K, Entry<V>>> eldest = entries.entrySet().iterator();
+        while (entries.size() > maxSize && eldest.hasNext()) {
+            eldest.next();
+            eldest.remove();
+            evictions.increment();
+        }
+    }
+
+    /**
+     * Cached value. Doesn't expire until loaded
+     */
+    private static class Entry<V> {
+        final CompletableFuture<V> value;
+        volatile long expiresAt = Long.MAX_VALUE;
+
+        Entry(CompletableFuture<V> value) {
+            this.value = value;
+        }
+
+        boolean isExpired(long now) {
+            return expiresAt != Long.MAX_VALUE && now - expiresAt >= 0;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.cache;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Shares one in-flight asynchronous call among concurrent identical requests: while a call for a key is
+ * in progress, other requests for the same key get its result instead of making their own calls.
+ * Nothing is kept after the call completes
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+public class SingleFlight<K, V> {
+
+    private final Map<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder savedCalls = new LongAdder();
+
+    /**
+     * Makes a call or joins the one in progress for the same key
+     *
+     * @param key  request key
+     * @param call makes the call
+     * @return future, completed with the call result. Completing or cancelling it doesn't affect other requests
+     */
+    public CompletableFuture<V> execute(K key, Supplier<CompletableFuture<V>> call) {
+        CompletableFuture<V> created = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, created);
+        if (existing != null) {
+            savedCalls.increment();
+            return existing.copy();
+        }
+        CompletableFuture<V> result;
+        try {
+            result = call.get();
+        } catch (RuntimeException ex) {
+            result = CompletableFuture.failedFuture(ex);
+        }
+        result.whenComplete((value, ex) -> {
+            inFlight.remove(key, created);
+            if (ex != null) {
+                created.completeExceptionally(ex);
+            } else {
+                created.complete(value);
+            }
+        });
+        return created.copy();
+    }
+
+    /**
+     * Makes further requests for the key start a new call, even if the current one is still in progress.
+     * Used when the result of the current call is known to be outdated
+     *
+     * @param key request key
+     */
+    public void forget(K key) {
+        inFlight.remove(key);
+    }
+
+    /**
+     * Makes further requests for all the keys start new calls
+     *
+     * @see #forget(Object)
+     */
+    public void forgetAll() {
+        inFlight.clear();
+    }
+
+    /**
+     * @return number of requests, that joined a call in progress instead of making their own
+     */
+    public long getSavedCalls() {
+        return savedCalls.sum();
+    }
+}
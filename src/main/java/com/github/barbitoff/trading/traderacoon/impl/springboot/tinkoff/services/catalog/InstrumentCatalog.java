@@ -0,0 +1,152 @@
+package com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.catalog;
+
+import com.github.barbitoff.trading.traderacoon.api.model.Instrument;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.config.TinkoffOpenApiProperties;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.InstrumentServiceImpl;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.stereotype.Component;
+import ru.tinkoff.invest.openapi.MarketContext;
+import ru.tinkoff.invest.openapi.OpenApi;
+import ru.tinkoff.invest.openapi.models.market.InstrumentsList;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * If enabled, loads the whole instrument catalog (stocks, bonds, ETFs and currencies) on start up and keeps
+ * it in memory, indexed by Figi and by ticker. The catalog is refreshed in background, the new index replaces
+ * the old one at once, so readers never see a partially loaded catalog. If a refresh fails, the previous
+ * catalog is kept
+ */
+@Slf4j
+@Component
+public class InstrumentCatalog implements InitializingBean, DisposableBean {
+
+    private final OpenApi api;
+    private final TinkoffOpenApiProperties props;
+    private ScheduledExecutorService scheduler;
+
+    private volatile Index index;
+
+    public InstrumentCatalog(OpenApi api, TinkoffOpenApiProperties props) {
+        this.api = api;
+        this.props = props;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (!props.getCatalog().isEnabled()) {
+            return;
+        }
+        CompletableFuture<Void> loading = refresh();
+        if (!props.isAsyncStartup()) {
+            loading.join();
+        }
+        long interval = props.getCatalog().getRefreshInterval().toMillis();
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "tinkoff-catalog-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> refresh().join(), interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void destroy() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * Loads the catalog and replaces the current one with it
+     *
+     * @return future, completed when the catalog is replaced. Never completes exceptionally: loading errors
+     * are logged and the current catalog is kept
+     */
+    public CompletableFuture<Void> refresh() {
+        log.info("Loading instrument catalog");
+        MarketContext market = api.getMarketContext();
+        CompletableFuture<InstrumentsList> stocks = market.getMarketStocks();
+        CompletableFuture<InstrumentsList> bonds = market.getMarketBonds();
+        CompletableFuture<InstrumentsList> etfs = market.getMarketEtfs();
+        CompletableFuture<InstrumentsList> currencies = market.getMarketCurrencies();
+        return CompletableFuture.allOf(stocks, bonds, etfs, currencies)
+                .thenApply(v -> new Index(List.of(stocks.join(), bonds.join(), etfs.join(), currencies.join())))
+                .handle((loaded, ex) -> {
+                    if (ex != null) {
+                        log.error("Error loading instrument catalog", ex);
+                    } else {
+                        index = loaded;
+                        log.info("Instrument catalog loaded, {} instruments", loaded.byFigi.size());
+                    }
+                    return null;
+                });
+    }
+
+    /**
+     * @return true if the catalog is loaded
+     */
+    public boolean isLoaded() {
+        return index != null;
+    }
+
+    /**
+     * @return number of instruments in the catalog
+     */
+    public int size() {
+        Index current = index;
+        return current == null ? 0 : current.byFigi.size();
+    }
+
+    /**
+     * @param figi Figi code of the instrument
+     * @return instrument or empty value, if the instrument is not in the catalog or the catalog isn't loaded
+     */
+    public Optional<Instrument> getByFigi(String figi) {
+        Index current = index;
+        return current == null ? Optional.empty() : Optional.ofNullable(current.byFigi.get(figi));
+    }
+
+    /**
+     * @param ticker ticker of the instrument
+     * @return instrument or empty value, if the instrument is not in the catalog or the catalog isn't loaded
+     */
+    public Optional<Instrument> getByTicker(String ticker) {
+        Index current = index;
+        return current == null ? Optional.empty() : Optional.ofNullable(current.byTicker.get(ticker));
+    }
+
+    /**
+     * Immutable instrument index
+     */
+    private static class Index {
+        final Map<String, Instrument> byFigi;
+        final Map<String, Instrument> byTicker;
+
+        Index(List<InstrumentsList> lists) {
+            Map<String, Instrument> figis = new HashMap<>();
+            Map<String, Instrument> tickers = new HashMap<>();
+            for (InstrumentsList list : lists) {
+                for (ru.tinkoff.invest.openapi.models.market.Instrument src : list.instruments) {
+                    Instrument instrument = InstrumentServiceImpl.mapInstrument(src);
+                    figis.put(src.figi, instrument);
+                    if (src.ticker != null) {
+                        tickers.put(src.ticker, instrument);
+                    }
+                }
+            }
+            // immutable maps are array based and take less memory than hash maps
+            this.byFigi = Map.copyOf(figis);
+            this.byTicker = Map.copyOf(tickers);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.history;
+
+import lombok.extern.slf4j.Slf4j;
+import ru.tinkoff.invest.openapi.models.market.Candle;
+import ru.tinkoff.invest.openapi.models.market.CandleInterval;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * On-disk cache of candle windows, a file per instrument, interval and window start.
+ * <p>
+ * File format: magic, version, candle count and the price scale, then a record per candle: time in epoch seconds,
+ * open, close, high and low prices and trades value, all as longs, the prices and value unscaled with
+ * the file scale. Files are written to a temporary file first and then moved, so a file is either complete or
+ * absent. Unreadable files are treated as absent
+ */
+@Slf4j
+public class CandleFileCache {
+
+    private static final int MAGIC = 0x43414e44;
+    private static final byte VERSION = 1;
+    private static final int HEADER_SIZE = Integer.BYTES + Byte.BYTES + Integer.BYTES + Byte.BYTES;
+    private static final int RECORD_SIZE = 6 * Long.BYTES;
+
+    private final Path directory;
+
+    /**
+     * @param directory cache directory, created if absent
+     */
+    public CandleFileCache(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * @param figi        Figi code of the instrument
+     * @param interval    candle interval
+     * @param windowStart start of the window
+     * @return candles of the window, empty if the window isn't cached
+     */
+    public Optional<List<Candle>> read(String figi, CandleInterval interval, Instant windowStart) {
+        Path file = file(figi, interval, windowStart);
+        if (!Files.isRegularFile(file)) {
+            return Optional.empty();
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readByte() != VERSION) {
+                log.warn("Unknown candle cache file format: {}", file);
+                return Optional.empty();
+            }
+            int count = in.readInt();
+            if (count < 0 || Files.size(file) != HEADER_SIZE + (long) count * RECORD_SIZE) {
+                log.warn("Candle count {} doesn't match the size of candle cache file {}", count, file);
+                return Optional.empty();
+            }
+            int scale = in.readByte();
+            List<Candle> candles = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                OffsetDateTime time = OffsetDateTime.ofInstant(Instant.ofEpochSecond(in.readLong()), ZoneOffset.UTC);
+                BigDecimal open = BigDecimal.valueOf(in.readLong(), scale);
+                BigDecimal close = BigDecimal.valueOf(in.readLong(), scale);
+                BigDecimal high = BigDecimal.valueOf(in.readLong(), scale);
+                BigDecimal low = BigDecimal.valueOf(in.readLong(), scale);
+                BigDecimal value = BigDecimal.valueOf(in.readLong(), scale);
+                candles.add(new Candle(figi, interval, open, close, high, low, value, time));
+            }
+            return Optional.of(candles);
+        } catch (IOException ex) {
+            log.warn("Error reading candle cache file {}", file, ex);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * @param figi        Figi code of the instrument
+     * @param interval    candle interval
+     * @param windowStart start of the window
+     * @param candles     all the candles of the window
+     * @throws IOException if the file can't be written
+     */
+    public void write(String figi, CandleInterval interval, Instant windowStart, List<Candle> candles)
+            throws IOException {
+        Path file = file(figi, interval, windowStart);
+        Files.createDirectories(file.getParent());
+        int scale = 0;
+        for (Candle candle : candles) {
+            scale = Math.max(scale, Math.max(Math.max(candle.openPrice.scale(), candle.closePrice.scale()),
+                    Math.max(Math.max(candle.highestPrice.scale(), candle.lowestPrice.scale()),
+                            candle.tradesValue.scale())));
+        }
+        Path temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeByte(VERSION);
+                out.writeInt(candles.size());
+                out.writeByte(scale);
+                for (Candle candle : candles) {
+                    out.writeLong(candle.time.toEpochSecond());
+                    out.writeLong(unscaled(candle.openPrice, scale));
+                    out.writeLong(unscaled(candle.closePrice, scale));
+                    out.writeLong(unscaled(candle.highestPrice, scale));
+                    out.writeLong(unscaled(candle.lowestPrice, scale));
+                    out.writeLong(unscaled(candle.tradesValue, scale));
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private Path file(String figi, CandleInterval interval, Instant windowStart) {
+        return directory.resolve(figi).resolve(interval.name()).resolve(windowStart.getEpochSecond() + ".bin");
+    }
+
+    private static long unscaled(BigDecimal value, int scale) {
+        return value.setScale(scale).unscaledValue().longValueExact();
+    }
+}
@@ -0,0 +1,284 @@
+package com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.history;
+
+import com.github.barbitoff.trading.traderacoon.api.model.exception.TradingApiException;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.config.TinkoffOpenApiProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+import ru.tinkoff.invest.openapi.OpenApi;
+import ru.tinkoff.invest.openapi.models.market.Candle;
+import ru.tinkoff.invest.openapi.models.market.CandleInterval;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Loads historical candles. A requested range is split into windows, aligned to the epoch, of the longest range
+ * the API accepts for the interval. Windows are requested concurrently, at most
+ * {@link TinkoffOpenApiProperties.History#getConcurrency()} at a time, with request starts spaced to stay within
+ * {@link TinkoffOpenApiProperties.History#getRequestsPerMinute()}.
+ * <p>
+ * If the cache directory is configured, windows, that had ended before they were requested, are stored on disk
+ * (see {@link CandleFileCache}), so loading an overlapping range requests only the missing windows. The files are
+ * read and written on a dedicated thread, neither on the calling thread, nor on the thread, completing the API
+ * response
+ */
+@Slf4j
+@Component
+public class CandleHistoryService implements DisposableBean {
+
+    private final OpenApi api;
+    private final TinkoffOpenApiProperties props;
+    private final CandleFileCache cache;
+    private final ExecutorService cacheExecutor;
+
+    private final AtomicLong nextRequestAt = new AtomicLong(System.nanoTime());
+    private final LongAdder requestedWindows = new LongAdder();
+    private final LongAdder cachedWindows = new LongAdder();
+
+    public CandleHistoryService(OpenApi api, TinkoffOpenApiProperties props) {
+        this.api = api;
+        this.props = props;
+        if (props.getHistory().getConcurrency() <= 0) {
+            throw new IllegalArgumentException("History concurrency must be positive: "
+                    + props.getHistory().getConcurrency());
+        }
+        if (props.getHistory().getRequestsPerMinute() <= 0) {
+            throw new IllegalArgumentException("History requests per minute must be positive: "
+                    + props.getHistory().getRequestsPerMinute());
+        }
+        String directory = props.getHistory().getCacheDirectory();
+        if (directory == null) {
+            this.cache = null;
+            this.cacheExecutor = null;
+        } else {
+            this.cache = new CandleFileCache(Paths.get(directory));
+            this.cacheExecutor = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "tinkoff-candle-cache");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (cacheExecutor != null) {
+            cacheExecutor.shutdown();
+        }
+    }
+
+    /**
+     * Loads candles of the instrument
+     *
+     * @param figi     Figi code of the instrument
+     * @param interval candle interval
+     * @param from     start of the range, inclusive
+     * @param to       end of the range, exclusive
+     * @return candles, ordered by time
+     * @throws TradingApiException if the API fails or doesn't know the instrument
+     */
+    public List<Candle> getCandles(String figi, CandleInterval interval, OffsetDateTime from, OffsetDateTime to)
+            throws TradingApiException {
+        try {
+            return getCandlesAsync(figi, interval, from, to).get();
+        } catch (InterruptedException | ExecutionException ex) {
+            throw new TradingApiException("Error loading candles", ex);
+        }
+    }
+
+    /**
+     * Loads candles of the instrument without blocking
+     *
+     * @param figi     Figi code of the instrument
+     * @param interval candle interval
+     * @param from     start of the range, inclusive
+     * @param to       end of the range, exclusive
+     * @return future of the candles, ordered by time. Fails if any window fails
+     * @see #getCandles(String, CandleInterval, OffsetDateTime, OffsetDateTime)
+     */
+    public CompletableFuture<List<Candle>> getCandlesAsync(String figi, CandleInterval interval,
+                                                           OffsetDateTime from, OffsetDateTime to) {
+        Instant start = from.toInstant();
+        Instant end = to.toInstant();
+        if (!start.isBefore(end)) {
+            return CompletableFuture.completedFuture(List.of());
+        }
+        Duration window = windowLength(interval);
+        List<Instant> windows = split(start, end, window);
+        Map<Instant, List<Candle>> loaded = new ConcurrentHashMap<>();
+        CompletableFuture<Queue<Instant>> cached = cache == null
+                ? CompletableFuture.completedFuture(new ConcurrentLinkedQueue<>(windows))
+                : CompletableFuture.supplyAsync(() -> readCached(figi, interval, windows, loaded), cacheExecutor);
+        return cached.thenCompose(missing -> {
+            log.debug("Loading {} candles of {}: {} windows, {} cached", interval, figi, windows.size(),
+                    windows.size() - missing.size());
+            CompletableFuture<?>[] workers = new CompletableFuture<?>[
+                    Math.min(props.getHistory().getConcurrency(), missing.size())];
+            for (int i = 0; i < workers.length; i++) {
+                workers[i] = requestNext(figi, interval, window, missing, loaded);
+            }
+            return CompletableFuture.allOf(workers);
+        }).thenApply(v -> {
+            List<Candle> candles = new ArrayList<>();
+            for (Instant windowStart : windows) {
+                for (Candle candle : loaded.get(windowStart)) {
+                    Instant time = candle.time.toInstant();
+                    if (!time.isBefore(start) && time.isBefore(end)) {
+                        candles.add(candle);
+                    }
+                }
+            }
+            return candles;
+        });
+    }
+
+    /**
+     * @return number of windows, requested from the API
+     */
+    public long getRequestedWindows() {
+        return requestedWindows.sum();
+    }
+
+    /**
+     * @return number of windows, read from the cache
+     */
+    public long getCachedWindows() {
+        return cachedWindows.sum();
+    }
+
+    /**
+     * Reads the cached windows into the loaded ones
+     *
+     * @return windows, missing in the cache
+     */
+    private Queue<Instant> readCached(String figi, CandleInterval interval, List<Instant> windows,
+                                      Map<Instant, List<Candle>> loaded) {
+        Queue<Instant> missing = new ConcurrentLinkedQueue<>();
+        for (Instant windowStart : windows) {
+            Optional<List<Candle>> cached = cache.read(figi, interval, windowStart);
+            if (cached.isPresent()) {
+                loaded.put(windowStart, cached.get());
+                cachedWindows.increment();
+            } else {
+                missing.add(windowStart);
+            }
+        }
+        return missing;
+    }
+
+    /**
+     * Requests windows from the queue one by one until it is empty
+     */
+    private CompletableFuture<Void> requestNext(String figi, CandleInterval interval, Duration window,
+                                                Queue<Instant> missing, Map<Instant, List<Candle>> loaded) {
+        Instant windowStart = missing.poll();
+        if (windowStart == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return requestWindow(figi, interval, windowStart, windowStart.plus(window))
+                .thenCompose(candles -> {
+                    loaded.put(windowStart, candles);
+                    return requestNext(figi, interval, window, missing, loaded);
+                });
+    }
+
+    private CompletableFuture<List<Candle>> requestWindow(String figi, CandleInterval interval, Instant start,
+                                                          Instant end) {
+        long delay = reserveRequest();
+        CompletableFuture<Void> slot = new CompletableFuture<>();
+        if (delay > 0) {
+            CompletableFuture.delayedExecutor(delay, TimeUnit.NANOSECONDS).execute(() -> slot.complete(null));
+        } else {
+            slot.complete(null);
+        }
+        return slot.thenCompose(v -> {
+            Instant requestedAt = Instant.now();
+            return api.getMarketContext().getMarketCandles(figi, OffsetDateTime.ofInstant(start, ZoneOffset.UTC),
+                    OffsetDateTime.ofInstant(end, ZoneOffset.UTC), interval)
+                    .thenCompose(history -> {
+                        List<Candle> candles = history.orElseThrow(() -> new CompletionException(
+                                new TradingApiException("Unknown instrument " + figi))).candles;
+                        requestedWindows.increment();
+                        if (cache == null || end.isAfter(requestedAt)) {
+                            return CompletableFuture.completedFuture(candles);
+                        }
+                        return CompletableFuture.runAsync(() -> store(figi, interval, start, candles), cacheExecutor)
+                                .thenApply(stored -> candles);
+                    });
+        });
+    }
+
+    private void store(String figi, CandleInterval interval, Instant windowStart, List<Candle> candles) {
+        try {
+            cache.write(figi, interval, windowStart, candles);
+        } catch (IOException | ArithmeticException ex) {
+            log.warn("Error caching {} candles of {} from {}", interval, figi, windowStart, ex);
+        }
+    }
+
+    /**
+     * Reserves the next request slot under the rate limit
+     *
+     * @return delay before the slot in nanoseconds
+     */
+    private long reserveRequest() {
+        long spacing = TimeUnit.MINUTES.toNanos(1) / props.getHistory().getRequestsPerMinute();
+        long now = System.nanoTime();
+        long slot = Math.max(nextRequestAt.getAndUpdate(next -> Math.max(next, now) + spacing), now);
+        return slot - now;
+    }
+
+    /**
+     * @return starts of the aligned windows, covering the range
+     */
+    static List<Instant> split(Instant start, Instant end, Duration window) {
+        long length = window.getSeconds();
+        List<Instant> windows = new ArrayList<>();
+        long windowStart = Math.floorDiv(start.getEpochSecond(), length) * length;
+        while (windowStart < end.getEpochSecond() || (windowStart == end.getEpochSecond() && end.getNano() > 0)) {
+            windows.add(Instant.ofEpochSecond(windowStart));
+            windowStart += length;
+        }
+        return windows;
+    }
+
+    /**
+     * @return the longest range of a candles request, accepted by the API for the interval
+     */
+    static Duration windowLength(CandleInterval interval) {
+        switch (interval) {
+            case HOUR:
+            case TWO_HOURS:
+            case FOUR_HOURS:
+                return Duration.ofDays(7);
+            case DAY:
+                return Duration.ofDays(365);
+            case WEEK:
+                return Duration.ofDays(728);
+            case MONTH:
+                return Duration.ofDays(3650);
+            default:
+                return Duration.ofDays(1);
+        }
+    }
+}
@@ -0,0 +1,302 @@
+package com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.orderbook;
+
+import ru.tinkoff.invest.openapi.models.market.Orderbook;
+import ru.tinkoff.invest.openapi.models.streaming.StreamingEvent;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Top levels of an instrument order book. Prices are kept in ticks of the minimum price increment, quantities -
+ * in lots, both in primitive arrays, allocated once and updated in place.
+ * <p>
+ * Updates replace the whole book and are serialized. Reads are lock-free: they are optimistic and are retried
+ * under a read lock only when an update interferes. Single-value queries don't allocate, multi-level reads
+ * are consistent through {@link #copyTo(OrderBookSnapshot)}
+ */
+public class OrderBook {
+
+    /**
+     * Price of an empty side
+     */
+    public static final long NO_PRICE = Long.MIN_VALUE;
+
+    private final String figi;
+    private final BigDecimal tickSize;
+    private final int capacity;
+    private final StampedLock lock = new StampedLock();
+
+    private final long[] bidPrices;
+    private final int[] bidQuantities;
+    private final long[] askPrices;
+    private final int[] askQuantities;
+    private int bidCount;
+    private int askCount;
+    private long version;
+
+    /**
+     * Updates are converted here before they are published, guarded by this
+     */
+    private final long[] pendingBidPrices;
+    private final int[] pendingBidQuantities;
+    private final long[] pendingAskPrices;
+    private final int[] pendingAskQuantities;
+
+    /**
+     * @param figi     Figi code of the instrument
+     * @param tickSize minimum price increment of the instrument
+     * @param capacity maximum number of price levels on each side, the deeper levels are dropped
+     */
+    public OrderBook(String figi, BigDecimal tickSize, int capacity) {
+        this.figi = figi;
+        this.tickSize = tickSize;
+        this.capacity = capacity;
+        bidPrices = new long[capacity];
+        bidQuantities = new int[capacity];
+        askPrices = new long[capacity];
+        askQuantities = new int[capacity];
+        pendingBidPrices = new long[capacity];
+        pendingBidQuantities = new int[capacity];
+        pendingAskPrices = new long[capacity];
+        pendingAskQuantities = new int[capacity];
+    }
+
+    public String getFigi() {
+        return figi;
+    }
+
+    public BigDecimal getTickSize() {
+        return tickSize;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Replaces the book with a polled one
+     *
+     * @param src order book from the API
+     */
+    public synchronized void apply(Orderbook src) {
+        int bids = Math.min(src.bids.size(), capacity);
+        for (int i = 0; i < bids; i++) {
+            Orderbook.Item item = src.bids.get(i);
+            pendingBidPrices[i] = toTicks(item.price);
+            pendingBidQuantities[i] = item.quantity.intValue();
+        }
+        int asks = Math.min(src.asks.size(), capacity);
+        for (int i = 0; i < asks; i++) {
+            Orderbook.Item item = src.asks.get(i);
+            pendingAskPrices[i] = toTicks(item.price);
+            pendingAskQuantities[i] = item.quantity.intValue();
+        }
+        publish(bids, asks);
+    }
+
+    /**
+     * Replaces the book with a streamed one
+     *
+     * @param src order book event, levels are [price, quantity] pairs
+     */
+    public synchronized void apply(StreamingEvent.Orderbook src) {
+        int bids = convert(src.getBids(), pendingBidPrices, pendingBidQuantities);
+        int asks = convert(src.getAsks(), pendingAskPrices, pendingAskQuantities);
+        publish(bids, asks);
+    }
+
+    /**
+     * @return best bid price in ticks, {@link #NO_PRICE} if there are no bids
+     */
+    public long getBestBid() {
+        return query(OrderBook::bestBid, 0);
+    }
+
+    /**
+     * @return best ask price in ticks, {@link #NO_PRICE} if there are no asks
+     */
+    public long getBestAsk() {
+        return query(OrderBook::bestAsk, 0);
+    }
+
+    /**
+     * @return quantity at the best bid in lots, zero if there are no bids
+     */
+    public int getBestBidQuantity() {
+        return (int) query(OrderBook::bestBidQuantity, 0);
+    }
+
+    /**
+     * @return quantity at the best ask in lots, zero if there are no asks
+     */
+    public int getBestAskQuantity() {
+        return (int) query(OrderBook::bestAskQuantity, 0);
+    }
+
+    /**
+     * @return difference between the best ask and the best bid in ticks, {@link #NO_PRICE} if a side is empty
+     */
+    public long getSpread() {
+        return query(OrderBook::spread, 0);
+    }
+
+    /**
+     * @param levels number of the best levels
+     * @return total bid quantity of the levels in lots
+     */
+    public long getBidDepth(int levels) {
+        return query(OrderBook::bidDepth, levels);
+    }
+
+    /**
+     * @param levels number of the best levels
+     * @return total ask quantity of the levels in lots
+     */
+    public long getAskDepth(int levels) {
+        return query(OrderBook::askDepth, levels);
+    }
+
+    /**
+     * @return number of updates, applied to the book
+     */
+    public long getVersion() {
+        return query(OrderBook::version, 0);
+    }
+
+    /**
+     * Copies all the levels into the snapshot at once
+     *
+     * @param target snapshot to fill, its capacity must not be less than the capacity of the book
+     */
+    public void copyTo(OrderBookSnapshot target) {
+        long stamp = lock.tryOptimisticRead();
+        copy(target);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                copy(target);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+    }
+
+    /**
+     * @param ticks price in ticks
+     * @return price
+     */
+    public BigDecimal toPrice(long ticks) {
+        return tickSize.multiply(BigDecimal.valueOf(ticks));
+    }
+
+    /**
+     * @param price price
+     * @return price in ticks, rounded to the nearest tick
+     */
+    public long toTicks(BigDecimal price) {
+        return price.divide(tickSize, 0, RoundingMode.HALF_UP).longValueExact();
+    }
+
+    private int convert(List<BigDecimal[]> levels, long[] prices, int[] quantities) {
+        int count = Math.min(levels.size(), capacity);
+        for (int i = 0; i < count; i++) {
+            BigDecimal[] level = levels.get(i);
+            prices[i] = toTicks(level[0]);
+            quantities[i] = level[1].intValue();
+        }
+        return count;
+    }
+
+    private void publish(int bids, int asks) {
+        long stamp = lock.writeLock();
+        try {
+            System.arraycopy(pendingBidPrices, 0, bidPrices, 0, bids);
+            System.arraycopy(pendingBidQuantities, 0, bidQuantities, 0, bids);
+            System.arraycopy(pendingAskPrices, 0, askPrices, 0, asks);
+            System.arraycopy(pendingAskQuantities, 0, askQuantities, 0, asks);
+            bidCount = bids;
+            askCount = asks;
+            version++;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Runs the query optimistically, and once more under the read lock if the book was updated meanwhile.
+     * The queries are non-capturing, so no lambda is allocated per call
+     */
+    private long query(Query query, int arg) {
+        long stamp = lock.tryOptimisticRead();
+        long result = query.apply(this, arg);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                result = query.apply(this, arg);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return result;
+    }
+
+    private void copy(OrderBookSnapshot target) {
+        // counts may be torn during an optimistic read, so they are bounded by the capacity
+        int bids = Math.min(bidCount, capacity);
+        int asks = Math.min(askCount, capacity);
+        System.arraycopy(bidPrices, 0, target.bidPrices, 0, bids);
+        System.arraycopy(bidQuantities, 0, target.bidQuantities, 0, bids);
+        System.arraycopy(askPrices, 0, target.askPrices, 0, asks);
+        System.arraycopy(askQuantities, 0, target.askQuantities, 0, asks);
+        target.bidCount = bids;
+        target.askCount = asks;
+        target.version = version;
+    }
+
+    private static long bestBid(OrderBook book, int arg) {
+        return book.bidCount > 0 ? book.bidPrices[0] : NO_PRICE;
+    }
+
+    private static long bestAsk(OrderBook book, int arg) {
+        return book.askCount > 0 ? book.askPrices[0] : NO_PRICE;
+    }
+
+    private static long bestBidQuantity(OrderBook book, int arg) {
+        return book.bidCount > 0 ? book.bidQuantities[0] : 0;
+    }
+
+    private static long bestAskQuantity(OrderBook book, int arg) {
+        return book.askCount > 0 ? book.askQuantities[0] : 0;
+    }
+
+    private static long spread(OrderBook book, int arg) {
+        return book.bidCount > 0 && book.askCount > 0 ? book.askPrices[0] - book.bidPrices[0] : NO_PRICE;
+    }
+
+    private static long bidDepth(OrderBook book, int levels) {
+        return sum(book.bidQuantities, Math.min(Math.min(levels, book.bidCount), book.capacity));
+    }
+
+    private static long askDepth(OrderBook book, int levels) {
+        return sum(book.askQuantities, Math.min(Math.min(levels, book.askCount), book.capacity));
+    }
+
+    private static long version(OrderBook book, int arg) {
+        return book.version;
+    }
+
+    private static long sum(int[] quantities, int count) {
+        long total = 0;
+        for (int i = 0; i < count; i++) {
+            total += quantities[i];
+        }
+        return total;
+    }
+
+    @FunctionalInterface
+    private interface Query {
+        long apply(OrderBook book, int arg);
+    }
+}
@@ -0,0 +1,73 @@
+package com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.orderbook;
+
+/**
+ * Reusable holder of a consistent copy of an {@link OrderBook}. Filled by {@link OrderBook#copyTo(OrderBookSnapshot)}
+ * without allocations, so one holder may be reused for many reads. Not thread-safe
+ */
+public class OrderBookSnapshot {
+
+    final long[] bidPrices;
+    final int[] bidQuantities;
+    final long[] askPrices;
+    final int[] askQuantities;
+    int bidCount;
+    int askCount;
+    long version;
+
+    /**
+     * @param capacity maximum number of price levels on each side
+     */
+    public OrderBookSnapshot(int capacity) {
+        bidPrices = new long[capacity];
+        bidQuantities = new int[capacity];
+        askPrices = new long[capacity];
+        askQuantities = new int[capacity];
+    }
+
+    public int getBidCount() {
+        return bidCount;
+    }
+
+    public int getAskCount() {
+        return askCount;
+    }
+
+    /**
+     * @param level price level, 0 is the best
+     * @return bid price in ticks
+     */
+    public long getBidPrice(int level) {
+        return bidPrices[level];
+    }
+
+    /**
+     * @param level price level, 0 is the best
+     * @return bid quantity in lots
+     */
+    public int getBidQuantity(int level) {
+        return bidQuantities[level];
+    }
+
+    /**
+     * @param level price level, 0 is the best
+     * @return ask price in ticks
+     */
+    public long getAskPrice(int level) {
+        return askPrices[level];
+    }
+
+    /**
+     * @param level price level, 0 is the best
+     * @return ask quantity in lots
+     */
+    public int getAskQuantity(int level) {
+        return askQuantities[level];
+    }
+
+    /**
+     * @return number of updates of the order book, applied before the copy was made
+     */
+    public long getVersion() {
+        return version;
+    }
+}
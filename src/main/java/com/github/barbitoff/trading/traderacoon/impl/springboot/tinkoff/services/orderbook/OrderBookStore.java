@@ -0,0 +1,180 @@
+package com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.orderbook;
+
+import com.github.barbitoff.trading.traderacoon.api.model.exception.TradingApiException;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.config.TinkoffOpenApiProperties;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.MarketDataService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import ru.tinkoff.invest.openapi.OpenApi;
+import ru.tinkoff.invest.openapi.models.market.Orderbook;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Local replicas of instrument order books. A book is created from a polled order book, which also gives
+ * the tick size, and then, if streaming is enabled, is kept up to date with the streaming API. Books are never
+ * replaced, so a reference, once obtained, stays current.
+ * <p>
+ * If the stream of a book fails, the book goes stale (see {@link #isStale(String)}): only polls update it until
+ * it's tracked again, which resubscribes to the stream
+ *
+ * @see OrderBook
+ * @see TinkoffOpenApiProperties.OrderBooks
+ */
+@Slf4j
+@Component
+public class OrderBookStore implements DisposableBean {
+
+    private final OpenApi api;
+    private final MarketDataService marketDataService;
+    private final TinkoffOpenApiProperties props;
+
+    private final Map<String, CompletableFuture<OrderBook>> books = new ConcurrentHashMap<>();
+    private final Map<String, Disposable> streams = new ConcurrentHashMap<>();
+
+    public OrderBookStore(OpenApi api, MarketDataService marketDataService, TinkoffOpenApiProperties props) {
+        this.api = api;
+        this.marketDataService = marketDataService;
+        this.props = props;
+    }
+
+    @Override
+    public synchronized void destroy() {
+        streams.values().forEach(Disposable::dispose);
+        streams.clear();
+    }
+
+    /**
+     * Starts keeping the order book of the instrument. If it's already kept, only resubscribes a stale book
+     * to the stream
+     *
+     * @param figi Figi code of the instrument
+     * @return future of the order book, failed with {@link TradingApiException} if the API has no order book
+     * for the instrument
+     */
+    public CompletableFuture<OrderBook> track(String figi) {
+        CompletableFuture<OrderBook> created = new CompletableFuture<>();
+        CompletableFuture<OrderBook> existing = books.putIfAbsent(figi, created);
+        if (existing != null) {
+            if (isStale(figi)) {
+                log.info("Resubscribing stale order book of {}", figi);
+                existing.thenAccept(book -> stream(figi, book, existing));
+            }
+            return existing;
+        }
+        created.whenComplete((loaded, ex) -> {
+            if (ex != null) {
+                books.remove(figi, created);
+            }
+        });
+        load(figi, created);
+        return created;
+    }
+
+    /**
+     * Stops keeping the order book of the instrument
+     *
+     * @param figi Figi code of the instrument
+     */
+    public synchronized void untrack(String figi) {
+        books.remove(figi);
+        Disposable stream = streams.remove(figi);
+        if (stream != null) {
+            stream.dispose();
+        }
+    }
+
+    /**
+     * Updates the kept order book of the instrument with a polled one
+     *
+     * @param figi Figi code of the instrument
+     * @return future of the updated order book, empty if the order book isn't kept
+     */
+    public CompletableFuture<Optional<OrderBook>> poll(String figi) {
+        Optional<OrderBook> book = getBook(figi);
+        if (book.isEmpty()) {
+            return CompletableFuture.completedFuture(Optional.empty());
+        }
+        return requestOrderbook(figi).thenApply(src -> {
+            book.get().apply(src);
+            return book;
+        });
+    }
+
+    /**
+     * @param figi Figi code of the instrument
+     * @return true if the order book is kept, but is no longer updated by the stream, as the stream has failed
+     */
+    public synchronized boolean isStale(String figi) {
+        return props.getOrderBooks().isStreaming() && getBook(figi).isPresent() && !streams.containsKey(figi);
+    }
+
+    /**
+     * @param figi Figi code of the instrument
+     * @return order book, empty if it isn't kept or isn't loaded yet
+     */
+    public Optional<OrderBook> getBook(String figi) {
+        CompletableFuture<OrderBook> book = books.get(figi);
+        if (book == null || !book.isDone() || book.isCompletedExceptionally()) {
+            return Optional.empty();
+        }
+        return Optional.of(book.join());
+    }
+
+    private void load(String figi, CompletableFuture<OrderBook> future) {
+        int depth = props.getOrderBooks().getDepth();
+        requestOrderbook(figi).thenApply(src -> {
+            OrderBook book = new OrderBook(figi, src.minPriceIncrement, depth);
+            book.apply(src);
+            return book;
+        }).whenComplete((book, ex) -> {
+            if (ex != null) {
+                future.completeExceptionally(ex);
+                return;
+            }
+            if (props.getOrderBooks().isStreaming()) {
+                stream(figi, book, future);
+            }
+            log.debug("Order book of {} loaded", figi);
+            future.complete(book);
+        });
+    }
+
+    /**
+     * Subscribes the book to the stream, unless it has been untracked (or tracked again) meanwhile
+     */
+    private synchronized void stream(String figi, OrderBook book, CompletableFuture<OrderBook> future) {
+        if (books.get(figi) != future) {
+            return;
+        }
+        Disposable.Swap stream = Disposables.swap();
+        Disposable replaced = streams.put(figi, stream);
+        if (replaced != null) {
+            replaced.dispose();
+        }
+        stream.update(marketDataService.orderbooks(figi, props.getOrderBooks().getDepth()).subscribe(
+                book::apply,
+                ex -> {
+                    log.error("Order book stream of {} failed, the book is stale", figi, ex);
+                    streamEnded(figi, stream);
+                },
+                () -> streamEnded(figi, stream)));
+    }
+
+    private synchronized void streamEnded(String figi, Disposable stream) {
+        streams.remove(figi, stream);
+    }
+
+    private CompletableFuture<Orderbook> requestOrderbook(String figi) {
+        return api.getMarketContext().getMarketOrderbook(figi, props.getOrderBooks().getDepth())
+                .thenApply(src -> src.orElseThrow(() ->
+                        new CompletionException(new TradingApiException("No order book for " + figi))));
+    }
+}
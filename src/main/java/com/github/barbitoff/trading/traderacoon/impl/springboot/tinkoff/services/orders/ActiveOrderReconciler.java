@@ -0,0 +1,88 @@
+package com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.orders;
+
+import com.github.barbitoff.trading.traderacoon.api.model.Order;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.config.TinkoffOpenApiProperties;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.model.ActiveOrdersDiff;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.AccountServiceImpl;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.OrderServiceImpl;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * If active orders cache is enabled, periodically requests active orders from the API and reconciles
+ * {@link ActiveOrderStore} with them. Only one request is in flight at a time
+ */
+@Slf4j
+@Component
+public class ActiveOrderReconciler implements InitializingBean, DisposableBean {
+
+    private final OrderServiceImpl orderService;
+    private final AccountServiceImpl accountService;
+    private final ActiveOrderStore store;
+    private final TinkoffOpenApiProperties props;
+    private ScheduledExecutorService scheduler;
+
+    public ActiveOrderReconciler(OrderServiceImpl orderService, AccountServiceImpl accountService,
+                                 ActiveOrderStore store, TinkoffOpenApiProperties props) {
+        this.orderService = orderService;
+        this.accountService = accountService;
+        this.store = store;
+        this.props = props;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (!props.getOrders().isActiveCacheEnabled()) {
+            return;
+        }
+        long interval = props.getOrders().getReconcileInterval().toMillis();
+        log.info("Starting active orders reconciliation every {} ms", interval);
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "tinkoff-orders-reconciler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::reconcileQuietly, 0, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void destroy() {
+        if (scheduler != null) {
+            log.info("Stopping active orders reconciliation");
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * Requests active orders from the API and reconciles the store with them
+     *
+     * @return changes since the previous reconciliation
+     * @throws ExecutionException   if the API request fails
+     * @throws InterruptedException if interrupted while waiting for the API
+     */
+    public ActiveOrdersDiff reconcile() throws ExecutionException, InterruptedException {
+        long start = store.startReconciliation();
+        List<Order> actual = accountService.getTradingAccountAsync()
+                .thenCompose(account -> orderService.getActiveOrdersAsync(account.getId()))
+                .get();
+        return store.reconcile(actual, start);
+    }
+
+    private void reconcileQuietly() {
+        try {
+            reconcile();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (Exception ex) {
+            log.warn("Error reconciling active orders", ex);
+        }
+    }
+}
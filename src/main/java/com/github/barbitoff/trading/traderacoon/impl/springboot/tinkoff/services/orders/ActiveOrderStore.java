@@ -0,0 +1,200 @@
+package com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.orders;
+
+import com.github.barbitoff.trading.traderacoon.api.model.Order;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.config.TinkoffOpenApiProperties;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.model.ActiveOrdersDiff;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.OrderServiceImpl;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+/**
+ * In-memory store of active orders, keyed by order id. Updated on placements and cancellations made
+ * through the starter and periodically reconciled with the API by {@link ActiveOrderReconciler}. Local changes
+ * are ignored unless the cache is enabled.
+ * <p>
+ * Reads don't lock: the current orders are published as an immutable list on every change. Changes are rare
+ * compared to reads, so they are simply synchronized
+ */
+@Slf4j
+@Component
+public class ActiveOrderStore {
+
+    private final ApplicationEventPublisher eventPublisher;
+    private final boolean enabled;
+
+    private final Map<String, Order> orders = new LinkedHashMap<>();
+    private Map<String, Order> reconciled = Map.of();
+    private final Map<String, LocalChange> placed = new HashMap<>();
+    private final Map<String, LocalChange> cancelled = new HashMap<>();
+    private long version;
+
+    private volatile List<Order> activeOrders = List.of();
+    private volatile ActiveOrdersDiff lastDiff = ActiveOrdersDiff.EMPTY;
+    private volatile boolean initialized;
+    private volatile long reconciliations;
+
+    public ActiveOrderStore(TinkoffOpenApiProperties props, ApplicationEventPublisher eventPublisher) {
+        this.enabled = props.getOrders().isActiveCacheEnabled();
+        this.eventPublisher = eventPublisher;
+    }
+
+    /**
+     * @return true if the store has been reconciled with the API at least once and may serve active orders
+     */
+    public boolean isInitialized() {
+        return initialized;
+    }
+
+    /**
+     * @return number of completed reconciliations. Read it before {@link #getActiveOrders()}: the orders are
+     * published before the counter is incremented
+     */
+    public long getReconciliations() {
+        return reconciliations;
+    }
+
+    /**
+     * @return active orders
+     */
+    public List<Order> getActiveOrders() {
+        return activeOrders;
+    }
+
+    /**
+     * @return changes found by the last reconciliation
+     */
+    public ActiveOrdersDiff getLastDiff() {
+        return lastDiff;
+    }
+
+    /**
+     * Registers an order, placed through the starter
+     *
+     * @param order placed order
+     */
+    public synchronized void placed(Order order) {
+        if (!enabled || !OrderServiceImpl.isCancellable(order)) {
+            return;
+        }
+        version++;
+        placed.put(order.getId(), new LocalChange(order, version));
+        orders.put(order.getId(), order);
+        publish();
+    }
+
+    /**
+     * Registers an order, cancelled through the starter
+     *
+     * @param orderId order id
+     */
+    public synchronized void cancelled(String orderId) {
+        if (!enabled) {
+            return;
+        }
+        version++;
+        Order order = orders.remove(orderId);
+        if (order == null) {
+            order = reconciled.get(orderId);
+        }
+        if (order != null) {
+            cancelled.put(orderId, new LocalChange(order, version));
+            publish();
+        }
+    }
+
+    /**
+     * Marks the start of a reconciliation. Must be called before requesting active orders from the API
+     *
+     * @return reconciliation start mark, to be passed to {@link #reconcile(List, long)}
+     */
+    public synchronized long startReconciliation() {
+        return version;
+    }
+
+    /**
+     * Replaces the stored orders with the ones got from the API. Placements registered after the reconciliation
+     * start and cancellations are applied on top, as the API response may not reflect them yet.
+     * If there are changes since the previous reconciliation, {@link ActiveOrdersChangedEvent} is published
+     *
+     * @param actual active orders, got from the API
+     * @param start  reconciliation start mark
+     * @return changes since the previous reconciliation
+     */
+    public ActiveOrdersDiff reconcile(List<Order> actual, long start) {
+        ActiveOrdersDiff diff;
+        synchronized (this) {
+            Map<String, Order> current = new LinkedHashMap<>();
+            actual.forEach(order -> current.put(order.getId(), order));
+            Set<String> actualIds = Set.copyOf(current.keySet());
+            placed.forEach((id, change) -> {
+                if (change.version > start) {
+                    current.putIfAbsent(id, change.order);
+                }
+            });
+            // the API may list a cancelled order for a while
+            cancelled.keySet().forEach(current::remove);
+
+            List<Order> added = new ArrayList<>();
+            current.forEach((id, order) -> {
+                if (!reconciled.containsKey(id)) {
+                    added.add(order);
+                }
+            });
+            // orders, placed and gone between reconciliations, are reported as both added and removed
+            Map<String, Order> known = new LinkedHashMap<>(reconciled);
+            placed.forEach((id, change) -> {
+                if (known.putIfAbsent(id, change.order) == null && !current.containsKey(id)) {
+                    added.add(change.order);
+                }
+            });
+            List<Order> filled = new ArrayList<>();
+            List<Order> cancelledOrders = new ArrayList<>();
+            known.forEach((id, order) -> {
+                if (!current.containsKey(id)) {
+                    if (cancelled.containsKey(id)) {
+                        cancelledOrders.add(order);
+                    } else {
+                        filled.add(order);
+                    }
+                }
+            });
+
+            orders.clear();
+            orders.putAll(current);
+            reconciled = Map.copyOf(current);
+            placed.clear();
+            cancelled.keySet().retainAll(actualIds);
+            publish();
+            diff = new ActiveOrdersDiff(List.copyOf(added), List.copyOf(filled), List.copyOf(cancelledOrders));
+            lastDiff = diff;
+            initialized = true;
+            reconciliations++;
+        }
+        if (!diff.isEmpty()) {
+            log.debug("Active orders changed: {} added, {} filled, {} cancelled",
+                    diff.getAdded().size(), diff.getFilled().size(), diff.getCancelled().size());
+            eventPublisher.publishEvent(new ActiveOrdersChangedEvent(this, diff));
+        }
+        return diff;
+    }
+
+    private void publish() {
+        activeOrders = List.copyOf(orders.values());
+    }
+
+    /**
+     * Order change, made through the starter
+     */
+    private static class LocalChange {
+        final Order order;
+        final long version;
+
+        LocalChange(Order order, long version) {
+            this.order = order;
+            this.version = version;
+        }
+    }
+}
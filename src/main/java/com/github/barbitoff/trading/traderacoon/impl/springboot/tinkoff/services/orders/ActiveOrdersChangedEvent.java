@@ -0,0 +1,26 @@
+package com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.orders;
+
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.model.ActiveOrdersDiff;
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * Published when reconciliation of the active orders cache finds changes
+ */
+public class ActiveOrdersChangedEvent extends ApplicationEvent {
+
+    private static final long serialVersionUID = 1L;
+
+    private final ActiveOrdersDiff diff;
+
+    public ActiveOrdersChangedEvent(Object source, ActiveOrdersDiff diff) {
+        super(source);
+        this.diff = diff;
+    }
+
+    /**
+     * @return changes since the previous reconciliation
+     */
+    public ActiveOrdersDiff getDiff() {
+        return diff;
+    }
+}
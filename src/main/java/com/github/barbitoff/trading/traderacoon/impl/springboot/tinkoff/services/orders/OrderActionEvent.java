@@ -0,0 +1,48 @@
+package com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.orders;
+
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * Published when an order is placed or cancelled through the order service
+ */
+public class OrderActionEvent extends ApplicationEvent {
+
+    private static final long serialVersionUID = 1L;
+
+    public enum Action {
+        PLACED,
+        CANCELLED
+    }
+
+    private final Action action;
+    private final String orderId;
+    private final String accountId;
+
+    public OrderActionEvent(Object source, Action action, String orderId, String accountId) {
+        super(source);
+        this.action = action;
+        this.orderId = orderId;
+        this.accountId = accountId;
+    }
+
+    /**
+     * @return what was done with the order
+     */
+    public Action getAction() {
+        return action;
+    }
+
+    /**
+     * @return order id
+     */
+    public String getOrderId() {
+        return orderId;
+    }
+
+    /**
+     * @return trading account id
+     */
+    public String getAccountId() {
+        return accountId;
+    }
+}
@@ -0,0 +1,229 @@
+package com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.orders;
+
+import com.github.barbitoff.trading.traderacoon.api.model.Order;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.config.TinkoffOpenApiProperties;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.AccountServiceImpl;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.OrderServiceImpl;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Watches orders until they are no longer active, using one active orders poll for all the tracked orders.
+ * <p>
+ * The poll interval adapts: it drops to the minimum when tracked orders change (or a new order is tracked)
+ * and doubles up to the maximum while nothing changes. When there is nothing to track, polling is suspended.
+ * <p>
+ * If the active orders cache is enabled, the orders are taken from {@link ActiveOrderStore} instead of the API,
+ * so the tracker doesn't duplicate the requests of {@link ActiveOrderReconciler}. A tracked order is then
+ * considered gone when it's missing after a reconciliation, started after the order was tracked. Changes, found
+ * by a reconciliation, trigger a poll at once
+ */
+@Slf4j
+@Component
+public class OrderTracker implements InitializingBean, DisposableBean {
+
+    private final OrderServiceImpl orderService;
+    private final AccountServiceImpl accountService;
+    private final ActiveOrderStore store;
+    private final TinkoffOpenApiProperties props;
+
+    private final Map<String, TrackedOrder> tracked = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private ScheduledExecutorService scheduler;
+    private ScheduledFuture<?> nextPoll;
+    private long intervalMillis;
+    private boolean resetInterval;
+
+    public OrderTracker(OrderServiceImpl orderService, AccountServiceImpl accountService, ActiveOrderStore store,
+                        TinkoffOpenApiProperties props) {
+        this.orderService = orderService;
+        this.accountService = accountService;
+        this.store = store;
+        this.props = props;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "tinkoff-order-tracker");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public void destroy() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Starts tracking an order. If the order is already tracked, returns the same future
+     *
+     * @param order order to track
+     * @return future, completed with the last seen state of the order when it is no longer active (filled or
+     * cancelled). Cancelling the future stops tracking
+     */
+    public CompletableFuture<Order> track(Order order) {
+        TrackedOrder trackedOrder = trackedOrder(order.getId(), order);
+        if (!OrderServiceImpl.isCancellable(order)) {
+            // already done
+            trackedOrder.future.complete(order);
+        } else {
+            pollSoon();
+        }
+        return trackedOrder.future;
+    }
+
+    /**
+     * Starts tracking an order by its id. If the order is already tracked, returns the same future
+     *
+     * @param orderId id of the order to track
+     * @return future, completed with the last seen state of the order when it is no longer active, or with null
+     * if the order hasn't been seen active at all. Cancelling the future stops tracking
+     */
+    public CompletableFuture<Order> track(String orderId) {
+        TrackedOrder trackedOrder = trackedOrder(orderId, null);
+        pollSoon();
+        return trackedOrder.future;
+    }
+
+    /**
+     * Triggers a poll, when reconciliation of the active orders cache finds changes
+     *
+     * @param event changes
+     */
+    @EventListener
+    public void onActiveOrdersChanged(ActiveOrdersChangedEvent event) {
+        if (!tracked.isEmpty()) {
+            pollSoon();
+        }
+    }
+
+    /**
+     * @return number of orders being tracked
+     */
+    public int getTrackedCount() {
+        return tracked.size();
+    }
+
+    /**
+     * @return current poll interval in milliseconds, 0 if polling is suspended
+     */
+    public synchronized long getPollInterval() {
+        return nextPoll == null ? 0 : intervalMillis;
+    }
+
+    /**
+     * Resets the poll interval to the minimum and reschedules the next poll accordingly
+     */
+    private synchronized void pollSoon() {
+        intervalMillis = props.getOrders().getTrackerMinInterval().toMillis();
+        if (nextPoll == null || nextPoll.getDelay(TimeUnit.MILLISECONDS) > intervalMillis && nextPoll.cancel(false)) {
+            nextPoll = scheduler.schedule(this::poll, intervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            // a poll is running, the next one should be soon too
+            resetInterval = true;
+        }
+    }
+
+    private TrackedOrder trackedOrder(String orderId, Order order) {
+        return tracked.computeIfAbsent(orderId, id -> {
+            TrackedOrder created = new TrackedOrder(id, order, sequence.incrementAndGet(),
+                    store.getReconciliations());
+            created.future.whenComplete((o, ex) -> tracked.remove(id, created));
+            return created;
+        });
+    }
+
+    private synchronized void scheduleNext(boolean changed) {
+        boolean reset = resetInterval;
+        resetInterval = false;
+        if (tracked.isEmpty()) {
+            log.debug("No orders to track, polling suspended");
+            nextPoll = null;
+            return;
+        }
+        intervalMillis = changed || reset
+                ? props.getOrders().getTrackerMinInterval().toMillis()
+                : Math.min(intervalMillis * 2, props.getOrders().getTrackerMaxInterval().toMillis());
+        nextPoll = scheduler.schedule(this::poll, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void poll() {
+        boolean fromStore = props.getOrders().isActiveCacheEnabled();
+        // orders tracked after this point may be missing in the response
+        long pollStart = sequence.get();
+        long reconciliations = store.getReconciliations();
+        boolean changed = false;
+        try {
+            List<Order> active;
+            if (fromStore) {
+                active = store.getActiveOrders();
+            } else {
+                active = accountService.getTradingAccountAsync()
+                        .thenCompose(account -> orderService.getActiveOrdersAsync(account.getId()))
+                        .get(props.getOrders().getTrackerTimeout().toMillis(), TimeUnit.MILLISECONDS);
+            }
+            Map<String, Order> activeById = active.stream()
+                    .collect(Collectors.toMap(Order::getId, Function.identity(), (o1, o2) -> o2));
+            for (TrackedOrder trackedOrder : tracked.values()) {
+                Order actual = activeById.get(trackedOrder.id);
+                Order lastSeen = trackedOrder.lastSeen;
+                if (actual != null) {
+                    if (lastSeen == null || !Objects.equals(actual.getLotsFilled(), lastSeen.getLotsFilled())
+                            || actual.getStatus() != lastSeen.getStatus()) {
+                        changed = true;
+                    }
+                    trackedOrder.lastSeen = actual;
+                } else if (fromStore
+                        ? reconciliations - trackedOrder.reconciliations >= 2
+                        : trackedOrder.sequence <= pollStart) {
+                    log.info("Order {} is no longer active", trackedOrder.id);
+                    changed = true;
+                    // removed before completion, so the order isn't counted once the caller sees it completed
+                    tracked.remove(trackedOrder.id, trackedOrder);
+                    trackedOrder.future.complete(lastSeen);
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return;
+        } catch (Exception ex) {
+            log.warn("Error polling tracked orders", ex);
+        }
+        scheduleNext(changed);
+    }
+
+    /**
+     * Order being tracked
+     */
+    private static class TrackedOrder {
+        final CompletableFuture<Order> future = new CompletableFuture<>();
+        final String id;
+        final long sequence;
+        /**
+         * Reconciliations of the store, completed when the order was tracked. The one in progress may
+         * have missed the order, so it's gone only after one more
+         */
+        final long reconciliations;
+        volatile Order lastSeen;
+
+        TrackedOrder(String id, Order order, long sequence, long reconciliations) {
+            this.id = id;
+            this.lastSeen = order;
+            this.sequence = sequence;
+            this.reconciliations = reconciliations;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.orders;
+
+import com.github.barbitoff.trading.traderacoon.api.model.Instrument;
+import com.github.barbitoff.trading.traderacoon.api.model.exception.OrderRejectedException;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.config.TinkoffOpenApiProperties;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.InstrumentServiceImpl;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.quotes.LastPriceCache;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.tinkoff.invest.openapi.models.orders.Operation;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Validates orders against the instrument information before they are sent to the API, so that obviously
+ * wrong orders are rejected locally. Instrument information is got from {@link InstrumentServiceImpl}, which
+ * caches it unless the cache is disabled. If the information can't be got, the order is passed to the API as is.
+ * <p>
+ * If configured, a limit price is also checked against the last price from {@link LastPriceCache}. Only a fresh
+ * cached price is used: validation doesn't wait for a price request
+ */
+@Slf4j
+@Component
+public class OrderValidator {
+
+    private final InstrumentServiceImpl instrumentService;
+    private final LastPriceCache lastPriceCache;
+    private final TinkoffOpenApiProperties props;
+
+    public OrderValidator(InstrumentServiceImpl instrumentService, LastPriceCache lastPriceCache,
+                          TinkoffOpenApiProperties props) {
+        this.instrumentService = instrumentService;
+        this.lastPriceCache = lastPriceCache;
+        this.props = props;
+    }
+
+    /**
+     * Validates an order
+     *
+     * @param figi      Figi code of the instrument
+     * @param lots      number of lots
+     * @param price     price for the limited order, null for the market order
+     * @param operation operation to perform
+     * @return future, completed with the price to place the order with (rounded to the price increment, if
+     * configured) or exceptionally with {@link OrderRejectedException} if the order is invalid
+     */
+    public CompletableFuture<BigDecimal> validate(String figi, int lots, BigDecimal price, Operation operation) {
+        if (!props.getOrders().isValidationEnabled()) {
+            return CompletableFuture.completedFuture(price);
+        }
+        if (lots <= 0) {
+            return reject("Number of lots must be positive, got " + lots);
+        }
+        if (price != null && price.signum() <= 0) {
+            return reject("Price must be positive, got " + price);
+        }
+        return instrumentService.getInstrumentAsync(figi).handle((instrument, ex) -> {
+            if (ex != null) {
+                log.warn("Can't get instrument {} to validate the order, skipping validation", figi, ex);
+                return price;
+            }
+            return validate(instrument.orElseThrow(
+                    () -> new CompletionException(rejection("Unknown instrument " + figi))),
+                    price, operation);
+        });
+    }
+
+    private BigDecimal validate(Instrument instrument, BigDecimal price, Operation operation) {
+        if (!props.getOrders().getAllowedInstrumentTypes().isEmpty()
+                && !props.getOrders().getAllowedInstrumentTypes().contains(instrument.getType())) {
+            throw new CompletionException(rejection(
+                    "Instrument type " + instrument.getType() + " is not allowed"));
+        }
+        BigDecimal increment = instrument.getMinPriceIncrement();
+        if (price == null || increment == null || increment.signum() <= 0
+                || price.remainder(increment).signum() == 0) {
+            return checkDeviation(instrument.getFigi(), price);
+        }
+        if (!props.getOrders().isRoundToTick()) {
+            throw new CompletionException(rejection(
+                    "Price " + price + " is not a multiple of the price increment " + increment));
+        }
+        BigDecimal ticks = price.divide(increment, 0,
+                operation == Operation.Buy ? RoundingMode.FLOOR : RoundingMode.CEILING);
+        if (ticks.signum() <= 0) {
+            throw new CompletionException(rejection(
+                    "Price " + price + " is less than the price increment " + increment));
+        }
+        BigDecimal rounded = ticks.multiply(increment);
+        log.info("Price {} rounded to {}", price, rounded);
+        return checkDeviation(instrument.getFigi(), rounded);
+    }
+
+    private BigDecimal checkDeviation(String figi, BigDecimal price) {
+        BigDecimal maxDeviation = props.getOrders().getMaxPriceDeviation();
+        if (price == null || maxDeviation == null
+                || !lastPriceCache.isFresh(figi, props.getLastPrices().getMaxAge())) {
+            return price;
+        }
+        BigDecimal lastPrice = lastPriceCache.getPrice(figi).orElse(null);
+        if (lastPrice == null || lastPrice.signum() <= 0) {
+            return price;
+        }
+        BigDecimal deviation = price.subtract(lastPrice).abs().divide(lastPrice, MathContext.DECIMAL64);
+        if (deviation.compareTo(maxDeviation) > 0) {
+            throw new CompletionException(rejection(
+                    "Price " + price + " is too far from the last price " + lastPrice));
+        }
+        return price;
+    }
+
+    private static OrderRejectedException rejection(String message) {
+        log.warn("Order rejected by validation: {}", message);
+        return new OrderRejectedException(message);
+    }
+
+    private static <T> CompletableFuture<T> reject(String message) {
+        return CompletableFuture.failedFuture(rejection(message));
+    }
+}
@@ -0,0 +1,28 @@
+package com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.portfolio;
+
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.model.PortfolioPositionChange;
+import org.springframework.context.ApplicationEvent;
+
+import java.util.List;
+
+/**
+ * Published when a portfolio poll finds changed positions
+ */
+public class PortfolioChangedEvent extends ApplicationEvent {
+
+    private static final long serialVersionUID = 1L;
+
+    private final List<PortfolioPositionChange> changes;
+
+    public PortfolioChangedEvent(Object source, List<PortfolioPositionChange> changes) {
+        super(source);
+        this.changes = changes;
+    }
+
+    /**
+     * @return changes since the previous poll
+     */
+    public List<PortfolioPositionChange> getChanges() {
+        return changes;
+    }
+}
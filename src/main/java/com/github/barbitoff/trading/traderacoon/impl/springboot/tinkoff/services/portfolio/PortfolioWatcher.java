@@ -0,0 +1,195 @@
+package com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.portfolio;
+
+import com.github.barbitoff.trading.traderacoon.api.model.CurrencyPortfolioPosition;
+import com.github.barbitoff.trading.traderacoon.api.model.NonCurrencyPortfolioPosition;
+import com.github.barbitoff.trading.traderacoon.api.model.PortfolioPosition;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.config.TinkoffOpenApiProperties;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.model.PortfolioPositionChange;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.AccountServiceImpl;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.PortfolioServiceImpl;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.DirectProcessor;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * If enabled, periodically polls portfolio currencies and positions and publishes changed positions only:
+ * opened, closed, or with changed balance or blocked amount. Positions are keyed by Figi, currencies - by
+ * currency code. The first poll only remembers the portfolio.
+ * <p>
+ * Changes are published as {@link PortfolioChangedEvent} and to the {@link #changes()} flux
+ */
+@Slf4j
+@Component
+public class PortfolioWatcher implements InitializingBean, DisposableBean {
+
+    private final PortfolioServiceImpl portfolioService;
+    private final AccountServiceImpl accountService;
+    private final TinkoffOpenApiProperties props;
+    private final ApplicationEventPublisher eventPublisher;
+    private final DirectProcessor<PortfolioPositionChange> processor = DirectProcessor.create();
+    private final FluxSink<PortfolioPositionChange> sink = processor.sink();
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Known positions, updated in place by each poll
+     */
+    private final Map<String, KnownPosition> positions = new HashMap<>();
+    private long pollNumber;
+
+    public PortfolioWatcher(PortfolioServiceImpl portfolioService, AccountServiceImpl accountService,
+                            TinkoffOpenApiProperties props, ApplicationEventPublisher eventPublisher) {
+        this.portfolioService = portfolioService;
+        this.accountService = accountService;
+        this.props = props;
+        this.eventPublisher = eventPublisher;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (!props.getPortfolioWatcher().isEnabled()) {
+            return;
+        }
+        long interval = props.getPortfolioWatcher().getPollInterval().toMillis();
+        log.info("Starting portfolio watching every {} ms", interval);
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "tinkoff-portfolio-watcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::pollQuietly, 0, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void destroy() {
+        if (scheduler != null) {
+            log.info("Stopping portfolio watching");
+            scheduler.shutdownNow();
+        }
+        sink.complete();
+    }
+
+    /**
+     * Changes of the portfolio positions. Each subscriber gets the changes found after it subscribed,
+     * buffered if it is slower than polling
+     *
+     * @return flux of changes, completed when the watcher is destroyed
+     */
+    public Flux<PortfolioPositionChange> changes() {
+        return processor.onBackpressureBuffer();
+    }
+
+    /**
+     * Requests the portfolio from the API and finds changed positions
+     *
+     * @return changes since the previous poll
+     * @throws ExecutionException   if the API request fails
+     * @throws InterruptedException if interrupted while waiting for the API
+     */
+    public List<PortfolioPositionChange> poll() throws ExecutionException, InterruptedException {
+        List<List<PortfolioPosition>> received = accountService.getTradingAccountAsync()
+                .thenCompose(account -> {
+                    CompletableFuture<List<PortfolioPosition>> currencies =
+                            portfolioService.getCurrenciesAsync(account.getId());
+                    CompletableFuture<List<PortfolioPosition>> nonCurrencies =
+                            portfolioService.getNonCurrenciesAsync(account.getId());
+                    return currencies.thenCombine(nonCurrencies, List::of);
+                })
+                .get();
+        List<PortfolioPositionChange> changes = update(received);
+        if (!changes.isEmpty()) {
+            log.debug("Portfolio changed: {}", changes);
+            changes.forEach(sink::next);
+            eventPublisher.publishEvent(new PortfolioChangedEvent(this, changes));
+        }
+        return changes;
+    }
+
+    /**
+     * @return positions, known after the last poll, by key
+     */
+    public synchronized Map<String, PortfolioPosition> getPositions() {
+        Map<String, PortfolioPosition> result = new HashMap<>(positions.size());
+        positions.forEach((key, known) -> result.put(key, known.position));
+        return result;
+    }
+
+    private synchronized List<PortfolioPositionChange> update(List<List<PortfolioPosition>> received) {
+        boolean firstPoll = pollNumber++ == 0;
+        List<PortfolioPositionChange> changes = new ArrayList<>();
+        for (List<PortfolioPosition> part : received) {
+            for (PortfolioPosition position : part) {
+                String key = keyOf(position);
+                KnownPosition known = positions.get(key);
+                if (known == null) {
+                    positions.put(key, new KnownPosition(position, pollNumber));
+                    if (!firstPoll) {
+                        changes.add(PortfolioPositionChange.opened(key, position));
+                    }
+                    continue;
+                }
+                known.seenAt = pollNumber;
+                if (!PortfolioPositionChange.sameAmount(known.position.getBalance(), position.getBalance())
+                        || !PortfolioPositionChange.sameAmount(known.position.getBlocked(), position.getBlocked())) {
+                    changes.add(PortfolioPositionChange.changed(key, known.position, position));
+                }
+                known.position = position;
+            }
+        }
+        Iterator<Map.Entry<String, KnownPosition>> it = positions.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, KnownPosition> entry = it.next();
+            if (entry.getValue().seenAt != pollNumber) {
+                changes.add(PortfolioPositionChange.closed(entry.getKey(), entry.getValue().position));
+                it.remove();
+            }
+        }
+        return changes.isEmpty() ? Collections.emptyList() : changes;
+    }
+
+    private static String keyOf(PortfolioPosition position) {
+        if (position instanceof CurrencyPortfolioPosition) {
+            return ((CurrencyPortfolioPosition) position).getCurrency().getCurrencyCode();
+        }
+        return ((NonCurrencyPortfolioPosition) position).getFigi();
+    }
+
+    private void pollQuietly() {
+        try {
+            poll();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (Exception ex) {
+            log.warn("Error polling portfolio", ex);
+        }
+    }
+
+    /**
+     * Last known state of a position and the number of the poll, that received it
+     */
+    private static class KnownPosition {
+        PortfolioPosition position;
+        long seenAt;
+
+        KnownPosition(PortfolioPosition position, long seenAt) {
+            this.position = position;
+            this.seenAt = seenAt;
+        }
+    }
+}
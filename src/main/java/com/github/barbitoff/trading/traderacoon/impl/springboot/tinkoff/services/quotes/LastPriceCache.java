@@ -0,0 +1,335 @@
+package com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.quotes;
+
+import com.github.barbitoff.trading.traderacoon.api.model.exception.TradingApiException;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.config.TinkoffOpenApiProperties;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.MarketDataService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import ru.tinkoff.invest.openapi.OpenApi;
+import ru.tinkoff.invest.openapi.models.market.CandleInterval;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.BiConsumer;
+
+/**
+ * Last known prices of instruments, shared by all the consumers. Prices come from the streaming API for tracked
+ * instruments, from {@link #getPriceAsync(String)} fetches and from {@link #update(String, BigDecimal)} calls.
+ * <p>
+ * Each instrument gets a permanent index on its first update. Prices are kept as longs in billionths
+ * ({@link #SCALE} decimal places) together with the update time in primitive arrays, indexed by it. Reads are
+ * wait-free and don't allocate: resolve the index once with {@link #indexOf(String)}, then read by index.
+ * Writers of a slot are serialized, so a price always goes with its own time. The price is written before its
+ * time and the time is read before the price, so a reader never takes an older price for a newer one; at worst
+ * a just updated price looks a bit older.
+ * <p>
+ * Listeners (see {@link #addListener(BiConsumer)}) are notified of the prices, updated by Figi code: streamed,
+ * fetched and given to {@link #update(String, BigDecimal)}. They are notified while the slot is locked, so they get
+ * the updates of an instrument in the order they are applied
+ */
+@Slf4j
+@Component
+public class LastPriceCache implements DisposableBean {
+
+    /**
+     * Price of an instrument without a known price
+     */
+    public static final long NO_PRICE = Long.MIN_VALUE;
+    /**
+     * Number of decimal places of the long-encoded prices
+     */
+    public static final int SCALE = 9;
+
+    private static final int CHUNK_BITS = 10;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final int WRITE_LOCKS = 64;
+
+    private final OpenApi api;
+    private final MarketDataService marketDataService;
+    private final TinkoffOpenApiProperties props;
+
+    private final Map<String, Integer> indexes = new ConcurrentHashMap<>();
+    private final Map<String, Disposable> streams = new ConcurrentHashMap<>();
+    private final List<BiConsumer<String, BigDecimal>> listeners = new CopyOnWriteArrayList<>();
+    /**
+     * Striped locks, serializing writers of a slot
+     */
+    private final Object[] writeLocks = new Object[WRITE_LOCKS];
+    /**
+     * Chunks of [price, update time] pairs. The table grows by a chunk, existing chunks are never moved
+     */
+    private volatile AtomicLongArray[] chunks = new AtomicLongArray[0];
+    private int size;
+
+    public LastPriceCache(OpenApi api, MarketDataService marketDataService, TinkoffOpenApiProperties props) {
+        this.api = api;
+        this.marketDataService = marketDataService;
+        this.props = props;
+        for (int i = 0; i < WRITE_LOCKS; i++) {
+            writeLocks[i] = new Object();
+        }
+    }
+
+    @Override
+    public void destroy() {
+        streams.values().forEach(Disposable::dispose);
+        streams.clear();
+    }
+
+    /**
+     * Starts updating the price of the instrument from the streaming API with the close prices
+     * of minute candles. Does nothing if it's already tracked. If the stream fails or completes, the instrument
+     * is no longer tracked and may be tracked again
+     *
+     * @param figi Figi code of the instrument
+     */
+    public void track(String figi) {
+        Disposable.Swap stream = Disposables.swap();
+        if (streams.putIfAbsent(figi, stream) != null) {
+            return;
+        }
+        // disposes the subscription at once if untracked meanwhile
+        stream.update(marketDataService.candles(figi, CandleInterval.ONE_MIN).subscribe(
+                candle -> update(figi, candle.getClosingPrice()),
+                ex -> {
+                    log.error("Price stream of {} failed", figi, ex);
+                    streams.remove(figi, stream);
+                },
+                () -> streams.remove(figi, stream)));
+    }
+
+    /**
+     * Stops updating the price of the instrument from the streaming API. The last price is kept
+     *
+     * @param figi Figi code of the instrument
+     */
+    public void untrack(String figi) {
+        Disposable stream = streams.remove(figi);
+        if (stream != null) {
+            stream.dispose();
+        }
+    }
+
+    /**
+     * Adds a listener of the prices, updated by Figi code. It's called on the updating thread with the slot locked,
+     * so it must be quick and must not update the cache
+     *
+     * @param listener gets Figi code and the new price
+     */
+    public void addListener(BiConsumer<String, BigDecimal> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * @param figi  Figi code of the instrument
+     * @param price last price
+     */
+    public void update(String figi, BigDecimal price) {
+        int index = register(figi);
+        long encoded = encode(price);
+        synchronized (writeLock(index)) {
+            update(index, encoded);
+            notifyListeners(figi, price);
+        }
+    }
+
+    /**
+     * Updates the price without notifying the listeners
+     *
+     * @param index index of the instrument
+     * @param price last price in billionths
+     */
+    public void update(int index, long price) {
+        AtomicLongArray chunk = chunks[index >>> CHUNK_BITS];
+        int slot = (index & CHUNK_MASK) << 1;
+        synchronized (writeLock(index)) {
+            chunk.set(slot, price);
+            chunk.set(slot + 1, System.nanoTime());
+        }
+    }
+
+    /**
+     * @param figi Figi code of the instrument
+     * @return index of the instrument, -1 if there were no updates of its price
+     */
+    public int indexOf(String figi) {
+        Integer index = indexes.get(figi);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * @param index index of the instrument
+     * @return last price in billionths, {@link #NO_PRICE} if unknown
+     */
+    public long getPrice(int index) {
+        if (index < 0) {
+            return NO_PRICE;
+        }
+        return chunks[index >>> CHUNK_BITS].get((index & CHUNK_MASK) << 1);
+    }
+
+    /**
+     * @param index index of the instrument
+     * @return time since the last update in nanoseconds, {@link Long#MAX_VALUE} if the price is unknown
+     */
+    public long getAgeNanos(int index) {
+        if (index < 0) {
+            return Long.MAX_VALUE;
+        }
+        AtomicLongArray chunk = chunks[index >>> CHUNK_BITS];
+        int slot = (index & CHUNK_MASK) << 1;
+        long updatedAt = chunk.get(slot + 1);
+        if (chunk.get(slot) == NO_PRICE) {
+            return Long.MAX_VALUE;
+        }
+        return System.nanoTime() - updatedAt;
+    }
+
+    /**
+     * @param index       index of the instrument
+     * @param maxAgeNanos maximum age of the price in nanoseconds
+     * @return true if the price is known and isn't older than the maximum age
+     */
+    public boolean isFresh(int index, long maxAgeNanos) {
+        return getAgeNanos(index) <= maxAgeNanos;
+    }
+
+    /**
+     * @param figi   Figi code of the instrument
+     * @param maxAge maximum age of the price
+     * @return true if the price is known and isn't older than the maximum age
+     */
+    public boolean isFresh(String figi, Duration maxAge) {
+        return isFresh(indexOf(figi), maxAge.toNanos());
+    }
+
+    /**
+     * @param figi Figi code of the instrument
+     * @return last price, empty if unknown
+     */
+    public Optional<BigDecimal> getPrice(String figi) {
+        long price = getPrice(indexOf(figi));
+        return price == NO_PRICE ? Optional.empty() : Optional.of(decode(price));
+    }
+
+    /**
+     * Returns the cached price if it isn't older than {@link TinkoffOpenApiProperties.LastPrices#getMaxAge()},
+     * otherwise requests it from the API and caches it. If the price is updated while it's requested, the update
+     * is newer than the response, so it's kept and returned instead
+     *
+     * @param figi Figi code of the instrument
+     * @return future of the last price, failed with {@link TradingApiException} if the API doesn't know it
+     */
+    public CompletableFuture<BigDecimal> getPriceAsync(String figi) {
+        int index = indexOf(figi);
+        if (isFresh(index, props.getLastPrices().getMaxAge().toNanos())) {
+            return CompletableFuture.completedFuture(decode(getPrice(index)));
+        }
+        // a slot, registered while the request is in flight, starts with zero time too
+        long updatedBefore = index < 0 ? 0 : updateTime(index);
+        return api.getMarketContext().getMarketOrderbook(figi, 1)
+                .thenApply(orderbook -> {
+                    BigDecimal price = orderbook
+                            .filter(src -> src.lastPrice != null)
+                            .orElseThrow(() -> new CompletionException(
+                                    new TradingApiException("No last price for " + figi)))
+                            .lastPrice;
+                    int slotIndex = register(figi);
+                    if (!updateIfUnchanged(figi, slotIndex, updatedBefore, price)) {
+                        log.debug("Price of {} updated while fetched, keeping the update", figi);
+                        return decode(getPrice(slotIndex));
+                    }
+                    return price;
+                });
+    }
+
+    /**
+     * @param price price
+     * @return price in billionths
+     */
+    public static long encode(BigDecimal price) {
+        return price.setScale(SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    /**
+     * @param price price in billionths
+     * @return price
+     */
+    public static BigDecimal decode(long price) {
+        return BigDecimal.valueOf(price, SCALE);
+    }
+
+    private boolean updateIfUnchanged(String figi, int index, long updatedAt, BigDecimal price) {
+        AtomicLongArray chunk = chunks[index >>> CHUNK_BITS];
+        int slot = (index & CHUNK_MASK) << 1;
+        long encoded = encode(price);
+        synchronized (writeLock(index)) {
+            if (chunk.get(slot + 1) != updatedAt) {
+                return false;
+            }
+            chunk.set(slot, encoded);
+            chunk.set(slot + 1, System.nanoTime());
+            notifyListeners(figi, price);
+            return true;
+        }
+    }
+
+    private long updateTime(int index) {
+        return chunks[index >>> CHUNK_BITS].get(((index & CHUNK_MASK) << 1) + 1);
+    }
+
+    private Object writeLock(int index) {
+        return writeLocks[index & (WRITE_LOCKS - 1)];
+    }
+
+    private void notifyListeners(String figi, BigDecimal price) {
+        for (BiConsumer<String, BigDecimal> listener : listeners) {
+            try {
+                listener.accept(figi, price);
+            } catch (RuntimeException ex) {
+                log.error("Price listener failed on {}", figi, ex);
+            }
+        }
+    }
+
+    private int register(String figi) {
+        Integer index = indexes.get(figi);
+        if (index != null) {
+            return index;
+        }
+        synchronized (this) {
+            return indexes.computeIfAbsent(figi, f -> {
+                int next = size;
+                if ((next >>> CHUNK_BITS) == chunks.length) {
+                    AtomicLongArray[] grown = Arrays.copyOf(chunks, chunks.length + 1);
+                    grown[chunks.length] = newChunk();
+                    chunks = grown;
+                }
+                size++;
+                return next;
+            });
+        }
+    }
+
+    private static AtomicLongArray newChunk() {
+        AtomicLongArray chunk = new AtomicLongArray(CHUNK_SIZE * 2);
+        for (int i = 0; i < CHUNK_SIZE; i++) {
+            chunk.set(i << 1, NO_PRICE);
+        }
+        return chunk;
+    }
+}
@@ -0,0 +1,30 @@
+package com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.reactive;
+
+import com.github.barbitoff.trading.traderacoon.api.model.TradingAccount;
+import com.github.barbitoff.trading.traderacoon.api.model.exception.AccountNotFoundException;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.config.TinkoffOpenApiConfiguration;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.AccountServiceImpl;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+/**
+ * Non-blocking counterpart of {@link AccountServiceImpl}
+ */
+@Service(TinkoffOpenApiConfiguration.BEANS_QUALIFIER_PREFIX + "ReactiveAccountService")
+public class ReactiveAccountService {
+
+    private final AccountServiceImpl accountService;
+
+    public ReactiveAccountService(AccountServiceImpl accountService) {
+        this.accountService = accountService;
+    }
+
+    /**
+     * Retrieves trading account, see {@link AccountServiceImpl#getTradingAccount()}
+     *
+     * @return trading account or error with {@link AccountNotFoundException} if account can't be found
+     */
+    public Mono<TradingAccount> getTradingAccount() {
+        return Mono.fromFuture(accountService::getTradingAccountAsync);
+    }
+}
@@ -0,0 +1,31 @@
+package com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.reactive;
+
+import com.github.barbitoff.trading.traderacoon.api.model.Instrument;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.config.TinkoffOpenApiConfiguration;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.InstrumentServiceImpl;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+/**
+ * Non-blocking counterpart of {@link InstrumentServiceImpl}
+ */
+@Service(TinkoffOpenApiConfiguration.BEANS_QUALIFIER_PREFIX + "ReactiveInstrumentService")
+public class ReactiveInstrumentService {
+
+    private final InstrumentServiceImpl instrumentService;
+
+    public ReactiveInstrumentService(InstrumentServiceImpl instrumentService) {
+        this.instrumentService = instrumentService;
+    }
+
+    /**
+     * Gets information about an instrument
+     *
+     * @param figi Figi code of the instrument
+     * @return instrument or empty Mono, if the instrument is not found
+     */
+    public Mono<Instrument> getInstrument(String figi) {
+        return Mono.fromFuture(() -> instrumentService.getInstrumentAsync(figi))
+                .flatMap(Mono::justOrEmpty);
+    }
+}
@@ -0,0 +1,122 @@
+package com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.reactive;
+
+import com.github.barbitoff.trading.traderacoon.api.model.Order;
+import com.github.barbitoff.trading.traderacoon.api.model.exception.OrderRejectedException;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.config.TinkoffOpenApiConfiguration;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.config.TinkoffOpenApiProperties;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.model.OrderCancellationResult;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.model.OrderPlacementResult;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.model.OrderRequest;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.OrderServiceImpl;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.orders.ActiveOrderStore;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import ru.tinkoff.invest.openapi.models.orders.Operation;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * Non-blocking counterpart of {@link OrderServiceImpl}
+ */
+@Service(TinkoffOpenApiConfiguration.BEANS_QUALIFIER_PREFIX + "ReactiveOrderService")
+public class ReactiveOrderService {
+
+    private final OrderServiceImpl orderService;
+    private final ReactiveAccountService accountService;
+    private final ActiveOrderStore activeOrderStore;
+    private final TinkoffOpenApiProperties props;
+
+    public ReactiveOrderService(OrderServiceImpl orderService, ReactiveAccountService accountService,
+                                ActiveOrderStore activeOrderStore, TinkoffOpenApiProperties props) {
+        this.orderService = orderService;
+        this.accountService = accountService;
+        this.activeOrderStore = activeOrderStore;
+        this.props = props;
+    }
+
+    /**
+     * Gets active orders. If active orders cache is enabled and initialized, orders are served from memory
+     *
+     * @return active orders
+     * @see OrderServiceImpl#getActiveOrders()
+     */
+    public Flux<Order> getActiveOrders() {
+        return Flux.defer(() -> {
+            if (activeOrderStore.isInitialized()) {
+                return Flux.fromIterable(activeOrderStore.getActiveOrders());
+            }
+            return accountService.getTradingAccount()
+                    .flatMap(account -> Mono.fromFuture(() -> orderService.getActiveOrdersAsync(account.getId())))
+                    .flatMapIterable(orders -> orders);
+        });
+    }
+
+    /**
+     * Places limited or market order for buying something
+     *
+     * @param figi  Figi code of the instrument
+     * @param lots  number of lots
+     * @param price price for the limited order. If null - market order is created
+     * @return placed order or error with {@link OrderRejectedException} if the order is rejected
+     */
+    public Mono<Order> buy(String figi, int lots, BigDecimal price) {
+        return placeOrder(figi, lots, price, Operation.Buy);
+    }
+
+    /**
+     * Places limited or market order for selling something
+     *
+     * @param figi  Figi code of the instrument
+     * @param lots  number of lots
+     * @param price price for the limited order. If null - market order is created
+     * @return placed order or error with {@link OrderRejectedException} if the order is rejected
+     */
+    public Mono<Order> sell(String figi, int lots, BigDecimal price) {
+        return placeOrder(figi, lots, price, Operation.Sell);
+    }
+
+    /**
+     * Cancels orders concurrently, with no more than configured number of requests in flight
+     *
+     * @param orders orders to cancel
+     * @return cancellation results, in the order of the given orders
+     * @see OrderServiceImpl#cancelOrdersWithResults(List)
+     */
+    public Flux<OrderCancellationResult> cancelOrders(List<Order> orders) {
+        return accountService.getTradingAccount().flatMapMany(account -> Flux.fromIterable(orders)
+                .flatMapSequential(order -> {
+                    if (!OrderServiceImpl.isCancellable(order)) {
+                        return Mono.just(OrderCancellationResult.skipped(order));
+                    }
+                    return Mono.fromFuture(() -> orderService.cancelOrderAsync(order.getId(), account.getId()))
+                            .thenReturn(OrderCancellationResult.cancelled(order))
+                            .onErrorResume(ex -> Mono.just(OrderCancellationResult.failed(order, ex)));
+                }, OrderServiceImpl.concurrencyLimit(props.getOrders().getCancelConcurrency())));
+    }
+
+    /**
+     * Places orders concurrently, with no more than configured number of requests in flight
+     *
+     * @param requests orders to place
+     * @return placement results, in the order of the given requests
+     * @see OrderServiceImpl#placeOrders(List)
+     */
+    public Flux<OrderPlacementResult> placeOrders(List<OrderRequest> requests) {
+        return accountService.getTradingAccount().flatMapMany(account -> Flux.fromIterable(requests)
+                .flatMapSequential(request -> Mono.fromFuture(() -> orderService.placeOrderAsync(
+                        request.getFigi(), request.getLots(), request.getPrice(),
+                        Operation.valueOf(request.getOperation().name()), account.getId()))
+                        .map(order -> OrderPlacementResult.placed(request, order))
+                        .onErrorResume(OrderRejectedException.class,
+                                ex -> Mono.just(OrderPlacementResult.rejected(request, ex)))
+                        .onErrorResume(ex -> Mono.just(OrderPlacementResult.failed(request, ex))),
+                        OrderServiceImpl.concurrencyLimit(props.getOrders().getPlaceConcurrency())));
+    }
+
+    private Mono<Order> placeOrder(String figi, int lots, BigDecimal price, Operation operation) {
+        return accountService.getTradingAccount().flatMap(account -> Mono.fromFuture(
+                () -> orderService.placeOrderAsync(figi, lots, price, operation, account.getId())));
+    }
+}
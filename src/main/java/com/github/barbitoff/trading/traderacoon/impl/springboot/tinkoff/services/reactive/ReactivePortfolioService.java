@@ -0,0 +1,52 @@
+package com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.reactive;
+
+import com.github.barbitoff.trading.traderacoon.api.model.Portfolio;
+import com.github.barbitoff.trading.traderacoon.api.model.PortfolioPosition;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.config.TinkoffOpenApiConfiguration;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.PortfolioServiceImpl;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Non-blocking counterpart of {@link PortfolioServiceImpl}
+ */
+@Service(TinkoffOpenApiConfiguration.BEANS_QUALIFIER_PREFIX + "ReactivePortfolioService")
+public class ReactivePortfolioService {
+
+    private final PortfolioServiceImpl portfolioService;
+    private final ReactiveAccountService accountService;
+
+    public ReactivePortfolioService(PortfolioServiceImpl portfolioService, ReactiveAccountService accountService) {
+        this.portfolioService = portfolioService;
+        this.accountService = accountService;
+    }
+
+    /**
+     * Creates a portfolio by joining currency and non-currency parts, requested concurrently
+     *
+     * @return portfolio
+     */
+    public Mono<Portfolio> getPortfolio() {
+        return accountService.getTradingAccount()
+                .flatMap(account -> Mono.fromFuture(() -> portfolioService.getPortfolioAsync(account.getId())));
+    }
+
+    /**
+     * @return currency portfolio positions
+     */
+    public Flux<PortfolioPosition> getCurrencies() {
+        return accountService.getTradingAccount()
+                .flatMap(account -> Mono.fromFuture(() -> portfolioService.getCurrenciesAsync(account.getId())))
+                .flatMapIterable(positions -> positions);
+    }
+
+    /**
+     * @return non-currency portfolio positions
+     */
+    public Flux<PortfolioPosition> getNonCurrencies() {
+        return accountService.getTradingAccount()
+                .flatMap(account -> Mono.fromFuture(() -> portfolioService.getNonCurrenciesAsync(account.getId())))
+                .flatMapIterable(positions -> positions);
+    }
+}
@@ -0,0 +1,97 @@
+package com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.streaming;
+
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.config.TinkoffOpenApiProperties;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.MarketDataService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import ru.tinkoff.invest.openapi.models.streaming.StreamingEvent;
+
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * If enabled, hands all the streamed events to consumers through a {@link SpmcRingBuffer}. The event stream
+ * thread only fills a preallocated slot, each consumer processes the events on its own thread, so a burst
+ * of events doesn't allocate per consumer and consumers don't block each other. The event stream is shared with
+ * all the other subscribers, so it never waits for a consumer: a consumer, that falls behind by more than
+ * {@link TinkoffOpenApiProperties.MarketData#getRingBufferMaxLag()}, is detached.
+ * <p>
+ * The buffer gets the events of the active subscriptions only, see {@link SubscriptionRegistry}
+ *
+ * @see TinkoffOpenApiProperties.MarketData
+ */
+@Slf4j
+@Component
+public class MarketDataRingBuffer implements InitializingBean, DisposableBean {
+
+    private static final BiConsumer<MarketDataSlot, StreamingEvent> TRANSLATOR =
+            (slot, event) -> slot.set(event, System.nanoTime());
+
+    private final MarketDataService marketDataService;
+    private final TinkoffOpenApiProperties props;
+    private SpmcRingBuffer<MarketDataSlot> ringBuffer;
+    private Disposable subscription;
+
+    public MarketDataRingBuffer(MarketDataService marketDataService, TinkoffOpenApiProperties props) {
+        this.marketDataService = marketDataService;
+        this.props = props;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        TinkoffOpenApiProperties.MarketData marketData = props.getMarketData();
+        if (!marketData.isRingBufferEnabled()) {
+            return;
+        }
+        log.info("Starting market data ring buffer of {} slots, {} wait strategy", marketData.getRingBufferSize(),
+                marketData.getRingBufferWaitStrategy());
+        int maxLag = marketData.getRingBufferMaxLag() > 0 ? marketData.getRingBufferMaxLag()
+                : marketData.getRingBufferSize() - marketData.getRingBufferSize() / 4;
+        ringBuffer = new SpmcRingBuffer<>(marketData.getRingBufferSize(), MarketDataSlot::new,
+                WaitStrategy.create(marketData.getRingBufferWaitStrategy()), maxLag);
+        subscription = marketDataService.events().subscribe(event -> ringBuffer.publish(TRANSLATOR, event));
+    }
+
+    @Override
+    public void destroy() {
+        if (subscription != null) {
+            subscription.dispose();
+        }
+        if (ringBuffer != null) {
+            ringBuffer.close();
+        }
+    }
+
+    /**
+     * Starts a consumer of the streamed events
+     *
+     * @param name    consumer name
+     * @param handler processes the events. The slot must not be kept after the call
+     * @return consumer, to get its lag or to close it
+     * @throws IllegalStateException if the ring buffer is disabled
+     */
+    public RingBufferConsumer<MarketDataSlot> addConsumer(String name,
+                                                          SpmcRingBuffer.EventHandler<MarketDataSlot> handler) {
+        if (ringBuffer == null) {
+            throw new IllegalStateException("Market data ring buffer is disabled");
+        }
+        return ringBuffer.addConsumer(name, handler);
+    }
+
+    /**
+     * @return running consumers, empty if the ring buffer is disabled
+     */
+    public List<RingBufferConsumer<MarketDataSlot>> getConsumers() {
+        return ringBuffer == null ? List.of() : ringBuffer.getConsumers();
+    }
+
+    /**
+     * @return number of consumers, detached for falling too far behind
+     */
+    public long getDetachedConsumers() {
+        return ringBuffer == null ? 0 : ringBuffer.getDetachedConsumers();
+    }
+}
@@ -0,0 +1,31 @@
+package com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.streaming;
+
+import ru.tinkoff.invest.openapi.models.streaming.StreamingEvent;
+
+/**
+ * Reusable slot of the {@link MarketDataRingBuffer}
+ */
+public class MarketDataSlot {
+
+    private StreamingEvent event;
+    private long receivedAt;
+
+    void set(StreamingEvent event, long receivedAt) {
+        this.event = event;
+        this.receivedAt = receivedAt;
+    }
+
+    /**
+     * @return streamed event
+     */
+    public StreamingEvent getEvent() {
+        return event;
+    }
+
+    /**
+     * @return {@link System#nanoTime()} when the event was received
+     */
+    public long getReceivedAt() {
+        return receivedAt;
+    }
+}
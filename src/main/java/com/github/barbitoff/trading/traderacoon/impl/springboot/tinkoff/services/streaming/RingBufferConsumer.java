@@ -0,0 +1,141 @@
+package com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.streaming;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Consumer of a {@link SpmcRingBuffer}, running on its own thread. Processes the published slots in batches
+ * and tracks how far it is behind the producer
+ *
+ * @param <E> slot type
+ */
+@Slf4j
+public class RingBufferConsumer<E> {
+
+    private final String name;
+    private final SpmcRingBuffer<E> ringBuffer;
+    private final SpmcRingBuffer.EventHandler<E> handler;
+    private final Thread thread;
+    /**
+     * Last processed sequence
+     */
+    private final AtomicLong sequence;
+    private volatile boolean running = true;
+    private volatile boolean detached;
+    private volatile long maxLag;
+    private volatile long processed;
+
+    RingBufferConsumer(String name, SpmcRingBuffer<E> ringBuffer, SpmcRingBuffer.EventHandler<E> handler,
+                       long startSequence) {
+        this.name = name;
+        this.ringBuffer = ringBuffer;
+        this.handler = handler;
+        this.sequence = new AtomicLong(startSequence);
+        this.thread = new Thread(this::run, "tinkoff-ring-" + name);
+        thread.setDaemon(true);
+    }
+
+    /**
+     * @param startSequence sequence, after which the slots are processed
+     */
+    void start(long startSequence) {
+        sequence.set(startSequence);
+        thread.start();
+    }
+
+    /**
+     * Stops the consumer. The producer doesn't wait for it anymore
+     */
+    public void close() {
+        running = false;
+        ringBuffer.remove(this);
+    }
+
+    /**
+     * Stops the consumer, that fell too far behind the producer. It stops before the next slot, the slot being
+     * processed may get reused meanwhile
+     */
+    void detach() {
+        log.warn("Ring buffer consumer {} is {} slots behind, detached", name, getLag());
+        detached = true;
+        close();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return last processed sequence
+     */
+    public long getSequence() {
+        return sequence.get();
+    }
+
+    /**
+     * @return number of published slots, not yet processed
+     */
+    public long getLag() {
+        return Math.max(0, ringBuffer.getCursor() - sequence.get());
+    }
+
+    /**
+     * @return the largest lag, seen at the start of a batch
+     */
+    public long getMaxLag() {
+        return maxLag;
+    }
+
+    /**
+     * @return number of processed slots
+     */
+    public long getProcessed() {
+        return processed;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * @return true if the consumer has been detached for falling too far behind
+     */
+    public boolean isDetached() {
+        return detached;
+    }
+
+    private void run() {
+        long next = sequence.get() + 1;
+        try {
+            while (running) {
+                long available = ringBuffer.waitStrategy().waitFor(next, ringBuffer.cursor(), this::isRunning);
+                if (available < next) {
+                    continue;
+                }
+                long lag = available - next + 1;
+                if (lag > maxLag) {
+                    maxLag = lag;
+                }
+                long current = next;
+                // a detached consumer must not read the slots, the producer may reuse
+                for (; current <= available && running; current++) {
+                    try {
+                        handler.onEvent(ringBuffer.slot(current), current, current == available);
+                    } catch (RuntimeException ex) {
+                        log.error("Ring buffer consumer {} failed to process sequence {}", name, current, ex);
+                    }
+                }
+                // visible to whoever sees the new sequence
+                processed += current - next;
+                sequence.set(current - 1);
+                next = current;
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            running = false;
+            ringBuffer.remove(this);
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.streaming;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Single-producer, multi-consumer ring buffer. Slots are allocated once and reused: the producer fills
+ * the next slot in place and publishes its sequence, every consumer reads all the published slots in order
+ * on its own thread.
+ * <p>
+ * The producer never overtakes a consumer. What happens to a consumer, that can't keep up, depends on the maximum
+ * lag: if it's set, the producer detaches the consumer as soon as it falls behind by more than that, so the producer
+ * never waits. Otherwise the producer waits for the consumer to free a slot when the buffer is full, and a slow
+ * consumer should be closed, so that it doesn't hold the producer back.
+ * {@link #publish(BiConsumer, Object)} must not be called concurrently
+ *
+ * @param <E> slot type
+ */
+public class SpmcRingBuffer<E> {
+
+    /**
+     * Processes published slots
+     *
+     * @param <E> slot type
+     */
+    @FunctionalInterface
+    public interface EventHandler<E> {
+        /**
+         * @param slot       published slot. Must not be kept after the call: it will be reused
+         * @param sequence   sequence of the slot
+         * @param endOfBatch true if there are no more published slots at the moment
+         */
+        void onEvent(E slot, long sequence, boolean endOfBatch);
+    }
+
+    private final Object[] slots;
+    private final int mask;
+    private final WaitStrategy waitStrategy;
+    private final int maxLag;
+    private final AtomicLong cursor = new AtomicLong(-1);
+    private final List<RingBufferConsumer<E>> consumers = new CopyOnWriteArrayList<>();
+    private final LongAdder producerWaits = new LongAdder();
+    private final LongAdder detachedConsumers = new LongAdder();
+
+    /**
+     * Minimum consumer sequence, when the producer checked it last time. Used by the producer only
+     */
+    private long cachedGate = -1;
+
+    /**
+     * Creates a ring buffer, which producer waits for slow consumers instead of detaching them
+     *
+     * @param size         number of slots, a power of 2
+     * @param slotFactory  creates the slots
+     * @param waitStrategy how consumers wait for the producer
+     */
+    public SpmcRingBuffer(int size, Supplier<E> slotFactory, WaitStrategy waitStrategy) {
+        this(size, slotFactory, waitStrategy, 0);
+    }
+
+    /**
+     * @param size         number of slots, a power of 2
+     * @param slotFactory  creates the slots
+     * @param waitStrategy how consumers wait for the producer
+     * @param maxLag       number of unprocessed slots, after which a consumer is detached, less than the size.
+     *                     Zero or less means the producer waits for slow consumers instead
+     */
+    public SpmcRingBuffer(int size, Supplier<E> slotFactory, WaitStrategy waitStrategy, int maxLag) {
+        if (size <= 0 || Integer.bitCount(size) != 1) {
+            throw new IllegalArgumentException("Ring buffer size must be a power of 2: " + size);
+        }
+        if (maxLag >= size) {
+            throw new IllegalArgumentException("Ring buffer maximum lag must be less than its size: " + maxLag);
+        }
+        this.maxLag = maxLag;
+        this.slots = new Object[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = slotFactory.get();
+        }
+        this.mask = size - 1;
+        this.waitStrategy = waitStrategy;
+    }
+
+    /**
+     * Fills the next slot and publishes it. Detaches the consumers, that fell too far behind, or, if there's
+     * no maximum lag, waits while the buffer is full
+     *
+     * @param translator fills the slot from the argument
+     * @param arg        argument
+     * @param <A>        argument type
+     */
+    public <A> void publish(BiConsumer<E, A> translator, A arg) {
+        long next = cursor.get() + 1;
+        if (maxLag > 0 && next - 1 - maxLag > cachedGate) {
+            // keeps every consumer within the maximum lag, so the buffer is never full
+            cachedGate = detachLagging(next - 1);
+        }
+        long wrapPoint = next - slots.length;
+        if (wrapPoint > cachedGate) {
+            long gate = minimumSequence(next - 1);
+            if (wrapPoint > gate) {
+                producerWaits.increment();
+                do {
+                    LockSupport.parkNanos(1);
+                } while (wrapPoint > (gate = minimumSequence(next - 1)));
+            }
+            cachedGate = gate;
+        }
+        translator.accept(slot(next), arg);
+        cursor.set(next);
+        waitStrategy.signalAll();
+    }
+
+    /**
+     * Starts a consumer on its own daemon thread. The consumer gets the slots, published after it's started
+     *
+     * @param name    consumer name, also used in the thread name
+     * @param handler processes the slots. Exceptions are logged and don't stop the consumer
+     * @return consumer
+     */
+    public RingBufferConsumer<E> addConsumer(String name, EventHandler<E> handler) {
+        RingBufferConsumer<E> consumer = new RingBufferConsumer<>(name, this, handler, cursor.get());
+        consumers.add(consumer);
+        // the producer may have wrapped past the sequence, read before the consumer started gating it
+        consumer.start(cursor.get());
+        return consumer;
+    }
+
+    /**
+     * @return last published sequence, -1 if nothing is published yet
+     */
+    public long getCursor() {
+        return cursor.get();
+    }
+
+    public int getSize() {
+        return slots.length;
+    }
+
+    /**
+     * @return number of times the producer had to wait for a slow consumer to free a slot
+     */
+    public long getProducerWaits() {
+        return producerWaits.sum();
+    }
+
+    /**
+     * @return number of consumers, detached for falling too far behind
+     */
+    public long getDetachedConsumers() {
+        return detachedConsumers.sum();
+    }
+
+    /**
+     * @return started and not yet closed consumers
+     */
+    public List<RingBufferConsumer<E>> getConsumers() {
+        return List.copyOf(consumers);
+    }
+
+    /**
+     * Stops all the consumers
+     */
+    public void close() {
+        consumers.forEach(RingBufferConsumer::close);
+    }
+
+    void remove(RingBufferConsumer<E> consumer) {
+        consumers.remove(consumer);
+    }
+
+    AtomicLong cursor() {
+        return cursor;
+    }
+
+    WaitStrategy waitStrategy() {
+        return waitStrategy;
+    }
+
+    @SuppressWarnings("unchecked")
+    E slot(long sequence) {
+        return (E) slots[(int) (sequence & mask)];
+    }
+
+    /**
+     * @return minimum sequence of the remaining consumers
+     */
+    private long detachLagging(long current) {
+        long minimum = current;
+        for (RingBufferConsumer<E> consumer : consumers) {
+            long sequence = consumer.getSequence();
+            if (current - sequence > maxLag) {
+                consumer.detach();
+                detachedConsumers.increment();
+            } else {
+                minimum = Math.min(minimum, sequence);
+            }
+        }
+        return minimum;
+    }
+
+    private long minimumSequence(long defaultSequence) {
+        long minimum = defaultSequence;
+        for (RingBufferConsumer<E> consumer : consumers) {
+            minimum = Math.min(minimum, consumer.getSequence());
+        }
+        return minimum;
+    }
+}
@@ -0,0 +1,69 @@
+package com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.streaming;
+
+import lombok.Value;
+import ru.tinkoff.invest.openapi.models.market.CandleInterval;
+import ru.tinkoff.invest.openapi.models.streaming.StreamingRequest;
+
+/**
+ * Upstream subscription to the event stream: instrument, channel and channel parameters
+ */
+@Value
+public class SubscriptionKey {
+
+    public enum Channel {
+        CANDLE,
+        ORDERBOOK,
+        INSTRUMENT_INFO
+    }
+
+    String figi;
+    Channel channel;
+    /**
+     * Candle interval, null for the other channels
+     */
+    CandleInterval interval;
+    /**
+     * Order book depth, zero for the other channels
+     */
+    int depth;
+
+    public static SubscriptionKey candle(String figi, CandleInterval interval) {
+        return new SubscriptionKey(figi, Channel.CANDLE, interval, 0);
+    }
+
+    public static SubscriptionKey orderbook(String figi, int depth) {
+        return new SubscriptionKey(figi, Channel.ORDERBOOK, null, depth);
+    }
+
+    public static SubscriptionKey instrumentInfo(String figi) {
+        return new SubscriptionKey(figi, Channel.INSTRUMENT_INFO, null, 0);
+    }
+
+    /**
+     * @return request to subscribe to the channel
+     */
+    public StreamingRequest subscribeRequest() {
+        switch (channel) {
+            case CANDLE:
+                return StreamingRequest.subscribeCandle(figi, interval);
+            case ORDERBOOK:
+                return StreamingRequest.subscribeOrderbook(figi, depth);
+            default:
+                return StreamingRequest.subscribeInstrumentInfo(figi);
+        }
+    }
+
+    /**
+     * @return request to unsubscribe from the channel
+     */
+    public StreamingRequest unsubscribeRequest() {
+        switch (channel) {
+            case CANDLE:
+                return StreamingRequest.unsubscribeCandle(figi, interval);
+            case ORDERBOOK:
+                return StreamingRequest.unsubscribeOrderbook(figi, depth);
+            default:
+                return StreamingRequest.unsubscribeInstrumentInfo(figi);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.streaming;
+
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.config.TinkoffOpenApiProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+import ru.tinkoff.invest.openapi.OpenApi;
+import ru.tinkoff.invest.openapi.models.streaming.StreamingRequest;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reference-counted subscriptions to the event stream. Consumers of the same {@link SubscriptionKey} share one
+ * upstream subscription, which is made when the first consumer comes and released when the last one leaves.
+ * <p>
+ * Requests are sent in batches: changes, made during
+ * {@link TinkoffOpenApiProperties.MarketData#getSubscriptionBatchDelay()}, are sent at once, and a release
+ * followed by an acquire of the same key within the delay sends nothing. Reconnects are not handled here: the API
+ * client itself resends the requests, sent over a lost connection, when it reconnects
+ *
+ * @see com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.config.transport.StreamingConnectionMonitor
+ */
+@Slf4j
+@Component
+public class SubscriptionRegistry implements DisposableBean {
+
+    private final OpenApi api;
+    private final TinkoffOpenApiProperties props;
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Consumers by subscription
+     */
+    private final Map<SubscriptionKey, Integer> consumers = new HashMap<>();
+    /**
+     * Subscriptions, sent over the current connection
+     */
+    private final Set<SubscriptionKey> upstream = new HashSet<>();
+    private boolean flushScheduled;
+    private boolean destroyed;
+
+    private long sentRequests;
+
+    public SubscriptionRegistry(OpenApi api, TinkoffOpenApiProperties props) {
+        this.api = api;
+        this.props = props;
+    }
+
+    @Override
+    public synchronized void destroy() {
+        destroyed = true;
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * Adds a consumer of the subscription
+     *
+     * @param key subscription
+     */
+    public synchronized void acquire(SubscriptionKey key) {
+        consumers.merge(key, 1, Integer::sum);
+        requestFlush();
+    }
+
+    /**
+     * Removes a consumer of the subscription. The upstream subscription is released with the last consumer
+     *
+     * @param key subscription
+     */
+    public synchronized void release(SubscriptionKey key) {
+        Integer remaining = consumers.computeIfPresent(key, (k, count) -> count == 1 ? null : count - 1);
+        if (remaining == null) {
+            requestFlush();
+        }
+    }
+
+    /**
+     * Sends the subscribe and unsubscribe requests, needed to bring the upstream subscriptions in line with
+     * the consumers
+     */
+    public synchronized void flush() {
+        flushScheduled = false;
+        List<StreamingRequest> requests = new ArrayList<>();
+        for (Iterator<SubscriptionKey> it = upstream.iterator(); it.hasNext(); ) {
+            SubscriptionKey key = it.next();
+            if (!consumers.containsKey(key)) {
+                requests.add(key.unsubscribeRequest());
+                it.remove();
+            }
+        }
+        for (SubscriptionKey key : consumers.keySet()) {
+            if (upstream.add(key)) {
+                requests.add(key.subscribeRequest());
+            }
+        }
+        for (StreamingRequest request : requests) {
+            api.getStreamingContext().sendRequest(request);
+        }
+        sentRequests += requests.size();
+        if (!requests.isEmpty()) {
+            log.debug("{} streaming requests sent, {} subscriptions active", requests.size(), upstream.size());
+        }
+    }
+
+    /**
+     * @return number of distinct subscriptions, having consumers
+     */
+    public synchronized int getActiveSubscriptions() {
+        return consumers.size();
+    }
+
+    /**
+     * @return number of consumers of the subscription
+     */
+    public synchronized int getConsumers(SubscriptionKey key) {
+        return consumers.getOrDefault(key, 0);
+    }
+
+    /**
+     * @return number of subscribe and unsubscribe requests sent
+     */
+    public synchronized long getSentRequests() {
+        return sentRequests;
+    }
+
+    private void requestFlush() {
+        long delay = props.getMarketData().getSubscriptionBatchDelay().toMillis();
+        if (delay <= 0 || destroyed) {
+            flush();
+            return;
+        }
+        if (flushScheduled) {
+            return;
+        }
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "tinkoff-streaming-subscriptions");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        flushScheduled = true;
+        scheduler.schedule(this::flush, delay, TimeUnit.MILLISECONDS);
+    }
+}
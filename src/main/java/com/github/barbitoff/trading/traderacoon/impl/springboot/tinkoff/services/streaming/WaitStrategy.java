@@ -0,0 +1,119 @@
+package com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.streaming;
+
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.config.TinkoffOpenApiProperties;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+/**
+ * How a {@link SpmcRingBuffer} consumer waits for the producer
+ */
+public interface WaitStrategy {
+
+    /**
+     * Waits until the sequence is published or the consumer is stopped
+     *
+     * @param sequence sequence to wait for
+     * @param cursor   last published sequence
+     * @param running  false when the consumer is stopped
+     * @return last published sequence, less than the awaited one if the consumer was stopped
+     * @throws InterruptedException if interrupted while waiting
+     */
+    long waitFor(long sequence, AtomicLong cursor, BooleanSupplier running) throws InterruptedException;
+
+    /**
+     * Wakes up the waiting consumers after a sequence is published
+     */
+    default void signalAll() {
+    }
+
+    /**
+     * @param type wait strategy type
+     * @return new wait strategy instance
+     */
+    static WaitStrategy create(TinkoffOpenApiProperties.WaitStrategyType type) {
+        switch (type) {
+            case BLOCKING:
+                return new Blocking();
+            case SLEEPING:
+                return new Spinning(100, false);
+            case BUSY_SPIN:
+                return new Spinning(Integer.MAX_VALUE, false);
+            default:
+                return new Spinning(100, true);
+        }
+    }
+
+    /**
+     * Spins for the given number of checks, then yields or parks between the checks
+     */
+    class Spinning implements WaitStrategy {
+        private static final long PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+        private final int spins;
+        private final boolean yield;
+
+        Spinning(int spins, boolean yield) {
+            this.spins = spins;
+            this.yield = yield;
+        }
+
+        @Override
+        public long waitFor(long sequence, AtomicLong cursor, BooleanSupplier running) {
+            long available;
+            int counter = 0;
+            while ((available = cursor.get()) < sequence && running.getAsBoolean()) {
+                if (counter < spins) {
+                    counter++;
+                    Thread.onSpinWait();
+                } else if (yield) {
+                    Thread.yield();
+                } else {
+                    LockSupport.parkNanos(PARK_NANOS);
+                }
+            }
+            return available;
+        }
+    }
+
+    /**
+     * Waits on a condition, signalled by the producer. Waits are bounded, so a stopped consumer notices it soon
+     */
+    class Blocking implements WaitStrategy {
+        private static final long MAX_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition published = lock.newCondition();
+
+        @Override
+        public long waitFor(long sequence, AtomicLong cursor, BooleanSupplier running) throws InterruptedException {
+            long available = cursor.get();
+            if (available >= sequence) {
+                return available;
+            }
+            lock.lock();
+            try {
+                while ((available = cursor.get()) < sequence && running.getAsBoolean()) {
+                    published.awaitNanos(MAX_WAIT_NANOS);
+                }
+            } finally {
+                lock.unlock();
+            }
+            return available;
+        }
+
+        @Override
+        public void signalAll() {
+            lock.lock();
+            try {
+                published.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
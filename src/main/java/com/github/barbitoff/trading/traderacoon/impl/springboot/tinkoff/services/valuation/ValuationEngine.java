@@ -0,0 +1,323 @@
+package com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.valuation;
+
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.config.TinkoffOpenApiProperties;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.model.PortfolioValuation;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.model.PositionValuation;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.AccountServiceImpl;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.PortfolioServiceImpl;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.orders.ActiveOrdersChangedEvent;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.portfolio.PortfolioChangedEvent;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.quotes.LastPriceCache;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import ru.tinkoff.invest.openapi.models.portfolio.InstrumentType;
+import ru.tinkoff.invest.openapi.models.portfolio.Portfolio;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.Currency;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * If enabled, values portfolio positions at the last known prices and maintains unrealized PnL per position
+ * and total per currency. Positions and average prices are loaded from {@link PortfolioServiceImpl}, prices
+ * come from {@link LastPriceCache}: the positions are tracked there and each price update is passed to
+ * {@link #onPrice(String, BigDecimal)}. Other price feeds may call it too.
+ * <p>
+ * A price tick revalues its position only and applies the difference to the currency total, so the cost of
+ * a tick doesn't depend on the portfolio size. Valuations are immutable and published atomically, reads never
+ * block. Until the first tick, a position is valued at the cached last price, if any, or at the price, implied
+ * by the expected yield from the API. Bonds are not valued: their prices are quoted in percent of the nominal,
+ * which the portfolio doesn't provide.
+ * Positions are reloaded on schedule and when the portfolio is found changed, keeping the last prices. Ticks are
+ * numbered, the last one of each instrument is remembered and applied again to the reloaded positions, so a tick,
+ * that lands on the replaced positions while they are reloaded, isn't lost. A position never goes back to
+ * an older tick, and a reload, started before the one that replaced the positions, is dropped
+ */
+@Slf4j
+@Component
+public class ValuationEngine implements InitializingBean, DisposableBean {
+
+    private final PortfolioServiceImpl portfolioService;
+    private final AccountServiceImpl accountService;
+    private final LastPriceCache lastPriceCache;
+    private final TinkoffOpenApiProperties props;
+    private ScheduledExecutorService scheduler;
+
+    private final Map<String, Tick> lastTicks = new ConcurrentHashMap<>();
+    private final AtomicLong tickSequence = new AtomicLong();
+    private final AtomicLong refreshSequence = new AtomicLong();
+    private volatile Book book = new Book(Map.of(), Map.of(), 0, false);
+
+    public ValuationEngine(PortfolioServiceImpl portfolioService, AccountServiceImpl accountService,
+                           LastPriceCache lastPriceCache, TinkoffOpenApiProperties props) {
+        this.portfolioService = portfolioService;
+        this.accountService = accountService;
+        this.lastPriceCache = lastPriceCache;
+        this.props = props;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (!props.getValuation().isEnabled()) {
+            return;
+        }
+        lastPriceCache.addListener(this::onPrice);
+        CompletableFuture<Void> loading = refresh();
+        if (!props.isAsyncStartup()) {
+            loading.join();
+        }
+        long interval = props.getValuation().getRefreshInterval().toMillis();
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "tinkoff-valuation-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> refresh().join(), interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void destroy() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    @EventListener
+    public void onPortfolioChanged(PortfolioChangedEvent event) {
+        if (props.getValuation().isEnabled()) {
+            refresh();
+        }
+    }
+
+    @EventListener
+    public void onActiveOrdersChanged(ActiveOrdersChangedEvent event) {
+        if (props.getValuation().isEnabled() && !event.getDiff().getFilled().isEmpty()) {
+            refresh();
+        }
+    }
+
+    /**
+     * Reloads positions and revalues them at the last known prices. Prices of the positions get tracked by
+     * {@link LastPriceCache}
+     *
+     * @return future, completed when the positions are replaced, or dropped because a later reload has already
+     * replaced them. Never completes exceptionally: loading errors are logged and the current positions are kept
+     */
+    public CompletableFuture<Void> refresh() {
+        long refresh = refreshSequence.incrementAndGet();
+        return accountService.getTradingAccountAsync()
+                .thenCompose(account -> portfolioService.getTinkoffPortfolioAsync(account.getId()))
+                .handle((portfolio, ex) -> {
+                    if (ex != null) {
+                        log.error("Error loading positions for valuation", ex);
+                    } else {
+                        replace(portfolio, refresh);
+                    }
+                    return null;
+                });
+    }
+
+    /**
+     * Revalues the position at the new price. Unknown instruments are ignored
+     *
+     * @param figi  Figi code of the instrument
+     * @param price last price of the instrument unit
+     */
+    public void onPrice(String figi, BigDecimal price) {
+        Tick tick = new Tick(tickSequence.incrementAndGet(), price);
+        lastTicks.merge(figi, tick, (previous, current) -> current.sequence > previous.sequence ? current : previous);
+        apply(book, figi, tick);
+    }
+
+    private void replace(Portfolio portfolio, long refresh) {
+        Book loaded;
+        synchronized (this) {
+            if (book.refresh > refresh) {
+                log.debug("Positions, loaded by an outdated refresh, dropped");
+                return;
+            }
+            loaded = Book.load(portfolio, refresh, book, lastTicks, lastPriceCache);
+            book = loaded;
+        }
+        // ticks, applied to the previous book while this one was loaded. Older ticks are skipped by apply
+        loaded.positions.keySet().forEach(figi -> {
+            Tick tick = lastTicks.get(figi);
+            if (tick != null) {
+                apply(loaded, figi, tick);
+            }
+        });
+        loaded.positions.keySet().forEach(lastPriceCache::track);
+        log.debug("Positions for valuation loaded, {} positions", loaded.positions.size());
+    }
+
+    private static void apply(Book current, String figi, Tick tick) {
+        AtomicReference<Position> position = current.positions.get(figi);
+        if (position == null) {
+            return;
+        }
+        Position previous;
+        Position updated;
+        do {
+            previous = position.get();
+            if (previous.tick >= tick.sequence) {
+                return;
+            }
+            updated = previous.withTick(tick);
+        } while (!position.compareAndSet(previous, updated));
+        BigDecimal valueDelta = updated.valuation.getValue().subtract(previous.valuation.getValue());
+        BigDecimal pnlDelta = updated.valuation.getUnrealizedPnl().subtract(previous.valuation.getUnrealizedPnl());
+        if (valueDelta.signum() != 0 || pnlDelta.signum() != 0) {
+            current.totals.get(updated.valuation.getCurrency())
+                    .updateAndGet(total -> total.plus(valueDelta, pnlDelta));
+        }
+    }
+
+    /**
+     * @return true if positions are loaded
+     */
+    public boolean isLoaded() {
+        return book.loaded;
+    }
+
+    /**
+     * @param figi Figi code of the instrument
+     * @return position valuation, empty if there is no such position
+     */
+    public Optional<PositionValuation> getPosition(String figi) {
+        AtomicReference<Position> position = book.positions.get(figi);
+        return position == null ? Optional.empty() : Optional.of(position.get().valuation);
+    }
+
+    /**
+     * @param currency currency
+     * @return total valuation of the positions in the currency, empty if there are no such positions
+     */
+    public Optional<PortfolioValuation> getTotal(Currency currency) {
+        AtomicReference<PortfolioValuation> total = book.totals.get(currency);
+        return total == null ? Optional.empty() : Optional.of(total.get());
+    }
+
+    /**
+     * @return total valuations by currency
+     */
+    public Map<Currency, PortfolioValuation> getTotals() {
+        Map<Currency, PortfolioValuation> result = new HashMap<>();
+        book.totals.forEach((currency, total) -> result.put(currency, total.get()));
+        return result;
+    }
+
+    /**
+     * Price tick, numbered in the order of arrival
+     */
+    private static class Tick {
+        final long sequence;
+        final BigDecimal price;
+
+        Tick(long sequence, BigDecimal price) {
+            this.sequence = sequence;
+            this.price = price;
+        }
+    }
+
+    /**
+     * Position valuation with the number of the last tick applied, 0 if none
+     */
+    private static class Position {
+        final PositionValuation valuation;
+        final long tick;
+
+        Position(PositionValuation valuation, long tick) {
+            this.valuation = valuation;
+            this.tick = tick;
+        }
+
+        Position withTick(Tick tick) {
+            return valuation.getLastPrice().compareTo(tick.price) == 0
+                    ? new Position(valuation, tick.sequence)
+                    : new Position(valuation.withLastPrice(tick.price), tick.sequence);
+        }
+    }
+
+    /**
+     * Loaded positions with their current valuations and currency totals. The maps are immutable, the valuations
+     * are updated atomically
+     */
+    private static class Book {
+        final Map<String, AtomicReference<Position>> positions;
+        final Map<Currency, AtomicReference<PortfolioValuation>> totals;
+        /**
+         * Number of the refresh, that loaded the book
+         */
+        final long refresh;
+        final boolean loaded;
+
+        Book(Map<String, AtomicReference<Position>> positions,
+             Map<Currency, AtomicReference<PortfolioValuation>> totals, long refresh, boolean loaded) {
+            this.positions = positions;
+            this.totals = totals;
+            this.refresh = refresh;
+            this.loaded = loaded;
+        }
+
+        static Book load(Portfolio portfolio, long refresh, Book previous, Map<String, Tick> lastTicks,
+                         LastPriceCache lastPriceCache) {
+            Map<String, AtomicReference<Position>> positions = new HashMap<>();
+            Map<Currency, PortfolioValuation> totals = new HashMap<>();
+            for (Portfolio.PortfolioPosition src : portfolio.positions) {
+                if (src.averagePositionPrice == null) {
+                    log.debug("No average price for {}, skipping it", src.figi);
+                    continue;
+                }
+                if (src.instrumentType == InstrumentType.Bond) {
+                    log.debug("{} is a bond, skipping it", src.figi);
+                    continue;
+                }
+                Currency currency = Currency.getInstance(src.averagePositionPrice.currency.name());
+                BigDecimal averagePrice = src.averagePositionPrice.value;
+                AtomicReference<Position> known = previous.positions.get(src.figi);
+                Tick tick = lastTicks.get(src.figi);
+                BigDecimal lastPrice;
+                if (tick != null) {
+                    lastPrice = tick.price;
+                } else {
+                    lastPrice = known != null
+                            ? known.get().valuation.getLastPrice()
+                            : lastPriceCache.getPrice(src.figi).orElseGet(() -> impliedPrice(src));
+                }
+                PositionValuation valuation = new PositionValuation(src.figi, currency, src.balance, averagePrice,
+                        averagePrice, BigDecimal.ZERO, BigDecimal.ZERO).withLastPrice(lastPrice);
+                positions.put(src.figi, new AtomicReference<>(new Position(valuation,
+                        tick == null ? 0 : tick.sequence)));
+                totals.put(currency, totals.getOrDefault(currency, PortfolioValuation.zero(currency))
+                        .plus(valuation.getValue(), valuation.getUnrealizedPnl()));
+            }
+            Map<Currency, AtomicReference<PortfolioValuation>> totalRefs = new HashMap<>();
+            totals.forEach((currency, total) -> totalRefs.put(currency, new AtomicReference<>(total)));
+            return new Book(Map.copyOf(positions), Map.copyOf(totalRefs), refresh, true);
+        }
+
+        /**
+         * @return price, at which the position has the expected yield, reported by the API
+         */
+        private static BigDecimal impliedPrice(Portfolio.PortfolioPosition src) {
+            BigDecimal averagePrice = src.averagePositionPrice.value;
+            if (src.expectedYield == null || src.balance.signum() == 0) {
+                return averagePrice;
+            }
+            return averagePrice.add(src.expectedYield.value.divide(src.balance, MathContext.DECIMAL64));
+        }
+    }
+}
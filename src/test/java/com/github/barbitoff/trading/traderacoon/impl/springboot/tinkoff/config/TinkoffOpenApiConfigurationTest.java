@@ -2,17 +2,21 @@ package com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.config;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.beans.factory.BeanFactory;
 import ru.tinkoff.invest.openapi.OpenApi;
 import ru.tinkoff.invest.openapi.OpenApiFactoryBase;
 import ru.tinkoff.invest.openapi.SandboxContext;
 import ru.tinkoff.invest.openapi.SandboxOpenApi;
 
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.*;
 
@@ -56,6 +60,21 @@ class TinkoffOpenApiConfigurationTest {
         verify(sandboxCtx).performRegistration(isNull());
     }
 
+    @Test
+    void getSandboxOpenApiAsyncStartup() {
+        TinkoffOpenApiProperties.Sandbox sandbox = new TinkoffOpenApiProperties.Sandbox();
+        sandbox.setEnabled(true);
+        props.setSandbox(sandbox);
+        props.setAsyncStartup(true);
+        props.setApiToken(API_TOKEN);
+
+        SandboxOpenApi sandboxApi = mock(SandboxOpenApi.class);
+        when(openApiFactory.createSandboxOpenApiClient(any())).thenReturn(sandboxApi);
+
+        assertEquals(sandboxApi, config.getOpenApi());
+        verify(sandboxApi, never()).getSandboxContext();
+    }
+
     @Test
     void getProductionOpenApi() {
         TinkoffOpenApiProperties.Sandbox sandbox = new TinkoffOpenApiProperties.Sandbox();
@@ -68,4 +87,26 @@ class TinkoffOpenApiConfigurationTest {
 
         assertEquals(openApi, config.getOpenApi());
     }
-}
\ No newline at end of file
+
+    @Test
+    void getCustomExecutor() {
+        TinkoffOpenApiProperties.Sandbox sandbox = new TinkoffOpenApiProperties.Sandbox();
+        sandbox.setEnabled(false);
+        props.setSandbox(sandbox);
+        props.getExecutor().setType(TinkoffOpenApiProperties.ExecutorType.CUSTOM);
+        props.getExecutor().setBeanName("myExecutor");
+
+        Executor customExecutor = mock(Executor.class);
+        BeanFactory beanFactory = mock(BeanFactory.class);
+        when(beanFactory.getBean(eq("myExecutor"), eq(Executor.class))).thenReturn(customExecutor);
+        config.setBeanFactory(beanFactory);
+
+        ArgumentCaptor<Executor> executorCaptor = ArgumentCaptor.forClass(Executor.class);
+        when(openApiFactory.createOpenApiClient(executorCaptor.capture())).thenReturn(mock(OpenApi.class));
+        config.getOpenApi();
+
+        Runnable task = () -> { };
+        executorCaptor.getValue().execute(task);
+        verify(customExecutor).execute(any());
+    }
+}
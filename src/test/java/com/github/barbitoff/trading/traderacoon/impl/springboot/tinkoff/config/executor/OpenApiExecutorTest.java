@@ -0,0 +1,91 @@
+package com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.config.executor;
+
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.config.TinkoffOpenApiProperties;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class OpenApiExecutorTest {
+
+    @ParameterizedTest
+    @EnumSource(value = TinkoffOpenApiProperties.ExecutorType.class, names = {"FIXED", "WORK_STEALING"})
+    void createAndExecute(TinkoffOpenApiProperties.ExecutorType type) throws InterruptedException {
+        TinkoffOpenApiProperties.Executor props = new TinkoffOpenApiProperties.Executor();
+        props.setType(type);
+        props.setPoolSize(2);
+        props.setQueueCapacity(10);
+        OpenApiExecutor executor = OpenApiExecutor.create(props, null);
+        try {
+            CountDownLatch latch = new CountDownLatch(5);
+            for (int i = 0; i < 5; i++) {
+                executor.asExecutor().execute(latch::countDown);
+            }
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+            assertEquals(5, executor.getSubmittedTasks());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void createCustomWithoutBean() {
+        TinkoffOpenApiProperties.Executor props = new TinkoffOpenApiProperties.Executor();
+        props.setType(TinkoffOpenApiProperties.ExecutorType.CUSTOM);
+        assertThrows(IllegalStateException.class, () -> OpenApiExecutor.create(props, null),
+                "Expected exception when no executor supplied for CUSTOM type");
+    }
+
+    @Test
+    void queueDepthAndLatency() {
+        List<Runnable> queued = new ArrayList<>();
+        OpenApiExecutor executor = new OpenApiExecutor(queued::add, false);
+
+        executor.execute(() -> { });
+        executor.execute(() -> { });
+        assertEquals(2, executor.getQueueDepth());
+        assertEquals(0, executor.getCompletedTasks());
+
+        queued.forEach(Runnable::run);
+        assertEquals(0, executor.getQueueDepth());
+        assertEquals(0, executor.getActiveTasks());
+        assertEquals(2, executor.getCompletedTasks());
+        assertTrue(executor.getAverageQueueWaitNanos() <= executor.getMaxQueueWaitNanos());
+    }
+
+    @Test
+    void rejectedTaskNotCounted() {
+        OpenApiExecutor executor = new OpenApiExecutor(task -> {
+            throw new RejectedExecutionException("Emulated");
+        }, false);
+
+        assertThrows(RejectedExecutionException.class, () -> executor.execute(() -> { }));
+
+        assertEquals(0, executor.getQueueDepth());
+        assertEquals(0, executor.getSubmittedTasks());
+    }
+
+    @Test
+    void customExecutorIsNotShutDown() {
+        Executor custom = mock(Executor.class);
+        TinkoffOpenApiProperties.Executor props = new TinkoffOpenApiProperties.Executor();
+        props.setType(TinkoffOpenApiProperties.ExecutorType.CUSTOM);
+        OpenApiExecutor executor = OpenApiExecutor.create(props, custom);
+
+        executor.execute(() -> { });
+        executor.shutdown();
+
+        verify(custom).execute(any());
+        verifyNoMoreInteractions(custom);
+    }
+}
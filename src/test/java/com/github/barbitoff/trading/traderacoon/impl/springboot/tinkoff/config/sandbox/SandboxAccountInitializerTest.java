@@ -11,6 +11,7 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 
 import static org.mockito.Mockito.*;
 
@@ -21,9 +22,12 @@ import ru.tinkoff.invest.openapi.SandboxOpenApi;
 import ru.tinkoff.invest.openapi.models.Currency;
 import ru.tinkoff.invest.openapi.models.sandbox.CurrencyBalance;
 
+import java.io.IOException;
 import java.math.BigDecimal;
+import java.util.concurrent.CompletableFuture;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
 
 class SandboxAccountInitializerTest {
 
@@ -45,6 +49,8 @@ class SandboxAccountInitializerTest {
     public void setUp() {
         MockitoAnnotations.initMocks(this);
         when(api.getSandboxContext()).thenReturn(sandboxContext);
+        when(sandboxContext.clearAll(any())).thenReturn(CompletableFuture.completedFuture(null));
+        when(sandboxContext.setCurrencyBalance(any(), any())).thenReturn(CompletableFuture.completedFuture(null));
         initializer = new SandboxAccountInitializer(api, accountService, props);
     }
 
@@ -123,4 +129,54 @@ class SandboxAccountInitializerTest {
         );
         assertEquals(exceptionExpected, exceptionFact.getCause());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testClearBeforeInitRub() throws TradingApiException, AccountNotFoundException {
+        TinkoffOpenApiProperties.Sandbox sandbox = new TinkoffOpenApiProperties.Sandbox();
+        sandbox.setEnabled(true);
+        sandbox.setClearOnStartup(true);
+        sandbox.setInitRubs(BALANCE);
+        props.setSandbox(sandbox);
+        initSuccessfulAccountService();
+
+        initializer.afterPropertiesSet();
+
+        InOrder inOrder = inOrder(sandboxContext);
+        inOrder.verify(sandboxContext).clearAll(eq(ACCOUNT_ID));
+        inOrder.verify(sandboxContext).setCurrencyBalance(any(), eq(ACCOUNT_ID));
+        // account is retrieved only once
+        verify(accountService, times(1)).getTradingAccount();
+    }
+
+    @Test
+    public void testAsyncStartupSkipsInitialization() throws TradingApiException, AccountNotFoundException {
+        TinkoffOpenApiProperties.Sandbox sandbox = new TinkoffOpenApiProperties.Sandbox();
+        sandbox.setEnabled(true);
+        sandbox.setClearOnStartup(true);
+        sandbox.setInitRubs(BALANCE);
+        props.setSandbox(sandbox);
+        props.setAsyncStartup(true);
+        initSuccessfulAccountService();
+
+        initializer.afterPropertiesSet();
+
+        verify(api, never()).getSandboxContext();
+        verify(accountService, never()).getTradingAccount();
+    }
+
+    @Test
+    public void testInitializeApiException() {
+        TinkoffOpenApiProperties.Sandbox sandbox = new TinkoffOpenApiProperties.Sandbox();
+        sandbox.setEnabled(true);
+        sandbox.setClearOnStartup(true);
+        sandbox.setInitRubs(BALANCE);
+        props.setSandbox(sandbox);
+        IOException apiException = new IOException("fake");
+        when(sandboxContext.clearAll(any())).thenReturn(CompletableFuture.failedFuture(apiException));
+
+        CompletableFuture<Void> result = initializer.initialize(ACCOUNT_ID);
+
+        assertTrue(result.isCompletedExceptionally());
+        verify(sandboxContext, never()).setCurrencyBalance(any(), any());
+    }
+}
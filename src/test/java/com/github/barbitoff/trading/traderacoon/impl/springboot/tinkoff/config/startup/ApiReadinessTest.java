@@ -0,0 +1,153 @@
+package com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.config.startup;
+
+import com.github.barbitoff.trading.traderacoon.api.model.TradingAccount;
+import com.github.barbitoff.trading.traderacoon.api.model.exception.AccountNotFoundException;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.config.TinkoffOpenApiProperties;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.config.sandbox.SandboxAccountInitializer;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.AccountServiceImpl;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.event.EventListener;
+import ru.tinkoff.invest.openapi.SandboxContext;
+import ru.tinkoff.invest.openapi.SandboxOpenApi;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.*;
+
+class ApiReadinessTest {
+
+    private static final String ACCOUNT_ID = "ACC1";
+
+    @Mock
+    private SandboxOpenApi api;
+    @Mock
+    private SandboxContext sandboxContext;
+    @Mock
+    private AccountServiceImpl accountService;
+    @Mock
+    private SandboxAccountInitializer sandboxInitializer;
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    private TinkoffOpenApiProperties props = new TinkoffOpenApiProperties();
+
+    private ApiReadiness readiness;
+
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        when(api.getSandboxContext()).thenReturn(sandboxContext);
+        TinkoffOpenApiProperties.Sandbox sandbox = new TinkoffOpenApiProperties.Sandbox();
+        sandbox.setEnabled(true);
+        props.setSandbox(sandbox);
+        readiness = new ApiReadiness(api, accountService, sandboxInitializer, props, eventPublisher);
+    }
+
+    @Test
+    void asyncStartup() throws ExecutionException, InterruptedException {
+        props.setAsyncStartup(true);
+        CompletableFuture<Void> registration = new CompletableFuture<>();
+        when(sandboxContext.performRegistration(isNull())).thenReturn(registration);
+        when(accountService.getTradingAccountAsync())
+                .thenReturn(CompletableFuture.completedFuture(new TradingAccount(ACCOUNT_ID)));
+        when(sandboxInitializer.initialize(eq(ACCOUNT_ID))).thenReturn(CompletableFuture.completedFuture(null));
+
+        readiness.afterPropertiesSet();
+        readiness.onContextRefreshed();
+
+        // start up isn't blocked by the registration
+        assertFalse(readiness.isReady());
+        verify(accountService, never()).getTradingAccountAsync();
+
+        registration.complete(null);
+
+        assertTrue(readiness.isReady());
+        assertEquals(ACCOUNT_ID, readiness.getReadyFuture().get().getId());
+        InOrder inOrder = inOrder(sandboxContext, accountService, sandboxInitializer);
+        inOrder.verify(sandboxContext).performRegistration(isNull());
+        inOrder.verify(accountService).getTradingAccountAsync();
+        inOrder.verify(sandboxInitializer).initialize(eq(ACCOUNT_ID));
+
+        ArgumentCaptor<ApiReadyEvent> eventCaptor = ArgumentCaptor.forClass(ApiReadyEvent.class);
+        verify(eventPublisher).publishEvent(eventCaptor.capture());
+        assertEquals(ACCOUNT_ID, eventCaptor.getValue().getTradingAccount().getId());
+    }
+
+    @Test
+    void syncStartup() {
+        props.setAsyncStartup(false);
+        when(accountService.getTradingAccountAsync())
+                .thenReturn(CompletableFuture.completedFuture(new TradingAccount(ACCOUNT_ID)));
+
+        readiness.afterPropertiesSet();
+
+        assertTrue(readiness.isReady());
+        verify(sandboxContext, never()).performRegistration(any());
+        verify(sandboxInitializer, never()).initialize(any());
+        // listeners may be not registered yet
+        verify(eventPublisher, never()).publishEvent(any());
+
+        readiness.onContextRefreshed();
+
+        verify(eventPublisher).publishEvent(any(ApiReadyEvent.class));
+    }
+
+    @Test
+    void eventReceivedByContextListeners() {
+        props.setAsyncStartup(false);
+        when(accountService.getTradingAccountAsync())
+                .thenReturn(CompletableFuture.completedFuture(new TradingAccount(ACCOUNT_ID)));
+
+        try (AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext()) {
+            context.registerBean(ApiReadiness.class,
+                    () -> new ApiReadiness(api, accountService, sandboxInitializer, props, context));
+            context.register(ReadyListener.class);
+            context.refresh();
+
+            List<ApiReadyEvent> events = context.getBean(ReadyListener.class).events;
+            assertEquals(1, events.size());
+            assertEquals(ACCOUNT_ID, events.get(0).getTradingAccount().getId());
+        }
+    }
+
+    @Test
+    void startupFailure() {
+        props.setAsyncStartup(true);
+        AccountNotFoundException accountException = new AccountNotFoundException();
+        when(sandboxContext.performRegistration(isNull())).thenReturn(CompletableFuture.completedFuture(null));
+        when(accountService.getTradingAccountAsync()).thenReturn(CompletableFuture.failedFuture(accountException));
+
+        readiness.afterPropertiesSet();
+        readiness.onContextRefreshed();
+
+        assertFalse(readiness.isReady());
+        ExecutionException factEx = assertThrows(ExecutionException.class,
+                () -> readiness.getReadyFuture().get(),
+                "Expected exception when the account can't be resolved");
+        assertEquals(accountException, factEx.getCause());
+        verify(eventPublisher, never()).publishEvent(any());
+    }
+
+    static class ReadyListener {
+        private final List<ApiReadyEvent> events = new CopyOnWriteArrayList<>();
+
+        @EventListener
+        public void onReady(ApiReadyEvent event) {
+            events.add(event);
+        }
+    }
+}
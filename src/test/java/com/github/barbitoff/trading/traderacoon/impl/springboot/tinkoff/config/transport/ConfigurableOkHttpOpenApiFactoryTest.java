@@ -0,0 +1,73 @@
+package com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.config.transport;
+
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.config.TinkoffOpenApiProperties;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+import java.util.List;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConfigurableOkHttpOpenApiFactoryTest {
+
+    private static final String API_TOKEN = "APITOKEN1";
+
+    private TinkoffOpenApiProperties.Transport transport = new TinkoffOpenApiProperties.Transport();
+
+    private ConfigurableOkHttpOpenApiFactory createFactory() {
+        return new ConfigurableOkHttpOpenApiFactory(API_TOKEN, Logger.getLogger(getClass().getCanonicalName()), transport);
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    void buildClient(boolean http2Enabled) {
+        transport.setHttp2Enabled(http2Enabled);
+        transport.setMaxRequests(10);
+        transport.setMaxRequestsPerHost(3);
+        transport.setReadTimeout(Duration.ofSeconds(7));
+        transport.setCallTimeout(Duration.ofSeconds(20));
+
+        OkHttpClient client = createFactory().buildClient();
+
+        assertEquals(10, client.dispatcher().getMaxRequests());
+        assertEquals(3, client.dispatcher().getMaxRequestsPerHost());
+        assertEquals(7000, client.readTimeoutMillis());
+        assertEquals(20000, client.callTimeoutMillis());
+        assertEquals(http2Enabled ? List.of(Protocol.HTTP_2, Protocol.HTTP_1_1) : List.of(Protocol.HTTP_1_1),
+                client.protocols());
+    }
+
+    @Test
+    void warmUpOpensConnection() throws IOException {
+        transport.setWarmUp(true);
+        ConfigurableOkHttpOpenApiFactory factory = createFactory();
+        try (ServerSocket server = new ServerSocket(0)) {
+            server.setSoTimeout(5000);
+            factory.warmUp(factory.buildClient(), "http://localhost:" + server.getLocalPort() + "/");
+            try (Socket socket = server.accept()) {
+                assertTrue(socket.isConnected());
+            }
+        }
+    }
+
+    @Test
+    void warmUpDisabled() throws IOException {
+        transport.setWarmUp(false);
+        ConfigurableOkHttpOpenApiFactory factory = createFactory();
+        try (ServerSocket server = new ServerSocket(0)) {
+            server.setSoTimeout(500);
+            factory.warmUp(factory.buildClient(), "http://localhost:" + server.getLocalPort() + "/");
+            assertThrows(SocketTimeoutException.class, server::accept,
+                    "No connection expected when warm up is disabled");
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.config.transport;
+
+import okhttp3.Interceptor;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.ConnectException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class StreamingConnectionMonitorTest {
+
+    private static final Request WEBSOCKET = new Request.Builder()
+            .url("https://localhost/openapi/md/v1/md-openapi/ws")
+            .header("Upgrade", "websocket")
+            .build();
+    private static final Request HTTP = new Request.Builder()
+            .url("https://localhost/openapi/portfolio")
+            .build();
+
+    private StreamingConnectionMonitor monitor = new StreamingConnectionMonitor(2);
+
+    @Test
+    void reconnectsCountedBeyondInitialConnections() throws IOException {
+        monitor.intercept(chain(WEBSOCKET, 101));
+        monitor.intercept(chain(WEBSOCKET, 101));
+        assertEquals(0, monitor.getReconnects());
+        assertTrue(monitor.getLastReconnectGap().isEmpty());
+
+        monitor.eventReceived();
+        monitor.intercept(chain(WEBSOCKET, 101));
+
+        assertEquals(1, monitor.getReconnects());
+        assertEquals(monitor.getLastReconnectGap().orElseThrow(), monitor.getTotalReconnectGap());
+    }
+
+    @Test
+    void failedHandshakes() throws IOException {
+        monitor.intercept(chain(WEBSOCKET, 401));
+        Interceptor.Chain failing = mock(Interceptor.Chain.class);
+        when(failing.request()).thenReturn(WEBSOCKET);
+        when(failing.proceed(WEBSOCKET)).thenThrow(new ConnectException("Emulated"));
+        assertThrows(ConnectException.class, () -> monitor.intercept(failing));
+
+        assertEquals(2, monitor.getFailedHandshakes());
+        assertEquals(0, monitor.getReconnects());
+    }
+
+    @Test
+    void plainRequestsIgnored() throws IOException {
+        for (int i = 0; i < 3; i++) {
+            monitor.intercept(chain(HTTP, 200));
+        }
+
+        assertEquals(0, monitor.getReconnects());
+        assertEquals(0, monitor.getFailedHandshakes());
+    }
+
+    private static Interceptor.Chain chain(Request request, int code) throws IOException {
+        Interceptor.Chain chain = mock(Interceptor.Chain.class);
+        when(chain.request()).thenReturn(request);
+        when(chain.proceed(request)).thenReturn(new Response.Builder()
+                .request(request)
+                .protocol(Protocol.HTTP_1_1)
+                .code(code)
+                .message("Emulated")
+                .build());
+        return chain;
+    }
+}
@@ -23,6 +23,7 @@ import java.io.IOException;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -123,6 +124,30 @@ class AccountServiceImplTest {
         );
     }
 
+    @Test
+    void getTradingAccountAsync() throws Exception {
+        configureSuccessfullResponse();
+        AccountServiceImpl service = new AccountServiceImpl(api, getProperties(false, true));
+        assertEquals(iisAcc.brokerAccountId, service.getTradingAccountAsync().get().getId());
+        // the account is cached for both sync and async calls
+        service.getTradingAccountAsync().get();
+        service.getTradingAccount();
+        verify(userCtx, times(1)).getAccounts();
+    }
+
+    @Test
+    void getTradingAccountAsyncWhenNoAccounts() {
+        CompletableFuture<AccountsList> future = CompletableFuture.completedFuture(new AccountsList(Collections.emptyList()));
+        when(userCtx.getAccounts()).thenReturn(future);
+
+        AccountServiceImpl service = new AccountServiceImpl(api, getProperties(false, false));
+        ExecutionException factEx = assertThrows(ExecutionException.class,
+                () -> service.getTradingAccountAsync().get(),
+                "Expected exception when api returns no account"
+        );
+        assertTrue(factEx.getCause() instanceof AccountNotFoundException);
+    }
+
     private TinkoffOpenApiProperties getProperties(boolean isSandbox, boolean useIis) {
         TinkoffOpenApiProperties.Sandbox sandbox = new TinkoffOpenApiProperties.Sandbox();
         sandbox.setEnabled(isSandbox);
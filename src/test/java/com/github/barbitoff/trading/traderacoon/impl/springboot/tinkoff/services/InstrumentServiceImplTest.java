@@ -1,6 +1,10 @@
 package com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services;
 
 import com.github.barbitoff.trading.traderacoon.api.model.exception.TradingApiException;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.config.TinkoffOpenApiProperties;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.model.CacheStats;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.model.InstrumentBatch;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.catalog.InstrumentCatalog;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
@@ -16,12 +20,18 @@ import ru.tinkoff.invest.openapi.models.portfolio.PortfolioCurrencies;
 
 import java.io.IOException;
 import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
-import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.*;
 
 class InstrumentServiceImplTest {
     private static final String FIGI = "FIGI1";
@@ -30,6 +40,10 @@ class InstrumentServiceImplTest {
     private OpenApi api;
     @Mock
     private MarketContext marketCtx;
+    @Mock
+    private InstrumentCatalog catalog;
+
+    private TinkoffOpenApiProperties props = new TinkoffOpenApiProperties();
 
     private InstrumentServiceImpl instrumentService;
 
@@ -38,7 +52,7 @@ class InstrumentServiceImplTest {
         MockitoAnnotations.initMocks(this);
         when(api.getMarketContext()).thenReturn(marketCtx);
 
-        instrumentService = new InstrumentServiceImpl(api);
+        instrumentService = new InstrumentServiceImpl(api, props, catalog);
     }
 
     @ParameterizedTest
@@ -70,6 +84,87 @@ class InstrumentServiceImplTest {
         }
     }
 
+    @Test
+    void getInstrumentCached() throws TradingApiException {
+        Instrument src = new Instrument(FIGI, "ticker1", "isin1", BigDecimal.TEN, 11, Currency.RUB, "name1",
+                InstrumentType.Stock);
+        when(marketCtx.searchMarketInstrumentByFigi(eq(FIGI)))
+                .thenReturn(CompletableFuture.completedFuture(Optional.of(src)));
+        when(marketCtx.searchMarketInstrumentByFigi(eq("UNKNOWN")))
+                .thenReturn(CompletableFuture.completedFuture(Optional.empty()));
+
+        assertTrue(instrumentService.getInstrument(FIGI).isPresent());
+        assertTrue(instrumentService.getInstrument(FIGI).isPresent());
+        // unknown instrument is cached too
+        assertFalse(instrumentService.getInstrument("UNKNOWN").isPresent());
+        assertFalse(instrumentService.getInstrument("UNKNOWN").isPresent());
+
+        verify(marketCtx).searchMarketInstrumentByFigi(eq(FIGI));
+        verify(marketCtx).searchMarketInstrumentByFigi(eq("UNKNOWN"));
+        CacheStats stats = instrumentService.getCacheStats().orElseThrow();
+        assertEquals(2, stats.getHits());
+        assertEquals(2, stats.getMisses());
+        assertEquals(2, stats.getSize());
+    }
+
+    @Test
+    void getInstrumentCacheDisabled() throws TradingApiException {
+        props.getInstrumentCache().setEnabled(false);
+        instrumentService = new InstrumentServiceImpl(api, props, catalog);
+        when(marketCtx.searchMarketInstrumentByFigi(eq(FIGI)))
+                .thenReturn(CompletableFuture.completedFuture(Optional.empty()));
+
+        instrumentService.getInstrument(FIGI);
+        instrumentService.getInstrument(FIGI);
+
+        verify(marketCtx, times(2)).searchMarketInstrumentByFigi(eq(FIGI));
+        assertTrue(instrumentService.getCacheStats().isEmpty());
+    }
+
+    @Test
+    void getInstrumentConcurrentRequestsCoalesced() throws ExecutionException, InterruptedException {
+        props.getInstrumentCache().setEnabled(false);
+        instrumentService = new InstrumentServiceImpl(api, props, catalog);
+        CompletableFuture<Optional<Instrument>> pending = new CompletableFuture<>();
+        when(marketCtx.searchMarketInstrumentByFigi(eq(FIGI))).thenReturn(pending);
+
+        CompletableFuture<Optional<com.github.barbitoff.trading.traderacoon.api.model.Instrument>> first =
+                instrumentService.getInstrumentAsync(FIGI);
+        CompletableFuture<Optional<com.github.barbitoff.trading.traderacoon.api.model.Instrument>> second =
+                instrumentService.getInstrumentAsync(FIGI);
+        pending.complete(Optional.empty());
+
+        assertTrue(first.get().isEmpty());
+        assertTrue(second.get().isEmpty());
+        verify(marketCtx).searchMarketInstrumentByFigi(eq(FIGI));
+        assertEquals(1, instrumentService.getCoalescedCalls());
+    }
+
+    @Test
+    void getInstrumentApiExceptionNotCached() {
+        IOException apiException = new IOException("FAKE");
+        when(marketCtx.searchMarketInstrumentByFigi(eq(FIGI))).thenReturn(CompletableFuture.failedFuture(apiException));
+
+        assertThrows(TradingApiException.class, () -> instrumentService.getInstrument(FIGI),
+                "Expected TradingApiException when an underlying API throws an exception");
+        assertThrows(TradingApiException.class, () -> instrumentService.getInstrument(FIGI),
+                "Expected TradingApiException when an underlying API throws an exception");
+
+        verify(marketCtx, times(2)).searchMarketInstrumentByFigi(eq(FIGI));
+    }
+
+    @Test
+    void getInstrumentFromCatalog() throws TradingApiException {
+        com.github.barbitoff.trading.traderacoon.api.model.Instrument instrument =
+                com.github.barbitoff.trading.traderacoon.api.model.Instrument.builder().figi(FIGI).build();
+        when(catalog.isLoaded()).thenReturn(true);
+        when(catalog.getByFigi(eq(FIGI))).thenReturn(Optional.of(instrument));
+
+        assertSame(instrument, instrumentService.getInstrument(FIGI).orElseThrow());
+        assertFalse(instrumentService.getInstrument("UNKNOWN").isPresent());
+        verify(marketCtx, never()).searchMarketInstrumentByFigi(any());
+    }
+
     @Test
     void getInstrumentApiException() {
         IOException apiException = new IOException("FAKE");
@@ -81,4 +176,81 @@ class InstrumentServiceImplTest {
                 "Expected TradingApiException when an underlying API throws an exception");
         assertEquals(apiException, exFact.getCause().getCause());
     }
-}
\ No newline at end of file
+
+    @Test
+    void getInstrumentsPartialFailure() throws TradingApiException {
+        IOException apiException = new IOException("FAKE");
+        when(marketCtx.searchMarketInstrumentByFigi(eq(FIGI)))
+                .thenReturn(CompletableFuture.completedFuture(Optional.of(createInstrument(FIGI))));
+        when(marketCtx.searchMarketInstrumentByFigi(eq("UNKNOWN")))
+                .thenReturn(CompletableFuture.completedFuture(Optional.empty()));
+        when(marketCtx.searchMarketInstrumentByFigi(eq("FAILED")))
+                .thenReturn(CompletableFuture.failedFuture(apiException));
+
+        InstrumentBatch batch = instrumentService.getInstruments(List.of(FIGI, "UNKNOWN", "FAILED", FIGI));
+
+        assertEquals(Set.of(FIGI), batch.getInstruments().keySet());
+        assertEquals(Set.of("UNKNOWN"), batch.getNotFound());
+        assertEquals(apiException, batch.getErrors().get("FAILED"));
+        assertFalse(batch.isComplete());
+        verify(marketCtx).searchMarketInstrumentByFigi(eq(FIGI));
+    }
+
+    @Test
+    void getInstrumentsEmpty() throws TradingApiException {
+        InstrumentBatch batch = instrumentService.getInstruments(List.of());
+
+        assertTrue(batch.getInstruments().isEmpty());
+        assertTrue(batch.isComplete());
+    }
+
+    @Test
+    void getInstrumentsConcurrencyBound() throws TradingApiException, ExecutionException, InterruptedException {
+        props.getInstrumentCache().setBatchConcurrency(2);
+        instrumentService = new InstrumentServiceImpl(api, props, catalog);
+        // cached instrument doesn't take a request slot
+        when(marketCtx.searchMarketInstrumentByFigi(eq(FIGI)))
+                .thenReturn(CompletableFuture.completedFuture(Optional.of(createInstrument(FIGI))));
+        instrumentService.getInstrument(FIGI);
+        Map<String, CompletableFuture<Optional<Instrument>>> requests = new HashMap<>();
+        for (String figi : List.of("A", "B", "C")) {
+            CompletableFuture<Optional<Instrument>> request = new CompletableFuture<>();
+            requests.put(figi, request);
+            when(marketCtx.searchMarketInstrumentByFigi(eq(figi))).thenReturn(request);
+        }
+
+        CompletableFuture<InstrumentBatch> batch = instrumentService.getInstrumentsAsync(List.of(FIGI, "A", "B", "C"));
+
+        verify(marketCtx).searchMarketInstrumentByFigi(eq("A"));
+        verify(marketCtx).searchMarketInstrumentByFigi(eq("B"));
+        verify(marketCtx, never()).searchMarketInstrumentByFigi(eq("C"));
+        requests.get("A").complete(Optional.of(createInstrument("A")));
+        verify(marketCtx).searchMarketInstrumentByFigi(eq("C"));
+        requests.get("B").complete(Optional.of(createInstrument("B")));
+        assertFalse(batch.isDone());
+        requests.get("C").complete(Optional.empty());
+        assertEquals(Set.of(FIGI, "A", "B"), batch.get().getInstruments().keySet());
+        assertEquals(Set.of("C"), batch.get().getNotFound());
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {0, -1})
+    void getInstrumentsUnbounded(int concurrency) throws TradingApiException {
+        props.getInstrumentCache().setBatchConcurrency(concurrency);
+        instrumentService = new InstrumentServiceImpl(api, props, catalog);
+        for (String figi : List.of("A", "B", "C")) {
+            when(marketCtx.searchMarketInstrumentByFigi(eq(figi)))
+                    .thenReturn(CompletableFuture.completedFuture(Optional.of(createInstrument(figi))));
+        }
+
+        InstrumentBatch batch = instrumentService.getInstruments(List.of("A", "B", "C"));
+
+        assertEquals(Set.of("A", "B", "C"), batch.getInstruments().keySet());
+        assertTrue(batch.isComplete());
+    }
+
+    private static Instrument createInstrument(String figi) {
+        return new Instrument(figi, "ticker_" + figi, "isin_" + figi, BigDecimal.TEN, 1, Currency.RUB, "name",
+                InstrumentType.Stock);
+    }
+}
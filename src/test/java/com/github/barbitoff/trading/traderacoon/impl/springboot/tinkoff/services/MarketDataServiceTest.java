@@ -0,0 +1,220 @@
+package com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services;
+
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.config.TinkoffOpenApiProperties;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.config.transport.StreamingConnectionMonitor;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.model.ConflatedEvent;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.streaming.SubscriptionRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.reactivestreams.Subscription;
+import reactor.core.Disposable;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.DirectProcessor;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import ru.tinkoff.invest.openapi.OpenApi;
+import ru.tinkoff.invest.openapi.StreamingContext;
+import ru.tinkoff.invest.openapi.models.market.CandleInterval;
+import ru.tinkoff.invest.openapi.models.streaming.StreamingEvent;
+import ru.tinkoff.invest.openapi.models.streaming.StreamingRequest;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class MarketDataServiceTest {
+
+    private static final String FIGI = "FIGI1";
+
+    @Mock
+    private OpenApi api;
+    @Mock
+    private StreamingContext streamingCtx;
+
+    private final DirectProcessor<StreamingEvent> upstream = DirectProcessor.create();
+    private final FluxSink<StreamingEvent> upstreamSink = upstream.sink();
+    private TinkoffOpenApiProperties props = new TinkoffOpenApiProperties();
+
+    private SubscriptionRegistry subscriptions;
+    private MarketDataService marketDataService;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.initMocks(this);
+        when(api.getStreamingContext()).thenReturn(streamingCtx);
+        when(streamingCtx.getEventPublisher()).thenReturn(upstream);
+        props.getMarketData().setSubscriptionBatchDelay(Duration.ZERO);
+        subscriptions = new SubscriptionRegistry(api, props);
+        marketDataService = new MarketDataService(api, props, subscriptions, new StreamingConnectionMonitor(1));
+    }
+
+    @Test
+    void candlesFanOut() {
+        List<StreamingEvent.Candle> first = new CopyOnWriteArrayList<>();
+        List<StreamingEvent.Candle> second = new CopyOnWriteArrayList<>();
+        Disposable firstSubscription = marketDataService.candles(FIGI, CandleInterval.ONE_MIN).subscribe(first::add);
+        Disposable secondSubscription = marketDataService.candles(FIGI, CandleInterval.ONE_MIN).subscribe(second::add);
+
+        upstreamSink.next(candle(FIGI, CandleInterval.ONE_MIN));
+        upstreamSink.next(candle(FIGI, CandleInterval.HOUR));
+        upstreamSink.next(candle("OTHER", CandleInterval.ONE_MIN));
+        upstreamSink.next(new StreamingEvent.Error("error", "REQ1"));
+
+        assertEquals(1, first.size());
+        assertEquals(1, second.size());
+        // single upstream subscription
+        verify(streamingCtx, times(1)).getEventPublisher();
+        assertEquals(1, upstream.downstreamCount());
+
+        firstSubscription.dispose();
+        secondSubscription.dispose();
+        ArgumentCaptor<StreamingRequest> requests = ArgumentCaptor.forClass(StreamingRequest.class);
+        // one subscription to the API, shared by both subscribers
+        verify(streamingCtx, times(2)).sendRequest(requests.capture());
+        assertTrue(requests.getAllValues().get(0) instanceof StreamingRequest.CandleSubscribeRequest);
+        assertTrue(requests.getAllValues().get(1) instanceof StreamingRequest.CandleUnsubscribeRequest);
+    }
+
+    @Test
+    void subscriptionRequestedAfterJoiningStream() {
+        // the API answers the request at once
+        doAnswer(invocation -> upstreamSink.next(candle(FIGI, CandleInterval.ONE_MIN)))
+                .when(streamingCtx).sendRequest(any(StreamingRequest.CandleSubscribeRequest.class));
+        List<StreamingEvent.Candle> candles = new CopyOnWriteArrayList<>();
+        marketDataService.candles(FIGI, CandleInterval.ONE_MIN).subscribe(candles::add);
+
+        assertEquals(1, candles.size());
+    }
+
+    @Test
+    void orderbooksAndInstrumentInfo() {
+        List<StreamingEvent.Orderbook> orderbooks = new CopyOnWriteArrayList<>();
+        List<StreamingEvent.InstrumentInfo> infos = new CopyOnWriteArrayList<>();
+        marketDataService.orderbooks(FIGI, 5).subscribe(orderbooks::add);
+        marketDataService.instrumentInfo(FIGI).subscribe(infos::add);
+
+        upstreamSink.next(new StreamingEvent.Orderbook(5, List.of(), List.of(), FIGI));
+        upstreamSink.next(new StreamingEvent.Orderbook(10, List.of(), List.of(), FIGI));
+        upstreamSink.next(new StreamingEvent.InstrumentInfo("normal_trading", BigDecimal.ONE, 1, null, null, null,
+                FIGI));
+
+        assertEquals(1, orderbooks.size());
+        assertEquals(1, infos.size());
+    }
+
+    @Test
+    void slowSubscriberDoesNotBlockOthers() {
+        props.getMarketData().setSubscriberBufferSize(2);
+        List<StreamingEvent.Candle> fast = new CopyOnWriteArrayList<>();
+        // slow subscriber doesn't request anything
+        marketDataService.candles(FIGI, CandleInterval.ONE_MIN).subscribe(candle -> {
+        }, error -> {
+        }, () -> {
+        }, subscription -> {
+        });
+        marketDataService.candles(FIGI, CandleInterval.ONE_MIN).subscribe(fast::add);
+
+        for (int i = 0; i < 10; i++) {
+            upstreamSink.next(candle(FIGI, CandleInterval.ONE_MIN));
+        }
+
+        assertEquals(10, fast.size());
+    }
+
+    @Test
+    void conflatedOrderbooks() {
+        List<ConflatedEvent<StreamingEvent.Orderbook>> received = new CopyOnWriteArrayList<>();
+        ManualSubscriber<ConflatedEvent<StreamingEvent.Orderbook>> subscriber = new ManualSubscriber<>(received);
+        marketDataService.conflate(Flux.merge(marketDataService.orderbooks(FIGI, 5),
+                marketDataService.orderbooks("OTHER", 5))).subscribe(subscriber);
+
+        upstreamSink.next(orderbook(FIGI, "100"));
+        assertEquals(1, received.size());
+        // the subscriber is busy now
+        upstreamSink.next(orderbook(FIGI, "101"));
+        upstreamSink.next(orderbook("OTHER", "50"));
+        upstreamSink.next(orderbook(FIGI, "102"));
+        upstreamSink.next(orderbook(FIGI, "103"));
+        assertEquals(1, received.size());
+
+        subscriber.request(10);
+
+        assertEquals(3, received.size());
+        assertEquals(FIGI, received.get(1).getEvent().getFigi());
+        assertEquals(0, new BigDecimal("103").compareTo(received.get(1).getEvent().getBids().get(0)[0]));
+        assertEquals(2, received.get(1).getConflated());
+        assertEquals("OTHER", received.get(2).getEvent().getFigi());
+        assertEquals(0, received.get(2).getConflated());
+        assertEquals(2, marketDataService.getConflatedEvents());
+
+        // delivered at once while there are requests
+        upstreamSink.next(orderbook(FIGI, "104"));
+        assertEquals(4, received.size());
+    }
+
+    @Test
+    void conflationCompletes() {
+        AtomicBoolean completed = new AtomicBoolean();
+        marketDataService.conflatedOrderbooks(FIGI, 5).subscribe(event -> {
+        }, error -> {
+        }, () -> completed.set(true));
+
+        marketDataService.destroy();
+
+        assertTrue(completed.get());
+    }
+
+    @Test
+    void destroyCompletesSubscribers() {
+        AtomicBoolean completed = new AtomicBoolean();
+        marketDataService.errors().subscribe(error -> {
+        }, error -> {
+        }, () -> completed.set(true));
+        assertEquals(1, upstream.downstreamCount());
+
+        marketDataService.destroy();
+
+        assertTrue(completed.get());
+        assertEquals(0, upstream.downstreamCount());
+    }
+
+    private static StreamingEvent.Orderbook orderbook(String figi, String bid) {
+        return new StreamingEvent.Orderbook(5, List.<BigDecimal[]>of(new BigDecimal[]{new BigDecimal(bid),
+                BigDecimal.ONE}), List.of(), figi);
+    }
+
+    private static StreamingEvent.Candle candle(String figi, CandleInterval interval) {
+        return new StreamingEvent.Candle(BigDecimal.ONE, BigDecimal.ONE, BigDecimal.ONE, BigDecimal.ONE,
+                BigDecimal.TEN, ZonedDateTime.now(), interval, figi);
+    }
+
+    /**
+     * Requests one event on subscription, the others - on demand
+     */
+    private static class ManualSubscriber<T> extends BaseSubscriber<T> {
+        private final List<T> received;
+
+        ManualSubscriber(List<T> received) {
+            this.received = received;
+        }
+
+        @Override
+        protected void hookOnSubscribe(Subscription subscription) {
+            subscription.request(1);
+        }
+
+        @Override
+        protected void hookOnNext(T value) {
+            received.add(value);
+        }
+    }
+}
@@ -6,8 +6,14 @@ import com.github.barbitoff.trading.traderacoon.api.model.exception.AccountNotFo
 import com.github.barbitoff.trading.traderacoon.api.model.exception.OrderRejectedException;
 import com.github.barbitoff.trading.traderacoon.api.model.exception.TradingApiException;
 import com.github.barbitoff.trading.traderacoon.api.service.AccountService;
-import com.github.barbitoff.trading.traderacoon.api.service.OrderService;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.config.TinkoffOpenApiProperties;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.model.OrderCancellationResult;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.model.OrderPlacementResult;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.model.OrderRequest;
 import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.model.mappers.OrderMapper;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.orders.ActiveOrderStore;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.orders.OrderActionEvent;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.orders.OrderValidator;
 import org.jeasy.random.EasyRandom;
 import org.jeasy.random.EasyRandomParameters;
 import org.junit.jupiter.api.BeforeEach;
@@ -15,8 +21,10 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.context.ApplicationEventPublisher;
 import ru.tinkoff.invest.openapi.OpenApi;
 import ru.tinkoff.invest.openapi.OrdersContext;
 import ru.tinkoff.invest.openapi.models.orders.*;
@@ -28,6 +36,8 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -50,17 +60,30 @@ class OrderServiceImplTest {
     @Mock
     private OrderMapper orderMapper;
 
-    private OrderService ordersService;
+    @Mock
+    private ActiveOrderStore activeOrderStore;
+    @Mock
+    private OrderValidator orderValidator;
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    private TinkoffOpenApiProperties props = new TinkoffOpenApiProperties();
+
+    private OrderServiceImpl ordersService;
 
     @BeforeEach
     void setUp() throws TradingApiException, AccountNotFoundException {
         MockitoAnnotations.initMocks(this);
         // create object under test
-        ordersService = new OrderServiceImpl(api, accountsService, orderMapper);
+        ordersService = new OrderServiceImpl(api, accountsService, orderMapper, props, activeOrderStore,
+                orderValidator, eventPublisher);
         // setup AccountsService mock
         when(accountsService.getTradingAccount()).thenReturn(new TradingAccount(ACCOUNT_ID));
         // setup OpenApi mock
         when(api.getOrdersContext()).thenReturn(ordersCtx);
+        // setup validator mock to accept any order as is
+        when(orderValidator.validate(any(), anyInt(), any(), any()))
+                .thenAnswer(invocation -> CompletableFuture.completedFuture(invocation.getArgument(2)));
     }
 
     @Test
@@ -96,6 +119,132 @@ class OrderServiceImplTest {
         assertEquals(order, orders.get(0));
     }
 
+    @Test
+    void getActiveOrdersCoalesced() throws ExecutionException, InterruptedException {
+        CompletableFuture<List<ru.tinkoff.invest.openapi.models.orders.Order>> pending = new CompletableFuture<>();
+        when(ordersCtx.getOrders(eq(ACCOUNT_ID))).thenReturn(pending);
+
+        CompletableFuture<List<Order>> first = ordersService.getActiveOrdersAsync(ACCOUNT_ID);
+        CompletableFuture<List<Order>> second = ordersService.getActiveOrdersAsync(ACCOUNT_ID);
+        pending.complete(Collections.emptyList());
+
+        assertTrue(first.get().isEmpty());
+        assertTrue(second.get().isEmpty());
+        verify(ordersCtx).getOrders(eq(ACCOUNT_ID));
+        assertEquals(1, ordersService.getCoalescedCalls());
+    }
+
+    @Test
+    void getActiveOrdersNotCoalescedAfterPlacement()
+            throws TradingApiException, AccountNotFoundException, OrderRejectedException {
+        CompletableFuture<List<ru.tinkoff.invest.openapi.models.orders.Order>> pending = new CompletableFuture<>();
+        when(ordersCtx.getOrders(eq(ACCOUNT_ID))).thenReturn(pending);
+        when(ordersCtx.placeMarketOrder(eq(FIGI), any(), eq(ACCOUNT_ID)))
+                .thenReturn(CompletableFuture.completedFuture(generatePlacedOrder(Status.New)));
+
+        ordersService.getActiveOrdersAsync(ACCOUNT_ID);
+        ordersService.buy(FIGI, 1, null);
+        ordersService.getActiveOrdersAsync(ACCOUNT_ID);
+
+        verify(ordersCtx, times(2)).getOrders(eq(ACCOUNT_ID));
+        assertEquals(0, ordersService.getCoalescedCalls());
+    }
+
+    @Test
+    void getAllOrdersFromStore() throws TradingApiException, AccountNotFoundException {
+        List<Order> storedOrders = List.of(createOrderWithIdAndStatus(ORDER_ID, OrderStatus.New));
+        when(activeOrderStore.isInitialized()).thenReturn(true);
+        when(activeOrderStore.getActiveOrders()).thenReturn(storedOrders);
+
+        assertSame(storedOrders, ordersService.getActiveOrders());
+        verify(ordersCtx, never()).getOrders(any());
+    }
+
+    @Test
+    void placeAndCancelUpdateStore() throws TradingApiException, AccountNotFoundException, OrderRejectedException {
+        PlacedOrder placedOrder = generatePlacedOrder(Status.New);
+        when(ordersCtx.placeMarketOrder(eq(FIGI), any(), eq(ACCOUNT_ID)))
+                .thenReturn(CompletableFuture.completedFuture(placedOrder));
+        Order order = createOrderWithIdAndStatus(ORDER_ID, OrderStatus.New);
+        when(orderMapper.mapTinkoffOrder(eq(placedOrder), eq(FIGI), eq(StockOrderType.Market), isNull()))
+                .thenReturn(order);
+        when(ordersCtx.cancelOrder(eq(ORDER_ID), eq(ACCOUNT_ID))).thenReturn(CompletableFuture.completedFuture(null));
+
+        ordersService.buy(FIGI, 1, null);
+        ordersService.cancelOrders(List.of(order));
+
+        InOrder inOrder = inOrder(activeOrderStore);
+        inOrder.verify(activeOrderStore).placed(same(order));
+        inOrder.verify(activeOrderStore).cancelled(eq(ORDER_ID));
+    }
+
+    @Test
+    void placeAndCancelPublishEvents() throws TradingApiException, AccountNotFoundException, OrderRejectedException {
+        PlacedOrder placedOrder = generatePlacedOrder(Status.New);
+        when(ordersCtx.placeMarketOrder(eq(FIGI), any(), eq(ACCOUNT_ID)))
+                .thenReturn(CompletableFuture.completedFuture(placedOrder));
+        when(ordersCtx.cancelOrder(eq(ORDER_ID), eq(ACCOUNT_ID))).thenReturn(CompletableFuture.completedFuture(null));
+
+        ordersService.buy(FIGI, 1, null);
+        ordersService.cancelOrders(List.of(createOrderWithIdAndStatus(ORDER_ID, OrderStatus.New)));
+
+        ArgumentCaptor<OrderActionEvent> events = ArgumentCaptor.forClass(OrderActionEvent.class);
+        verify(eventPublisher, times(2)).publishEvent(events.capture());
+        assertEquals(OrderActionEvent.Action.PLACED, events.getAllValues().get(0).getAction());
+        assertEquals(placedOrder.id, events.getAllValues().get(0).getOrderId());
+        assertEquals(OrderActionEvent.Action.CANCELLED, events.getAllValues().get(1).getAction());
+        assertEquals(ORDER_ID, events.getAllValues().get(1).getOrderId());
+        assertEquals(ACCOUNT_ID, events.getAllValues().get(1).getAccountId());
+    }
+
+    @Test
+    void placeOrderRejectedByValidator() {
+        OrderRejectedException validationException = new OrderRejectedException("Invalid");
+        when(orderValidator.validate(eq(FIGI), eq(1), eq(BigDecimal.TEN), eq(Operation.Buy)))
+                .thenReturn(CompletableFuture.failedFuture(validationException));
+
+        OrderRejectedException factEx = assertThrows(OrderRejectedException.class,
+                () -> ordersService.buy(FIGI, 1, BigDecimal.TEN),
+                "Expected exception when the order is invalid");
+        assertSame(validationException, factEx);
+        verify(ordersCtx, never()).placeLimitOrder(any(), any(), any());
+    }
+
+    @Test
+    void failingListenerDoesNotFailOrderAction() throws ExecutionException, InterruptedException {
+        doThrow(new IllegalStateException("Emulated")).when(eventPublisher).publishEvent(any(OrderActionEvent.class));
+        PlacedOrder placedOrder = generatePlacedOrder(Status.New);
+        when(ordersCtx.placeMarketOrder(eq(FIGI), any(), eq(ACCOUNT_ID)))
+                .thenReturn(CompletableFuture.completedFuture(placedOrder));
+        Order order = createOrderWithIdAndStatus(ORDER_ID, OrderStatus.New);
+        when(orderMapper.mapTinkoffOrder(eq(placedOrder), eq(FIGI), eq(StockOrderType.Market), isNull()))
+                .thenReturn(order);
+        when(ordersCtx.cancelOrder(eq(ORDER_ID), eq(ACCOUNT_ID))).thenReturn(CompletableFuture.completedFuture(null));
+
+        assertSame(order, ordersService.placeOrderAsync(FIGI, 1, null, Operation.Buy, ACCOUNT_ID).get());
+        ordersService.cancelOrderAsync(ORDER_ID, ACCOUNT_ID).get();
+
+        verify(activeOrderStore).placed(same(order));
+        verify(activeOrderStore).cancelled(eq(ORDER_ID));
+    }
+
+    @Test
+    void placeOrderWithValidatedPrice() throws TradingApiException, AccountNotFoundException, OrderRejectedException {
+        BigDecimal roundedPrice = new BigDecimal("10.5");
+        when(orderValidator.validate(eq(FIGI), eq(1), eq(new BigDecimal("10.55")), eq(Operation.Buy)))
+                .thenReturn(CompletableFuture.completedFuture(roundedPrice));
+        PlacedOrder placedOrder = generatePlacedOrder(Status.New);
+        when(ordersCtx.placeLimitOrder(eq(FIGI), any(), eq(ACCOUNT_ID)))
+                .thenReturn(CompletableFuture.completedFuture(placedOrder));
+
+        ordersService.buy(FIGI, 1, new BigDecimal("10.55"));
+
+        ArgumentCaptor<LimitOrder> orderCaptor = ArgumentCaptor.forClass(LimitOrder.class);
+        verify(ordersCtx).placeLimitOrder(eq(FIGI), orderCaptor.capture(), eq(ACCOUNT_ID));
+        assertEquals(roundedPrice, orderCaptor.getValue().price);
+        verify(orderMapper).mapTinkoffOrder(eq(placedOrder), eq(FIGI), eq(StockOrderType.Limit), eq(roundedPrice));
+    }
+
     @Test
     void getAllOrdersErrorInApi() throws AccountNotFoundException {
         Exception apiException = new IOException("Fake IO exception");
@@ -203,6 +352,195 @@ class OrderServiceImplTest {
         assertEquals(apiException, factException.getCause().getCause());
     }
 
+    @Test
+    void cancelOrdersWithResultsOneFailed() throws TradingApiException, AccountNotFoundException {
+        IOException apiException = new IOException("Emulated");
+        CompletableFuture<Void> successFuture = CompletableFuture.completedFuture(null);
+        CompletableFuture<Void> failedFuture = CompletableFuture.failedFuture(apiException);
+
+        List<Order> orders = createOrdersOfAllTypes();
+        orders.stream().filter(ord -> ord.getStatus() == OrderStatus.New
+                || ord.getStatus() == OrderStatus.PendingNew
+        ).forEach(ord ->
+                when(ordersCtx.cancelOrder(eq(ord.getId()), eq(ACCOUNT_ID))).thenReturn(successFuture)
+        );
+        orders.stream().filter(ord -> ord.getStatus() == OrderStatus.PartiallyFill)
+                .forEach(ord ->
+                        when(ordersCtx.cancelOrder(eq(ord.getId()), eq(ACCOUNT_ID))).thenReturn(failedFuture)
+                );
+
+        List<OrderCancellationResult> results = ordersService.cancelOrdersWithResults(orders);
+
+        assertEquals(orders.size(), results.size());
+        for (int i = 0; i < orders.size(); i++) {
+            OrderCancellationResult result = results.get(i);
+            assertSame(orders.get(i), result.getOrder());
+            switch (result.getOrder().getStatus()) {
+                case New:
+                case PendingNew:
+                    assertEquals(OrderCancellationResult.Status.CANCELLED, result.getStatus());
+                    assertNull(result.getError());
+                    break;
+                case PartiallyFill:
+                    assertEquals(OrderCancellationResult.Status.FAILED, result.getStatus());
+                    assertEquals(apiException, result.getError().getCause());
+                    break;
+                default:
+                    assertEquals(OrderCancellationResult.Status.SKIPPED, result.getStatus());
+            }
+        }
+    }
+
+    @Test
+    void cancelOrdersConcurrencyBound() throws Exception {
+        props.getOrders().setCancelConcurrency(1);
+        Order first = createOrderWithIdAndStatus(ORDER_ID + "1", OrderStatus.New);
+        Order second = createOrderWithIdAndStatus(ORDER_ID + "2", OrderStatus.New);
+        CompletableFuture<Void> firstFuture = new CompletableFuture<>();
+        when(ordersCtx.cancelOrder(eq(first.getId()), eq(ACCOUNT_ID))).thenReturn(firstFuture);
+        when(ordersCtx.cancelOrder(eq(second.getId()), eq(ACCOUNT_ID))).thenReturn(CompletableFuture.completedFuture(null));
+
+        CompletableFuture<List<OrderCancellationResult>> results = CompletableFuture.supplyAsync(() -> {
+            try {
+                return ordersService.cancelOrdersWithResults(Arrays.asList(first, second));
+            } catch (Exception ex) {
+                throw new RuntimeException(ex);
+            }
+        });
+
+        verify(ordersCtx, timeout(1000)).cancelOrder(eq(first.getId()), eq(ACCOUNT_ID));
+        // the second cancellation waits for a free slot
+        Thread.sleep(100);
+        verify(ordersCtx, never()).cancelOrder(eq(second.getId()), eq(ACCOUNT_ID));
+
+        firstFuture.complete(null);
+        assertTrue(results.get(1, TimeUnit.SECONDS).stream()
+                .allMatch(res -> res.getStatus() == OrderCancellationResult.Status.CANCELLED));
+    }
+
+    @Test
+    void cancelOrdersUnbounded() throws TradingApiException, AccountNotFoundException {
+        props.getOrders().setCancelConcurrency(0);
+        Order first = createOrderWithIdAndStatus(ORDER_ID + "1", OrderStatus.New);
+        Order second = createOrderWithIdAndStatus(ORDER_ID + "2", OrderStatus.New);
+        when(ordersCtx.cancelOrder(any(), eq(ACCOUNT_ID))).thenReturn(CompletableFuture.completedFuture(null));
+
+        List<OrderCancellationResult> results = ordersService.cancelOrdersWithResults(Arrays.asList(first, second));
+
+        assertTrue(results.stream().allMatch(res -> res.getStatus() == OrderCancellationResult.Status.CANCELLED));
+    }
+
+    @Test
+    void cancelOrdersSynchronousFailure() throws TradingApiException, AccountNotFoundException {
+        IllegalStateException apiException = new IllegalStateException("Emulated");
+        Order first = createOrderWithIdAndStatus(ORDER_ID + "1", OrderStatus.New);
+        Order second = createOrderWithIdAndStatus(ORDER_ID + "2", OrderStatus.New);
+        when(ordersCtx.cancelOrder(eq(first.getId()), eq(ACCOUNT_ID))).thenThrow(apiException);
+        when(ordersCtx.cancelOrder(eq(second.getId()), eq(ACCOUNT_ID)))
+                .thenReturn(CompletableFuture.completedFuture(null));
+
+        List<OrderCancellationResult> results = ordersService.cancelOrdersWithResults(Arrays.asList(first, second));
+
+        assertEquals(OrderCancellationResult.Status.FAILED, results.get(0).getStatus());
+        assertEquals(apiException, results.get(0).getError().getCause());
+        assertEquals(OrderCancellationResult.Status.CANCELLED, results.get(1).getStatus());
+    }
+
+    @Test
+    void placeOrdersDifferentOutcomes() throws TradingApiException, AccountNotFoundException {
+        IOException apiException = new IOException("Emulated");
+        PlacedOrder placedOrder = generatePlacedOrder(Status.Fill);
+        PlacedOrder rejectedOrder = generatePlacedOrder(Status.Rejected);
+        when(ordersCtx.placeLimitOrder(eq(FIGI + "1"), any(), eq(ACCOUNT_ID)))
+                .thenReturn(CompletableFuture.completedFuture(placedOrder));
+        when(ordersCtx.placeMarketOrder(eq(FIGI + "2"), any(), eq(ACCOUNT_ID)))
+                .thenReturn(CompletableFuture.completedFuture(rejectedOrder));
+        when(ordersCtx.placeLimitOrder(eq(FIGI + "3"), any(), eq(ACCOUNT_ID)))
+                .thenReturn(CompletableFuture.failedFuture(apiException));
+        Order order = mock(Order.class);
+        when(orderMapper.mapTinkoffOrder(eq(placedOrder), eq(FIGI + "1"), eq(StockOrderType.Limit), eq(BigDecimal.TEN)))
+                .thenReturn(order);
+
+        List<OrderRequest> requests = Arrays.asList(
+                OrderRequest.buy(FIGI + "1", 1, BigDecimal.TEN),
+                OrderRequest.sell(FIGI + "2", 2, null),
+                OrderRequest.buy(FIGI + "3", 3, BigDecimal.ONE));
+        List<OrderPlacementResult> results = ordersService.placeOrders(requests);
+
+        assertEquals(3, results.size());
+        assertSame(requests.get(0), results.get(0).getRequest());
+        assertEquals(OrderPlacementResult.Status.PLACED, results.get(0).getStatus());
+        assertSame(order, results.get(0).getOrder());
+        assertEquals(OrderPlacementResult.Status.REJECTED, results.get(1).getStatus());
+        assertTrue(results.get(1).getError() instanceof OrderRejectedException);
+        assertEquals(OrderPlacementResult.Status.FAILED, results.get(2).getStatus());
+        assertEquals(apiException, results.get(2).getError().getCause());
+
+        ArgumentCaptor<MarketOrder> orderCaptor = ArgumentCaptor.forClass(MarketOrder.class);
+        verify(ordersCtx).placeMarketOrder(eq(FIGI + "2"), orderCaptor.capture(), eq(ACCOUNT_ID));
+        assertEquals(Operation.Sell, orderCaptor.getValue().operation);
+    }
+
+    @Test
+    void placeOrdersConcurrencyBound() throws Exception {
+        props.getOrders().setPlaceConcurrency(1);
+        CompletableFuture<PlacedOrder> firstFuture = new CompletableFuture<>();
+        when(ordersCtx.placeMarketOrder(eq(FIGI + "1"), any(), eq(ACCOUNT_ID))).thenReturn(firstFuture);
+        when(ordersCtx.placeMarketOrder(eq(FIGI + "2"), any(), eq(ACCOUNT_ID)))
+                .thenReturn(CompletableFuture.completedFuture(generatePlacedOrder(Status.New)));
+        when(orderMapper.mapTinkoffOrder(any(PlacedOrder.class), any(), any(), any())).thenReturn(mock(Order.class));
+
+        CompletableFuture<List<OrderPlacementResult>> results = CompletableFuture.supplyAsync(() -> {
+            try {
+                return ordersService.placeOrders(Arrays.asList(
+                        OrderRequest.buy(FIGI + "1", 1, null),
+                        OrderRequest.buy(FIGI + "2", 1, null)));
+            } catch (Exception ex) {
+                throw new RuntimeException(ex);
+            }
+        });
+
+        verify(ordersCtx, timeout(1000)).placeMarketOrder(eq(FIGI + "1"), any(), eq(ACCOUNT_ID));
+        // the second placement waits for a free slot
+        Thread.sleep(100);
+        verify(ordersCtx, never()).placeMarketOrder(eq(FIGI + "2"), any(), eq(ACCOUNT_ID));
+
+        firstFuture.complete(generatePlacedOrder(Status.New));
+        assertTrue(results.get(1, TimeUnit.SECONDS).stream()
+                .allMatch(res -> res.getStatus() == OrderPlacementResult.Status.PLACED));
+    }
+
+    @Test
+    void placeOrdersUnbounded() throws TradingApiException, AccountNotFoundException {
+        props.getOrders().setPlaceConcurrency(0);
+        when(ordersCtx.placeMarketOrder(any(), any(), eq(ACCOUNT_ID)))
+                .thenReturn(CompletableFuture.completedFuture(generatePlacedOrder(Status.New)));
+        when(orderMapper.mapTinkoffOrder(any(PlacedOrder.class), any(), any(), any())).thenReturn(mock(Order.class));
+
+        List<OrderPlacementResult> results = ordersService.placeOrders(Arrays.asList(
+                OrderRequest.buy(FIGI + "1", 1, null),
+                OrderRequest.buy(FIGI + "2", 1, null)));
+
+        assertTrue(results.stream().allMatch(res -> res.getStatus() == OrderPlacementResult.Status.PLACED));
+    }
+
+    @Test
+    void placeOrdersSynchronousFailure() throws TradingApiException, AccountNotFoundException {
+        IllegalStateException validatorException = new IllegalStateException("Emulated");
+        when(orderValidator.validate(eq(FIGI + "1"), anyInt(), any(), any())).thenThrow(validatorException);
+        when(ordersCtx.placeMarketOrder(eq(FIGI + "2"), any(), eq(ACCOUNT_ID)))
+                .thenReturn(CompletableFuture.completedFuture(generatePlacedOrder(Status.New)));
+        when(orderMapper.mapTinkoffOrder(any(PlacedOrder.class), any(), any(), any())).thenReturn(mock(Order.class));
+
+        List<OrderPlacementResult> results = ordersService.placeOrders(Arrays.asList(
+                OrderRequest.buy(FIGI + "1", 1, null),
+                OrderRequest.buy(FIGI + "2", 1, null)));
+
+        assertEquals(OrderPlacementResult.Status.FAILED, results.get(0).getStatus());
+        assertEquals(validatorException, results.get(0).getError().getCause());
+        assertEquals(OrderPlacementResult.Status.PLACED, results.get(1).getStatus());
+    }
+
     @Test
     void cancelAllOrders() throws TradingApiException, AccountNotFoundException {
         CompletableFuture<Void> successFuture = CompletableFuture.completedFuture(null);
@@ -5,6 +5,12 @@ import com.github.barbitoff.trading.traderacoon.api.model.exception.AccountNotFo
 import com.github.barbitoff.trading.traderacoon.api.model.exception.TradingApiException;
 import com.github.barbitoff.trading.traderacoon.api.service.AccountService;
 import com.github.barbitoff.trading.traderacoon.api.service.PortfolioService;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.config.TinkoffOpenApiProperties;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.model.ActiveOrdersDiff;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.model.PortfolioTiming;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.orders.ActiveOrdersChangedEvent;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.orders.OrderActionEvent;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.portfolio.PortfolioChangedEvent;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mock;
@@ -18,13 +24,17 @@ import ru.tinkoff.invest.openapi.models.portfolio.PortfolioCurrencies;
 
 import java.io.IOException;
 import java.math.BigDecimal;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 class PortfolioServiceImplTest {
@@ -41,6 +51,8 @@ class PortfolioServiceImplTest {
     @Mock
     private PortfolioContext portfolioCtx;
 
+    private TinkoffOpenApiProperties props = new TinkoffOpenApiProperties();
+
     private PortfolioService portfolioService;
 
     @BeforeEach
@@ -51,7 +63,7 @@ class PortfolioServiceImplTest {
         // setup api mock
         when(api.getPortfolioContext()).thenReturn(portfolioCtx);
 
-        portfolioService = new PortfolioServiceImpl(api, accountsService);
+        portfolioService = new PortfolioServiceImpl(api, accountsService, props);
     }
 
     @Test
@@ -71,6 +83,115 @@ class PortfolioServiceImplTest {
         validateNonCurrencies(factPositions, portfolio);
     }
 
+    @Test
+    void getPortfolioRequestsConcurrently() throws ExecutionException, InterruptedException {
+        PortfolioServiceImpl service = new PortfolioServiceImpl(api, accountsService, props);
+        CompletableFuture<PortfolioCurrencies> currencies = new CompletableFuture<>();
+        when(portfolioCtx.getPortfolioCurrencies(eq(ACCOUNT_ID))).thenReturn(currencies);
+        CompletableFuture<Portfolio> portfolio = new CompletableFuture<>();
+        when(portfolioCtx.getPortfolio(eq(ACCOUNT_ID))).thenReturn(portfolio);
+        assertTrue(service.getLastTiming().isEmpty());
+
+        CompletableFuture<com.github.barbitoff.trading.traderacoon.api.model.Portfolio> factPortfolio =
+                service.getPortfolioAsync(ACCOUNT_ID);
+        // both parts are requested before any of them is received
+        verify(portfolioCtx).getPortfolioCurrencies(eq(ACCOUNT_ID));
+        verify(portfolioCtx).getPortfolio(eq(ACCOUNT_ID));
+        portfolio.complete(generatePortfolio());
+        currencies.complete(generatePortfolioCurrencies());
+
+        assertEquals(5, factPortfolio.get().getPositions().size());
+        PortfolioTiming timing = service.getLastTiming().orElseThrow();
+        assertTrue(timing.getTotal().compareTo(timing.getCurrencies()) >= 0);
+        assertTrue(timing.getCurrencies().compareTo(timing.getPositions()) >= 0);
+    }
+
+    @Test
+    void getPortfolioFromSnapshot() throws TradingApiException, AccountNotFoundException {
+        props.getPortfolioCache().setEnabled(true);
+        props.getPortfolioCache().setMaxStaleness(Duration.ofMinutes(1));
+        PortfolioServiceImpl service = new PortfolioServiceImpl(api, accountsService, props);
+        mockPortfolio();
+        assertTrue(service.getSnapshotAge(ACCOUNT_ID).isEmpty());
+
+        com.github.barbitoff.trading.traderacoon.api.model.Portfolio first = service.getPortfolio();
+        assertSame(first, service.getPortfolio());
+        assertTrue(service.getSnapshotAge(ACCOUNT_ID).isPresent());
+        verify(portfolioCtx).getPortfolio(eq(ACCOUNT_ID));
+
+        service.onOrderAction(new OrderActionEvent(this, OrderActionEvent.Action.PLACED, "ORDER1", ACCOUNT_ID));
+        assertTrue(service.getSnapshotAge(ACCOUNT_ID).isEmpty());
+        assertNotSame(first, service.getPortfolio());
+        service.onActiveOrdersChanged(new ActiveOrdersChangedEvent(this, ActiveOrdersDiff.EMPTY));
+        service.getPortfolio();
+        verify(portfolioCtx, times(3)).getPortfolio(eq(ACCOUNT_ID));
+        verify(portfolioCtx, times(3)).getPortfolioCurrencies(eq(ACCOUNT_ID));
+    }
+
+    @Test
+    void getPortfolioSnapshotExpired() throws TradingApiException, AccountNotFoundException {
+        props.getPortfolioCache().setEnabled(true);
+        props.getPortfolioCache().setMaxStaleness(Duration.ZERO);
+        PortfolioServiceImpl service = new PortfolioServiceImpl(api, accountsService, props);
+        mockPortfolio();
+
+        service.getPortfolio();
+        service.getPortfolio();
+
+        verify(portfolioCtx, times(2)).getPortfolio(eq(ACCOUNT_ID));
+    }
+
+    @Test
+    void getPortfolioSnapshotOutdatedWhileRequested() throws ExecutionException, InterruptedException {
+        props.getPortfolioCache().setEnabled(true);
+        PortfolioServiceImpl service = new PortfolioServiceImpl(api, accountsService, props);
+        CompletableFuture<Portfolio> portfolio = new CompletableFuture<>();
+        when(portfolioCtx.getPortfolio(eq(ACCOUNT_ID))).thenReturn(portfolio);
+        when(portfolioCtx.getPortfolioCurrencies(eq(ACCOUNT_ID)))
+                .thenReturn(CompletableFuture.completedFuture(generatePortfolioCurrencies()));
+
+        CompletableFuture<com.github.barbitoff.trading.traderacoon.api.model.Portfolio> factPortfolio =
+                service.getPortfolioAsync(ACCOUNT_ID);
+        service.onOrderAction(new OrderActionEvent(this, OrderActionEvent.Action.CANCELLED, "ORDER1", ACCOUNT_ID));
+        portfolio.complete(generatePortfolio());
+
+        assertEquals(5, factPortfolio.get().getPositions().size());
+        assertTrue(service.getSnapshotAge(ACCOUNT_ID).isEmpty());
+    }
+
+    @Test
+    void getPortfolioDoesNotJoinRequestBeforeChange() throws ExecutionException, InterruptedException {
+        props.getPortfolioCache().setEnabled(true);
+        PortfolioServiceImpl service = new PortfolioServiceImpl(api, accountsService, props);
+        CompletableFuture<Portfolio> before = new CompletableFuture<>();
+        when(portfolioCtx.getPortfolio(eq(ACCOUNT_ID)))
+                .thenReturn(before)
+                .thenReturn(CompletableFuture.completedFuture(generatePortfolio()));
+        when(portfolioCtx.getPortfolioCurrencies(eq(ACCOUNT_ID)))
+                .thenReturn(CompletableFuture.completedFuture(generatePortfolioCurrencies()));
+
+        service.getPortfolioAsync(ACCOUNT_ID);
+        service.onPortfolioChanged(new PortfolioChangedEvent(this, List.of()));
+        CompletableFuture<com.github.barbitoff.trading.traderacoon.api.model.Portfolio> after =
+                service.getPortfolioAsync(ACCOUNT_ID);
+
+        // a new request, not the one started before the change
+        assertEquals(5, after.get().getPositions().size());
+        verify(portfolioCtx, times(2)).getPortfolio(eq(ACCOUNT_ID));
+        before.complete(generatePortfolio());
+
+        service.onActiveOrdersChanged(new ActiveOrdersChangedEvent(this, ActiveOrdersDiff.EMPTY));
+        service.getPortfolioAsync(ACCOUNT_ID).get();
+        verify(portfolioCtx, times(3)).getPortfolio(eq(ACCOUNT_ID));
+    }
+
+    private void mockPortfolio() {
+        when(portfolioCtx.getPortfolioCurrencies(eq(ACCOUNT_ID)))
+                .thenReturn(CompletableFuture.completedFuture(generatePortfolioCurrencies()));
+        when(portfolioCtx.getPortfolio(eq(ACCOUNT_ID)))
+                .thenReturn(CompletableFuture.completedFuture(generatePortfolio()));
+    }
+
     @Test
     void getPortfolioEmpty() throws TradingApiException, AccountNotFoundException {
         PortfolioCurrencies currencies = new PortfolioCurrencies(Collections.emptyList());
@@ -157,6 +278,28 @@ class PortfolioServiceImplTest {
         validateCurrencies(curListFact, portfolioCurrencies);
     }
 
+    @Test
+    void getCurrenciesAndPositionsCoalesced() throws ExecutionException, InterruptedException {
+        PortfolioServiceImpl service = new PortfolioServiceImpl(api, accountsService, props);
+        CompletableFuture<PortfolioCurrencies> currencies = new CompletableFuture<>();
+        when(portfolioCtx.getPortfolioCurrencies(eq(ACCOUNT_ID))).thenReturn(currencies);
+        CompletableFuture<Portfolio> portfolio = new CompletableFuture<>();
+        when(portfolioCtx.getPortfolio(eq(ACCOUNT_ID))).thenReturn(portfolio);
+
+        CompletableFuture<List<PortfolioPosition>> currencies1 = service.getCurrenciesAsync(ACCOUNT_ID);
+        CompletableFuture<List<PortfolioPosition>> currencies2 = service.getCurrenciesAsync(ACCOUNT_ID);
+        CompletableFuture<List<PortfolioPosition>> positions1 = service.getNonCurrenciesAsync(ACCOUNT_ID);
+        CompletableFuture<List<PortfolioPosition>> positions2 = service.getNonCurrenciesAsync(ACCOUNT_ID);
+        currencies.complete(generatePortfolioCurrencies());
+        portfolio.complete(generatePortfolio());
+
+        assertEquals(currencies1.get(), currencies2.get());
+        assertEquals(positions1.get(), positions2.get());
+        verify(portfolioCtx).getPortfolioCurrencies(eq(ACCOUNT_ID));
+        verify(portfolioCtx).getPortfolio(eq(ACCOUNT_ID));
+        assertEquals(2, service.getCoalescedCalls());
+    }
+
     @Test
     void getCurrenciesEmpty() throws TradingApiException, AccountNotFoundException {
         List<PortfolioCurrencies.PortfolioCurrency> currenciesList = new ArrayList<>();
@@ -0,0 +1,124 @@
+package com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.aggregation;
+
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.config.TinkoffOpenApiProperties;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.model.AggregatedCandle;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.MarketDataService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.reactivestreams.Subscription;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.DirectProcessor;
+import ru.tinkoff.invest.openapi.models.market.CandleInterval;
+import ru.tinkoff.invest.openapi.models.streaming.StreamingEvent;
+
+import java.math.BigDecimal;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class CandleAggregationServiceTest {
+
+    private static final String FIGI = "FIGI1";
+    private static final ZonedDateTime T0 = ZonedDateTime.of(2020, 3, 2, 10, 0, 0, 0, ZoneOffset.UTC);
+
+    @Mock
+    private MarketDataService marketDataService;
+
+    private final DirectProcessor<StreamingEvent.Candle> minutes = DirectProcessor.create();
+    private TinkoffOpenApiProperties props = new TinkoffOpenApiProperties();
+
+    private CandleAggregationService service;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.initMocks(this);
+        when(marketDataService.candles(eq(FIGI), eq(CandleInterval.ONE_MIN))).thenReturn(minutes);
+        service = new CandleAggregationService(marketDataService, props);
+    }
+
+    @Test
+    void trackAggregatesStream() throws ExecutionException, InterruptedException {
+        CandleAggregator aggregator = service.track(FIGI);
+        assertSame(aggregator, service.track(FIGI));
+        CompletableFuture<List<AggregatedCandle>> fiveMinutes = service.candles(FIGI, CandleInterval.FIVE_MIN)
+                .collectList().toFuture();
+
+        minutes.onNext(candle(T0));
+        minutes.onNext(candle(T0.plusMinutes(5)));
+        service.destroy();
+
+        List<AggregatedCandle> received = fiveMinutes.get();
+        assertEquals(3, received.size());
+        assertFalse(received.get(0).isComplete());
+        assertTrue(received.get(1).isComplete());
+        assertEquals(T0.toOffsetDateTime(), received.get(1).getTime());
+        assertEquals(1, aggregator.getCompletedCount(CandleInterval.FIVE_MIN));
+        verify(marketDataService, times(1)).candles(eq(FIGI), eq(CandleInterval.ONE_MIN));
+    }
+
+    @Test
+    void untrack() {
+        service.track(FIGI);
+
+        service.untrack(FIGI);
+
+        assertFalse(minutes.hasDownstreams());
+        assertTrue(service.getAggregator(FIGI).isEmpty());
+    }
+
+    @Test
+    void failedStreamTrackedAgain() {
+        DirectProcessor<StreamingEvent.Candle> restarted = DirectProcessor.create();
+        when(marketDataService.candles(eq(FIGI), eq(CandleInterval.ONE_MIN))).thenReturn(minutes).thenReturn(restarted);
+        CandleAggregator aggregator = service.track(FIGI);
+
+        minutes.onError(new IllegalStateException("Emulated"));
+
+        assertSame(aggregator, service.track(FIGI));
+        restarted.onNext(candle(T0));
+        assertTrue(restarted.hasDownstreams());
+        verify(marketDataService, times(2)).candles(eq(FIGI), eq(CandleInterval.ONE_MIN));
+    }
+
+    @Test
+    void slowSubscriberBufferBounded() {
+        props.getMarketData().setSubscriberBufferSize(2);
+        service.track(FIGI);
+        List<AggregatedCandle> received = new ArrayList<>();
+        BaseSubscriber<AggregatedCandle> subscriber = new BaseSubscriber<>() {
+            @Override
+            protected void hookOnSubscribe(Subscription subscription) {
+                // requests nothing until the updates are over
+            }
+
+            @Override
+            protected void hookOnNext(AggregatedCandle value) {
+                received.add(value);
+            }
+        };
+        service.candles(FIGI, CandleInterval.FIVE_MIN).subscribe(subscriber);
+
+        for (int i = 0; i < 10; i++) {
+            minutes.onNext(candle(T0.plusMinutes(i)));
+        }
+        subscriber.request(100);
+
+        // the latest updates are kept
+        assertEquals(2, received.size());
+        assertEquals(T0.plusMinutes(5).toOffsetDateTime(), received.get(1).getTime());
+    }
+
+    private static StreamingEvent.Candle candle(ZonedDateTime time) {
+        return new StreamingEvent.Candle(BigDecimal.ONE, BigDecimal.TEN, BigDecimal.TEN, BigDecimal.ONE,
+                BigDecimal.ONE, time, CandleInterval.ONE_MIN, FIGI);
+    }
+}
@@ -0,0 +1,101 @@
+package com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.aggregation;
+
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.model.AggregatedCandle;
+import org.junit.jupiter.api.Test;
+import ru.tinkoff.invest.openapi.models.market.CandleInterval;
+
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CandleAggregatorTest {
+
+    private static final String FIGI = "FIGI1";
+    private static final long T0 = OffsetDateTime.of(2020, 3, 2, 10, 0, 0, 0, ZoneOffset.UTC).toEpochSecond();
+
+    private final CandleAggregator aggregator = new CandleAggregator(FIGI,
+            Set.of(CandleInterval.FIVE_MIN, CandleInterval.HOUR), 3);
+    private final List<AggregatedCandle> output = new ArrayList<>();
+
+    @Test
+    void aggregatesMinutes() {
+        for (int minute = 0; minute < 5; minute++) {
+            update(minute, 100 + minute, 101 + minute, 102 + minute, 99 - minute, 10);
+        }
+
+        AggregatedCandle forming = aggregator.getForming(CandleInterval.FIVE_MIN).orElseThrow();
+        assertFalse(forming.isComplete());
+        assertEquals(0, BigDecimal.valueOf(100).compareTo(forming.getOpen()));
+        assertEquals(0, BigDecimal.valueOf(105).compareTo(forming.getClose()));
+        assertEquals(0, BigDecimal.valueOf(106).compareTo(forming.getHigh()));
+        assertEquals(0, BigDecimal.valueOf(95).compareTo(forming.getLow()));
+        assertEquals(0, BigDecimal.valueOf(50).compareTo(forming.getTradesValue()));
+        assertEquals(0, aggregator.getCompletedCount(CandleInterval.FIVE_MIN));
+        // a forming candle of each interval per update
+        assertEquals(10, output.size());
+
+        output.clear();
+        update(5, 200, 200, 200, 200, 1);
+
+        AggregatedCandle completed = output.get(0);
+        assertTrue(completed.isComplete());
+        assertEquals(CandleInterval.FIVE_MIN, completed.getInterval());
+        assertEquals(T0, completed.getTime().toEpochSecond());
+        assertEquals(0, BigDecimal.valueOf(105).compareTo(completed.getClose()));
+        assertEquals(completed, aggregator.getCompleted(CandleInterval.FIVE_MIN, 0).orElseThrow());
+        assertEquals(T0 + 300, aggregator.getForming(CandleInterval.FIVE_MIN).orElseThrow().getTime().toEpochSecond());
+        AggregatedCandle hour = aggregator.getForming(CandleInterval.HOUR).orElseThrow();
+        assertEquals(0, BigDecimal.valueOf(51).compareTo(hour.getTradesValue()));
+        assertEquals(0, BigDecimal.valueOf(200).compareTo(hour.getHigh()));
+    }
+
+    @Test
+    void formingMinuteUpdatedInPlace() {
+        update(0, 100, 100, 100, 100, 10);
+        update(0, 100, 103, 104, 98, 25);
+        update(1, 103, 102, 103, 102, 5);
+        // late update of the previous minute
+        update(0, 100, 90, 104, 90, 100);
+
+        AggregatedCandle forming = aggregator.getForming(CandleInterval.FIVE_MIN).orElseThrow();
+        assertEquals(0, BigDecimal.valueOf(30).compareTo(forming.getTradesValue()));
+        assertEquals(0, BigDecimal.valueOf(104).compareTo(forming.getHigh()));
+        assertEquals(0, BigDecimal.valueOf(98).compareTo(forming.getLow()));
+        assertEquals(0, BigDecimal.valueOf(102).compareTo(forming.getClose()));
+    }
+
+    @Test
+    void completedHistoryIsBounded() {
+        for (int candle = 0; candle < 5; candle++) {
+            update(candle * 5, candle, candle, candle, candle, 1);
+        }
+
+        assertEquals(3, aggregator.getCompletedCount(CandleInterval.FIVE_MIN));
+        assertEquals(3_000_000_000L, aggregator.getCompletedClose(CandleInterval.FIVE_MIN, 0));
+        assertEquals(1_000_000_000L, aggregator.getCompletedClose(CandleInterval.FIVE_MIN, 2));
+        assertTrue(aggregator.getCompleted(CandleInterval.FIVE_MIN, 3).isEmpty());
+        assertTrue(aggregator.getForming(CandleInterval.DAY).isEmpty());
+    }
+
+    @Test
+    void unsupportedInterval() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new CandleAggregator(FIGI, Set.of(CandleInterval.WEEK), 10));
+        assertThrows(IllegalArgumentException.class,
+                () -> new CandleAggregator(FIGI, Set.of(CandleInterval.ONE_MIN), 10));
+    }
+
+    private void update(int minute, long open, long close, long high, long low, long value) {
+        aggregator.update(T0 + minute * 60L, billionths(open), billionths(close), billionths(high), billionths(low),
+                billionths(value), output::add);
+    }
+
+    private static long billionths(long value) {
+        return value * 1_000_000_000L;
+    }
+}
@@ -0,0 +1,122 @@
+package com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.cache;
+
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.model.CacheStats;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BoundedTtlCacheTest {
+
+    private final AtomicLong clock = new AtomicLong();
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private BoundedTtlCache<String, String> cache;
+
+    @BeforeEach
+    void setUp() {
+        // empty values live shorter
+        cache = new BoundedTtlCache<>(2,
+                value -> value.isEmpty() ? Duration.ofNanos(10) : Duration.ofNanos(100),
+                clock::get);
+    }
+
+    @Test
+    void hitAndMiss() throws ExecutionException, InterruptedException {
+        assertEquals("A", cache.get("A", this::load).get());
+        assertEquals("A", cache.get("A", this::load).get());
+
+        assertEquals(1, loads.get());
+        CacheStats stats = cache.getStats();
+        assertEquals(1, stats.getHits());
+        assertEquals(1, stats.getMisses());
+        assertEquals(1, stats.getSize());
+    }
+
+    @Test
+    void concurrentMissesShareLoad() throws ExecutionException, InterruptedException {
+        CompletableFuture<String> loading = new CompletableFuture<>();
+        CompletableFuture<String> first = cache.get("A", key -> loading);
+        CompletableFuture<String> second = cache.get("A", this::load);
+
+        loading.complete("A");
+        assertEquals("A", first.get());
+        assertEquals("A", second.get());
+        assertEquals(0, loads.get());
+    }
+
+    @Test
+    void expiration() throws ExecutionException, InterruptedException {
+        cache.get("A", this::load).get();
+        cache.get("", this::load).get();
+
+        clock.set(50);
+        cache.get("A", this::load).get();
+        cache.get("", this::load).get();
+        assertEquals(3, loads.get());
+
+        clock.set(100);
+        cache.get("A", this::load).get();
+        assertEquals(4, loads.get());
+        assertEquals(2, cache.getStats().getExpirations());
+    }
+
+    @Test
+    void sizeEviction() throws ExecutionException, InterruptedException {
+        cache.get("A", this::load).get();
+        cache.get("B", this::load).get();
+        // A becomes the most recently used
+        cache.get("A", this::load).get();
+        cache.get("C", this::load).get();
+
+        assertEquals(1, cache.getStats().getEvictions());
+        assertEquals(2, cache.getStats().getSize());
+        cache.get("A", this::load).get();
+        assertEquals(3, loads.get());
+        cache.get("B", this::load).get();
+        assertEquals(4, loads.get());
+    }
+
+    @Test
+    void failureNotCached() throws ExecutionException, InterruptedException {
+        IOException loadException = new IOException("Emulated");
+        ExecutionException factEx = assertThrows(ExecutionException.class,
+                () -> cache.get("A", key -> CompletableFuture.failedFuture(loadException)).get(),
+                "Expected exception when loading fails");
+        assertEquals(loadException, factEx.getCause());
+
+        assertEquals("A", cache.get("A", this::load).get());
+        assertEquals(0, cache.getStats().getHits());
+    }
+
+    @Test
+    void cancelledCopyDoesNotAffectCache() throws ExecutionException, InterruptedException {
+        CompletableFuture<String> loading = new CompletableFuture<>();
+        cache.get("A", key -> loading).cancel(false);
+
+        loading.complete("A");
+        assertEquals("A", cache.get("A", this::load).get());
+        assertEquals(0, loads.get());
+    }
+
+    @Test
+    void invalidate() throws ExecutionException, InterruptedException {
+        cache.get("A", this::load).get();
+        cache.invalidate("A");
+        cache.get("A", this::load).get();
+
+        assertEquals(2, loads.get());
+    }
+
+    private CompletableFuture<String> load(String key) {
+        loads.incrementAndGet();
+        return CompletableFuture.completedFuture(key);
+    }
+}
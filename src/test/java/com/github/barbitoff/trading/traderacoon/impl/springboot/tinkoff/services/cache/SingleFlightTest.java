@@ -0,0 +1,116 @@
+package com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SingleFlightTest {
+
+    private final SingleFlight<String, String> flight = new SingleFlight<>();
+    private final AtomicInteger calls = new AtomicInteger();
+
+    @Test
+    void concurrentRequestsShareCall() throws ExecutionException, InterruptedException {
+        CompletableFuture<String> call = new CompletableFuture<>();
+        CompletableFuture<String> first = flight.execute("A", () -> count(call));
+        CompletableFuture<String> second = flight.execute("A", () -> count(call));
+        CompletableFuture<String> other = flight.execute("B", () -> count(CompletableFuture.completedFuture("B")));
+
+        call.complete("A");
+        assertEquals("A", first.get());
+        assertEquals("A", second.get());
+        assertEquals("B", other.get());
+        assertEquals(2, calls.get());
+        assertEquals(1, flight.getSavedCalls());
+    }
+
+    @Test
+    void completedCallNotShared() throws ExecutionException, InterruptedException {
+        flight.execute("A", () -> count(CompletableFuture.completedFuture("A"))).get();
+        flight.execute("A", () -> count(CompletableFuture.completedFuture("A"))).get();
+
+        assertEquals(2, calls.get());
+        assertEquals(0, flight.getSavedCalls());
+    }
+
+    @Test
+    void failureShared() {
+        CompletableFuture<String> call = new CompletableFuture<>();
+        CompletableFuture<String> first = flight.execute("A", () -> call);
+        CompletableFuture<String> second = flight.execute("A", () -> call);
+
+        IOException callException = new IOException("Emulated");
+        call.completeExceptionally(callException);
+        assertEquals(callException, assertThrows(ExecutionException.class, first::get).getCause());
+        assertEquals(callException, assertThrows(ExecutionException.class, second::get).getCause());
+    }
+
+    @Test
+    void callThrows() throws ExecutionException, InterruptedException {
+        RuntimeException callException = new IllegalStateException("Emulated");
+        ExecutionException factEx = assertThrows(ExecutionException.class,
+                () -> flight.execute("A", () -> {
+                    throw callException;
+                }).get(),
+                "Expected exception when the call throws");
+        assertEquals(callException, factEx.getCause());
+
+        assertEquals("A", flight.execute("A", () -> CompletableFuture.completedFuture("A")).get());
+    }
+
+    @Test
+    void cancelledCopyDoesNotAffectCall() throws ExecutionException, InterruptedException {
+        CompletableFuture<String> call = new CompletableFuture<>();
+        flight.execute("A", () -> call).cancel(false);
+        CompletableFuture<String> second = flight.execute("A", () -> count(call));
+
+        call.complete("A");
+        assertEquals("A", second.get());
+        assertFalse(call.isCancelled());
+    }
+
+    @Test
+    void forget() throws ExecutionException, InterruptedException {
+        CompletableFuture<String> call = new CompletableFuture<>();
+        CompletableFuture<String> first = flight.execute("A", () -> call);
+        flight.forget("A");
+        CompletableFuture<String> second = flight.execute("A", () -> count(CompletableFuture.completedFuture("new")));
+
+        call.complete("old");
+        assertEquals("old", first.get());
+        assertEquals("new", second.get());
+        assertEquals(0, flight.getSavedCalls());
+        // completion of the forgotten call doesn't remove the new one
+        CompletableFuture<String> pending = new CompletableFuture<>();
+        flight.execute("A", () -> pending);
+        flight.execute("A", () -> count(pending));
+        assertEquals(1, flight.getSavedCalls());
+    }
+
+    @Test
+    void forgetAll() throws ExecutionException, InterruptedException {
+        CompletableFuture<String> callA = new CompletableFuture<>();
+        CompletableFuture<String> first = flight.execute("A", () -> callA);
+        flight.execute("B", CompletableFuture::new);
+        flight.forgetAll();
+
+        CompletableFuture<String> second = flight.execute("A", () -> CompletableFuture.completedFuture("new"));
+        flight.execute("B", () -> count(new CompletableFuture<>()));
+        callA.complete("old");
+
+        assertEquals("old", first.get());
+        assertEquals("new", second.get());
+        assertEquals(1, calls.get());
+        assertEquals(0, flight.getSavedCalls());
+    }
+
+    private CompletableFuture<String> count(CompletableFuture<String> result) {
+        calls.incrementAndGet();
+        return result;
+    }
+}
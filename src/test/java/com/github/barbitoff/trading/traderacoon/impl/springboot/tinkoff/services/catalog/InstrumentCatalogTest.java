@@ -0,0 +1,106 @@
+package com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.catalog;
+
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.config.TinkoffOpenApiProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import ru.tinkoff.invest.openapi.MarketContext;
+import ru.tinkoff.invest.openapi.OpenApi;
+import ru.tinkoff.invest.openapi.models.Currency;
+import ru.tinkoff.invest.openapi.models.market.Instrument;
+import ru.tinkoff.invest.openapi.models.market.InstrumentType;
+import ru.tinkoff.invest.openapi.models.market.InstrumentsList;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class InstrumentCatalogTest {
+
+    @Mock
+    private OpenApi api;
+    @Mock
+    private MarketContext marketCtx;
+
+    private TinkoffOpenApiProperties props = new TinkoffOpenApiProperties();
+
+    private InstrumentCatalog catalog;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.initMocks(this);
+        when(api.getMarketContext()).thenReturn(marketCtx);
+        when(marketCtx.getMarketStocks()).thenReturn(list(createInstrument("STOCK", InstrumentType.Stock)));
+        when(marketCtx.getMarketBonds()).thenReturn(list(createInstrument("BOND", InstrumentType.Bond)));
+        when(marketCtx.getMarketEtfs()).thenReturn(list(createInstrument("ETF", InstrumentType.Etf)));
+        when(marketCtx.getMarketCurrencies()).thenReturn(list(createInstrument("USD", InstrumentType.Currency)));
+        catalog = new InstrumentCatalog(api, props);
+    }
+
+    @AfterEach
+    void tearDown() {
+        catalog.destroy();
+    }
+
+    @Test
+    void loadOnStartup() {
+        props.getCatalog().setEnabled(true);
+
+        catalog.afterPropertiesSet();
+
+        assertTrue(catalog.isLoaded());
+        assertEquals(4, catalog.size());
+        assertEquals(com.github.barbitoff.trading.traderacoon.api.model.InstrumentType.Bond,
+                catalog.getByFigi("FIGI_BOND").orElseThrow().getType());
+        assertEquals("FIGI_ETF", catalog.getByTicker("ETF").orElseThrow().getFigi());
+        assertTrue(catalog.getByFigi("UNKNOWN").isEmpty());
+    }
+
+    @Test
+    void disabled() {
+        catalog.afterPropertiesSet();
+
+        assertFalse(catalog.isLoaded());
+        assertTrue(catalog.getByFigi("FIGI_STOCK").isEmpty());
+        verifyNoInteractions(marketCtx);
+    }
+
+    @Test
+    void failedRefreshKeepsCatalog() {
+        catalog.refresh().join();
+        when(marketCtx.getMarketStocks()).thenReturn(list(createInstrument("NEW", InstrumentType.Stock)));
+        when(marketCtx.getMarketBonds()).thenReturn(CompletableFuture.failedFuture(new IOException("Emulated")));
+
+        catalog.refresh().join();
+
+        assertEquals(4, catalog.size());
+        assertTrue(catalog.getByFigi("FIGI_STOCK").isPresent());
+        assertTrue(catalog.getByFigi("FIGI_NEW").isEmpty());
+    }
+
+    @Test
+    void refreshReplacesCatalog() {
+        catalog.refresh().join();
+        when(marketCtx.getMarketStocks()).thenReturn(list(createInstrument("NEW", InstrumentType.Stock)));
+
+        catalog.refresh().join();
+
+        assertTrue(catalog.getByFigi("FIGI_STOCK").isEmpty());
+        assertTrue(catalog.getByTicker("NEW").isPresent());
+    }
+
+    private static CompletableFuture<InstrumentsList> list(Instrument instrument) {
+        return CompletableFuture.completedFuture(new InstrumentsList(1, List.of(instrument)));
+    }
+
+    private static Instrument createInstrument(String ticker, InstrumentType type) {
+        return new Instrument("FIGI_" + ticker, ticker, "ISIN_" + ticker, BigDecimal.ONE, 1, Currency.RUB,
+                "Name " + ticker, type);
+    }
+}
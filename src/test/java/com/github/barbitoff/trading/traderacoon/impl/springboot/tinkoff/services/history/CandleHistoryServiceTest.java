@@ -0,0 +1,222 @@
+package com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.history;
+
+import com.github.barbitoff.trading.traderacoon.api.model.exception.TradingApiException;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.config.TinkoffOpenApiProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import ru.tinkoff.invest.openapi.MarketContext;
+import ru.tinkoff.invest.openapi.OpenApi;
+import ru.tinkoff.invest.openapi.models.market.Candle;
+import ru.tinkoff.invest.openapi.models.market.CandleInterval;
+import ru.tinkoff.invest.openapi.models.market.HistoricalCandles;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class CandleHistoryServiceTest {
+
+    private static final String FIGI = "FIGI1";
+    private static final OffsetDateTime DAY1 = OffsetDateTime.of(2020, 3, 2, 0, 0, 0, 0, ZoneOffset.UTC);
+
+    @Mock
+    private OpenApi api;
+    @Mock
+    private MarketContext marketCtx;
+
+    private TinkoffOpenApiProperties props = new TinkoffOpenApiProperties();
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.initMocks(this);
+        when(api.getMarketContext()).thenReturn(marketCtx);
+        props.getHistory().setRequestsPerMinute(600_000);
+        // a candle at 10:00 and 20:00 of each requested day
+        when(marketCtx.getMarketCandles(eq(FIGI), any(), any(), eq(CandleInterval.HOUR)))
+                .thenAnswer(invocation -> CompletableFuture.completedFuture(Optional.of(
+                        history(invocation.getArgument(1), invocation.getArgument(2)))));
+        when(marketCtx.getMarketCandles(eq(FIGI), any(), any(), eq(CandleInterval.ONE_MIN)))
+                .thenAnswer(invocation -> CompletableFuture.completedFuture(Optional.of(
+                        history(invocation.getArgument(1), invocation.getArgument(2)))));
+    }
+
+    @Test
+    void split() {
+        Instant start = DAY1.plusHours(5).toInstant();
+
+        assertEquals(List.of(DAY1.toInstant(), DAY1.plusDays(1).toInstant()),
+                CandleHistoryService.split(start, start.plus(Duration.ofDays(1)), Duration.ofDays(1)));
+        assertEquals(List.of(DAY1.toInstant()),
+                CandleHistoryService.split(DAY1.toInstant(), DAY1.plusDays(1).toInstant(), Duration.ofDays(1)));
+    }
+
+    @Test
+    void loadSplitsRange() throws TradingApiException {
+        CandleHistoryService service = new CandleHistoryService(api, props);
+
+        List<Candle> candles = service.getCandles(FIGI, CandleInterval.ONE_MIN, DAY1.plusHours(12), DAY1.plusDays(3));
+
+        // 20:00 of the first day, 10:00 and 20:00 of the next two
+        assertEquals(5, candles.size());
+        assertEquals(DAY1.plusHours(20).toInstant(), candles.get(0).time.toInstant());
+        assertEquals(DAY1.plusDays(2).plusHours(20).toInstant(), candles.get(4).time.toInstant());
+        verify(marketCtx, times(3)).getMarketCandles(eq(FIGI), any(), any(), eq(CandleInterval.ONE_MIN));
+        assertEquals(3, service.getRequestedWindows());
+    }
+
+    @Test
+    void concurrencyBound() {
+        props.getHistory().setConcurrency(2);
+        List<CompletableFuture<Optional<HistoricalCandles>>> pending = new ArrayList<>();
+        AtomicInteger requests = new AtomicInteger();
+        when(marketCtx.getMarketCandles(eq(FIGI), any(), any(), eq(CandleInterval.ONE_MIN)))
+                .thenAnswer(invocation -> {
+                    requests.incrementAndGet();
+                    CompletableFuture<Optional<HistoricalCandles>> future = new CompletableFuture<>();
+                    pending.add(future);
+                    return future;
+                });
+        CandleHistoryService service = new CandleHistoryService(api, props);
+
+        CompletableFuture<List<Candle>> loading = service.getCandlesAsync(FIGI, CandleInterval.ONE_MIN,
+                DAY1, DAY1.plusDays(5));
+
+        assertEquals(2, requests.get());
+        pending.get(0).complete(Optional.of(new HistoricalCandles(FIGI, CandleInterval.ONE_MIN, List.of())));
+        assertEquals(3, requests.get());
+        assertFalse(loading.isDone());
+    }
+
+    @Test
+    void invalidLimits() {
+        props.getHistory().setConcurrency(0);
+        assertThrows(IllegalArgumentException.class, () -> new CandleHistoryService(api, props));
+        props.getHistory().setConcurrency(1);
+        props.getHistory().setRequestsPerMinute(0);
+        assertThrows(IllegalArgumentException.class, () -> new CandleHistoryService(api, props));
+    }
+
+    @Test
+    void cacheWrittenOffResponseThread(@TempDir Path cacheDir) throws TradingApiException {
+        props.getHistory().setCacheDirectory(cacheDir.toString());
+        CompletableFuture<Optional<HistoricalCandles>> response = new CompletableFuture<>();
+        when(marketCtx.getMarketCandles(eq(FIGI), any(), any(), eq(CandleInterval.HOUR))).thenReturn(response);
+        CandleHistoryService service = new CandleHistoryService(api, props);
+        CompletableFuture<List<Candle>> loading = service.getCandlesAsync(FIGI, CandleInterval.HOUR,
+                DAY1, DAY1.plusDays(1));
+
+        // one window, completed by the test thread, standing for the API response thread
+        response.complete(Optional.of(history(DAY1.minusDays(4), DAY1.plusDays(3))));
+        assertEquals(2, loading.join().size());
+
+        assertTrue(Thread.getAllStackTraces().keySet().stream()
+                .anyMatch(thread -> thread.getName().equals("tinkoff-candle-cache")));
+        CandleHistoryService restarted = new CandleHistoryService(api, props);
+        assertEquals(2, restarted.getCandles(FIGI, CandleInterval.HOUR, DAY1, DAY1.plusDays(1)).size());
+        assertEquals(0, restarted.getRequestedWindows());
+        service.destroy();
+        restarted.destroy();
+    }
+
+    @Test
+    void repeatedLoadUsesCache(@TempDir Path cacheDir) throws TradingApiException {
+        props.getHistory().setCacheDirectory(cacheDir.toString());
+        CandleHistoryService service = new CandleHistoryService(api, props);
+        List<Candle> first = service.getCandles(FIGI, CandleInterval.HOUR, DAY1, DAY1.plusDays(14));
+
+        CandleHistoryService restarted = new CandleHistoryService(api, props);
+        List<Candle> second = restarted.getCandles(FIGI, CandleInterval.HOUR, DAY1.minusDays(7), DAY1.plusDays(14));
+
+        assertEquals(28, first.size());
+        assertEquals(42, second.size());
+        // only the week before is requested again
+        assertEquals(1, restarted.getRequestedWindows());
+        assertEquals(3, restarted.getCachedWindows());
+        Candle original = first.get(3);
+        Candle restored = second.get(17);
+        assertEquals(original.time.toInstant(), restored.time.toInstant());
+        assertEquals(0, original.openPrice.compareTo(restored.openPrice));
+        assertEquals(0, original.tradesValue.compareTo(restored.tradesValue));
+    }
+
+    @Test
+    void cacheFileWithWrongCountIgnored(@TempDir Path cacheDir) throws TradingApiException, IOException {
+        props.getHistory().setCacheDirectory(cacheDir.toString());
+        new CandleHistoryService(api, props).getCandles(FIGI, CandleInterval.HOUR, DAY1, DAY1.plusDays(1));
+        Path file;
+        try (Stream<Path> files = Files.walk(cacheDir)) {
+            file = files.filter(Files::isRegularFile).findFirst().orElseThrow();
+        }
+        byte[] content = Files.readAllBytes(file);
+
+        for (int count : new int[]{-1, Integer.MAX_VALUE, 1}) {
+            // the count follows the magic and the version
+            ByteBuffer.wrap(content).putInt(5, count);
+            Files.write(file, content);
+            CandleHistoryService restarted = new CandleHistoryService(api, props);
+
+            assertEquals(2, restarted.getCandles(FIGI, CandleInterval.HOUR, DAY1, DAY1.plusDays(1)).size());
+            assertEquals(0, restarted.getCachedWindows());
+            assertEquals(1, restarted.getRequestedWindows());
+            restarted.destroy();
+        }
+    }
+
+    @Test
+    void currentWindowNotCached(@TempDir Path cacheDir) throws TradingApiException {
+        props.getHistory().setCacheDirectory(cacheDir.toString());
+        OffsetDateTime now = OffsetDateTime.now(ZoneOffset.UTC);
+        new CandleHistoryService(api, props).getCandles(FIGI, CandleInterval.ONE_MIN, now.minusDays(1), now);
+
+        CandleHistoryService restarted = new CandleHistoryService(api, props);
+        restarted.getCandles(FIGI, CandleInterval.ONE_MIN, now.minusDays(1), now);
+
+        assertEquals(1, restarted.getCachedWindows());
+        assertEquals(1, restarted.getRequestedWindows());
+    }
+
+    @Test
+    void unknownInstrument() {
+        when(marketCtx.getMarketCandles(eq(FIGI), any(), any(), eq(CandleInterval.DAY)))
+                .thenReturn(CompletableFuture.completedFuture(Optional.empty()));
+        CandleHistoryService service = new CandleHistoryService(api, props);
+
+        ExecutionException factEx = assertThrows(ExecutionException.class,
+                () -> service.getCandlesAsync(FIGI, CandleInterval.DAY, DAY1, DAY1.plusDays(1)).get(),
+                "Expected exception for an unknown instrument");
+        assertTrue(factEx.getCause() instanceof TradingApiException);
+    }
+
+    private static HistoricalCandles history(OffsetDateTime from, OffsetDateTime to) {
+        List<Candle> candles = new ArrayList<>();
+        for (OffsetDateTime day = from; day.isBefore(to); day = day.plusDays(1)) {
+            for (int hour : new int[]{10, 20}) {
+                OffsetDateTime time = day.plusHours(hour);
+                candles.add(new Candle(FIGI, CandleInterval.HOUR, new BigDecimal("100.5"), new BigDecimal("101"),
+                        new BigDecimal("102.25"), new BigDecimal("99"), new BigDecimal("12345.678"), time));
+            }
+        }
+        return new HistoricalCandles(FIGI, CandleInterval.HOUR, candles);
+    }
+}
@@ -0,0 +1,158 @@
+package com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.orderbook;
+
+import com.github.barbitoff.trading.traderacoon.api.model.exception.TradingApiException;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.config.TinkoffOpenApiProperties;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.MarketDataService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import reactor.core.publisher.DirectProcessor;
+import ru.tinkoff.invest.openapi.MarketContext;
+import ru.tinkoff.invest.openapi.OpenApi;
+import ru.tinkoff.invest.openapi.models.market.Orderbook;
+import ru.tinkoff.invest.openapi.models.market.TradeStatus;
+import ru.tinkoff.invest.openapi.models.streaming.StreamingEvent;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class OrderBookStoreTest {
+
+    private static final String FIGI = "FIGI1";
+
+    @Mock
+    private OpenApi api;
+    @Mock
+    private MarketContext marketCtx;
+    @Mock
+    private MarketDataService marketDataService;
+
+    private final DirectProcessor<StreamingEvent.Orderbook> stream = DirectProcessor.create();
+    private TinkoffOpenApiProperties props = new TinkoffOpenApiProperties();
+
+    private OrderBookStore store;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.initMocks(this);
+        when(api.getMarketContext()).thenReturn(marketCtx);
+        when(marketDataService.orderbooks(eq(FIGI), anyInt())).thenReturn(stream);
+        store = new OrderBookStore(api, marketDataService, props);
+    }
+
+    @Test
+    void trackLoadsAndStreams() throws ExecutionException, InterruptedException {
+        mockOrderbook("100.00", "100.10");
+
+        OrderBook book = store.track(FIGI).get();
+        assertEquals(1000, book.getBestBid());
+        assertSame(book, store.getBook(FIGI).orElseThrow());
+
+        stream.onNext(new StreamingEvent.Orderbook(20, List.<BigDecimal[]>of(
+                new BigDecimal[]{new BigDecimal("100.20"), BigDecimal.ONE}), List.of(), FIGI));
+        assertEquals(1002, book.getBestBid());
+
+        // already tracked
+        store.track(FIGI).get();
+        verify(marketCtx, times(1)).getMarketOrderbook(eq(FIGI), anyInt());
+
+        store.untrack(FIGI);
+        assertTrue(store.getBook(FIGI).isEmpty());
+        assertFalse(stream.hasDownstreams());
+    }
+
+    @Test
+    void trackWithoutStreaming() throws ExecutionException, InterruptedException {
+        props.getOrderBooks().setStreaming(false);
+        mockOrderbook("100.00", "100.10");
+        OrderBook book = store.track(FIGI).get();
+        mockOrderbook("100.30", "100.40");
+
+        assertSame(book, store.poll(FIGI).get().orElseThrow());
+
+        assertEquals(1003, book.getBestBid());
+        verifyNoInteractions(marketDataService);
+    }
+
+    @Test
+    void trackUnknown() {
+        when(marketCtx.getMarketOrderbook(eq(FIGI), anyInt()))
+                .thenReturn(CompletableFuture.completedFuture(Optional.empty()));
+
+        ExecutionException factEx = assertThrows(ExecutionException.class, () -> store.track(FIGI).get(),
+                "Expected exception when there is no order book");
+        assertTrue(factEx.getCause() instanceof TradingApiException);
+        assertTrue(store.getBook(FIGI).isEmpty());
+    }
+
+    @Test
+    void untrackWhileLoading() {
+        CompletableFuture<Optional<Orderbook>> first = new CompletableFuture<>();
+        CompletableFuture<Optional<Orderbook>> second = new CompletableFuture<>();
+        when(marketCtx.getMarketOrderbook(eq(FIGI), anyInt())).thenReturn(first).thenReturn(second);
+
+        store.track(FIGI);
+        store.untrack(FIGI);
+        first.complete(Optional.of(orderbook("100.00", "100.10")));
+
+        // untracked before loaded
+        assertFalse(stream.hasDownstreams());
+        assertTrue(store.getBook(FIGI).isEmpty());
+
+        store.track(FIGI);
+        store.untrack(FIGI);
+        CompletableFuture<OrderBook> tracked = store.track(FIGI);
+        second.complete(Optional.of(orderbook("100.00", "100.10")));
+
+        assertTrue(tracked.isDone());
+        assertEquals(1, stream.downstreamCount());
+        store.untrack(FIGI);
+        assertFalse(stream.hasDownstreams());
+    }
+
+    @Test
+    void staleAfterStreamFailure() throws ExecutionException, InterruptedException {
+        DirectProcessor<StreamingEvent.Orderbook> restored = DirectProcessor.create();
+        when(marketDataService.orderbooks(eq(FIGI), anyInt())).thenReturn(stream).thenReturn(restored);
+        mockOrderbook("100.00", "100.10");
+        OrderBook book = store.track(FIGI).get();
+        assertFalse(store.isStale(FIGI));
+
+        stream.onError(new IllegalStateException("Emulated"));
+
+        assertTrue(store.isStale(FIGI));
+        // tracking again resubscribes the same book
+        assertSame(book, store.track(FIGI).get());
+        assertFalse(store.isStale(FIGI));
+        restored.onNext(new StreamingEvent.Orderbook(20, List.<BigDecimal[]>of(
+                new BigDecimal[]{new BigDecimal("100.20"), BigDecimal.ONE}), List.of(), FIGI));
+        assertEquals(1002, book.getBestBid());
+    }
+
+    @Test
+    void pollUntracked() throws ExecutionException, InterruptedException {
+        assertTrue(store.poll(FIGI).get().isEmpty());
+        verifyNoInteractions(marketCtx);
+    }
+
+    private void mockOrderbook(String bid, String ask) {
+        when(marketCtx.getMarketOrderbook(eq(FIGI), anyInt()))
+                .thenReturn(CompletableFuture.completedFuture(Optional.of(orderbook(bid, ask))));
+    }
+
+    private static Orderbook orderbook(String bid, String ask) {
+        return new Orderbook(FIGI, 20,
+                List.of(new Orderbook.Item(new BigDecimal(bid), BigDecimal.TEN)),
+                List.of(new Orderbook.Item(new BigDecimal(ask), BigDecimal.TEN)),
+                TradeStatus.NormalTrading, new BigDecimal("0.1"), null, null, null, null, null);
+    }
+}
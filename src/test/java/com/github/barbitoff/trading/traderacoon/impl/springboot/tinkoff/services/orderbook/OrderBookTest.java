@@ -0,0 +1,109 @@
+package com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.orderbook;
+
+import org.junit.jupiter.api.Test;
+import ru.tinkoff.invest.openapi.models.market.Orderbook;
+import ru.tinkoff.invest.openapi.models.market.TradeStatus;
+import ru.tinkoff.invest.openapi.models.streaming.StreamingEvent;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OrderBookTest {
+
+    private static final String FIGI = "FIGI1";
+
+    private final OrderBook book = new OrderBook(FIGI, new BigDecimal("0.01"), 3);
+
+    @Test
+    void empty() {
+        assertEquals(OrderBook.NO_PRICE, book.getBestBid());
+        assertEquals(OrderBook.NO_PRICE, book.getBestAsk());
+        assertEquals(OrderBook.NO_PRICE, book.getSpread());
+        assertEquals(0, book.getBestBidQuantity());
+        assertEquals(0, book.getBidDepth(3));
+        assertEquals(0, book.getVersion());
+    }
+
+    @Test
+    void applyPolled() {
+        book.apply(new Orderbook(FIGI, 3,
+                List.of(item("100.00", 5), item("99.99", 7)),
+                List.of(item("100.05", 3), item("100.06", 4), item("100.07", 1), item("100.08", 10)),
+                TradeStatus.NormalTrading, new BigDecimal("0.01"), null, null, null, null, null));
+
+        assertEquals(10000, book.getBestBid());
+        assertEquals(10005, book.getBestAsk());
+        assertEquals(5, book.getSpread());
+        assertEquals(5, book.getBestBidQuantity());
+        assertEquals(3, book.getBestAskQuantity());
+        assertEquals(12, book.getBidDepth(5));
+        // the fourth level is beyond the capacity
+        assertEquals(8, book.getAskDepth(5));
+        assertEquals(7, book.getAskDepth(2));
+        assertEquals(0, new BigDecimal("100.05").compareTo(book.toPrice(book.getBestAsk())));
+        assertEquals(1, book.getVersion());
+    }
+
+    @Test
+    void applyStreamedInPlace() {
+        book.apply(new StreamingEvent.Orderbook(3, List.<BigDecimal[]>of(level("100.00", 5), level("99.99", 7)),
+                List.<BigDecimal[]>of(level("100.05", 3)), FIGI));
+        book.apply(new StreamingEvent.Orderbook(3, List.<BigDecimal[]>of(level("100.01", 2)), List.of(), FIGI));
+
+        assertEquals(10001, book.getBestBid());
+        assertEquals(2, book.getBidDepth(3));
+        assertEquals(OrderBook.NO_PRICE, book.getBestAsk());
+        assertEquals(OrderBook.NO_PRICE, book.getSpread());
+        assertEquals(2, book.getVersion());
+    }
+
+    @Test
+    void copyTo() {
+        book.apply(new StreamingEvent.Orderbook(3, List.<BigDecimal[]>of(level("100.00", 5), level("99.99", 7)),
+                List.<BigDecimal[]>of(level("100.05", 3)), FIGI));
+        OrderBookSnapshot snapshot = new OrderBookSnapshot(book.getCapacity());
+
+        book.copyTo(snapshot);
+
+        assertEquals(2, snapshot.getBidCount());
+        assertEquals(1, snapshot.getAskCount());
+        assertEquals(9999, snapshot.getBidPrice(1));
+        assertEquals(7, snapshot.getBidQuantity(1));
+        assertEquals(10005, snapshot.getAskPrice(0));
+        assertEquals(3, snapshot.getAskQuantity(0));
+        assertEquals(1, snapshot.getVersion());
+    }
+
+    @Test
+    void consistentReadsWhileUpdated() throws InterruptedException {
+        // every update keeps bid and ask quantities equal, so a consistent read always sees them equal
+        Thread writer = new Thread(() -> {
+            for (int i = 1; i <= 20000; i++) {
+                BigDecimal quantity = BigDecimal.valueOf(i);
+                book.apply(new StreamingEvent.Orderbook(3,
+                        List.<BigDecimal[]>of(new BigDecimal[]{new BigDecimal("100.00"), quantity}),
+                        List.<BigDecimal[]>of(new BigDecimal[]{new BigDecimal("100.01"), quantity}), FIGI));
+            }
+        });
+        writer.start();
+        OrderBookSnapshot snapshot = new OrderBookSnapshot(book.getCapacity());
+        while (writer.isAlive()) {
+            book.copyTo(snapshot);
+            if (snapshot.getBidCount() > 0) {
+                assertEquals(snapshot.getBidQuantity(0), snapshot.getAskQuantity(0));
+            }
+        }
+        writer.join();
+        assertEquals(20000, book.getVersion());
+    }
+
+    private static Orderbook.Item item(String price, int quantity) {
+        return new Orderbook.Item(new BigDecimal(price), BigDecimal.valueOf(quantity));
+    }
+
+    private static BigDecimal[] level(String price, int quantity) {
+        return new BigDecimal[]{new BigDecimal(price), BigDecimal.valueOf(quantity)};
+    }
+}
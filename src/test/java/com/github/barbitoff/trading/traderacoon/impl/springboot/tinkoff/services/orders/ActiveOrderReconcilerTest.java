@@ -0,0 +1,93 @@
+package com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.orders;
+
+import com.github.barbitoff.trading.traderacoon.api.model.Order;
+import com.github.barbitoff.trading.traderacoon.api.model.TradingAccount;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.config.TinkoffOpenApiProperties;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.AccountServiceImpl;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.OrderServiceImpl;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class ActiveOrderReconcilerTest {
+
+    private static final String ACCOUNT_ID = "ACC1";
+
+    @Mock
+    private OrderServiceImpl orderService;
+    @Mock
+    private AccountServiceImpl accountService;
+    @Mock
+    private ActiveOrderStore store;
+
+    private TinkoffOpenApiProperties props = new TinkoffOpenApiProperties();
+
+    private ActiveOrderReconciler reconciler;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.initMocks(this);
+        when(accountService.getTradingAccountAsync())
+                .thenReturn(CompletableFuture.completedFuture(new TradingAccount(ACCOUNT_ID)));
+        reconciler = new ActiveOrderReconciler(orderService, accountService, store, props);
+    }
+
+    @Test
+    void reconcile() throws ExecutionException, InterruptedException {
+        List<Order> orders = List.of(mock(Order.class));
+        when(store.startReconciliation()).thenReturn(42L);
+        when(orderService.getActiveOrdersAsync(eq(ACCOUNT_ID))).thenReturn(CompletableFuture.completedFuture(orders));
+
+        reconciler.reconcile();
+
+        verify(store).reconcile(same(orders), eq(42L));
+    }
+
+    @Test
+    void reconcileError() {
+        IOException apiException = new IOException("Emulated");
+        when(orderService.getActiveOrdersAsync(eq(ACCOUNT_ID))).thenReturn(CompletableFuture.failedFuture(apiException));
+
+        ExecutionException factEx = assertThrows(ExecutionException.class, () -> reconciler.reconcile(),
+                "Expected exception when the API fails");
+        assertEquals(apiException, factEx.getCause());
+        verify(store, never()).reconcile(any(), anyLong());
+    }
+
+    @Test
+    void backgroundReconciliation() {
+        props.getOrders().setActiveCacheEnabled(true);
+        props.getOrders().setReconcileInterval(Duration.ofMillis(10));
+        when(orderService.getActiveOrdersAsync(eq(ACCOUNT_ID)))
+                .thenReturn(CompletableFuture.failedFuture(new IOException("Emulated")))
+                .thenReturn(CompletableFuture.completedFuture(List.of()));
+
+        reconciler.afterPropertiesSet();
+        try {
+            // a failed poll doesn't stop reconciliation
+            verify(store, timeout(1000).atLeastOnce()).reconcile(eq(List.of()), anyLong());
+        } finally {
+            reconciler.destroy();
+        }
+    }
+
+    @Test
+    void noBackgroundReconciliationWhenDisabled() {
+        reconciler.afterPropertiesSet();
+        reconciler.destroy();
+
+        verify(orderService, never()).getActiveOrdersAsync(any());
+    }
+}
@@ -0,0 +1,140 @@
+package com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.orders;
+
+import com.github.barbitoff.trading.traderacoon.api.model.Order;
+import com.github.barbitoff.trading.traderacoon.api.model.OrderStatus;
+import com.github.barbitoff.trading.traderacoon.api.model.StockOperation;
+import com.github.barbitoff.trading.traderacoon.api.model.StockOrderType;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.config.TinkoffOpenApiProperties;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.model.ActiveOrdersDiff;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.context.ApplicationEventPublisher;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class ActiveOrderStoreTest {
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    private TinkoffOpenApiProperties props = new TinkoffOpenApiProperties();
+
+    private ActiveOrderStore store;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.initMocks(this);
+        props.getOrders().setActiveCacheEnabled(true);
+        store = new ActiveOrderStore(props, eventPublisher);
+    }
+
+    @Test
+    void notInitializedBeforeReconciliation() {
+        store.placed(createOrder("ID1", OrderStatus.New));
+
+        assertFalse(store.isInitialized());
+        assertEquals(1, store.getActiveOrders().size());
+    }
+
+    @Test
+    void localChangesIgnoredWhenDisabled() {
+        props.getOrders().setActiveCacheEnabled(false);
+        store = new ActiveOrderStore(props, eventPublisher);
+
+        store.placed(createOrder("ID1", OrderStatus.New));
+
+        assertTrue(store.getActiveOrders().isEmpty());
+    }
+
+    @Test
+    void reconcileDiff() {
+        Order external = createOrder("ID1", OrderStatus.New);
+        Order toFill = createOrder("ID2", OrderStatus.New);
+        Order toCancel = createOrder("ID3", OrderStatus.New);
+        store.reconcile(List.of(external, toFill, toCancel), store.startReconciliation());
+        reset(eventPublisher);
+
+        Order placed = createOrder("ID4", OrderStatus.New);
+        store.placed(placed);
+        store.cancelled("ID3");
+        assertEquals(List.of(external, toFill, placed), store.getActiveOrders());
+
+        Order newExternal = createOrder("ID5", OrderStatus.New);
+        ActiveOrdersDiff diff = store.reconcile(List.of(external, placed, newExternal), store.startReconciliation());
+
+        assertTrue(store.isInitialized());
+        assertEquals(List.of(placed, newExternal), diff.getAdded());
+        assertEquals(List.of(toFill), diff.getFilled());
+        assertEquals(List.of(toCancel), diff.getCancelled());
+        assertEquals(List.of(external, placed, newExternal), store.getActiveOrders());
+        assertSame(diff, store.getLastDiff());
+        ArgumentCaptor<ActiveOrdersChangedEvent> eventCaptor = ArgumentCaptor.forClass(ActiveOrdersChangedEvent.class);
+        verify(eventPublisher).publishEvent(eventCaptor.capture());
+        assertSame(diff, eventCaptor.getValue().getDiff());
+    }
+
+    @Test
+    void changesDuringReconciliationArePreserved() {
+        Order cancelledLater = createOrder("ID1", OrderStatus.New);
+        store.reconcile(List.of(cancelledLater), store.startReconciliation());
+
+        long start = store.startReconciliation();
+        // the API response doesn't reflect these changes yet
+        Order placedLater = createOrder("ID2", OrderStatus.New);
+        store.placed(placedLater);
+        store.cancelled("ID1");
+        ActiveOrdersDiff diff = store.reconcile(List.of(cancelledLater), start);
+
+        assertEquals(List.of(placedLater), store.getActiveOrders());
+        assertEquals(List.of(placedLater), diff.getAdded());
+        assertEquals(List.of(cancelledLater), diff.getCancelled());
+        assertTrue(diff.getFilled().isEmpty());
+
+        // the API still lists the cancelled order
+        diff = store.reconcile(List.of(cancelledLater, placedLater), store.startReconciliation());
+        assertEquals(List.of(placedLater), store.getActiveOrders());
+        assertTrue(diff.isEmpty());
+    }
+
+    @Test
+    void placedAndFilledBetweenReconciliations() {
+        store.reconcile(List.of(), store.startReconciliation());
+        Order placed = createOrder("ID1", OrderStatus.New);
+        store.placed(placed);
+
+        ActiveOrdersDiff diff = store.reconcile(List.of(), store.startReconciliation());
+
+        assertEquals(List.of(placed), diff.getAdded());
+        assertEquals(List.of(placed), diff.getFilled());
+        assertTrue(store.getActiveOrders().isEmpty());
+    }
+
+    @Test
+    void noEventWithoutChanges() {
+        store.reconcile(List.of(), store.startReconciliation());
+
+        assertTrue(store.getLastDiff().isEmpty());
+        verify(eventPublisher, never()).publishEvent(any());
+    }
+
+    private static Order createOrder(String id, OrderStatus status) {
+        return Order.builder()
+                .id(id)
+                .figi("FIGI1")
+                .operation(StockOperation.Buy)
+                .status(status)
+                .lotsFilled(0)
+                .lotsRequested(1)
+                .type(StockOrderType.Limit)
+                .price(BigDecimal.ONE)
+                .build();
+    }
+}
@@ -0,0 +1,179 @@
+package com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.orders;
+
+import com.github.barbitoff.trading.traderacoon.api.model.*;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.config.TinkoffOpenApiProperties;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.AccountServiceImpl;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.OrderServiceImpl;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.context.ApplicationEventPublisher;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class OrderTrackerTest {
+
+    private static final String ACCOUNT_ID = "ACC1";
+
+    @Mock
+    private OrderServiceImpl orderService;
+    @Mock
+    private AccountServiceImpl accountService;
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    private TinkoffOpenApiProperties props = new TinkoffOpenApiProperties();
+
+    private ActiveOrderStore store;
+    private OrderTracker tracker;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.initMocks(this);
+        props.getOrders().setTrackerMinInterval(Duration.ofMillis(10));
+        props.getOrders().setTrackerMaxInterval(Duration.ofMillis(40));
+        when(accountService.getTradingAccountAsync())
+                .thenReturn(CompletableFuture.completedFuture(new TradingAccount(ACCOUNT_ID)));
+        createTracker();
+    }
+
+    private void createTracker() {
+        if (tracker != null) {
+            tracker.destroy();
+        }
+        store = new ActiveOrderStore(props, eventPublisher);
+        tracker = new OrderTracker(orderService, accountService, store, props);
+        tracker.afterPropertiesSet();
+    }
+
+    @AfterEach
+    void tearDown() {
+        tracker.destroy();
+    }
+
+    @Test
+    void completesWhenOrderIsGone() throws Exception {
+        Order placed = createOrder("ID1", OrderStatus.New, 0);
+        Order partiallyFilled = createOrder("ID1", OrderStatus.PartiallyFill, 1);
+        when(orderService.getActiveOrdersAsync(eq(ACCOUNT_ID)))
+                .thenReturn(CompletableFuture.completedFuture(List.of(partiallyFilled)))
+                .thenReturn(CompletableFuture.completedFuture(List.of()));
+
+        CompletableFuture<Order> completion = tracker.track(placed);
+
+        assertSame(partiallyFilled, completion.get(1, TimeUnit.SECONDS));
+        assertEquals(0, tracker.getTrackedCount());
+    }
+
+    @Test
+    void tracksById() throws Exception {
+        Order active = createOrder("ID1", OrderStatus.New, 0);
+        when(orderService.getActiveOrdersAsync(eq(ACCOUNT_ID)))
+                .thenReturn(CompletableFuture.completedFuture(List.of(active)))
+                .thenReturn(CompletableFuture.completedFuture(List.of()));
+
+        CompletableFuture<Order> seen = tracker.track("ID1");
+        CompletableFuture<Order> unknown = tracker.track("ID2");
+
+        assertSame(active, seen.get(1, TimeUnit.SECONDS));
+        // never seen active
+        assertNull(unknown.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void slowPollTimesOut() {
+        props.getOrders().setTrackerTimeout(Duration.ofMillis(20));
+        when(orderService.getActiveOrdersAsync(eq(ACCOUNT_ID))).thenReturn(new CompletableFuture<>());
+
+        tracker.track(createOrder("ID1", OrderStatus.New, 0));
+
+        // polling goes on after a request hangs
+        verify(orderService, timeout(1000).atLeast(2)).getActiveOrdersAsync(eq(ACCOUNT_ID));
+    }
+
+    @Test
+    void drivenByActiveOrderStore() throws Exception {
+        props.getOrders().setActiveCacheEnabled(true);
+        createTracker();
+        Order order = createOrder("ID1", OrderStatus.New, 0);
+        store.reconcile(List.of(order), store.startReconciliation());
+
+        CompletableFuture<Order> completion = tracker.track(order);
+        // the first reconciliation may have been started before the order was tracked
+        store.reconcile(List.of(), store.startReconciliation());
+        Thread.sleep(50);
+        assertFalse(completion.isDone());
+        store.reconcile(List.of(), store.startReconciliation());
+        tracker.onActiveOrdersChanged(new ActiveOrdersChangedEvent(store, store.getLastDiff()));
+
+        assertSame(order, completion.get(1, TimeUnit.SECONDS));
+        verify(orderService, never()).getActiveOrdersAsync(any());
+    }
+
+    @Test
+    void sameFutureForSameOrder() {
+        when(orderService.getActiveOrdersAsync(eq(ACCOUNT_ID))).thenReturn(new CompletableFuture<>());
+        Order order = createOrder("ID1", OrderStatus.New, 0);
+
+        assertSame(tracker.track(order), tracker.track(order));
+        assertEquals(1, tracker.getTrackedCount());
+    }
+
+    @Test
+    void inactiveOrderCompletesImmediately() throws Exception {
+        Order filled = createOrder("ID1", OrderStatus.Fill, 1);
+
+        assertSame(filled, tracker.track(filled).getNow(null));
+        assertEquals(0, tracker.getTrackedCount());
+        Thread.sleep(50);
+        verify(orderService, never()).getActiveOrdersAsync(any());
+    }
+
+    @Test
+    void backsOffAndSuspends() throws Exception {
+        Order order = createOrder("ID1", OrderStatus.New, 0);
+        when(orderService.getActiveOrdersAsync(eq(ACCOUNT_ID)))
+                .thenReturn(CompletableFuture.completedFuture(List.of(order)));
+
+        CompletableFuture<Order> completion = tracker.track(order);
+
+        // nothing changes, so the interval grows to the maximum
+        long deadline = System.currentTimeMillis() + 1000;
+        while (tracker.getPollInterval() != 40 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(40, tracker.getPollInterval());
+
+        // cancelling the only tracked order suspends polling
+        completion.cancel(false);
+        deadline = System.currentTimeMillis() + 1000;
+        while (tracker.getPollInterval() != 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(0, tracker.getPollInterval());
+    }
+
+    private static Order createOrder(String id, OrderStatus status, int lotsFilled) {
+        return Order.builder()
+                .id(id)
+                .figi("FIGI1")
+                .operation(StockOperation.Buy)
+                .status(status)
+                .lotsFilled(lotsFilled)
+                .lotsRequested(2)
+                .type(StockOrderType.Limit)
+                .price(BigDecimal.ONE)
+                .build();
+    }
+}
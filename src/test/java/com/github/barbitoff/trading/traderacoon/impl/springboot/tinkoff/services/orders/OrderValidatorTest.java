@@ -0,0 +1,153 @@
+package com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.orders;
+
+import com.github.barbitoff.trading.traderacoon.api.model.Instrument;
+import com.github.barbitoff.trading.traderacoon.api.model.InstrumentType;
+import com.github.barbitoff.trading.traderacoon.api.model.exception.OrderRejectedException;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.config.TinkoffOpenApiProperties;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.InstrumentServiceImpl;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.quotes.LastPriceCache;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import ru.tinkoff.invest.openapi.models.orders.Operation;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class OrderValidatorTest {
+
+    private static final String FIGI = "FIGI1";
+
+    @Mock
+    private InstrumentServiceImpl instrumentService;
+    @Mock
+    private LastPriceCache lastPriceCache;
+
+    private TinkoffOpenApiProperties props = new TinkoffOpenApiProperties();
+
+    private OrderValidator validator;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.initMocks(this);
+        Instrument instrument = Instrument.builder()
+                .figi(FIGI)
+                .lotSize(10)
+                .minPriceIncrement(new BigDecimal("0.05"))
+                .type(InstrumentType.Stock)
+                .build();
+        when(instrumentService.getInstrumentAsync(eq(FIGI)))
+                .thenReturn(CompletableFuture.completedFuture(Optional.of(instrument)));
+        props.getOrders().setValidationEnabled(true);
+        validator = new OrderValidator(instrumentService, lastPriceCache, props);
+    }
+
+    @Test
+    void validOrder() throws ExecutionException, InterruptedException {
+        assertEquals(new BigDecimal("10.15"), validator.validate(FIGI, 1, new BigDecimal("10.15"), Operation.Buy).get());
+        assertNull(validator.validate(FIGI, 1, null, Operation.Sell).get());
+    }
+
+    @ParameterizedTest
+    @CsvSource({"0, 10", "-1, 10", "1, 0", "1, 10.12"})
+    void invalidOrder(int lots, BigDecimal price) {
+        ExecutionException factEx = assertThrows(ExecutionException.class,
+                () -> validator.validate(FIGI, lots, price, Operation.Buy).get(),
+                "Expected exception for an invalid order");
+        assertTrue(factEx.getCause() instanceof OrderRejectedException);
+    }
+
+    @Test
+    void priceDeviation() throws ExecutionException, InterruptedException {
+        props.getOrders().setMaxPriceDeviation(new BigDecimal("0.1"));
+        when(lastPriceCache.getPrice(eq(FIGI))).thenReturn(Optional.of(new BigDecimal("10")));
+        when(lastPriceCache.isFresh(eq(FIGI), any())).thenReturn(true);
+
+        assertEquals(new BigDecimal("10.95"), validator.validate(FIGI, 1, new BigDecimal("10.95"), Operation.Buy).get());
+        ExecutionException factEx = assertThrows(ExecutionException.class,
+                () -> validator.validate(FIGI, 1, new BigDecimal("11.05"), Operation.Buy).get(),
+                "Expected exception for a price too far from the last one");
+        assertTrue(factEx.getCause() instanceof OrderRejectedException);
+        // market orders and stale prices aren't checked
+        assertNull(validator.validate(FIGI, 1, null, Operation.Buy).get());
+        when(lastPriceCache.isFresh(eq(FIGI), any())).thenReturn(false);
+        assertEquals(new BigDecimal("20.00"), validator.validate(FIGI, 1, new BigDecimal("20.00"), Operation.Buy).get());
+    }
+
+    @Test
+    void unknownInstrument() {
+        when(instrumentService.getInstrumentAsync(eq("UNKNOWN")))
+                .thenReturn(CompletableFuture.completedFuture(Optional.empty()));
+
+        ExecutionException factEx = assertThrows(ExecutionException.class,
+                () -> validator.validate("UNKNOWN", 1, null, Operation.Buy).get(),
+                "Expected exception for an unknown instrument");
+        assertTrue(factEx.getCause() instanceof OrderRejectedException);
+    }
+
+    @Test
+    void instrumentTypeNotAllowed() {
+        props.getOrders().setAllowedInstrumentTypes(Set.of(InstrumentType.Bond));
+
+        ExecutionException factEx = assertThrows(ExecutionException.class,
+                () -> validator.validate(FIGI, 1, null, Operation.Buy).get(),
+                "Expected exception for a not allowed instrument type");
+        assertTrue(factEx.getCause() instanceof OrderRejectedException);
+    }
+
+    @ParameterizedTest
+    @CsvSource({"Buy, 10.12, 10.10", "Sell, 10.12, 10.15", "Sell, 0.01, 0.05"})
+    void roundToTick(Operation operation, BigDecimal price, BigDecimal expected)
+            throws ExecutionException, InterruptedException {
+        props.getOrders().setRoundToTick(true);
+
+        assertEquals(expected, validator.validate(FIGI, 1, price, operation).get());
+    }
+
+    @Test
+    void roundToTickBelowIncrement() {
+        props.getOrders().setRoundToTick(true);
+
+        ExecutionException factEx = assertThrows(ExecutionException.class,
+                () -> validator.validate(FIGI, 1, new BigDecimal("0.01"), Operation.Buy).get(),
+                "Expected exception when the price rounds to zero");
+        assertTrue(factEx.getCause() instanceof OrderRejectedException);
+    }
+
+    @Test
+    void instrumentErrorSkipsValidation() throws ExecutionException, InterruptedException {
+        when(instrumentService.getInstrumentAsync(eq(FIGI)))
+                .thenReturn(CompletableFuture.failedFuture(new IOException("Emulated")));
+
+        assertEquals(new BigDecimal("10.12"), validator.validate(FIGI, 1, new BigDecimal("10.12"), Operation.Buy).get());
+    }
+
+    @Test
+    void validationDisabled() throws ExecutionException, InterruptedException {
+        props.getOrders().setValidationEnabled(false);
+
+        assertEquals(BigDecimal.ONE, validator.validate(FIGI, 0, BigDecimal.ONE, Operation.Buy).get());
+        verify(instrumentService, never()).getInstrumentAsync(any());
+    }
+
+    @Test
+    void validationDisabledByDefault() throws ExecutionException, InterruptedException {
+        OrderValidator defaultValidator = new OrderValidator(instrumentService, lastPriceCache,
+                new TinkoffOpenApiProperties());
+
+        assertEquals(BigDecimal.ONE, defaultValidator.validate(FIGI, 0, BigDecimal.ONE, Operation.Buy).get());
+        verify(instrumentService, never()).getInstrumentAsync(any());
+    }
+}
@@ -0,0 +1,163 @@
+package com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.portfolio;
+
+import com.github.barbitoff.trading.traderacoon.api.model.CurrencyPortfolioPosition;
+import com.github.barbitoff.trading.traderacoon.api.model.InstrumentType;
+import com.github.barbitoff.trading.traderacoon.api.model.NonCurrencyPortfolioPosition;
+import com.github.barbitoff.trading.traderacoon.api.model.PortfolioPosition;
+import com.github.barbitoff.trading.traderacoon.api.model.TradingAccount;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.config.TinkoffOpenApiProperties;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.model.PortfolioPositionChange;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.AccountServiceImpl;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.PortfolioServiceImpl;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.context.ApplicationEventPublisher;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.Currency;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class PortfolioWatcherTest {
+
+    private static final String ACCOUNT_ID = "ACC1";
+
+    @Mock
+    private PortfolioServiceImpl portfolioService;
+    @Mock
+    private AccountServiceImpl accountService;
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    private TinkoffOpenApiProperties props = new TinkoffOpenApiProperties();
+
+    private PortfolioWatcher watcher;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.initMocks(this);
+        when(accountService.getTradingAccountAsync())
+                .thenReturn(CompletableFuture.completedFuture(new TradingAccount(ACCOUNT_ID)));
+        watcher = new PortfolioWatcher(portfolioService, accountService, props, eventPublisher);
+    }
+
+    @AfterEach
+    void tearDown() {
+        watcher.destroy();
+    }
+
+    @Test
+    void firstPollRemembersPortfolio() throws ExecutionException, InterruptedException {
+        mockPortfolio(List.of(currency("RUB", "100", "0")), List.of(position("FIGI1", "10", "0")));
+
+        assertTrue(watcher.poll().isEmpty());
+        assertEquals(2, watcher.getPositions().size());
+        verify(eventPublisher, never()).publishEvent(any());
+    }
+
+    @Test
+    void pollFindsChanges() throws ExecutionException, InterruptedException {
+        mockPortfolio(List.of(currency("RUB", "100", "0"), currency("USD", "5", "0")),
+                List.of(position("FIGI1", "10", "0"), position("FIGI2", "1", "0")));
+        watcher.poll();
+        // RUB balance changed, USD unchanged with another scale, FIGI1 blocked changed, FIGI2 closed, FIGI3 opened
+        mockPortfolio(List.of(currency("RUB", "90", "0"), currency("USD", "5.00", "0")),
+                List.of(position("FIGI1", "10", "2"), position("FIGI3", "3", "0")));
+
+        List<PortfolioPositionChange> changes = watcher.poll();
+
+        assertEquals(4, changes.size());
+        PortfolioPositionChange rub = find(changes, "RUB");
+        assertEquals(PortfolioPositionChange.Type.CHANGED, rub.getType());
+        assertTrue(rub.isBalanceChanged());
+        assertFalse(rub.isBlockedChanged());
+        PortfolioPositionChange figi1 = find(changes, "FIGI1");
+        assertEquals(PortfolioPositionChange.Type.CHANGED, figi1.getType());
+        assertFalse(figi1.isBalanceChanged());
+        assertTrue(figi1.isBlockedChanged());
+        assertEquals(PortfolioPositionChange.Type.CLOSED, find(changes, "FIGI2").getType());
+        assertEquals(PortfolioPositionChange.Type.OPENED, find(changes, "FIGI3").getType());
+        assertEquals(3, find(changes, "FIGI3").getCurrent().getBalance().intValue());
+        assertFalse(watcher.getPositions().containsKey("FIGI2"));
+        verify(eventPublisher).publishEvent(any(PortfolioChangedEvent.class));
+
+        assertTrue(watcher.poll().isEmpty());
+    }
+
+    @Test
+    void changesFlux() throws ExecutionException, InterruptedException {
+        mockPortfolio(List.of(), List.of(position("FIGI1", "10", "0")));
+        watcher.poll();
+
+        CompletableFuture<List<PortfolioPositionChange>> received = watcher.changes().collectList().toFuture();
+        mockPortfolio(List.of(), List.of());
+        watcher.poll();
+        watcher.destroy();
+
+        assertEquals(1, received.get().size());
+        assertEquals("FIGI1", received.get().get(0).getKey());
+        assertEquals(PortfolioPositionChange.Type.CLOSED, received.get().get(0).getType());
+    }
+
+    @Test
+    void pollError() {
+        IOException apiException = new IOException("Emulated");
+        when(portfolioService.getCurrenciesAsync(eq(ACCOUNT_ID)))
+                .thenReturn(CompletableFuture.failedFuture(apiException));
+        when(portfolioService.getNonCurrenciesAsync(eq(ACCOUNT_ID)))
+                .thenReturn(CompletableFuture.completedFuture(List.of()));
+
+        ExecutionException factEx = assertThrows(ExecutionException.class, () -> watcher.poll(),
+                "Expected exception when the API fails");
+        assertEquals(apiException, factEx.getCause());
+    }
+
+    @Test
+    void backgroundPolling() {
+        props.getPortfolioWatcher().setEnabled(true);
+        props.getPortfolioWatcher().setPollInterval(Duration.ofMillis(10));
+        mockPortfolio(List.of(), List.of());
+
+        watcher.afterPropertiesSet();
+
+        verify(portfolioService, timeout(1000).atLeast(2)).getNonCurrenciesAsync(eq(ACCOUNT_ID));
+    }
+
+    @Test
+    void disabled() {
+        watcher.afterPropertiesSet();
+
+        verifyNoInteractions(portfolioService);
+    }
+
+    private void mockPortfolio(List<PortfolioPosition> currencies, List<PortfolioPosition> positions) {
+        when(portfolioService.getCurrenciesAsync(eq(ACCOUNT_ID)))
+                .thenReturn(CompletableFuture.completedFuture(currencies));
+        when(portfolioService.getNonCurrenciesAsync(eq(ACCOUNT_ID)))
+                .thenReturn(CompletableFuture.completedFuture(positions));
+    }
+
+    private static PortfolioPositionChange find(List<PortfolioPositionChange> changes, String key) {
+        return changes.stream().filter(change -> change.getKey().equals(key)).findFirst().orElseThrow();
+    }
+
+    private static PortfolioPosition currency(String code, String balance, String blocked) {
+        return new CurrencyPortfolioPosition(new BigDecimal(balance), new BigDecimal(blocked), Currency.getInstance(code));
+    }
+
+    private static PortfolioPosition position(String figi, String balance, String blocked) {
+        return new NonCurrencyPortfolioPosition(InstrumentType.Stock, new BigDecimal(balance), new BigDecimal(blocked),
+                figi, 1);
+    }
+}
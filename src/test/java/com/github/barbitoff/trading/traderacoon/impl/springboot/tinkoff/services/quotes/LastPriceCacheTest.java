@@ -0,0 +1,210 @@
+package com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.quotes;
+
+import com.github.barbitoff.trading.traderacoon.api.model.exception.TradingApiException;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.config.TinkoffOpenApiProperties;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.MarketDataService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import reactor.core.publisher.DirectProcessor;
+import ru.tinkoff.invest.openapi.MarketContext;
+import ru.tinkoff.invest.openapi.OpenApi;
+import ru.tinkoff.invest.openapi.models.market.CandleInterval;
+import ru.tinkoff.invest.openapi.models.market.Orderbook;
+import ru.tinkoff.invest.openapi.models.market.TradeStatus;
+import ru.tinkoff.invest.openapi.models.streaming.StreamingEvent;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class LastPriceCacheTest {
+
+    private static final String FIGI = "FIGI1";
+
+    @Mock
+    private OpenApi api;
+    @Mock
+    private MarketContext marketCtx;
+    @Mock
+    private MarketDataService marketDataService;
+
+    private TinkoffOpenApiProperties props = new TinkoffOpenApiProperties();
+
+    private LastPriceCache cache;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.initMocks(this);
+        when(api.getMarketContext()).thenReturn(marketCtx);
+        cache = new LastPriceCache(api, marketDataService, props);
+    }
+
+    @Test
+    void unknown() {
+        assertEquals(-1, cache.indexOf(FIGI));
+        assertEquals(LastPriceCache.NO_PRICE, cache.getPrice(-1));
+        assertTrue(cache.getPrice(FIGI).isEmpty());
+        assertFalse(cache.isFresh(FIGI, Duration.ofDays(1)));
+    }
+
+    @Test
+    void updateAndRead() {
+        cache.update(FIGI, new BigDecimal("123.45"));
+        cache.update("FIGI2", new BigDecimal("0.000000001"));
+
+        int index = cache.indexOf(FIGI);
+        assertEquals(123_450_000_000L, cache.getPrice(index));
+        assertEquals(1, cache.getPrice(cache.indexOf("FIGI2")));
+        assertEquals(0, new BigDecimal("123.45").compareTo(cache.getPrice(FIGI).orElseThrow()));
+        assertTrue(cache.isFresh(FIGI, Duration.ofMinutes(1)));
+
+        cache.update(index, LastPriceCache.encode(new BigDecimal("124")));
+        assertEquals(0, new BigDecimal("124").compareTo(cache.getPrice(FIGI).orElseThrow()));
+        assertEquals(index, cache.indexOf(FIGI));
+    }
+
+    @Test
+    void manyInstruments() {
+        for (int i = 0; i < 3000; i++) {
+            cache.update("FIGI" + i, BigDecimal.valueOf(i));
+        }
+
+        for (int i = 0; i < 3000; i++) {
+            assertEquals(i, cache.getPrice("FIGI" + i).orElseThrow().intValue());
+        }
+    }
+
+    @Test
+    void trackStreamsPrices() {
+        DirectProcessor<StreamingEvent.Candle> candles = DirectProcessor.create();
+        when(marketDataService.candles(eq(FIGI), eq(CandleInterval.ONE_MIN))).thenReturn(candles);
+
+        cache.track(FIGI);
+        cache.track(FIGI);
+        candles.onNext(new StreamingEvent.Candle(BigDecimal.ONE, BigDecimal.TEN, BigDecimal.TEN, BigDecimal.ONE,
+                BigDecimal.ONE, ZonedDateTime.now(), CandleInterval.ONE_MIN, FIGI));
+
+        assertEquals(0, BigDecimal.TEN.compareTo(cache.getPrice(FIGI).orElseThrow()));
+        verify(marketDataService, times(1)).candles(eq(FIGI), eq(CandleInterval.ONE_MIN));
+        cache.untrack(FIGI);
+        assertFalse(candles.hasDownstreams());
+    }
+
+    @Test
+    void failedStreamTrackedAgain() {
+        DirectProcessor<StreamingEvent.Candle> failing = DirectProcessor.create();
+        DirectProcessor<StreamingEvent.Candle> candles = DirectProcessor.create();
+        when(marketDataService.candles(eq(FIGI), eq(CandleInterval.ONE_MIN))).thenReturn(failing).thenReturn(candles);
+        cache.track(FIGI);
+
+        // no close price
+        failing.onNext(new StreamingEvent.Candle(BigDecimal.ONE, null, BigDecimal.TEN, BigDecimal.ONE,
+                BigDecimal.ONE, ZonedDateTime.now(), CandleInterval.ONE_MIN, FIGI));
+        cache.track(FIGI);
+        candles.onNext(new StreamingEvent.Candle(BigDecimal.ONE, BigDecimal.TEN, BigDecimal.TEN, BigDecimal.ONE,
+                BigDecimal.ONE, ZonedDateTime.now(), CandleInterval.ONE_MIN, FIGI));
+
+        assertEquals(0, BigDecimal.TEN.compareTo(cache.getPrice(FIGI).orElseThrow()));
+        verify(marketDataService, times(2)).candles(eq(FIGI), eq(CandleInterval.ONE_MIN));
+    }
+
+    @Test
+    void getPriceAsyncFetchesStale() throws ExecutionException, InterruptedException {
+        mockLastPrice(new BigDecimal("99.5"));
+
+        assertEquals(0, new BigDecimal("99.5").compareTo(cache.getPriceAsync(FIGI).get()));
+        // fresh now
+        assertEquals(0, new BigDecimal("99.5").compareTo(cache.getPriceAsync(FIGI).get()));
+        verify(marketCtx, times(1)).getMarketOrderbook(eq(FIGI), anyInt());
+
+        props.getLastPrices().setMaxAge(Duration.ZERO);
+        cache.getPriceAsync(FIGI).get();
+        verify(marketCtx, times(2)).getMarketOrderbook(eq(FIGI), anyInt());
+    }
+
+    @Test
+    void getPriceAsyncKeepsNewerUpdate() throws ExecutionException, InterruptedException {
+        CompletableFuture<Optional<Orderbook>> response = new CompletableFuture<>();
+        when(marketCtx.getMarketOrderbook(eq(FIGI), anyInt())).thenReturn(response);
+
+        CompletableFuture<BigDecimal> price = cache.getPriceAsync(FIGI);
+        // streamed while the request is in flight
+        cache.update(FIGI, new BigDecimal("101"));
+        response.complete(Optional.of(orderbook(new BigDecimal("99.5"))));
+
+        assertEquals(0, new BigDecimal("101").compareTo(price.get()));
+        assertEquals(0, new BigDecimal("101").compareTo(cache.getPrice(FIGI).orElseThrow()));
+    }
+
+    @Test
+    void listenersNotified() throws ExecutionException, InterruptedException {
+        List<String> updates = new CopyOnWriteArrayList<>();
+        cache.addListener((figi, price) -> updates.add(figi + "=" + price));
+        cache.addListener((figi, price) -> {
+            throw new IllegalStateException("Emulated");
+        });
+        mockLastPrice(new BigDecimal("99.5"));
+
+        cache.update(FIGI, new BigDecimal("101"));
+        props.getLastPrices().setMaxAge(Duration.ZERO);
+        cache.getPriceAsync(FIGI).get();
+        cache.update(cache.indexOf(FIGI), LastPriceCache.encode(BigDecimal.ONE));
+
+        assertEquals(List.of(FIGI + "=101", FIGI + "=99.5"), updates);
+    }
+
+    @Test
+    void listenersGetUpdatesInCacheOrder() throws InterruptedException {
+        AtomicReference<BigDecimal> lastNotified = new AtomicReference<>();
+        cache.addListener((figi, price) -> lastNotified.set(price));
+        List<Thread> writers = new ArrayList<>();
+        for (int w = 0; w < 2; w++) {
+            int writer = w;
+            writers.add(new Thread(() -> {
+                for (int i = 0; i < 5000; i++) {
+                    cache.update(FIGI, BigDecimal.valueOf(i * 2 + writer));
+                }
+            }));
+        }
+        writers.forEach(Thread::start);
+        for (Thread writer : writers) {
+            writer.join();
+        }
+
+        assertEquals(0, cache.getPrice(FIGI).orElseThrow().compareTo(lastNotified.get()));
+    }
+
+    @Test
+    void getPriceAsyncUnknown() {
+        when(marketCtx.getMarketOrderbook(eq(FIGI), anyInt()))
+                .thenReturn(CompletableFuture.completedFuture(Optional.empty()));
+
+        ExecutionException factEx = assertThrows(ExecutionException.class, () -> cache.getPriceAsync(FIGI).get(),
+                "Expected exception when there is no price");
+        assertTrue(factEx.getCause() instanceof TradingApiException);
+    }
+
+    private void mockLastPrice(BigDecimal price) {
+        when(marketCtx.getMarketOrderbook(eq(FIGI), anyInt()))
+                .thenReturn(CompletableFuture.completedFuture(Optional.of(orderbook(price))));
+    }
+
+    private static Orderbook orderbook(BigDecimal lastPrice) {
+        return new Orderbook(FIGI, 1, List.of(), List.of(), TradeStatus.NormalTrading,
+                new BigDecimal("0.1"), null, lastPrice, null, null, null);
+    }
+}
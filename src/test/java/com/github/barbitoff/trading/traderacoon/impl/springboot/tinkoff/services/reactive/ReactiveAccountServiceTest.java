@@ -0,0 +1,53 @@
+package com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.reactive;
+
+import com.github.barbitoff.trading.traderacoon.api.model.TradingAccount;
+import com.github.barbitoff.trading.traderacoon.api.model.exception.AccountNotFoundException;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.AccountServiceImpl;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ReactiveAccountServiceTest {
+
+    private static final String ACCOUNT_ID = "ACC1";
+
+    @Mock
+    private AccountServiceImpl accountService;
+
+    private ReactiveAccountService reactiveAccountService;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.initMocks(this);
+        reactiveAccountService = new ReactiveAccountService(accountService);
+    }
+
+    @Test
+    void getTradingAccountIsLazy() {
+        when(accountService.getTradingAccountAsync())
+                .thenReturn(CompletableFuture.completedFuture(new TradingAccount(ACCOUNT_ID)));
+
+        var account = reactiveAccountService.getTradingAccount();
+        verify(accountService, never()).getTradingAccountAsync();
+
+        assertEquals(ACCOUNT_ID, account.block().getId());
+        verify(accountService).getTradingAccountAsync();
+    }
+
+    @Test
+    void getTradingAccountNotFound() {
+        when(accountService.getTradingAccountAsync())
+                .thenReturn(CompletableFuture.failedFuture(new AccountNotFoundException()));
+
+        RuntimeException factEx = assertThrows(RuntimeException.class,
+                () -> reactiveAccountService.getTradingAccount().block(),
+                "Expected exception when account can't be found");
+        assertTrue(factEx.getCause() instanceof AccountNotFoundException);
+    }
+}
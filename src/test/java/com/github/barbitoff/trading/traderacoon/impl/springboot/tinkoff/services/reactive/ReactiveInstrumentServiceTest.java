@@ -0,0 +1,64 @@
+package com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.reactive;
+
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.config.TinkoffOpenApiProperties;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.InstrumentServiceImpl;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.catalog.InstrumentCatalog;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import ru.tinkoff.invest.openapi.MarketContext;
+import ru.tinkoff.invest.openapi.OpenApi;
+import ru.tinkoff.invest.openapi.models.Currency;
+import ru.tinkoff.invest.openapi.models.market.Instrument;
+import ru.tinkoff.invest.openapi.models.market.InstrumentType;
+
+import java.math.BigDecimal;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+class ReactiveInstrumentServiceTest {
+
+    private static final String FIGI = "FIGI1";
+
+    @Mock
+    private OpenApi api;
+    @Mock
+    private MarketContext marketCtx;
+
+    private ReactiveInstrumentService instrumentService;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.initMocks(this);
+        when(api.getMarketContext()).thenReturn(marketCtx);
+        TinkoffOpenApiProperties props = new TinkoffOpenApiProperties();
+        instrumentService = new ReactiveInstrumentService(
+                new InstrumentServiceImpl(api, props, new InstrumentCatalog(api, props)));
+    }
+
+    @Test
+    void getInstrument() {
+        Instrument src = new Instrument(FIGI, "ticker1", "isin1", BigDecimal.TEN, 11, Currency.RUB,
+                "name1", InstrumentType.Stock);
+        when(marketCtx.searchMarketInstrumentByFigi(eq(FIGI)))
+                .thenReturn(CompletableFuture.completedFuture(Optional.of(src)));
+
+        var instrument = instrumentService.getInstrument(FIGI).block();
+        assertNotNull(instrument);
+        assertEquals(FIGI, instrument.getFigi());
+        assertEquals(11, instrument.getLotSize());
+    }
+
+    @Test
+    void getInstrumentNotFound() {
+        when(marketCtx.searchMarketInstrumentByFigi(eq(FIGI)))
+                .thenReturn(CompletableFuture.completedFuture(Optional.empty()));
+
+        assertNull(instrumentService.getInstrument(FIGI).block());
+    }
+}
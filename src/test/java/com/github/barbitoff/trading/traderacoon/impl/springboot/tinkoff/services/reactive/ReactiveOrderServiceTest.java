@@ -0,0 +1,198 @@
+package com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.reactive;
+
+import com.github.barbitoff.trading.traderacoon.api.model.*;
+import com.github.barbitoff.trading.traderacoon.api.model.Order;
+import com.github.barbitoff.trading.traderacoon.api.model.exception.OrderRejectedException;
+import com.github.barbitoff.trading.traderacoon.api.service.AccountService;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.config.TinkoffOpenApiProperties;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.model.OrderCancellationResult;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.model.OrderPlacementResult;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.model.OrderRequest;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.model.mappers.OrderMapper;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.InstrumentServiceImpl;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.OrderServiceImpl;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.orders.ActiveOrderStore;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.orders.OrderValidator;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.quotes.LastPriceCache;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.context.ApplicationEventPublisher;
+import reactor.core.publisher.Mono;
+import ru.tinkoff.invest.openapi.OpenApi;
+import ru.tinkoff.invest.openapi.OrdersContext;
+import ru.tinkoff.invest.openapi.models.orders.*;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class ReactiveOrderServiceTest {
+
+    private static final String ACCOUNT_ID = "ACC1";
+    private static final String FIGI = "FIGI1";
+
+    @Mock
+    private OpenApi api;
+    @Mock
+    private OrdersContext ordersCtx;
+    @Mock
+    private AccountService accountService;
+    @Mock
+    private ReactiveAccountService reactiveAccountService;
+    @Mock
+    private OrderMapper orderMapper;
+
+    private TinkoffOpenApiProperties props = new TinkoffOpenApiProperties();
+    private ActiveOrderStore activeOrderStore;
+    private ReactiveOrderService orderService;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.initMocks(this);
+        when(api.getOrdersContext()).thenReturn(ordersCtx);
+        when(reactiveAccountService.getTradingAccount()).thenReturn(Mono.just(new TradingAccount(ACCOUNT_ID)));
+        props.getOrders().setValidationEnabled(false);
+        props.getOrders().setActiveCacheEnabled(true);
+        activeOrderStore = new ActiveOrderStore(props, mock(ApplicationEventPublisher.class));
+        orderService = new ReactiveOrderService(
+                new OrderServiceImpl(api, accountService, orderMapper, props, activeOrderStore,
+                        new OrderValidator(mock(InstrumentServiceImpl.class), mock(LastPriceCache.class), props),
+                        mock(ApplicationEventPublisher.class)),
+                reactiveAccountService, activeOrderStore, props);
+    }
+
+    @Test
+    void buyRejected() {
+        PlacedOrder placedOrder = new PlacedOrder("ID1", Operation.Buy, Status.Rejected, "rejected", null, 1, 0, null);
+        when(ordersCtx.placeLimitOrder(eq(FIGI), any(), eq(ACCOUNT_ID)))
+                .thenReturn(CompletableFuture.completedFuture(placedOrder));
+
+        RuntimeException factEx = assertThrows(RuntimeException.class,
+                () -> orderService.buy(FIGI, 1, BigDecimal.TEN).block(),
+                "Expected exception when the order is rejected");
+        assertTrue(factEx.getCause() instanceof OrderRejectedException);
+    }
+
+    @Test
+    void sellMarket() {
+        PlacedOrder placedOrder = new PlacedOrder("ID1", Operation.Sell, Status.Fill, null, null, 1, 1, null);
+        when(ordersCtx.placeMarketOrder(eq(FIGI), any(), eq(ACCOUNT_ID)))
+                .thenReturn(CompletableFuture.completedFuture(placedOrder));
+        Order order = mock(Order.class);
+        when(orderMapper.mapTinkoffOrder(eq(placedOrder), eq(FIGI), eq(StockOrderType.Market), isNull()))
+                .thenReturn(order);
+
+        assertSame(order, orderService.sell(FIGI, 1, null).block());
+    }
+
+    @Test
+    void cancelOrders() {
+        Order newOrder = createOrder("ID1", OrderStatus.New);
+        Order filledOrder = createOrder("ID2", OrderStatus.Fill);
+        Order failingOrder = createOrder("ID3", OrderStatus.PartiallyFill);
+        when(ordersCtx.cancelOrder(eq("ID1"), eq(ACCOUNT_ID))).thenReturn(CompletableFuture.completedFuture(null));
+        when(ordersCtx.cancelOrder(eq("ID3"), eq(ACCOUNT_ID)))
+                .thenReturn(CompletableFuture.failedFuture(new IOException("Emulated")));
+
+        List<OrderCancellationResult> results = orderService.cancelOrders(List.of(newOrder, filledOrder, failingOrder))
+                .collectList().block();
+
+        assertNotNull(results);
+        assertEquals(OrderCancellationResult.Status.CANCELLED, results.get(0).getStatus());
+        assertEquals(OrderCancellationResult.Status.SKIPPED, results.get(1).getStatus());
+        assertEquals(OrderCancellationResult.Status.FAILED, results.get(2).getStatus());
+        verify(ordersCtx, never()).cancelOrder(eq("ID2"), any());
+    }
+
+    @Test
+    void cancelOrdersUnbounded() {
+        props.getOrders().setCancelConcurrency(0);
+        when(ordersCtx.cancelOrder(any(), eq(ACCOUNT_ID))).thenReturn(CompletableFuture.completedFuture(null));
+
+        List<OrderCancellationResult> results = orderService.cancelOrders(List.of(
+                createOrder("ID1", OrderStatus.New), createOrder("ID2", OrderStatus.New)))
+                .collectList().block();
+
+        assertNotNull(results);
+        assertEquals(2, results.size());
+        assertTrue(results.stream()
+                .allMatch(result -> result.getStatus() == OrderCancellationResult.Status.CANCELLED));
+    }
+
+    @Test
+    void activeOrdersFromStore() {
+        when(ordersCtx.getOrders(eq(ACCOUNT_ID))).thenReturn(CompletableFuture.completedFuture(List.of()));
+        assertEquals(List.of(), orderService.getActiveOrders().collectList().block());
+        verify(ordersCtx).getOrders(eq(ACCOUNT_ID));
+
+        Order order = createOrder("ID1", OrderStatus.New);
+        activeOrderStore.reconcile(List.of(order), activeOrderStore.startReconciliation());
+
+        assertEquals(List.of(order), orderService.getActiveOrders().collectList().block());
+        verifyNoMoreInteractions(ordersCtx);
+    }
+
+    @Test
+    void placeOrders() {
+        PlacedOrder placedOrder = new PlacedOrder("ID1", Operation.Buy, Status.New, null, null, 1, 0, null);
+        PlacedOrder rejectedOrder = new PlacedOrder("ID2", Operation.Sell, Status.Rejected, "rejected", null, 1, 0, null);
+        when(ordersCtx.placeLimitOrder(eq(FIGI), any(), eq(ACCOUNT_ID)))
+                .thenReturn(CompletableFuture.completedFuture(placedOrder));
+        when(ordersCtx.placeMarketOrder(eq(FIGI), any(), eq(ACCOUNT_ID)))
+                .thenReturn(CompletableFuture.completedFuture(rejectedOrder));
+        Order order = mock(Order.class);
+        when(orderMapper.mapTinkoffOrder(eq(placedOrder), eq(FIGI), eq(StockOrderType.Limit), eq(BigDecimal.TEN)))
+                .thenReturn(order);
+
+        List<OrderPlacementResult> results = orderService.placeOrders(List.of(
+                OrderRequest.buy(FIGI, 1, BigDecimal.TEN),
+                OrderRequest.sell(FIGI, 1, null)))
+                .collectList().block();
+
+        assertNotNull(results);
+        assertEquals(OrderPlacementResult.Status.PLACED, results.get(0).getStatus());
+        assertSame(order, results.get(0).getOrder());
+        assertEquals(OrderPlacementResult.Status.REJECTED, results.get(1).getStatus());
+        assertEquals("rejected", results.get(1).getError().getMessage());
+    }
+
+    @Test
+    void placeOrdersUnbounded() {
+        props.getOrders().setPlaceConcurrency(0);
+        PlacedOrder placedOrder = new PlacedOrder("ID1", Operation.Buy, Status.New, null, null, 1, 0, null);
+        when(ordersCtx.placeLimitOrder(eq(FIGI), any(), eq(ACCOUNT_ID)))
+                .thenReturn(CompletableFuture.completedFuture(placedOrder));
+        when(orderMapper.mapTinkoffOrder(eq(placedOrder), eq(FIGI), eq(StockOrderType.Limit), eq(BigDecimal.TEN)))
+                .thenReturn(mock(Order.class));
+
+        List<OrderPlacementResult> results = orderService.placeOrders(List.of(
+                OrderRequest.buy(FIGI, 1, BigDecimal.TEN),
+                OrderRequest.buy(FIGI, 2, BigDecimal.TEN)))
+                .collectList().block();
+
+        assertNotNull(results);
+        assertEquals(2, results.size());
+        assertTrue(results.stream().allMatch(result -> result.getStatus() == OrderPlacementResult.Status.PLACED));
+    }
+
+    private static Order createOrder(String id, OrderStatus status) {
+        return Order.builder()
+                .id(id)
+                .figi(FIGI)
+                .operation(StockOperation.Buy)
+                .status(status)
+                .lotsFilled(0)
+                .lotsRequested(1)
+                .type(StockOrderType.Market)
+                .price(BigDecimal.ZERO)
+                .build();
+    }
+}
@@ -0,0 +1,81 @@
+package com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.reactive;
+
+import com.github.barbitoff.trading.traderacoon.api.model.TradingAccount;
+import com.github.barbitoff.trading.traderacoon.api.service.AccountService;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.config.TinkoffOpenApiProperties;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.PortfolioServiceImpl;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import reactor.core.publisher.Mono;
+import ru.tinkoff.invest.openapi.OpenApi;
+import ru.tinkoff.invest.openapi.PortfolioContext;
+import ru.tinkoff.invest.openapi.models.Currency;
+import ru.tinkoff.invest.openapi.models.portfolio.InstrumentType;
+import ru.tinkoff.invest.openapi.models.portfolio.Portfolio;
+import ru.tinkoff.invest.openapi.models.portfolio.PortfolioCurrencies;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class ReactivePortfolioServiceTest {
+
+    private static final String ACCOUNT_ID = "ACC1";
+
+    @Mock
+    private OpenApi api;
+    @Mock
+    private PortfolioContext portfolioCtx;
+    @Mock
+    private AccountService accountService;
+    @Mock
+    private ReactiveAccountService reactiveAccountService;
+
+    private ReactivePortfolioService portfolioService;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.initMocks(this);
+        when(api.getPortfolioContext()).thenReturn(portfolioCtx);
+        when(reactiveAccountService.getTradingAccount()).thenReturn(Mono.just(new TradingAccount(ACCOUNT_ID)));
+        portfolioService = new ReactivePortfolioService(new PortfolioServiceImpl(api, accountService, new TinkoffOpenApiProperties()),
+                reactiveAccountService);
+    }
+
+    @Test
+    void getPortfolio() {
+        when(portfolioCtx.getPortfolioCurrencies(eq(ACCOUNT_ID))).thenReturn(CompletableFuture.completedFuture(
+                new PortfolioCurrencies(List.of(new PortfolioCurrencies.PortfolioCurrency(
+                        Currency.RUB, BigDecimal.TEN, BigDecimal.ONE)))));
+        when(portfolioCtx.getPortfolio(eq(ACCOUNT_ID))).thenReturn(CompletableFuture.completedFuture(
+                new Portfolio(List.of(new Portfolio.PortfolioPosition("FIGI1", "ticker1", "isin1",
+                        InstrumentType.Stock, BigDecimal.TEN, BigDecimal.ZERO, null, 1, null, null, "name1")))));
+
+        var portfolio = portfolioService.getPortfolio().block();
+
+        assertNotNull(portfolio);
+        assertEquals(2, portfolio.getPositions().size());
+        assertEquals(1, portfolioService.getCurrencies().count().block());
+        assertEquals(1, portfolioService.getNonCurrencies().count().block());
+        verifyNoInteractions(accountService);
+    }
+
+    @Test
+    void getPortfolioApiException() {
+        IOException apiException = new IOException("FAKE");
+        when(portfolioCtx.getPortfolioCurrencies(eq(ACCOUNT_ID))).thenReturn(CompletableFuture.failedFuture(apiException));
+        when(portfolioCtx.getPortfolio(eq(ACCOUNT_ID))).thenReturn(CompletableFuture.failedFuture(apiException));
+
+        RuntimeException factEx = assertThrows(RuntimeException.class,
+                () -> portfolioService.getPortfolio().block(),
+                "Expected exception when an underlying API throws an exception");
+        assertEquals(apiException, factEx.getCause());
+    }
+}
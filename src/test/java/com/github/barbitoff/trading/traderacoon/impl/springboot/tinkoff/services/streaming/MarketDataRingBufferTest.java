@@ -0,0 +1,127 @@
+package com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.streaming;
+
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.config.TinkoffOpenApiProperties;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.config.transport.StreamingConnectionMonitor;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.MarketDataService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import reactor.core.publisher.DirectProcessor;
+import ru.tinkoff.invest.openapi.OpenApi;
+import ru.tinkoff.invest.openapi.StreamingContext;
+import ru.tinkoff.invest.openapi.models.market.CandleInterval;
+import ru.tinkoff.invest.openapi.models.streaming.StreamingEvent;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class MarketDataRingBufferTest {
+
+    private static final String FIGI = "FIGI1";
+
+    @Mock
+    private MarketDataService marketDataService;
+    @Mock
+    private OpenApi api;
+
+    private final DirectProcessor<StreamingEvent> events = DirectProcessor.create();
+    private TinkoffOpenApiProperties props = new TinkoffOpenApiProperties();
+
+    private MarketDataRingBuffer ringBuffer;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.initMocks(this);
+        when(marketDataService.events()).thenReturn(events);
+        ringBuffer = new MarketDataRingBuffer(marketDataService, props);
+    }
+
+    @AfterEach
+    void tearDown() {
+        ringBuffer.destroy();
+    }
+
+    @Test
+    void consumersGetEvents() {
+        props.getMarketData().setRingBufferEnabled(true);
+        props.getMarketData().setRingBufferSize(256);
+        ringBuffer.afterPropertiesSet();
+        List<StreamingEvent> received = new CopyOnWriteArrayList<>();
+        RingBufferConsumer<MarketDataSlot> consumer = ringBuffer.addConsumer("strategy",
+                (slot, sequence, endOfBatch) -> received.add(slot.getEvent()));
+
+        for (int i = 0; i < 100; i++) {
+            events.onNext(new StreamingEvent.Error("error " + i, "REQ" + i));
+        }
+
+        verify(marketDataService, times(1)).events();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (received.size() < 100 && System.currentTimeMillis() < deadline) {
+            Thread.onSpinWait();
+        }
+        assertEquals(100, received.size());
+        assertEquals("REQ99", ((StreamingEvent.Error) received.get(99)).getRequestId());
+        assertEquals(List.of(consumer), ringBuffer.getConsumers());
+
+        ringBuffer.destroy();
+        assertFalse(events.hasDownstreams());
+        assertFalse(consumer.isRunning());
+    }
+
+    @Test
+    void stalledConsumerDoesNotStopStream() {
+        StreamingContext streamingCtx = mock(StreamingContext.class);
+        when(api.getStreamingContext()).thenReturn(streamingCtx);
+        when(streamingCtx.getEventPublisher()).thenReturn(events);
+        props.getMarketData().setSubscriptionBatchDelay(Duration.ZERO);
+        MarketDataService realService = new MarketDataService(api, props, new SubscriptionRegistry(api, props),
+                new StreamingConnectionMonitor(1));
+        props.getMarketData().setRingBufferEnabled(true);
+        props.getMarketData().setRingBufferSize(16);
+        ringBuffer = new MarketDataRingBuffer(realService, props);
+        ringBuffer.afterPropertiesSet();
+        CountDownLatch release = new CountDownLatch(1);
+        RingBufferConsumer<MarketDataSlot> stalled = ringBuffer.addConsumer("stalled",
+                (slot, sequence, endOfBatch) -> {
+                    try {
+                        release.await();
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+        List<StreamingEvent.Candle> candles = new CopyOnWriteArrayList<>();
+        realService.candles(FIGI, CandleInterval.ONE_MIN).subscribe(candles::add);
+
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+            for (int i = 0; i < 100; i++) {
+                events.onNext(new StreamingEvent.Candle(BigDecimal.ONE, BigDecimal.ONE, BigDecimal.ONE,
+                        BigDecimal.ONE, BigDecimal.TEN, ZonedDateTime.now(), CandleInterval.ONE_MIN, FIGI));
+            }
+        });
+
+        assertEquals(100, candles.size());
+        assertTrue(stalled.isDetached());
+        assertEquals(1, ringBuffer.getDetachedConsumers());
+        release.countDown();
+    }
+
+    @Test
+    void disabled() {
+        ringBuffer.afterPropertiesSet();
+
+        verifyNoInteractions(marketDataService);
+        assertThrows(IllegalStateException.class,
+                () -> ringBuffer.addConsumer("strategy", (slot, sequence, endOfBatch) -> {
+                }));
+        assertTrue(ringBuffer.getConsumers().isEmpty());
+    }
+}
@@ -0,0 +1,231 @@
+package com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.streaming;
+
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.config.TinkoffOpenApiProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SpmcRingBufferTest {
+
+    private SpmcRingBuffer<LongSlot> ringBuffer;
+
+    @AfterEach
+    void tearDown() {
+        if (ringBuffer != null) {
+            ringBuffer.close();
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(TinkoffOpenApiProperties.WaitStrategyType.class)
+    void allConsumersGetAllEventsInOrder(TinkoffOpenApiProperties.WaitStrategyType type)
+            throws InterruptedException {
+        int events = 10_000;
+        ringBuffer = new SpmcRingBuffer<>(64, LongSlot::new, WaitStrategy.create(type));
+        OrderCheck first = new OrderCheck(events);
+        OrderCheck second = new OrderCheck(events);
+        RingBufferConsumer<LongSlot> firstConsumer = ringBuffer.addConsumer("first", first);
+        ringBuffer.addConsumer("second", second);
+
+        for (long i = 0; i < events; i++) {
+            ringBuffer.publish(LongSlot::set, i);
+        }
+
+        assertTrue(first.done.await(10, TimeUnit.SECONDS));
+        assertTrue(second.done.await(10, TimeUnit.SECONDS));
+        assertEquals(0, first.outOfOrder.get());
+        assertEquals(0, second.outOfOrder.get());
+        assertEquals(events - 1, ringBuffer.getCursor());
+        // the sequence is updated after the last handler call of a batch
+        long deadline = System.currentTimeMillis() + 1000;
+        while (firstConsumer.getLag() != 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(events, firstConsumer.getProcessed());
+        assertEquals(0, firstConsumer.getLag());
+        assertTrue(firstConsumer.getMaxLag() >= 1);
+        assertTrue(firstConsumer.getMaxLag() <= 64);
+    }
+
+    @Test
+    void slowConsumerLag() throws InterruptedException {
+        ringBuffer = new SpmcRingBuffer<>(8, LongSlot::new, WaitStrategy.create(
+                TinkoffOpenApiProperties.WaitStrategyType.BLOCKING));
+        CountDownLatch release = new CountDownLatch(1);
+        RingBufferConsumer<LongSlot> slow = ringBuffer.addConsumer("slow", (slot, sequence, endOfBatch) -> {
+            try {
+                release.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        for (long i = 0; i < 8; i++) {
+            ringBuffer.publish(LongSlot::set, i);
+        }
+
+        assertTrue(slow.getLag() >= 7);
+        assertEquals(0, ringBuffer.getProducerWaits());
+        // the producer waits for the slow consumer to free a slot
+        Thread producer = new Thread(() -> ringBuffer.publish(LongSlot::set, 8L));
+        producer.start();
+        producer.join(100);
+        assertTrue(producer.isAlive());
+        assertTrue(ringBuffer.getProducerWaits() > 0);
+
+        release.countDown();
+        producer.join(5000);
+        assertFalse(producer.isAlive());
+        // a single wait, however long
+        assertEquals(1, ringBuffer.getProducerWaits());
+    }
+
+    @Test
+    void consumerAddedWhilePublishing() throws InterruptedException {
+        int events = 100_000;
+        ringBuffer = new SpmcRingBuffer<>(8, LongSlot::new, WaitStrategy.create(
+                TinkoffOpenApiProperties.WaitStrategyType.YIELDING));
+        CountDownLatch added = new CountDownLatch(1);
+        // holds the producer until the late consumer is added
+        ringBuffer.addConsumer("first", (slot, sequence, endOfBatch) -> {
+            if (sequence == 1000) {
+                try {
+                    added.await();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        Thread producer = new Thread(() -> {
+            for (long i = 0; i < events; i++) {
+                ringBuffer.publish(LongSlot::set, i);
+            }
+        });
+        producer.start();
+
+        AtomicLong overwritten = new AtomicLong();
+        CountDownLatch done = new CountDownLatch(1);
+        ringBuffer.addConsumer("late", (slot, sequence, endOfBatch) -> {
+            // a slot, overwritten by the producer before it's read, holds a later value
+            if (slot.value != sequence) {
+                overwritten.incrementAndGet();
+            }
+            if (sequence == events - 1) {
+                done.countDown();
+            }
+        });
+        added.countDown();
+        producer.join(10_000);
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(0, overwritten.get());
+    }
+
+    @Test
+    void closedConsumerDoesNotHoldProducer() {
+        ringBuffer = new SpmcRingBuffer<>(4, LongSlot::new, WaitStrategy.create(
+                TinkoffOpenApiProperties.WaitStrategyType.SLEEPING));
+        CountDownLatch release = new CountDownLatch(1);
+        RingBufferConsumer<LongSlot> consumer = ringBuffer.addConsumer("stuck", (slot, sequence, endOfBatch) -> {
+            try {
+                release.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        ringBuffer.publish(LongSlot::set, 0L);
+
+        consumer.close();
+        for (long i = 1; i < 100; i++) {
+            ringBuffer.publish(LongSlot::set, i);
+        }
+
+        assertEquals(99, ringBuffer.getCursor());
+        assertTrue(ringBuffer.getConsumers().isEmpty());
+        release.countDown();
+    }
+
+    @Test
+    void laggingConsumerDetached() throws InterruptedException {
+        ringBuffer = new SpmcRingBuffer<>(8, LongSlot::new, WaitStrategy.create(
+                TinkoffOpenApiProperties.WaitStrategyType.BLOCKING), 4);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicLong stuckProcessed = new AtomicLong();
+        RingBufferConsumer<LongSlot> stuck = ringBuffer.addConsumer("stuck", (slot, sequence, endOfBatch) -> {
+            stuckProcessed.incrementAndGet();
+            try {
+                release.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        OrderCheck check = new OrderCheck(100);
+        RingBufferConsumer<LongSlot> fast = ringBuffer.addConsumer("fast", check);
+
+        // the producer doesn't wait for the stuck consumer
+        for (long i = 0; i < 100; i++) {
+            ringBuffer.publish(LongSlot::set, i);
+            while (fast.getLag() > 2) {
+                Thread.onSpinWait();
+            }
+        }
+
+        assertTrue(check.done.await(5, TimeUnit.SECONDS));
+        assertEquals(0, check.outOfOrder.get());
+        assertTrue(stuck.isDetached());
+        assertFalse(fast.isDetached());
+        assertEquals(1, ringBuffer.getDetachedConsumers());
+        assertEquals(0, ringBuffer.getProducerWaits());
+        assertEquals(List.of(fast), ringBuffer.getConsumers());
+        release.countDown();
+        Thread.sleep(50);
+        // stops before the next slot
+        assertTrue(stuckProcessed.get() <= 1);
+    }
+
+    @Test
+    void sizeMustBePowerOfTwo() {
+        assertThrows(IllegalArgumentException.class, () -> new SpmcRingBuffer<>(100, LongSlot::new,
+                WaitStrategy.create(TinkoffOpenApiProperties.WaitStrategyType.YIELDING)));
+        assertThrows(IllegalArgumentException.class, () -> new SpmcRingBuffer<>(8, LongSlot::new,
+                WaitStrategy.create(TinkoffOpenApiProperties.WaitStrategyType.YIELDING), 8));
+    }
+
+    private static class LongSlot {
+        long value;
+
+        void set(Long value) {
+            this.value = value;
+        }
+    }
+
+    private static class OrderCheck implements SpmcRingBuffer.EventHandler<LongSlot> {
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicLong outOfOrder = new AtomicLong();
+        final int expected;
+        long next;
+
+        OrderCheck(int expected) {
+            this.expected = expected;
+        }
+
+        @Override
+        public void onEvent(LongSlot slot, long sequence, boolean endOfBatch) {
+            if (slot.value != next || sequence != next) {
+                outOfOrder.incrementAndGet();
+            }
+            next++;
+            if (next == expected) {
+                done.countDown();
+            }
+        }
+    }
+}
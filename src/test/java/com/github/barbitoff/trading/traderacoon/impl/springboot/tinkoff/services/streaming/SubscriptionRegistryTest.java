@@ -0,0 +1,85 @@
+package com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.streaming;
+
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.config.TinkoffOpenApiProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import ru.tinkoff.invest.openapi.OpenApi;
+import ru.tinkoff.invest.openapi.StreamingContext;
+import ru.tinkoff.invest.openapi.models.market.CandleInterval;
+import ru.tinkoff.invest.openapi.models.streaming.StreamingRequest;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class SubscriptionRegistryTest {
+
+    private static final SubscriptionKey CANDLES = SubscriptionKey.candle("FIGI1", CandleInterval.ONE_MIN);
+    private static final SubscriptionKey ORDERBOOK = SubscriptionKey.orderbook("FIGI1", 5);
+
+    @Mock
+    private OpenApi api;
+    @Mock
+    private StreamingContext streamingCtx;
+
+    private TinkoffOpenApiProperties props = new TinkoffOpenApiProperties();
+
+    private SubscriptionRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.initMocks(this);
+        when(api.getStreamingContext()).thenReturn(streamingCtx);
+        registry = new SubscriptionRegistry(api, props);
+    }
+
+    @AfterEach
+    void tearDown() {
+        registry.destroy();
+    }
+
+    @Test
+    void referenceCounting() {
+        props.getMarketData().setSubscriptionBatchDelay(Duration.ZERO);
+
+        registry.acquire(CANDLES);
+        registry.acquire(CANDLES);
+        assertEquals(1, registry.getActiveSubscriptions());
+        assertEquals(2, registry.getConsumers(CANDLES));
+        verify(streamingCtx, times(1)).sendRequest(any(StreamingRequest.CandleSubscribeRequest.class));
+
+        registry.release(CANDLES);
+        verify(streamingCtx, never()).sendRequest(any(StreamingRequest.CandleUnsubscribeRequest.class));
+        registry.release(CANDLES);
+        verify(streamingCtx, times(1)).sendRequest(any(StreamingRequest.CandleUnsubscribeRequest.class));
+        assertEquals(0, registry.getActiveSubscriptions());
+        assertEquals(2, registry.getSentRequests());
+    }
+
+    @Test
+    void requestsBatched() {
+        props.getMarketData().setSubscriptionBatchDelay(Duration.ofMillis(50));
+
+        registry.acquire(CANDLES);
+        registry.acquire(ORDERBOOK);
+        registry.release(CANDLES);
+        registry.acquire(CANDLES);
+
+        verify(streamingCtx, timeout(1000).times(2)).sendRequest(any());
+        ArgumentCaptor<StreamingRequest> requests = ArgumentCaptor.forClass(StreamingRequest.class);
+        verify(streamingCtx, times(2)).sendRequest(requests.capture());
+        assertTrue(requests.getAllValues().stream()
+                .noneMatch(request -> request instanceof StreamingRequest.CandleUnsubscribeRequest));
+
+        registry.release(CANDLES);
+        registry.acquire(CANDLES);
+        registry.flush();
+        // released and acquired again within the delay
+        verify(streamingCtx, times(2)).sendRequest(any());
+    }
+}
@@ -0,0 +1,238 @@
+package com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.valuation;
+
+import com.github.barbitoff.trading.traderacoon.api.model.TradingAccount;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.config.TinkoffOpenApiProperties;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.model.PortfolioValuation;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.model.PositionValuation;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.AccountServiceImpl;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.PortfolioServiceImpl;
+import com.github.barbitoff.trading.traderacoon.impl.springboot.tinkoff.services.quotes.LastPriceCache;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import ru.tinkoff.invest.openapi.models.Currency;
+import ru.tinkoff.invest.openapi.models.MoneyAmount;
+import ru.tinkoff.invest.openapi.models.portfolio.InstrumentType;
+import ru.tinkoff.invest.openapi.models.portfolio.Portfolio;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class ValuationEngineTest {
+
+    private static final String ACCOUNT_ID = "ACC1";
+    private static final java.util.Currency RUB = java.util.Currency.getInstance("RUB");
+
+    @Mock
+    private PortfolioServiceImpl portfolioService;
+    @Mock
+    private AccountServiceImpl accountService;
+    @Mock
+    private LastPriceCache lastPriceCache;
+    @Captor
+    private ArgumentCaptor<BiConsumer<String, BigDecimal>> listener;
+
+    private TinkoffOpenApiProperties props = new TinkoffOpenApiProperties();
+
+    private ValuationEngine engine;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.initMocks(this);
+        when(accountService.getTradingAccountAsync())
+                .thenReturn(CompletableFuture.completedFuture(new TradingAccount(ACCOUNT_ID)));
+        // FIGI1: 10 units bought at 100, now +50 expected yield, FIGI2: 2 units bought at 20 USD, FIGI3: no price
+        mockPortfolio(position("FIGI1", "10", "100", "50", Currency.RUB),
+                position("FIGI2", "2", "20", null, Currency.USD),
+                new Portfolio.PortfolioPosition("FIGI3", "T3", "I3", InstrumentType.Stock, BigDecimal.ONE,
+                        BigDecimal.ZERO, null, 1, null, null, "FIGI3"));
+        engine = new ValuationEngine(portfolioService, accountService, lastPriceCache, props);
+    }
+
+    @AfterEach
+    void tearDown() {
+        engine.destroy();
+    }
+
+    @Test
+    void loadOnStartup() {
+        props.getValuation().setEnabled(true);
+
+        engine.afterPropertiesSet();
+
+        assertTrue(engine.isLoaded());
+        PositionValuation figi1 = engine.getPosition("FIGI1").orElseThrow();
+        assertEquals(0, new BigDecimal("105").compareTo(figi1.getLastPrice()));
+        assertEquals(0, new BigDecimal("1050").compareTo(figi1.getValue()));
+        assertEquals(0, new BigDecimal("50").compareTo(figi1.getUnrealizedPnl()));
+        assertEquals(0, new BigDecimal("20").compareTo(engine.getPosition("FIGI2").orElseThrow().getLastPrice()));
+        assertTrue(engine.getPosition("FIGI3").isEmpty());
+        assertEquals(2, engine.getTotals().size());
+    }
+
+    @Test
+    void pricesFromLastPriceCache() {
+        props.getValuation().setEnabled(true);
+        when(lastPriceCache.getPrice(eq("FIGI2"))).thenReturn(Optional.of(new BigDecimal("21")));
+
+        engine.afterPropertiesSet();
+
+        // cached price is preferred to the implied one
+        assertEquals(0, new BigDecimal("21").compareTo(engine.getPosition("FIGI2").orElseThrow().getLastPrice()));
+        verify(lastPriceCache).track(eq("FIGI1"));
+        verify(lastPriceCache).track(eq("FIGI2"));
+        verify(lastPriceCache).addListener(listener.capture());
+
+        listener.getValue().accept("FIGI1", new BigDecimal("110"));
+
+        assertEquals(0, new BigDecimal("1100").compareTo(engine.getPosition("FIGI1").orElseThrow().getValue()));
+    }
+
+    @Test
+    void disabled() {
+        engine.afterPropertiesSet();
+
+        assertFalse(engine.isLoaded());
+        verifyNoInteractions(portfolioService);
+    }
+
+    @Test
+    void priceTicks() {
+        engine.refresh().join();
+
+        engine.onPrice("FIGI1", new BigDecimal("110"));
+        engine.onPrice("FIGI1", new BigDecimal("90"));
+        engine.onPrice("UNKNOWN", BigDecimal.TEN);
+
+        PositionValuation figi1 = engine.getPosition("FIGI1").orElseThrow();
+        assertEquals(0, new BigDecimal("900").compareTo(figi1.getValue()));
+        assertEquals(0, new BigDecimal("-100").compareTo(figi1.getUnrealizedPnl()));
+        PortfolioValuation total = engine.getTotal(RUB).orElseThrow();
+        assertEquals(0, new BigDecimal("900").compareTo(total.getValue()));
+        assertEquals(0, new BigDecimal("-100").compareTo(total.getUnrealizedPnl()));
+        // the other currency isn't affected
+        assertEquals(0, new BigDecimal("40").compareTo(
+                engine.getTotal(java.util.Currency.getInstance("USD")).orElseThrow().getValue()));
+    }
+
+    @Test
+    void refreshKeepsLastPrices() {
+        engine.refresh().join();
+        engine.onPrice("FIGI1", new BigDecimal("110"));
+        // 5 more units bought
+        mockPortfolio(position("FIGI1", "15", "100", "75", Currency.RUB));
+
+        engine.refresh().join();
+
+        PositionValuation figi1 = engine.getPosition("FIGI1").orElseThrow();
+        assertEquals(0, new BigDecimal("1650").compareTo(figi1.getValue()));
+        assertEquals(0, new BigDecimal("1650").compareTo(engine.getTotal(RUB).orElseThrow().getValue()));
+        assertTrue(engine.getPosition("FIGI2").isEmpty());
+    }
+
+    @Test
+    void tickDuringRefreshNotLost() {
+        engine.refresh().join();
+        engine.onPrice("FIGI1", new BigDecimal("110"));
+        mockPortfolio(position("FIGI1", "10", "100", "100", Currency.RUB),
+                position("FIGI4", "1", "50", null, Currency.RUB));
+        // the tick lands on the previous positions after FIGI1 is loaded
+        when(lastPriceCache.getPrice(eq("FIGI4"))).thenAnswer(invocation -> {
+            engine.onPrice("FIGI1", new BigDecimal("120"));
+            return Optional.empty();
+        });
+
+        engine.refresh().join();
+
+        assertEquals(0, new BigDecimal("1200").compareTo(engine.getPosition("FIGI1").orElseThrow().getValue()));
+        assertEquals(0, new BigDecimal("1250").compareTo(engine.getTotal(RUB).orElseThrow().getValue()));
+    }
+
+    @Test
+    void ticksInterleavedWithRefreshes() throws InterruptedException {
+        engine.refresh().join();
+        AtomicBoolean done = new AtomicBoolean();
+        Thread refresher = new Thread(() -> {
+            while (!done.get()) {
+                engine.refresh().join();
+            }
+        });
+        refresher.start();
+        for (int i = 1; i <= 2000; i++) {
+            engine.onPrice("FIGI1", BigDecimal.valueOf(100 + i));
+        }
+        done.set(true);
+        refresher.join();
+
+        // the last tick wins, and the total matches the position
+        PositionValuation figi1 = engine.getPosition("FIGI1").orElseThrow();
+        assertEquals(0, new BigDecimal("2100").compareTo(figi1.getLastPrice()));
+        assertEquals(0, figi1.getValue().compareTo(engine.getTotal(RUB).orElseThrow().getValue()));
+    }
+
+    @Test
+    void outdatedRefreshDropped() {
+        CompletableFuture<Portfolio> first = new CompletableFuture<>();
+        CompletableFuture<Portfolio> second = new CompletableFuture<>();
+        when(portfolioService.getTinkoffPortfolioAsync(eq(ACCOUNT_ID))).thenReturn(first).thenReturn(second);
+        CompletableFuture<Void> firstRefresh = engine.refresh();
+        CompletableFuture<Void> secondRefresh = engine.refresh();
+
+        second.complete(new Portfolio(List.of(position("FIGI1", "15", "100", "75", Currency.RUB))));
+        first.complete(new Portfolio(List.of(position("FIGI1", "10", "100", "50", Currency.RUB))));
+        secondRefresh.join();
+        firstRefresh.join();
+
+        assertEquals(0, new BigDecimal("1575").compareTo(engine.getPosition("FIGI1").orElseThrow().getValue()));
+    }
+
+    @Test
+    void bondsNotValued() {
+        mockPortfolio(new Portfolio.PortfolioPosition("BOND1", "B1", "IB1", InstrumentType.Bond, BigDecimal.TEN,
+                BigDecimal.ZERO, null, 10, new MoneyAmount(Currency.RUB, new BigDecimal("1000")), null, "BOND1"));
+
+        engine.refresh().join();
+        engine.onPrice("BOND1", new BigDecimal("101.5"));
+
+        assertTrue(engine.isLoaded());
+        assertTrue(engine.getPosition("BOND1").isEmpty());
+        assertTrue(engine.getTotals().isEmpty());
+    }
+
+    @Test
+    void failedRefreshKeepsPositions() {
+        engine.refresh().join();
+        when(portfolioService.getTinkoffPortfolioAsync(eq(ACCOUNT_ID)))
+                .thenReturn(CompletableFuture.failedFuture(new IOException("Emulated")));
+
+        engine.refresh().join();
+
+        assertTrue(engine.getPosition("FIGI1").isPresent());
+    }
+
+    private void mockPortfolio(Portfolio.PortfolioPosition... positions) {
+        when(portfolioService.getTinkoffPortfolioAsync(eq(ACCOUNT_ID)))
+                .thenReturn(CompletableFuture.completedFuture(new Portfolio(List.of(positions))));
+    }
+
+    private static Portfolio.PortfolioPosition position(String figi, String balance, String averagePrice,
+                                                        String expectedYield, Currency currency) {
+        return new Portfolio.PortfolioPosition(figi, "T_" + figi, "I_" + figi, InstrumentType.Stock,
+                new BigDecimal(balance), BigDecimal.ZERO,
+                expectedYield == null ? null : new MoneyAmount(currency, new BigDecimal(expectedYield)),
+                1, new MoneyAmount(currency, new BigDecimal(averagePrice)), null, figi);
+    }
+}